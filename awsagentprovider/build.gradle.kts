@@ -15,6 +15,7 @@
 
 plugins {
   java
+  `java-test-fixtures`
   id("com.github.johnrengelman.shadow") version "5.2.0"
 }
 
@@ -26,13 +27,38 @@ dependencies {
   compileOnly("io.opentelemetry:opentelemetry-sdk")
   compileOnly("org.slf4j:slf4j-api")
 
+  implementation("com.fasterxml.jackson.core:jackson-core")
+  implementation("com.google.protobuf:protobuf-java")
+  implementation("io.grpc:grpc-netty-shaded")
+  implementation("io.grpc:grpc-protobuf")
+  implementation("io.grpc:grpc-stub")
+  implementation("io.opentelemetry:opentelemetry-proto")
   implementation("io.opentelemetry:opentelemetry-sdk-extension-aws-v1-support")
 
   testImplementation("com.google.guava:guava")
+  testImplementation("io.opentelemetry:opentelemetry-exporters-otlp")
+  testImplementation("io.opentelemetry:opentelemetry-extension-trace-propagators")
+  testImplementation("javax.servlet:javax.servlet-api")
+
+  testFixturesCompileOnly("io.opentelemetry:opentelemetry-sdk")
+  testFixturesImplementation("io.opentelemetry:opentelemetry-proto")
 
   compileOnly("com.google.code.findbugs:jsr305:3.0.2")
 }
 
+// The classes of grpc-context, which the OpenTelemetry API uses.
+val grpcContextClasses = listOf(
+  "io.grpc.Context",
+  "io.grpc.Context$*",
+  "io.grpc.Deadline",
+  "io.grpc.Deadline$*",
+  "io.grpc.PersistentHashArrayMappedTrie",
+  "io.grpc.PersistentHashArrayMappedTrie$*",
+  "io.grpc.ThreadLocalContextStorage"
+)
+
+val providerShadedPrefix = "com.softwareaws.xray.opentelemetry.shaded"
+
 tasks {
   shadowJar {
     archiveClassifier.set("")
@@ -41,6 +67,10 @@ tasks {
 
     exclude("**/module-info.class")
 
+    // AWS resources are detected in parallel with time budgets by AwsResourceDetection, instead of
+    // serially by the SDK extension's resource providers.
+    exclude("META-INF/services/io.opentelemetry.sdk.resources.ResourceProvider")
+
     // rewrite dependencies calling Logger.getLogger
     relocate("java.util.logging.Logger", "io.opentelemetry.javaagent.bootstrap.PatchLogger")
 
@@ -57,6 +87,22 @@ tasks {
     relocate("io.opentelemetry.trace", "io.opentelemetry.javaagent.shaded.io.opentelemetry.trace")
 
     // relocate OpenTelemetry API dependency usage
-    relocate("io.grpc", "io.opentelemetry.javaagent.shaded.io.grpc")
+    relocate("io.grpc", "io.opentelemetry.javaagent.shaded.io.grpc") {
+      grpcContextClasses.forEach { include(it) }
+    }
+    // The agent provides grpc-context, relocated as above, in the bootstrap class loader.
+    dependencies {
+      exclude(dependency("io.grpc:grpc-context"))
+    }
+
+    // The OTLP exporter's gRPC, protobuf and their dependencies, and the Jackson used for X-Ray
+    // JSON, are private to the provider, so they cannot clash with other copies in the agent.
+    relocate("io.grpc", "$providerShadedPrefix.io.grpc") {
+      grpcContextClasses.forEach { exclude(it) }
+    }
+    relocate("com.google", "$providerShadedPrefix.com.google")
+    relocate("io.opentelemetry.proto", "$providerShadedPrefix.io.opentelemetry.proto")
+    relocate("io.perfmark", "$providerShadedPrefix.io.perfmark")
+    relocate("com.fasterxml.jackson", "$providerShadedPrefix.com.fasterxml.jackson")
   }
 }
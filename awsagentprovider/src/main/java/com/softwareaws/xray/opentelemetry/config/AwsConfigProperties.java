@@ -0,0 +1,102 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.config;
+
+import javax.annotation.Nullable;
+
+/**
+ * Reads configuration of the AWS distribution. A setting is read from the system property with the
+ * given name first, and then from the environment variable derived from it, e.g. {@code
+ * otel.aws.imds.endpointOverride} falls back to {@code OTEL_AWS_IMDS_ENDPOINT_OVERRIDE}.
+ */
+public final class AwsConfigProperties {
+
+  @Nullable
+  public static String getString(String name) {
+    String value = System.getProperty(name);
+    if (value == null) {
+      value = System.getenv(toEnvironmentVariable(name));
+    }
+    if (value == null || value.trim().isEmpty()) {
+      return null;
+    }
+    return value.trim();
+  }
+
+  public static String getString(String name, String defaultValue) {
+    String value = getString(name);
+    return value != null ? value : defaultValue;
+  }
+
+  public static boolean getBoolean(String name, boolean defaultValue) {
+    String value = getString(name);
+    return value != null ? Boolean.parseBoolean(value) : defaultValue;
+  }
+
+  public static int getInt(String name, int defaultValue) {
+    String value = getString(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  public static long getLong(String name, long defaultValue) {
+    String value = getString(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  public static double getDouble(String name, double defaultValue) {
+    String value = getString(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  // Visible for testing
+  static String toEnvironmentVariable(String name) {
+    StringBuilder env = new StringBuilder(name.length() + 4);
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c == '.' || c == '-') {
+        env.append('_');
+      } else if (Character.isUpperCase(c)) {
+        env.append('_').append(c);
+      } else {
+        env.append(Character.toUpperCase(c));
+      }
+    }
+    return env.toString();
+  }
+
+  private AwsConfigProperties() {}
+}
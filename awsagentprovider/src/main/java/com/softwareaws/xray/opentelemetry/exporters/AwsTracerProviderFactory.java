@@ -15,16 +15,90 @@
 
 package com.softwareaws.xray.opentelemetry.exporters;
 
+import com.softwareaws.xray.opentelemetry.config.AwsConfigProperties;
+import com.softwareaws.xray.opentelemetry.processors.RingBufferSpanProcessor;
+import com.softwareaws.xray.opentelemetry.processors.TailSamplingSpanProcessor;
+import com.softwareaws.xray.opentelemetry.propagators.AdaptivePropagator;
+import com.softwareaws.xray.opentelemetry.propagators.FusedPropagator;
+import com.softwareaws.xray.opentelemetry.resources.AwsResourceDetection;
+import com.softwareaws.xray.opentelemetry.sampler.SpanKindSampler;
+import com.softwareaws.xray.opentelemetry.sampler.XraySampler;
+import io.opentelemetry.OpenTelemetry;
+import io.opentelemetry.context.propagation.DefaultContextPropagators;
+import io.opentelemetry.context.propagation.TextMapPropagator;
 import io.opentelemetry.sdk.extensions.trace.aws.AwsXRayIdsGenerator;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.IdsGenerator;
+import io.opentelemetry.sdk.trace.Sampler;
+import io.opentelemetry.sdk.trace.Samplers;
+import io.opentelemetry.sdk.trace.SpanProcessor;
 import io.opentelemetry.sdk.trace.TracerSdkProvider;
+import io.opentelemetry.sdk.trace.config.TraceConfig;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.trace.Span;
 import io.opentelemetry.trace.TracerProvider;
 import io.opentelemetry.trace.spi.TracerProviderFactory;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
 
 public class AwsTracerProviderFactory implements TracerProviderFactory {
 
+  private static final Logger logger = Logger.getLogger(AwsTracerProviderFactory.class.getName());
+
+  // Holds the hooks AwsAgentBootstrap runs, on the bootstrap class path of the AWS agent.
+  private static final String AGENT_HOOKS =
+      "com.softwareaws.xray.opentelemetry.agentbootstrap.AwsAgentHooks";
+
+  private static final String FUSED_PROPAGATOR_INSTALLER = "FUSED_PROPAGATOR_INSTALLER";
+
+  private static final String RECONFIGURER = "RECONFIGURER";
+
   private static final TracerSdkProvider TRACER_PROVIDER;
+  // The resource the provider was created with, which can't be changed afterwards.
+  private static final Resource PROVIDER_RESOURCE;
+  // The provider's configuration before any settings are applied.
+  private static final TraceConfig DEFAULT_TRACE_CONFIG;
+
+  // The detected resource, which the export processors give exported spans when detection was
+  // deferred. Guarded by the class's lock.
+  private static Resource resource;
+  private static boolean resourceDetectionDeferred;
+
+  // The export processors by exporter name, and the X-Ray sampler in use, which are replaced or
+  // reconfigured when the agent is attached again. Guarded by the class's lock.
+  private static final Map<String, RingBufferSpanProcessor> EXPORT_PROCESSORS =
+      new LinkedHashMap<>();
+  private static boolean exportFanOut;
+  @Nullable private static XraySampler xraySampler;
+  @Nullable private static XraySamplerSettings xraySamplerSettings;
+
+  // The prefixes of the settings which configure how spans are exported, which the agent's own
+  // exporter reads once at startup.
+  private static final String[] EXPORTER_SETTING_PREFIXES = {
+    "otel.exporter", "otel.aws.exporter", "otel.aws.spanProcessor", "otel.aws.tailSampling"
+  };
+  private static final Map<String, String> STARTUP_EXPORTER_SETTINGS = getExporterSettings();
 
   static {
+    long startNanos = System.nanoTime();
+
     if (System.getProperty("otel.aws.imds.endpointOverride") == null) {
       String overrideFromEnv = System.getenv("OTEL_AWS_IMDS_ENDPOINT_OVERRIDE");
       if (overrideFromEnv != null) {
@@ -32,12 +106,566 @@ public class AwsTracerProviderFactory implements TracerProviderFactory {
       }
     }
 
+    boolean deferredInit = AwsConfigProperties.getBoolean("otel.aws.deferredInit", false);
+    // The provider's resource is fixed when it is created. Only spans exported by the AWS span
+    // processors can be given a resource detected later, so with the agent's exporter resource
+    // detection still runs here.
+    resourceDetectionDeferred = deferredInit && !getExporterNames().isEmpty();
+    PROVIDER_RESOURCE = resourceDetectionDeferred ? Resource.getDefault() : createResource();
+    resource = PROVIDER_RESOURCE;
     TRACER_PROVIDER =
-        TracerSdkProvider.builder().setIdsGenerator(new AwsXRayIdsGenerator()).build();
+        TracerSdkProvider.builder()
+            .setIdsGenerator(createIdsGenerator())
+            .setResource(PROVIDER_RESOURCE)
+            .build();
+
+    DEFAULT_TRACE_CONFIG = TRACER_PROVIDER.getActiveTraceConfig();
+    if (deferredInit) {
+      // Spans started before configuration completes are not recorded.
+      TRACER_PROVIDER.updateActiveTraceConfig(
+          DEFAULT_TRACE_CONFIG.toBuilder().setSampler(Samplers.alwaysOff()).build());
+      Thread init =
+          new Thread(
+              new Runnable() {
+                @Override
+                public void run() {
+                  long deferredStartNanos = System.nanoTime();
+                  try {
+                    configure();
+                  } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Deferred tracer provider configuration failed.", e);
+                    TRACER_PROVIDER.updateActiveTraceConfig(DEFAULT_TRACE_CONFIG);
+                  }
+                  logger.log(
+                      Level.FINE,
+                      "Configured tracer provider in background in {0} ms.",
+                      elapsedMillis(deferredStartNanos));
+                }
+              },
+              "aws-otel-deferred-init");
+      init.setDaemon(true);
+      init.start();
+    } else {
+      configure();
+    }
+
+    if (AwsConfigProperties.getBoolean("otel.aws.propagator.fused", false)) {
+      // The agent only installs propagators it knows by name, after creating the tracer provider,
+      // so AwsAgentBootstrap runs this once the agent is initialized.
+      registerAgentHook(
+          FUSED_PROPAGATOR_INSTALLER,
+          new Runnable() {
+            @Override
+            public void run() {
+              OpenTelemetry.setPropagators(
+                  DefaultContextPropagators.builder()
+                      .addTextMapPropagator(createPropagator())
+                      .build());
+            }
+          });
+    }
+
+    // Run by AwsAgentBootstrap when the agent is attached to a JVM which already runs it, after
+    // setting the attach arguments as system properties.
+    registerAgentHook(
+        RECONFIGURER,
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              reconfigure();
+            } catch (RuntimeException e) {
+              logger.log(Level.WARNING, "Could not reconfigure the tracer provider.", e);
+            }
+          }
+        });
+
+    logger.log(Level.FINE, "Created tracer provider in {0} ms.", elapsedMillis(startNanos));
   }
 
   @Override
   public TracerProvider create() {
     return TRACER_PROVIDER;
   }
+
+  /**
+   * Applies the configuration which may be slow to create, like samplers fetching remote rules. The
+   * configuration is swapped into the provider atomically once complete. When deferred, this also
+   * detects the resource, which the export processors then give the spans they export.
+   */
+  private static synchronized void configure() {
+    if (resourceDetectionDeferred) {
+      resource = createResource();
+      resourceDetectionDeferred = false;
+    }
+    updateTraceConfig();
+    for (SpanProcessor spanProcessor : createSpanProcessors()) {
+      TRACER_PROVIDER.addSpanProcessor(spanProcessor);
+    }
+  }
+
+  /**
+   * Applies the current settings to the running provider: the sampler and attribute limits are
+   * swapped in atomically, and each export processor is reconfigured in place with its exporter
+   * recreated, so spans waiting to be exported are sent to the new destination. Instrumentation,
+   * the resource, the IDs generator, the buffer sizes and the set of exporters are not changed.
+   */
+  private static synchronized void reconfigure() {
+    long startNanos = System.nanoTime();
+    updateTraceConfig();
+
+    if (EXPORT_PROCESSORS.isEmpty()) {
+      Set<String> changed = new TreeSet<>();
+      for (Map.Entry<String, String> setting : getExporterSettings().entrySet()) {
+        if (!setting.getValue().equals(STARTUP_EXPORTER_SETTINGS.get(setting.getKey()))) {
+          changed.add(setting.getKey());
+        }
+      }
+      if (!changed.isEmpty()) {
+        logger.log(
+            Level.WARNING,
+            "Spans are exported by the agent's exporter, which can't be reconfigured, so {0} are "
+                + "ignored. Restart the application to apply them.",
+            changed);
+      }
+    } else if (!getExporterNames().equals(EXPORT_PROCESSORS.keySet())) {
+      logger.log(
+          Level.WARNING,
+          "Exporters can only be added or removed by restarting the application, still exporting "
+              + "to {0}.",
+          EXPORT_PROCESSORS.keySet());
+    }
+    for (Map.Entry<String, RingBufferSpanProcessor> entry : EXPORT_PROCESSORS.entrySet()) {
+      final String name = entry.getKey();
+      // The settings' exporter is ignored, the processor replaces it with the factory's.
+      entry
+          .getValue()
+          .reconfigure(
+              newSpanProcessorBuilder(null, exportFanOut ? name : ""),
+              new Callable<SpanExporter>() {
+                @Override
+                public SpanExporter call() {
+                  SpanExporter exporter = createSpanExporter(name);
+                  if (exporter == null) {
+                    throw new IllegalStateException("Could not create exporter " + name);
+                  }
+                  return exporter;
+                }
+              });
+    }
+    logger.log(Level.INFO, "Reconfigured tracer provider in {0} ms.", elapsedMillis(startNanos));
+  }
+
+  // Replaces the sampler. The X-Ray sampler, which polls for rules, is kept with its rules and
+  // reservoirs if its settings didn't change, and closed otherwise.
+  private static void updateTraceConfig() {
+    TraceConfig traceConfig = DEFAULT_TRACE_CONFIG;
+    XraySampler previousXraySampler = xraySampler;
+    XraySamplerSettings settings = getXraySamplerSettings(resource);
+    if (settings == null || !settings.equals(xraySamplerSettings)) {
+      xraySampler = settings != null ? settings.createSampler() : null;
+      xraySamplerSettings = settings;
+    } else {
+      previousXraySampler = null;
+    }
+    Sampler sampler = xraySampler;
+    Sampler spanKindSampler =
+        createSpanKindSampler(sampler != null ? sampler : traceConfig.getSampler());
+    if (spanKindSampler != null) {
+      sampler = spanKindSampler;
+    }
+    if (sampler != null) {
+      traceConfig = traceConfig.toBuilder().setSampler(sampler).build();
+    }
+    TRACER_PROVIDER.updateActiveTraceConfig(applyAttributeLimits(traceConfig));
+    if (previousXraySampler != null) {
+      previousXraySampler.close();
+    }
+  }
+
+  // The SDK enforces these limits as attributes are set, so spans don't keep large values for their
+  // lifetime, though instrumentation has already built them.
+  private static TraceConfig applyAttributeLimits(TraceConfig traceConfig) {
+    int maxAttributes = AwsConfigProperties.getInt("otel.aws.span.maxAttributes", 0);
+    int maxValueLength = getMaxAttributeValueLength();
+    if (maxAttributes <= 0 && maxValueLength == Integer.MAX_VALUE) {
+      return traceConfig;
+    }
+    TraceConfig.Builder builder = traceConfig.toBuilder();
+    if (maxAttributes > 0) {
+      builder.setMaxNumberOfAttributes(maxAttributes);
+    }
+    if (maxValueLength != Integer.MAX_VALUE) {
+      builder.setMaxLengthOfAttributeValues(maxValueLength);
+    }
+    return builder.build();
+  }
+
+  private static int getMaxAttributeValueLength() {
+    int maxValueLength = AwsConfigProperties.getInt("otel.aws.span.maxAttributeValueLength", 0);
+    return maxValueLength > 0 ? maxValueLength : Integer.MAX_VALUE;
+  }
+
+  private static Resource createResource() {
+    Resource resource = Resource.getDefault();
+    if (AwsConfigProperties.getBoolean("otel.aws.resource.detection.enabled", true)) {
+      resource =
+          resource.merge(
+              AwsResourceDetection.detect(
+                  System.getProperty("otel.aws.imds.endpointOverride"),
+                  AwsConfigProperties.getString("otel.aws.resource.cache.file"),
+                  AwsConfigProperties.getInt("otel.aws.resource.detection.timeoutMillis", 300),
+                  AwsConfigProperties.getLong("otel.aws.resource.detection.deadlineMillis", 500)));
+    }
+    return resource;
+  }
+
+  private static IdsGenerator createIdsGenerator() {
+    String generator = AwsConfigProperties.getString("otel.aws.idsGenerator", "fast");
+    if (generator.equals("sdk")) {
+      return new AwsXRayIdsGenerator();
+    }
+    return new FastXrayIdsGenerator();
+  }
+
+  @Nullable
+  private static XraySamplerSettings getXraySamplerSettings(Resource resource) {
+    String sampler = AwsConfigProperties.getString("otel.aws.sampler", "");
+    if (sampler.equals("xray")) {
+      return new XraySamplerSettings(
+          AwsConfigProperties.getString(
+              "otel.aws.xray.sampling.endpoint", XraySampler.DEFAULT_ENDPOINT),
+          resource,
+          AwsConfigProperties.getLong(
+              "otel.aws.xray.sampling.rulesPollingIntervalMillis", TimeUnit.MINUTES.toMillis(5)));
+    }
+    return null;
+  }
+
+  private static Map<String, String> getExporterSettings() {
+    Map<String, String> settings = new HashMap<>();
+    for (String name : System.getProperties().stringPropertyNames()) {
+      for (String prefix : EXPORTER_SETTING_PREFIXES) {
+        if (name.startsWith(prefix)) {
+          settings.put(name, System.getProperty(name));
+          break;
+        }
+      }
+    }
+    return settings;
+  }
+
+  // Rules are configured per lower case span kind, like otel.aws.sampler.internal.ratio, and per
+  // span name pattern as a list of pattern=ratio or pattern=ratio/maxPerSecond.
+  @Nullable
+  private static Sampler createSpanKindSampler(Sampler delegate) {
+    SpanKindSampler.Builder builder = SpanKindSampler.newBuilder(delegate);
+    boolean hasRules = false;
+    for (Span.Kind kind : Span.Kind.values()) {
+      String prefix = "otel.aws.sampler." + kind.name().toLowerCase(Locale.ROOT);
+      double ratio = AwsConfigProperties.getDouble(prefix + ".ratio", 1.0);
+      double maxPerSecond = AwsConfigProperties.getDouble(prefix + ".maxPerSecond", 0);
+      if (ratio < 1.0 || maxPerSecond > 0) {
+        builder.setKindRule(kind, ratio, maxPerSecond);
+        hasRules = true;
+      }
+    }
+    String spanNames = AwsConfigProperties.getString("otel.aws.sampler.spanNames", "");
+    for (String rule : spanNames.split(",")) {
+      int separator = rule.lastIndexOf('=');
+      if (separator <= 0) {
+        if (!rule.trim().isEmpty()) {
+          logger.log(Level.WARNING, "Ignoring span name sampling rule without ratio: {0}", rule);
+        }
+        continue;
+      }
+      String[] limits = rule.substring(separator + 1).split("/", 2);
+      try {
+        builder.addSpanNameRule(
+            rule.substring(0, separator).trim(),
+            Double.parseDouble(limits[0].trim()),
+            limits.length > 1 ? Double.parseDouble(limits[1].trim()) : 0);
+        hasRules = true;
+      } catch (NumberFormatException e) {
+        logger.log(Level.WARNING, "Ignoring span name sampling rule with invalid ratio: {0}", rule);
+      }
+    }
+    return hasRules ? builder.build() : null;
+  }
+
+  private static TextMapPropagator createPropagator() {
+    if (!AwsConfigProperties.getBoolean("otel.aws.propagator.adaptive.enabled", false)) {
+      return FusedPropagator.getInstance();
+    }
+    AdaptivePropagator.Builder builder =
+        AdaptivePropagator.newBuilder()
+            .setProbeIntervalMillis(
+                AwsConfigProperties.getLong(
+                    "otel.aws.propagator.adaptive.probeIntervalMillis", 60000))
+            .setLearnedTtlMillis(
+                AwsConfigProperties.getLong(
+                    "otel.aws.propagator.adaptive.learnedTtlMillis", 600000))
+            .setMaxLearnedHosts(
+                AwsConfigProperties.getInt("otel.aws.propagator.adaptive.maxLearnedHosts", 1000));
+    String hosts = AwsConfigProperties.getString("otel.aws.propagator.adaptive.hosts", "");
+    for (String rule : hosts.split(",")) {
+      int separator = rule.indexOf('=');
+      if (separator <= 0) {
+        if (!rule.trim().isEmpty()) {
+          logger.log(Level.WARNING, "Ignoring propagation host rule without formats: {0}", rule);
+        }
+        continue;
+      }
+      try {
+        builder.addHostFormats(
+            rule.substring(0, separator).trim(), rule.substring(separator + 1).trim());
+      } catch (IllegalArgumentException e) {
+        logger.log(Level.WARNING, "Ignoring invalid propagation host rule: " + rule, e);
+      }
+    }
+    return builder.build();
+  }
+
+  // When enabled, the agent's own exporter is disabled by AwsAgentBootstrap and spans are exported
+  // through these processors instead. Each exporter gets its own processor, with its own buffer,
+  // batch settings and export thread, so a slow destination only fills and drops from its own
+  // buffer without delaying the others or the threads ending spans. With tail sampling, kept
+  // traces are passed to these processors by the tail sampling processor.
+  private static List<SpanProcessor> createSpanProcessors() {
+    Set<String> names = getExporterNames();
+    // Settings are only qualified with the exporter's name when fanning out to several.
+    exportFanOut = names.size() > 1;
+    List<SpanProcessor> processors = new ArrayList<>();
+    for (String name : names) {
+      SpanExporter exporter = createSpanExporter(name);
+      if (exporter != null) {
+        RingBufferSpanProcessor processor =
+            newSpanProcessorBuilder(exporter, exportFanOut ? name : "").build();
+        EXPORT_PROCESSORS.put(name, processor);
+        processors.add(processor);
+      }
+    }
+    boolean tailSampling = AwsConfigProperties.getBoolean("otel.aws.tailSampling.enabled", false);
+    if (tailSampling && !processors.isEmpty()) {
+      return Collections.<SpanProcessor>singletonList(createTailSamplingProcessor(processors));
+    }
+    return processors;
+  }
+
+  // Returns the names of the exporters the AWS span processors export to, or none if spans are
+  // exported by the agent's exporter.
+  private static Set<String> getExporterNames() {
+    String processor = AwsConfigProperties.getString("otel.aws.spanProcessor", "");
+    String exporterNames = AwsConfigProperties.getString("otel.aws.exporter");
+    boolean tailSampling = AwsConfigProperties.getBoolean("otel.aws.tailSampling.enabled", false);
+    if (!processor.equals("ringBuffer") && exporterNames == null && !tailSampling) {
+      return Collections.emptySet();
+    }
+    if (exporterNames == null) {
+      exporterNames = "otlp";
+    }
+    Set<String> names = new LinkedHashSet<>();
+    for (String name : exporterNames.split(",")) {
+      if (!name.trim().isEmpty()) {
+        names.add(name.trim());
+      }
+    }
+    return names;
+  }
+
+  // Sits in front of the export processors, so traces are buffered once however many exporters
+  // there are.
+  private static SpanProcessor createTailSamplingProcessor(List<SpanProcessor> processors) {
+    TailSamplingSpanProcessor.Builder builder =
+        TailSamplingSpanProcessor.newBuilder(processors)
+            .setLatencyThresholdMillis(
+                AwsConfigProperties.getLong("otel.aws.tailSampling.latencyThresholdMillis", 1000))
+            .setDecisionWaitMillis(
+                AwsConfigProperties.getLong("otel.aws.tailSampling.decisionWaitMillis", 30000))
+            .setMaxTraces(AwsConfigProperties.getInt("otel.aws.tailSampling.maxTraces", 10000))
+            .setMaxSpans(AwsConfigProperties.getInt("otel.aws.tailSampling.maxSpans", 100000));
+    String attributes = AwsConfigProperties.getString("otel.aws.tailSampling.attributes", "");
+    for (String rule : attributes.split(",")) {
+      int separator = rule.indexOf('=');
+      if (separator > 0) {
+        builder.addAttributeRule(
+            rule.substring(0, separator).trim(), rule.substring(separator + 1).trim());
+      } else if (!rule.trim().isEmpty()) {
+        logger.log(Level.WARNING, "Ignoring tail sampling attribute rule without value: {0}", rule);
+      }
+    }
+    return builder.build();
+  }
+
+  // Settings for a named processor default to the unqualified otel.aws.spanProcessor.* settings,
+  // e.g., otel.aws.exporter.xray.bufferSize defaults to otel.aws.spanProcessor.bufferSize.
+  private static RingBufferSpanProcessor.Builder newSpanProcessorBuilder(
+      @Nullable SpanExporter exporter, String name) {
+    return RingBufferSpanProcessor.newBuilder(exporter)
+        .setName(name)
+        .setBufferSize(getProcessorInt(name, "bufferSize", 2048))
+        .setMaxExportBatchSize(getProcessorInt(name, "maxExportBatchSize", 512))
+        .setScheduleDelayMillis(getProcessorLong(name, "scheduleDelayMillis", 5000))
+        .setExportTimeoutMillis(getProcessorLong(name, "exportTimeoutMillis", 30000))
+        .setDropPolicy(
+            RingBufferSpanProcessor.DropPolicy.parse(
+                getProcessorString(name, "dropPolicy", "drop")))
+        .setOfferTimeoutMillis(getProcessorLong(name, "offerTimeoutMillis", 100))
+        .setAdaptiveScheduling(Boolean.parseBoolean(getProcessorString(name, "adaptive", "false")))
+        .setMinExportBatchSize(getProcessorInt(name, "minExportBatchSize", 64))
+        .setMinScheduleDelayMillis(getProcessorLong(name, "minScheduleDelayMillis", 50))
+        .setMaxScheduleDelayMillis(getProcessorLong(name, "maxScheduleDelayMillis", 10000))
+        .setMaxAttributeBytes(getMaxAttributeBytes())
+        .setResource(resource)
+        .setRegisterMetrics(true);
+  }
+
+  private static int getMaxAttributeBytes() {
+    int maxAttributeBytes = AwsConfigProperties.getInt("otel.aws.span.maxAttributeBytes", 0);
+    return maxAttributeBytes > 0 ? maxAttributeBytes : Integer.MAX_VALUE;
+  }
+
+  private static String getProcessorString(String name, String setting, String defaultValue) {
+    String value = AwsConfigProperties.getString("otel.aws.spanProcessor." + setting, defaultValue);
+    if (!name.isEmpty()) {
+      value = AwsConfigProperties.getString("otel.aws.exporter." + name + "." + setting, value);
+    }
+    return value;
+  }
+
+  private static int getProcessorInt(String name, String setting, int defaultValue) {
+    int value = AwsConfigProperties.getInt("otel.aws.spanProcessor." + setting, defaultValue);
+    if (!name.isEmpty()) {
+      value = AwsConfigProperties.getInt("otel.aws.exporter." + name + "." + setting, value);
+    }
+    return value;
+  }
+
+  private static long getProcessorLong(String name, String setting, long defaultValue) {
+    long value = AwsConfigProperties.getLong("otel.aws.spanProcessor." + setting, defaultValue);
+    if (!name.isEmpty()) {
+      value = AwsConfigProperties.getLong("otel.aws.exporter." + name + "." + setting, value);
+    }
+    return value;
+  }
+
+  @Nullable
+  private static SpanExporter createSpanExporter(String name) {
+    switch (name) {
+      case "otlp":
+        return createOtlpSpanExporter();
+      case "xray":
+        String daemonAddress = AwsConfigProperties.getString("otel.aws.xray.daemonAddress");
+        if (daemonAddress == null) {
+          daemonAddress = System.getenv("AWS_XRAY_DAEMON_ADDRESS");
+        }
+        try {
+          return XrayUdpSpanExporter.create(
+              daemonAddress != null ? daemonAddress : XrayUdpSpanExporter.DEFAULT_DAEMON_ADDRESS);
+        } catch (IOException e) {
+          logger.log(Level.WARNING, "Could not open X-Ray daemon socket, spans are dropped.", e);
+          return null;
+        }
+      default:
+        logger.log(Level.WARNING, "Unknown exporter {0}, spans are dropped.", name);
+        return null;
+    }
+  }
+
+  // Reads the SDK exporter's endpoint, headers and timeout settings, so switching to this exporter
+  // only requires setting otel.aws.exporter.
+  private static SpanExporter createOtlpSpanExporter() {
+    BatchingOtlpSpanExporter.Builder builder =
+        BatchingOtlpSpanExporter.newBuilder()
+            .setEndpoint(
+                AwsConfigProperties.getString(
+                    "otel.exporter.otlp.span.endpoint", BatchingOtlpSpanExporter.DEFAULT_ENDPOINT))
+            .setTimeoutMillis(AwsConfigProperties.getLong("otel.exporter.otlp.span.timeout", 1000))
+            .setMaxRequestBytes(
+                AwsConfigProperties.getInt(
+                    "otel.aws.otlp.maxRequestBytes",
+                    BatchingOtlpSpanExporter.DEFAULT_MAX_REQUEST_BYTES))
+            .setCompression(
+                AwsConfigProperties.getString("otel.aws.otlp.compression", "gzip").equals("gzip"));
+    String headers = AwsConfigProperties.getString("otel.exporter.otlp.span.headers", "");
+    for (String header : headers.split(",")) {
+      int separator = header.indexOf('=');
+      if (separator > 0) {
+        builder.addHeader(
+            header.substring(0, separator).trim(), header.substring(separator + 1).trim());
+      }
+    }
+    String spillFile = AwsConfigProperties.getString("otel.aws.otlp.spill.file");
+    if (spillFile != null) {
+      builder
+          .setSpillFile(Paths.get(spillFile))
+          .setSpillFileMaxBytes(
+              AwsConfigProperties.getInt(
+                  "otel.aws.otlp.spill.maxBytes",
+                  BatchingOtlpSpanExporter.DEFAULT_SPILL_FILE_MAX_BYTES));
+    }
+    try {
+      return builder.build();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Could not open OTLP spill file, spans are not spilled.", e);
+    }
+    try {
+      return builder.setSpillFile(null).build();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unexpected IOException without a spill file.", e);
+    }
+  }
+
+  // Registers a hook for AwsAgentBootstrap, which is loaded by the system class loader and can't
+  // see classes of this class loader. Both see AwsAgentHooks, which only holds JDK types.
+  private static void registerAgentHook(String name, Runnable hook) {
+    try {
+      Class<?> hooks = Class.forName(AGENT_HOOKS, true, null);
+      @SuppressWarnings("unchecked")
+      AtomicReference<Runnable> reference =
+          (AtomicReference<Runnable>) hooks.getField(name).get(null);
+      reference.set(hook);
+    } catch (ClassNotFoundException e) {
+      // Not started by the AWS agent.
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      logger.log(Level.WARNING, "Could not register agent hook " + name + ".", e);
+    }
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  // The settings an X-Ray sampler is created with, so it is only recreated when they change.
+  private static final class XraySamplerSettings {
+    private final String endpoint;
+    private final Resource resource;
+    private final long rulesPollingIntervalMillis;
+
+    XraySamplerSettings(String endpoint, Resource resource, long rulesPollingIntervalMillis) {
+      this.endpoint = endpoint;
+      this.resource = resource;
+      this.rulesPollingIntervalMillis = rulesPollingIntervalMillis;
+    }
+
+    XraySampler createSampler() {
+      return XraySampler.create(endpoint, resource, rulesPollingIntervalMillis);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof XraySamplerSettings)) {
+        return false;
+      }
+      XraySamplerSettings other = (XraySamplerSettings) o;
+      return endpoint.equals(other.endpoint)
+          && resource.equals(other.resource)
+          && rulesPollingIntervalMillis == other.rulesPollingIntervalMillis;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(endpoint, resource, rulesPollingIntervalMillis);
+    }
+  }
 }
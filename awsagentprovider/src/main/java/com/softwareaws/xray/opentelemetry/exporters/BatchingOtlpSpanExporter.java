@@ -0,0 +1,352 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.exporters;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientInterceptors;
+import io.grpc.KnownLength;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ClientCalls;
+import io.grpc.stub.MetadataUtils;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceResponse;
+import io.opentelemetry.proto.collector.trace.v1.TraceServiceGrpc;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * An OTLP gRPC span exporter which splits each batch into requests no larger than a configured
+ * number of encoded bytes and compresses them with gzip. The SDK's exporter sizes requests only by
+ * span count, so batches of spans with large attributes, like the DynamoDB request and response
+ * attributes recorded by the AWS SDK instrumentation, produce requests collectors reject.
+ *
+ * <p>Requests are encoded by {@link OtlpSpanEncoder} straight from the spans into a buffer owned by
+ * the exporter and reused for every export, instead of building protobuf messages and a new array
+ * per request. Exports are serialized, which keeps the reuse safe.
+ *
+ * <p>With a spill file, requests which fail because the collector is unavailable are appended to
+ * the file instead of being dropped, and replayed in order, before any newer request, once the
+ * collector accepts requests again. While requests are spilled, each export tries only the oldest
+ * spilled request, so an unavailable collector doesn't slow exports down and spans don't pile up on
+ * the heap.
+ */
+public final class BatchingOtlpSpanExporter implements SpanExporter {
+
+  public static final String DEFAULT_ENDPOINT = "localhost:55680";
+
+  public static final int DEFAULT_MAX_REQUEST_BYTES = 1024 * 1024;
+
+  public static final int DEFAULT_SPILL_FILE_MAX_BYTES = 64 * 1024 * 1024;
+
+  private static final Logger logger = Logger.getLogger(BatchingOtlpSpanExporter.class.getName());
+
+  private static final String HTTPS_PREFIX = "https://";
+  private static final String HTTP_PREFIX = "http://";
+
+  private final ManagedChannel managedChannel;
+  private final Channel channel;
+  private final MethodDescriptor<EncodedRequest, ExportTraceServiceResponse> exportMethod;
+  private final CallOptions callOptions;
+  private final long timeoutMillis;
+  private final int maxRequestBytes;
+  @Nullable private final MappedSpillFile spillFile;
+
+  // Reused for every request, guarded by this exporter's lock like exports.
+  private final OtlpSpanEncoder encoder = new OtlpSpanEncoder();
+  private final EncodedRequest encoded = new EncodedRequest();
+  private final EncodedRequest replayed = new EncodedRequest();
+
+  private BatchingOtlpSpanExporter(Builder builder, @Nullable MappedSpillFile spillFile) {
+    String endpoint = builder.endpoint;
+    ManagedChannelBuilder<?> channelBuilder;
+    if (endpoint.startsWith(HTTPS_PREFIX)) {
+      channelBuilder =
+          ManagedChannelBuilder.forTarget(endpoint.substring(HTTPS_PREFIX.length()))
+              .useTransportSecurity();
+    } else {
+      if (endpoint.startsWith(HTTP_PREFIX)) {
+        endpoint = endpoint.substring(HTTP_PREFIX.length());
+      }
+      channelBuilder = ManagedChannelBuilder.forTarget(endpoint).usePlaintext();
+    }
+    managedChannel = channelBuilder.build();
+    channel =
+        builder.headers.keys().isEmpty()
+            ? managedChannel
+            : ClientInterceptors.intercept(
+                managedChannel, MetadataUtils.newAttachHeadersInterceptor(builder.headers));
+    exportMethod =
+        TraceServiceGrpc.getExportMethod().toBuilder(
+                new EncodedRequestMarshaller(),
+                ProtoUtils.marshaller(ExportTraceServiceResponse.getDefaultInstance()))
+            .build();
+    callOptions =
+        builder.compression ? CallOptions.DEFAULT.withCompression("gzip") : CallOptions.DEFAULT;
+    timeoutMillis = builder.timeoutMillis;
+    maxRequestBytes = builder.maxRequestBytes;
+    this.spillFile = spillFile;
+  }
+
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  @Override
+  public synchronized CompletableResultCode export(Collection<SpanData> spans) {
+    boolean failed = false;
+    // Spilled requests are replayed first, to keep their order. While the collector is unavailable
+    // the whole batch is spilled, so it is tried once per export rather than once per request.
+    boolean spilling = spillFile != null && !spillFile.isEmpty() && !replaySpilled();
+    int count = encoder.prepare(spans);
+    for (int from = 0, to; from < count; from = to) {
+      to = encoder.requestEnd(from, maxRequestBytes);
+      encoded.length = encoder.encode(from, to);
+      encoded.bytes = encoder.buffer();
+      if (spilling) {
+        failed |= !spill(encoded);
+        continue;
+      }
+      Status.Code code = send(encoded);
+      if (code == Status.Code.OK) {
+        continue;
+      }
+      if (spillFile != null && isRetryable(code)) {
+        failed |= !spill(encoded);
+        spilling = true;
+      } else {
+        failed = true;
+      }
+    }
+    return failed ? CompletableResultCode.ofFailure() : CompletableResultCode.ofSuccess();
+  }
+
+  /** Replays spilled requests. */
+  @Override
+  public synchronized CompletableResultCode flush() {
+    if (spillFile != null && !replaySpilled()) {
+      return CompletableResultCode.ofFailure();
+    }
+    return CompletableResultCode.ofSuccess();
+  }
+
+  @Override
+  public synchronized CompletableResultCode shutdown() {
+    managedChannel.shutdown();
+    if (spillFile != null) {
+      try {
+        spillFile.close();
+      } catch (IOException e) {
+        logger.log(Level.FINE, "Could not close spill file.", e);
+      }
+    }
+    return CompletableResultCode.ofSuccess();
+  }
+
+  // Sends spilled requests oldest first, returning whether all were sent. A request the collector
+  // rejects for a reason other than being unavailable is dropped, since retrying won't help.
+  private boolean replaySpilled() {
+    int length;
+    while ((length = spillFile.peekLength()) >= 0) {
+      replayed.ensureCapacity(length);
+      spillFile.read(replayed.bytes);
+      replayed.length = length;
+      Status.Code code = send(replayed);
+      if (code != Status.Code.OK && isRetryable(code)) {
+        return false;
+      }
+      spillFile.remove();
+    }
+    return true;
+  }
+
+  private boolean spill(EncodedRequest request) {
+    if (spillFile.append(request.bytes, 0, request.length)) {
+      return true;
+    }
+    logger.log(Level.FINE, "Spill file is full, dropping spans.");
+    return false;
+  }
+
+  private Status.Code send(EncodedRequest request) {
+    try {
+      ClientCalls.blockingUnaryCall(
+          channel,
+          exportMethod,
+          callOptions.withDeadlineAfter(timeoutMillis, TimeUnit.MILLISECONDS),
+          request);
+      return Status.Code.OK;
+    } catch (StatusRuntimeException e) {
+      logger.log(Level.WARNING, "Failed to export spans: {0}", e.getStatus());
+      return e.getStatus().getCode();
+    }
+  }
+
+  private static boolean isRetryable(Status.Code code) {
+    return code == Status.Code.UNAVAILABLE
+        || code == Status.Code.DEADLINE_EXCEEDED
+        || code == Status.Code.RESOURCE_EXHAUSTED;
+  }
+
+  // A serialized request in a buffer reused across exports. gRPC copies the stream into its own
+  // frames, compressing them if enabled, before a blocking call returns, and exports never run
+  // concurrently, so the buffer is free again by the time the next request is serialized.
+  // Visible for testing
+  static final class EncodedRequest {
+
+    private byte[] bytes = new byte[0];
+    private int length;
+
+    void ensureCapacity(int size) {
+      if (bytes.length < size) {
+        bytes = new byte[Math.max(size, bytes.length * 2)];
+      }
+    }
+  }
+
+  // Visible for testing
+  static final class EncodedRequestMarshaller
+      implements MethodDescriptor.Marshaller<EncodedRequest> {
+    @Override
+    public InputStream stream(EncodedRequest request) {
+      return new KnownLengthByteArrayInputStream(request.bytes, request.length);
+    }
+
+    // The exporter only sends requests, but gRPC may still parse them, for example to log them,
+    // so a request is read back as its encoded bytes.
+    @Override
+    public EncodedRequest parse(InputStream stream) {
+      byte[] bytes = new byte[8192];
+      int length = 0;
+      try {
+        int read;
+        while ((read = stream.read(bytes, length, bytes.length - length)) != -1) {
+          length += read;
+          if (length == bytes.length) {
+            bytes = Arrays.copyOf(bytes, bytes.length * 2);
+          }
+        }
+      } catch (IOException e) {
+        throw Status.INTERNAL
+            .withDescription("Invalid export request")
+            .withCause(e)
+            .asRuntimeException();
+      }
+      EncodedRequest request = new EncodedRequest();
+      request.bytes = bytes;
+      request.length = length;
+      return request;
+    }
+  }
+
+  private static final class KnownLengthByteArrayInputStream extends ByteArrayInputStream
+      implements KnownLength {
+    KnownLengthByteArrayInputStream(byte[] buffer, int length) {
+      super(buffer, 0, length);
+    }
+  }
+
+  public static final class Builder {
+
+    private String endpoint = DEFAULT_ENDPOINT;
+    private final Metadata headers = new Metadata();
+    private long timeoutMillis = 1000;
+    private int maxRequestBytes = DEFAULT_MAX_REQUEST_BYTES;
+    private boolean compression = true;
+    @Nullable private Path spillFile;
+    private int spillFileMaxBytes = DEFAULT_SPILL_FILE_MAX_BYTES;
+
+    private Builder() {}
+
+    /**
+     * Sets the collector's {@code host:port}. Connections are plaintext unless the endpoint starts
+     * with {@code https://}.
+     */
+    public Builder setEndpoint(String endpoint) {
+      this.endpoint = endpoint;
+      return this;
+    }
+
+    public Builder addHeader(String key, String value) {
+      headers.put(Metadata.Key.of(key, Metadata.ASCII_STRING_MARSHALLER), value);
+      return this;
+    }
+
+    public Builder setTimeoutMillis(long timeoutMillis) {
+      this.timeoutMillis = timeoutMillis;
+      return this;
+    }
+
+    /** Sets the encoded size requests are kept under, before compression. */
+    public Builder setMaxRequestBytes(int maxRequestBytes) {
+      this.maxRequestBytes = maxRequestBytes;
+      return this;
+    }
+
+    /** Sets whether requests are compressed with gzip. */
+    public Builder setCompression(boolean compression) {
+      this.compression = compression;
+      return this;
+    }
+
+    /**
+     * Sets the file requests are spilled to while the collector is unavailable. Spilling is
+     * disabled by default.
+     */
+    public Builder setSpillFile(@Nullable Path spillFile) {
+      this.spillFile = spillFile;
+      return this;
+    }
+
+    /** Sets the size of the spill file, which bounds the spans it holds. */
+    public Builder setSpillFileMaxBytes(int spillFileMaxBytes) {
+      this.spillFileMaxBytes = spillFileMaxBytes;
+      return this;
+    }
+
+    /**
+     * Returns a new exporter.
+     *
+     * @throws IOException if the spill file can't be opened.
+     */
+    public BatchingOtlpSpanExporter build() throws IOException {
+      if (maxRequestBytes < 1) {
+        throw new IllegalArgumentException("maxRequestBytes must be positive");
+      }
+      MappedSpillFile spill = null;
+      if (spillFile != null) {
+        spill = MappedSpillFile.open(spillFile, spillFileMaxBytes);
+      }
+      return new BatchingOtlpSpanExporter(this, spill);
+    }
+  }
+}
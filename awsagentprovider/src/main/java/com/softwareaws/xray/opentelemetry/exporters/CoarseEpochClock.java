@@ -0,0 +1,110 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.exporters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A clock with one-second resolution for the epoch prefix of X-Ray trace IDs. A daemon thread
+ * publishes the wall clock time together with {@link System#nanoTime()} once a second, and readers
+ * add the nanos elapsed since to it, so reading the clock is one volatile read and a {@link
+ * System#nanoTime()} call. Ticks only bound the drift between the two clocks, so a tick arriving a
+ * little late doesn't matter. If the ticker stalls, like in a long GC pause or a suspended VM, so
+ * the published time is older than {@link #MAX_AGE_MILLIS}, the wall clock is read instead, as it
+ * may have been stepped meanwhile.
+ */
+final class CoarseEpochClock implements Runnable {
+
+  // Visible for testing
+  static final long MAX_AGE_MILLIS = 2000;
+
+  private static final long MAX_AGE_NANOS = TimeUnit.MILLISECONDS.toNanos(MAX_AGE_MILLIS);
+
+  private static final long MILLIS_PER_SECOND = TimeUnit.SECONDS.toMillis(1);
+
+  private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private static final class Holder {
+    private static final CoarseEpochClock INSTANCE = start(new CoarseEpochClock());
+  }
+
+  static CoarseEpochClock getInstance() {
+    return Holder.INSTANCE;
+  }
+
+  private static CoarseEpochClock start(CoarseEpochClock clock) {
+    Thread ticker = new Thread(clock, "aws-otel-epoch-clock");
+    ticker.setDaemon(true);
+    ticker.start();
+    return clock;
+  }
+
+  // Published as one object, so readers never pair the millis of one tick with the nanos of
+  // another.
+  private static final class Tick {
+    final long millis;
+    final long nanos;
+
+    Tick(long millis, long nanos) {
+      this.millis = millis;
+      this.nanos = nanos;
+    }
+  }
+
+  private volatile Tick published;
+
+  // Visible for testing
+  CoarseEpochClock() {
+    tick(System.currentTimeMillis(), System.nanoTime());
+  }
+
+  /** Returns the current epoch seconds. */
+  long epochSeconds() {
+    return epochSeconds(System.nanoTime());
+  }
+
+  // Visible for testing
+  long epochSeconds(long nowNanos) {
+    Tick tick = published;
+    long elapsedNanos = nowNanos - tick.nanos;
+    if (elapsedNanos > MAX_AGE_NANOS) {
+      return System.currentTimeMillis() / MILLIS_PER_SECOND;
+    }
+    return (tick.millis + elapsedNanos / NANOS_PER_MILLI) / MILLIS_PER_SECOND;
+  }
+
+  @Override
+  public void run() {
+    while (!Thread.currentThread().isInterrupted()) {
+      long sleepMillis = tick(System.currentTimeMillis(), System.nanoTime());
+      try {
+        Thread.sleep(sleepMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Publishes the wall clock time {@code nowMillis}, read at {@code nowNanos}, and returns how long
+   * to sleep before the next tick.
+   */
+  // Visible for testing
+  long tick(long nowMillis, long nowNanos) {
+    published = new Tick(nowMillis, nowNanos);
+    return MILLIS_PER_SECOND;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.exporters;
+
+import io.opentelemetry.sdk.trace.IdsGenerator;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * An {@link IdsGenerator} for X-Ray compatible trace IDs, where the first four bytes of the trace
+ * ID are the epoch seconds at which the trace started. Random bits come from {@link
+ * ThreadLocalRandom} and are hex-encoded straight from primitive longs into a per-thread buffer, so
+ * the only allocation per ID is the returned {@link String}. The epoch seconds are read from a
+ * {@link CoarseEpochClock} instead of the system clock.
+ */
+public final class FastXrayIdsGenerator implements IdsGenerator {
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private static final int SPAN_ID_HEX_LENGTH = 16;
+  private static final int TRACE_ID_HEX_LENGTH = 32;
+
+  private static final ThreadLocal<char[]> BUFFER =
+      new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+          return new char[TRACE_ID_HEX_LENGTH];
+        }
+      };
+
+  private final CoarseEpochClock clock;
+
+  public FastXrayIdsGenerator() {
+    this(CoarseEpochClock.getInstance());
+  }
+
+  // Visible for testing
+  FastXrayIdsGenerator(CoarseEpochClock clock) {
+    this.clock = clock;
+  }
+
+  @Override
+  public String generateSpanId() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long id;
+    do {
+      id = random.nextLong();
+    } while (id == 0);
+
+    char[] buffer = BUFFER.get();
+    encodeHex(id, buffer, 0);
+    return new String(buffer, 0, SPAN_ID_HEX_LENGTH);
+  }
+
+  @Override
+  public String generateTraceId() {
+    // hi - 4 bytes timestamp, 4 bytes random
+    // low - 8 bytes random.
+    // Since we include timestamp, impossible to be invalid.
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long hi = clock.epochSeconds() << 32 | (random.nextInt() & 0xFFFFFFFFL);
+    long lo = random.nextLong();
+
+    char[] buffer = BUFFER.get();
+    encodeHex(hi, buffer, 0);
+    encodeHex(lo, buffer, SPAN_ID_HEX_LENGTH);
+    return new String(buffer, 0, TRACE_ID_HEX_LENGTH);
+  }
+
+  private static void encodeHex(long value, char[] dest, int offset) {
+    for (int i = SPAN_ID_HEX_LENGTH - 1; i >= 0; i--) {
+      dest[offset + i] = HEX_DIGITS[(int) (value & 0xF)];
+      value >>>= 4;
+    }
+  }
+}
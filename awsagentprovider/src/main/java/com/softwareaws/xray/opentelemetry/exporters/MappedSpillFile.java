@@ -0,0 +1,231 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.exporters;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A bounded FIFO queue of byte records in a memory-mapped file, used to hold encoded export
+ * requests while the collector is unavailable without growing the heap. Records are stored in a
+ * ring after a small header holding the queue's positions, so records left in the file when the
+ * application stops are replayed by the next process using it.
+ *
+ * <p>Each record is a 4-byte length followed by its bytes. A record which doesn't fit before the
+ * end of the file starts over at the beginning of the ring, after a wrap marker if there is room
+ * for one. Not thread-safe.
+ */
+final class MappedSpillFile implements Closeable {
+
+  private static final int MAGIC = 0x4157534f; // AWSO
+  private static final int VERSION = 1;
+
+  // magic, version, capacity, read position, write position, used bytes
+  private static final int HEADER_SIZE = 6 * 4;
+  private static final int READ_POSITION_OFFSET = 12;
+  private static final int WRITE_POSITION_OFFSET = 16;
+  private static final int USED_OFFSET = 20;
+
+  private static final int RECORD_HEADER_SIZE = 4;
+  private static final int WRAP_MARKER = -1;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  // For bulk copies, which need a position.
+  private final ByteBuffer view;
+  // Size of the ring, which follows the header.
+  private final int capacity;
+
+  // Positions are relative to the start of the ring.
+  private int readPosition;
+  private int writePosition;
+  // Bytes between the read and write positions, including space skipped when wrapping.
+  private int used;
+
+  static MappedSpillFile open(Path path, int maxBytes) throws IOException {
+    if (maxBytes <= HEADER_SIZE + RECORD_HEADER_SIZE) {
+      throw new IllegalArgumentException("maxBytes is too small: " + maxBytes);
+    }
+    Path parent = path.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    FileChannel channel =
+        FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      return new MappedSpillFile(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, maxBytes));
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private MappedSpillFile(FileChannel channel, MappedByteBuffer buffer) {
+    this.channel = channel;
+    this.buffer = buffer;
+    view = buffer.duplicate();
+    capacity = buffer.capacity() - HEADER_SIZE;
+
+    if (buffer.getInt(0) == MAGIC
+        && buffer.getInt(4) == VERSION
+        && buffer.getInt(8) == capacity
+        && restore()) {
+      return;
+    }
+    // A new file, one written with another size, or a corrupt one: start empty.
+    buffer.putInt(0, MAGIC);
+    buffer.putInt(4, VERSION);
+    buffer.putInt(8, capacity);
+    readPosition = 0;
+    writePosition = 0;
+    used = 0;
+    writePositions();
+  }
+
+  private boolean restore() {
+    readPosition = buffer.getInt(READ_POSITION_OFFSET);
+    writePosition = buffer.getInt(WRITE_POSITION_OFFSET);
+    used = buffer.getInt(USED_OFFSET);
+    return readPosition >= 0
+        && readPosition < capacity
+        && writePosition >= 0
+        && writePosition < capacity
+        && used >= 0
+        && used <= capacity
+        && (writePosition - readPosition + capacity) % capacity == used % capacity;
+  }
+
+  boolean isEmpty() {
+    return used == 0;
+  }
+
+  /** Returns the bytes used by queued records, including space skipped when wrapping. */
+  int usedBytes() {
+    return used;
+  }
+
+  /**
+   * Appends a record, returning {@code false} without changing the queue if there isn't enough free
+   * space for it.
+   */
+  boolean append(byte[] bytes, int offset, int length) {
+    int size = RECORD_HEADER_SIZE + length;
+    if (used == 0) {
+      readPosition = 0;
+      writePosition = 0;
+    }
+    int free = capacity - used;
+    if (writePosition >= readPosition && used < capacity) {
+      int tailFree = capacity - writePosition;
+      if (size > tailFree) {
+        // Only the space before the read position is left for the record.
+        if (size > readPosition) {
+          return false;
+        }
+        if (tailFree >= RECORD_HEADER_SIZE) {
+          buffer.putInt(HEADER_SIZE + writePosition, WRAP_MARKER);
+        }
+        used += tailFree;
+        writePosition = 0;
+      }
+    } else if (size > free) {
+      return false;
+    }
+    buffer.putInt(HEADER_SIZE + writePosition, length);
+    // Cast for Java 8, where ByteBuffer does not override the Buffer methods.
+    ((Buffer) view).position(HEADER_SIZE + writePosition + RECORD_HEADER_SIZE);
+    view.put(bytes, offset, length);
+    writePosition = (writePosition + size) % capacity;
+    used += size;
+    writePositions();
+    return true;
+  }
+
+  /**
+   * Returns the length of the oldest record, or -1 if the queue is empty. {@link #read} copies its
+   * bytes.
+   */
+  int peekLength() {
+    if (used == 0) {
+      return -1;
+    }
+    skipWrapMarker();
+    int length = buffer.getInt(HEADER_SIZE + readPosition);
+    if (length < 0 || RECORD_HEADER_SIZE + length > used) {
+      // Corrupt, drop everything rather than replaying garbage.
+      used = 0;
+      readPosition = 0;
+      writePosition = 0;
+      writePositions();
+      return -1;
+    }
+    return length;
+  }
+
+  /** Copies the oldest record into {@code destination}, which must fit {@link #peekLength}. */
+  void read(byte[] destination) {
+    int length = peekLength();
+    if (length < 0) {
+      return;
+    }
+    ((Buffer) view).position(HEADER_SIZE + readPosition + RECORD_HEADER_SIZE);
+    view.get(destination, 0, length);
+  }
+
+  /** Removes the oldest record. */
+  void remove() {
+    int length = peekLength();
+    if (length < 0) {
+      return;
+    }
+    int size = RECORD_HEADER_SIZE + length;
+    readPosition = (readPosition + size) % capacity;
+    used -= size;
+    if (used == 0) {
+      readPosition = 0;
+      writePosition = 0;
+    }
+    writePositions();
+  }
+
+  private void skipWrapMarker() {
+    int tail = capacity - readPosition;
+    if (tail < RECORD_HEADER_SIZE || buffer.getInt(HEADER_SIZE + readPosition) == WRAP_MARKER) {
+      used -= tail;
+      readPosition = 0;
+    }
+  }
+
+  private void writePositions() {
+    buffer.putInt(READ_POSITION_OFFSET, readPosition);
+    buffer.putInt(WRITE_POSITION_OFFSET, writePosition);
+    buffer.putInt(USED_OFFSET, used);
+  }
+
+  @Override
+  public void close() throws IOException {
+    buffer.force();
+    channel.close();
+  }
+}
@@ -0,0 +1,624 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.exporters;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import io.opentelemetry.common.AttributeConsumer;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.sdk.common.InstrumentationLibraryInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.StatusCanonicalCode;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes spans as an OTLP {@code ExportTraceServiceRequest} by writing protobuf fields directly
+ * into a buffer reused across requests, instead of first building a protobuf message object for
+ * every span, attribute and value. The encoding is byte-for-byte what the SDK's OTLP exporter sends
+ * for the same spans.
+ *
+ * <p>Spans are first grouped by resource and instrumentation library with {@link #prepare}, after
+ * which consecutive ranges of them can be encoded as separate requests. Not thread-safe.
+ */
+public final class OtlpSpanEncoder {
+
+  // ExportTraceServiceRequest
+  private static final int REQUEST_RESOURCE_SPANS = 1;
+  // ResourceSpans
+  private static final int RESOURCE_SPANS_RESOURCE = 1;
+  private static final int RESOURCE_SPANS_LIBRARY_SPANS = 2;
+  // Resource
+  private static final int RESOURCE_ATTRIBUTES = 1;
+  // InstrumentationLibrarySpans
+  private static final int LIBRARY_SPANS_LIBRARY = 1;
+  private static final int LIBRARY_SPANS_SPANS = 2;
+  // InstrumentationLibrary
+  private static final int LIBRARY_NAME = 1;
+  private static final int LIBRARY_VERSION = 2;
+  // Span
+  private static final int SPAN_TRACE_ID = 1;
+  private static final int SPAN_SPAN_ID = 2;
+  private static final int SPAN_PARENT_SPAN_ID = 4;
+  private static final int SPAN_NAME = 5;
+  private static final int SPAN_KIND = 6;
+  private static final int SPAN_START_TIME = 7;
+  private static final int SPAN_END_TIME = 8;
+  private static final int SPAN_ATTRIBUTES = 9;
+  private static final int SPAN_DROPPED_ATTRIBUTES = 10;
+  private static final int SPAN_EVENTS = 11;
+  private static final int SPAN_DROPPED_EVENTS = 12;
+  private static final int SPAN_LINKS = 13;
+  private static final int SPAN_DROPPED_LINKS = 14;
+  private static final int SPAN_STATUS = 15;
+  // Span.Event
+  private static final int EVENT_TIME = 1;
+  private static final int EVENT_NAME = 2;
+  private static final int EVENT_ATTRIBUTES = 3;
+  private static final int EVENT_DROPPED_ATTRIBUTES = 4;
+  // Span.Link
+  private static final int LINK_TRACE_ID = 1;
+  private static final int LINK_SPAN_ID = 2;
+  private static final int LINK_ATTRIBUTES = 4;
+  private static final int LINK_DROPPED_ATTRIBUTES = 5;
+  // Status
+  private static final int STATUS_CODE = 1;
+  private static final int STATUS_MESSAGE = 2;
+  // KeyValue
+  private static final int KEY_VALUE_KEY = 1;
+  private static final int KEY_VALUE_VALUE = 2;
+  // AnyValue
+  private static final int ANY_VALUE_STRING = 1;
+  private static final int ANY_VALUE_BOOL = 2;
+  private static final int ANY_VALUE_INT = 3;
+  private static final int ANY_VALUE_DOUBLE = 4;
+  private static final int ANY_VALUE_ARRAY = 5;
+  // ArrayValue
+  private static final int ARRAY_VALUE_VALUES = 1;
+
+  // STATUS_CODE_OK and STATUS_CODE_UNKNOWN_ERROR in the OTLP protocol version of the SDK.
+  private static final int STATUS_CODE_OK = 0;
+  private static final int STATUS_CODE_UNKNOWN_ERROR = 2;
+
+  // Upper bound of the tag and length prefixing each ResourceSpans and InstrumentationLibrarySpans.
+  private static final int GROUP_OVERHEAD_BYTES = 1 + 5;
+
+  // Prepared spans, ordered by group, and the encoded size of each.
+  private final List<SpanData> spans = new ArrayList<>();
+  private int[] spanSizes = new int[64];
+
+  private byte[] buffer = new byte[64 * 1024];
+
+  private final AttributesSizer attributesSizer = new AttributesSizer();
+  private final AttributesWriter attributesWriter = new AttributesWriter();
+
+  /** Encodes all spans as a single request, returning its size in {@link #buffer()}. */
+  public int encode(Collection<SpanData> spans) {
+    return encode(0, prepare(spans));
+  }
+
+  /** Returns the buffer holding the last encoded request, which is reused by the next. */
+  public byte[] buffer() {
+    return buffer;
+  }
+
+  /** Groups spans by resource and instrumentation library, returning the number of spans. */
+  int prepare(Collection<SpanData> spans) {
+    this.spans.clear();
+    // Nearly always a single group, which is only copied.
+    Map<Resource, Map<InstrumentationLibraryInfo, List<SpanData>>> groups = null;
+    SpanData first = null;
+    for (SpanData span : spans) {
+      if (first == null) {
+        first = span;
+      } else if (groups == null && !sameGroup(first, span)) {
+        groups = new LinkedHashMap<>();
+        for (SpanData grouped : this.spans) {
+          group(groups, grouped);
+        }
+      }
+      if (groups != null) {
+        group(groups, span);
+      } else {
+        this.spans.add(span);
+      }
+    }
+    if (groups != null) {
+      this.spans.clear();
+      for (Map<InstrumentationLibraryInfo, List<SpanData>> libraries : groups.values()) {
+        for (List<SpanData> librarySpans : libraries.values()) {
+          this.spans.addAll(librarySpans);
+        }
+      }
+    }
+
+    int count = this.spans.size();
+    if (spanSizes.length < count) {
+      spanSizes = new int[Math.max(count, spanSizes.length * 2)];
+    }
+    for (int i = 0; i < count; i++) {
+      spanSizes[i] = spanSize(this.spans.get(i));
+    }
+    return count;
+  }
+
+  /**
+   * Returns the end of the range of prepared spans starting at {@code from} which fits in a request
+   * of at most {@code maxRequestBytes}. The range always includes at least one span.
+   */
+  int requestEnd(int from, int maxRequestBytes) {
+    int count = spans.size();
+    long bytes = 0;
+    for (int i = from; i < count; i++) {
+      SpanData span = spans.get(i);
+      long added = messageFieldSize(LIBRARY_SPANS_SPANS, spanSizes[i]);
+      boolean newResource = i == from || !span.getResource().equals(spans.get(i - 1).getResource());
+      if (newResource) {
+        added +=
+            GROUP_OVERHEAD_BYTES
+                + messageFieldSize(RESOURCE_SPANS_RESOURCE, resourceSize(span.getResource()));
+      }
+      if (newResource || !sameGroup(span, spans.get(i - 1))) {
+        added +=
+            GROUP_OVERHEAD_BYTES
+                + messageFieldSize(
+                    LIBRARY_SPANS_LIBRARY, librarySize(span.getInstrumentationLibraryInfo()));
+      }
+      if (i > from && bytes + added > maxRequestBytes) {
+        return i;
+      }
+      bytes += added;
+    }
+    return count;
+  }
+
+  /**
+   * Encodes the prepared spans from {@code from} until {@code to} as a request, returning its size
+   * in {@link #buffer()}.
+   */
+  int encode(int from, int to) {
+    int size = requestSize(from, to);
+    if (buffer.length < size) {
+      buffer = new byte[Math.max(size, buffer.length * 2)];
+    }
+    CodedOutputStream out = CodedOutputStream.newInstance(buffer, 0, size);
+    try {
+      writeRequest(out, from, to);
+      out.checkNoSpaceLeft();
+    } catch (IOException e) {
+      throw new IllegalStateException("Encoded size was miscalculated.", e);
+    }
+    return size;
+  }
+
+  private int requestSize(int from, int to) {
+    int size = 0;
+    int resourceStart = from;
+    while (resourceStart < to) {
+      int resourceEnd = resourceEnd(resourceStart, to);
+      size +=
+          messageFieldSize(REQUEST_RESOURCE_SPANS, resourceSpansSize(resourceStart, resourceEnd));
+      resourceStart = resourceEnd;
+    }
+    return size;
+  }
+
+  private void writeRequest(CodedOutputStream out, int from, int to) throws IOException {
+    int resourceStart = from;
+    while (resourceStart < to) {
+      int resourceEnd = resourceEnd(resourceStart, to);
+      writeMessageHeader(
+          out, REQUEST_RESOURCE_SPANS, resourceSpansSize(resourceStart, resourceEnd));
+
+      Resource resource = spans.get(resourceStart).getResource();
+      writeMessageHeader(out, RESOURCE_SPANS_RESOURCE, resourceSize(resource));
+      writeAttributes(out, RESOURCE_ATTRIBUTES, resource.getAttributes());
+
+      int libraryStart = resourceStart;
+      while (libraryStart < resourceEnd) {
+        int libraryEnd = libraryEnd(libraryStart, resourceEnd);
+        writeMessageHeader(
+            out, RESOURCE_SPANS_LIBRARY_SPANS, librarySpansSize(libraryStart, libraryEnd));
+
+        InstrumentationLibraryInfo library =
+            spans.get(libraryStart).getInstrumentationLibraryInfo();
+        writeMessageHeader(out, LIBRARY_SPANS_LIBRARY, librarySize(library));
+        writeStringIfNotEmpty(out, LIBRARY_NAME, library.getName());
+        writeStringIfNotEmpty(out, LIBRARY_VERSION, library.getVersion());
+
+        for (int i = libraryStart; i < libraryEnd; i++) {
+          writeMessageHeader(out, LIBRARY_SPANS_SPANS, spanSizes[i]);
+          writeSpan(out, spans.get(i));
+        }
+        libraryStart = libraryEnd;
+      }
+      resourceStart = resourceEnd;
+    }
+  }
+
+  private int resourceSpansSize(int from, int to) {
+    int size =
+        messageFieldSize(RESOURCE_SPANS_RESOURCE, resourceSize(spans.get(from).getResource()));
+    int libraryStart = from;
+    while (libraryStart < to) {
+      int libraryEnd = libraryEnd(libraryStart, to);
+      size +=
+          messageFieldSize(
+              RESOURCE_SPANS_LIBRARY_SPANS, librarySpansSize(libraryStart, libraryEnd));
+      libraryStart = libraryEnd;
+    }
+    return size;
+  }
+
+  private int librarySpansSize(int from, int to) {
+    int size =
+        messageFieldSize(
+            LIBRARY_SPANS_LIBRARY, librarySize(spans.get(from).getInstrumentationLibraryInfo()));
+    for (int i = from; i < to; i++) {
+      size += messageFieldSize(LIBRARY_SPANS_SPANS, spanSizes[i]);
+    }
+    return size;
+  }
+
+  private int resourceEnd(int from, int to) {
+    Resource resource = spans.get(from).getResource();
+    int end = from + 1;
+    while (end < to && spans.get(end).getResource().equals(resource)) {
+      end++;
+    }
+    return end;
+  }
+
+  private int libraryEnd(int from, int to) {
+    SpanData first = spans.get(from);
+    int end = from + 1;
+    while (end < to && sameGroup(first, spans.get(end))) {
+      end++;
+    }
+    return end;
+  }
+
+  private int resourceSize(Resource resource) {
+    return attributesSize(RESOURCE_ATTRIBUTES, resource.getAttributes());
+  }
+
+  private static int librarySize(InstrumentationLibraryInfo library) {
+    return stringSizeIfNotEmpty(LIBRARY_NAME, library.getName())
+        + stringSizeIfNotEmpty(LIBRARY_VERSION, library.getVersion());
+  }
+
+  private int spanSize(SpanData span) {
+    int size = idSize(SPAN_TRACE_ID, span.getTraceId()) + idSize(SPAN_SPAN_ID, span.getSpanId());
+    String parentSpanId = span.getParentSpanId();
+    if (!isZero(parentSpanId)) {
+      size += idSize(SPAN_PARENT_SPAN_ID, parentSpanId);
+    }
+    size += stringSizeIfNotEmpty(SPAN_NAME, span.getName());
+    size += CodedOutputStream.computeEnumSize(SPAN_KIND, kindValue(span.getKind()));
+    size += fixed64SizeIfNotZero(SPAN_START_TIME, span.getStartEpochNanos());
+    size += fixed64SizeIfNotZero(SPAN_END_TIME, span.getEndEpochNanos());
+    size += attributesSize(SPAN_ATTRIBUTES, span.getAttributes());
+    size +=
+        uint32SizeIfNotZero(
+            SPAN_DROPPED_ATTRIBUTES, span.getTotalAttributeCount() - span.getAttributes().size());
+    for (SpanData.Event event : span.getEvents()) {
+      size += messageFieldSize(SPAN_EVENTS, eventSize(event));
+    }
+    size +=
+        uint32SizeIfNotZero(
+            SPAN_DROPPED_EVENTS, span.getTotalRecordedEvents() - span.getEvents().size());
+    for (SpanData.Link link : span.getLinks()) {
+      size += messageFieldSize(SPAN_LINKS, linkSize(link));
+    }
+    size +=
+        uint32SizeIfNotZero(
+            SPAN_DROPPED_LINKS, span.getTotalRecordedLinks() - span.getLinks().size());
+    size += messageFieldSize(SPAN_STATUS, statusSize(span.getStatus()));
+    return size;
+  }
+
+  private void writeSpan(CodedOutputStream out, SpanData span) throws IOException {
+    writeId(out, SPAN_TRACE_ID, span.getTraceId());
+    writeId(out, SPAN_SPAN_ID, span.getSpanId());
+    String parentSpanId = span.getParentSpanId();
+    if (!isZero(parentSpanId)) {
+      writeId(out, SPAN_PARENT_SPAN_ID, parentSpanId);
+    }
+    writeStringIfNotEmpty(out, SPAN_NAME, span.getName());
+    out.writeEnum(SPAN_KIND, kindValue(span.getKind()));
+    writeFixed64IfNotZero(out, SPAN_START_TIME, span.getStartEpochNanos());
+    writeFixed64IfNotZero(out, SPAN_END_TIME, span.getEndEpochNanos());
+    writeAttributes(out, SPAN_ATTRIBUTES, span.getAttributes());
+    writeUInt32IfNotZero(
+        out, SPAN_DROPPED_ATTRIBUTES, span.getTotalAttributeCount() - span.getAttributes().size());
+    for (SpanData.Event event : span.getEvents()) {
+      writeMessageHeader(out, SPAN_EVENTS, eventSize(event));
+      writeFixed64IfNotZero(out, EVENT_TIME, event.getEpochNanos());
+      writeStringIfNotEmpty(out, EVENT_NAME, event.getName());
+      writeAttributes(out, EVENT_ATTRIBUTES, event.getAttributes());
+      writeUInt32IfNotZero(
+          out,
+          EVENT_DROPPED_ATTRIBUTES,
+          event.getTotalAttributeCount() - event.getAttributes().size());
+    }
+    writeUInt32IfNotZero(
+        out, SPAN_DROPPED_EVENTS, span.getTotalRecordedEvents() - span.getEvents().size());
+    for (SpanData.Link link : span.getLinks()) {
+      writeMessageHeader(out, SPAN_LINKS, linkSize(link));
+      writeId(out, LINK_TRACE_ID, link.getContext().getTraceIdAsHexString());
+      writeId(out, LINK_SPAN_ID, link.getContext().getSpanIdAsHexString());
+      writeAttributes(out, LINK_ATTRIBUTES, link.getAttributes());
+      writeUInt32IfNotZero(
+          out,
+          LINK_DROPPED_ATTRIBUTES,
+          link.getTotalAttributeCount() - link.getAttributes().size());
+    }
+    writeUInt32IfNotZero(
+        out, SPAN_DROPPED_LINKS, span.getTotalRecordedLinks() - span.getLinks().size());
+    SpanData.Status status = span.getStatus();
+    writeMessageHeader(out, SPAN_STATUS, statusSize(status));
+    int code = statusCodeValue(status);
+    if (code != 0) {
+      out.writeEnum(STATUS_CODE, code);
+    }
+    writeStringIfNotEmpty(out, STATUS_MESSAGE, status.getDescription());
+  }
+
+  private int eventSize(SpanData.Event event) {
+    return fixed64SizeIfNotZero(EVENT_TIME, event.getEpochNanos())
+        + stringSizeIfNotEmpty(EVENT_NAME, event.getName())
+        + attributesSize(EVENT_ATTRIBUTES, event.getAttributes())
+        + uint32SizeIfNotZero(
+            EVENT_DROPPED_ATTRIBUTES,
+            event.getTotalAttributeCount() - event.getAttributes().size());
+  }
+
+  private int linkSize(SpanData.Link link) {
+    return idSize(LINK_TRACE_ID, link.getContext().getTraceIdAsHexString())
+        + idSize(LINK_SPAN_ID, link.getContext().getSpanIdAsHexString())
+        + attributesSize(LINK_ATTRIBUTES, link.getAttributes())
+        + uint32SizeIfNotZero(
+            LINK_DROPPED_ATTRIBUTES, link.getTotalAttributeCount() - link.getAttributes().size());
+  }
+
+  private static int statusSize(SpanData.Status status) {
+    int code = statusCodeValue(status);
+    return (code != 0 ? CodedOutputStream.computeEnumSize(STATUS_CODE, code) : 0)
+        + stringSizeIfNotEmpty(STATUS_MESSAGE, status.getDescription());
+  }
+
+  private static int statusCodeValue(SpanData.Status status) {
+    return status.getCanonicalCode() == StatusCanonicalCode.ERROR
+        ? STATUS_CODE_UNKNOWN_ERROR
+        : STATUS_CODE_OK;
+  }
+
+  private static int kindValue(io.opentelemetry.trace.Span.Kind kind) {
+    switch (kind) {
+      case SERVER:
+        return 2;
+      case CLIENT:
+        return 3;
+      case PRODUCER:
+        return 4;
+      case CONSUMER:
+        return 5;
+      default:
+        return 1;
+    }
+  }
+
+  private int attributesSize(int field, ReadableAttributes attributes) {
+    attributesSizer.field = field;
+    attributesSizer.size = 0;
+    attributes.forEach(attributesSizer);
+    return attributesSizer.size;
+  }
+
+  private void writeAttributes(CodedOutputStream out, int field, ReadableAttributes attributes)
+      throws IOException {
+    attributesWriter.out = out;
+    attributesWriter.field = field;
+    try {
+      attributes.forEach(attributesWriter);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      attributesWriter.out = null;
+    }
+  }
+
+  private static int keyValueSize(String key, Object value) {
+    return stringSizeIfNotEmpty(KEY_VALUE_KEY, key)
+        + messageFieldSize(KEY_VALUE_VALUE, anyValueSize(value));
+  }
+
+  private static void writeKeyValue(CodedOutputStream out, int field, String key, Object value)
+      throws IOException {
+    writeMessageHeader(out, field, keyValueSize(key, value));
+    writeStringIfNotEmpty(out, KEY_VALUE_KEY, key);
+    writeMessageHeader(out, KEY_VALUE_VALUE, anyValueSize(value));
+    writeAnyValue(out, value);
+  }
+
+  // AnyValue's fields are a oneof, so unlike other fields they are written even when empty.
+  private static int anyValueSize(Object value) {
+    if (value instanceof String) {
+      return CodedOutputStream.computeStringSize(ANY_VALUE_STRING, (String) value);
+    } else if (value instanceof Boolean) {
+      return CodedOutputStream.computeBoolSize(ANY_VALUE_BOOL, (Boolean) value);
+    } else if (value instanceof Long) {
+      return CodedOutputStream.computeInt64Size(ANY_VALUE_INT, (Long) value);
+    } else if (value instanceof Double) {
+      return CodedOutputStream.computeDoubleSize(ANY_VALUE_DOUBLE, (Double) value);
+    } else if (value instanceof List) {
+      return messageFieldSize(ANY_VALUE_ARRAY, arrayValueSize((List<?>) value));
+    } else {
+      return CodedOutputStream.computeStringSize(ANY_VALUE_STRING, String.valueOf(value));
+    }
+  }
+
+  private static int arrayValueSize(List<?> values) {
+    int size = 0;
+    for (Object element : values) {
+      size += messageFieldSize(ARRAY_VALUE_VALUES, anyValueSize(element));
+    }
+    return size;
+  }
+
+  private static void writeAnyValue(CodedOutputStream out, Object value) throws IOException {
+    if (value instanceof String) {
+      out.writeString(ANY_VALUE_STRING, (String) value);
+    } else if (value instanceof Boolean) {
+      out.writeBool(ANY_VALUE_BOOL, (Boolean) value);
+    } else if (value instanceof Long) {
+      out.writeInt64(ANY_VALUE_INT, (Long) value);
+    } else if (value instanceof Double) {
+      out.writeDouble(ANY_VALUE_DOUBLE, (Double) value);
+    } else if (value instanceof List) {
+      List<?> values = (List<?>) value;
+      writeMessageHeader(out, ANY_VALUE_ARRAY, arrayValueSize(values));
+      for (Object element : values) {
+        writeMessageHeader(out, ARRAY_VALUE_VALUES, anyValueSize(element));
+        writeAnyValue(out, element);
+      }
+    } else {
+      out.writeString(ANY_VALUE_STRING, String.valueOf(value));
+    }
+  }
+
+  private static int messageFieldSize(int field, int size) {
+    return CodedOutputStream.computeTagSize(field)
+        + CodedOutputStream.computeUInt32SizeNoTag(size)
+        + size;
+  }
+
+  private static void writeMessageHeader(CodedOutputStream out, int field, int size)
+      throws IOException {
+    out.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    out.writeUInt32NoTag(size);
+  }
+
+  private static int idSize(int field, String hex) {
+    return messageFieldSize(field, hex.length() / 2);
+  }
+
+  // Writes a hex trace or span ID as bytes.
+  private static void writeId(CodedOutputStream out, int field, String hex) throws IOException {
+    int length = hex.length() / 2;
+    writeMessageHeader(out, field, length);
+    for (int i = 0; i < length; i++) {
+      out.writeRawByte(
+          (byte)
+              (Character.digit(hex.charAt(i * 2), 16) << 4
+                  | Character.digit(hex.charAt(i * 2 + 1), 16)));
+    }
+  }
+
+  private static int stringSizeIfNotEmpty(int field, String value) {
+    return value == null || value.isEmpty() ? 0 : CodedOutputStream.computeStringSize(field, value);
+  }
+
+  private static void writeStringIfNotEmpty(CodedOutputStream out, int field, String value)
+      throws IOException {
+    if (value != null && !value.isEmpty()) {
+      out.writeString(field, value);
+    }
+  }
+
+  private static int fixed64SizeIfNotZero(int field, long value) {
+    return value == 0 ? 0 : CodedOutputStream.computeFixed64Size(field, value);
+  }
+
+  private static void writeFixed64IfNotZero(CodedOutputStream out, int field, long value)
+      throws IOException {
+    if (value != 0) {
+      out.writeFixed64(field, value);
+    }
+  }
+
+  private static int uint32SizeIfNotZero(int field, int value) {
+    return value == 0 ? 0 : CodedOutputStream.computeUInt32Size(field, value);
+  }
+
+  private static void writeUInt32IfNotZero(CodedOutputStream out, int field, int value)
+      throws IOException {
+    if (value != 0) {
+      out.writeUInt32(field, value);
+    }
+  }
+
+  private static boolean isZero(String hex) {
+    for (int i = 0; i < hex.length(); i++) {
+      if (hex.charAt(i) != '0') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean sameGroup(SpanData a, SpanData b) {
+    return a.getResource().equals(b.getResource())
+        && a.getInstrumentationLibraryInfo().equals(b.getInstrumentationLibraryInfo());
+  }
+
+  private static void group(
+      Map<Resource, Map<InstrumentationLibraryInfo, List<SpanData>>> groups, SpanData span) {
+    Map<InstrumentationLibraryInfo, List<SpanData>> libraries = groups.get(span.getResource());
+    if (libraries == null) {
+      libraries = new LinkedHashMap<>();
+      groups.put(span.getResource(), libraries);
+    }
+    List<SpanData> librarySpans = libraries.get(span.getInstrumentationLibraryInfo());
+    if (librarySpans == null) {
+      librarySpans = new ArrayList<>();
+      libraries.put(span.getInstrumentationLibraryInfo(), librarySpans);
+    }
+    librarySpans.add(span);
+  }
+
+  // Attribute consumers are reused, so visiting attributes doesn't allocate.
+  private static final class AttributesSizer implements AttributeConsumer {
+    private int field;
+    private int size;
+
+    @Override
+    public <T> void consume(AttributeKey<T> key, T value) {
+      size += messageFieldSize(field, keyValueSize(key.getKey(), value));
+    }
+  }
+
+  private static final class AttributesWriter implements AttributeConsumer {
+    private CodedOutputStream out;
+    private int field;
+
+    @Override
+    public <T> void consume(AttributeKey<T> key, T value) {
+      try {
+        writeKeyValue(out, field, key.getKey(), value);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.exporters;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.softwareaws.xray.opentelemetry.internal.XrayOrigins;
+import io.opentelemetry.common.AttributeConsumer;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.StatusCanonicalCode;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Exports spans as X-Ray segment documents directly to the X-Ray daemon over UDP, skipping the
+ * collector. Documents are written with a streaming JSON generator into a single reusable direct
+ * buffer, one datagram per document. Spans whose parents are in the same batch are nested into
+ * their parent's document as subsegments as long as the document fits in a datagram, and are sent
+ * as their own subsegment documents otherwise.
+ */
+public final class XrayUdpSpanExporter implements SpanExporter {
+
+  private static final Logger logger = Logger.getLogger(XrayUdpSpanExporter.class.getName());
+
+  public static final String DEFAULT_DAEMON_ADDRESS = "127.0.0.1:2000";
+
+  // The largest UDP payload over IPv4, which the daemon's 64 KB receive buffer always holds.
+  static final int MAX_DATAGRAM_SIZE = 65507;
+
+  private static final byte[] HEADER =
+      "{\"format\":\"json\",\"version\":1}\n".getBytes(StandardCharsets.UTF_8);
+  private static final String INVALID_SPAN_ID = "0000000000000000";
+  private static final int MAX_NAME_LENGTH = 200;
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private static final AttributeKey<String> SERVICE_NAME = AttributeKey.stringKey("service.name");
+  private static final AttributeKey<String> CLOUD_PLATFORM =
+      AttributeKey.stringKey("cloud.platform");
+  private static final AttributeKey<String> HTTP_METHOD = AttributeKey.stringKey("http.method");
+  private static final AttributeKey<String> HTTP_URL = AttributeKey.stringKey("http.url");
+  private static final AttributeKey<String> HTTP_SCHEME = AttributeKey.stringKey("http.scheme");
+  private static final AttributeKey<String> HTTP_HOST = AttributeKey.stringKey("http.host");
+  private static final AttributeKey<String> HTTP_TARGET = AttributeKey.stringKey("http.target");
+  private static final AttributeKey<String> HTTP_USER_AGENT =
+      AttributeKey.stringKey("http.user_agent");
+  private static final AttributeKey<String> HTTP_CLIENT_IP =
+      AttributeKey.stringKey("http.client_ip");
+  private static final AttributeKey<Long> HTTP_STATUS_CODE =
+      AttributeKey.longKey("http.status_code");
+  private static final AttributeKey<Long> HTTP_RESPONSE_CONTENT_LENGTH =
+      AttributeKey.longKey("http.response_content_length");
+  private static final AttributeKey<String> NET_PEER_NAME = AttributeKey.stringKey("net.peer.name");
+
+  /**
+   * Creates an exporter sending to {@code daemonAddress}, in the {@code host:port} format of the
+   * {@code AWS_XRAY_DAEMON_ADDRESS} environment variable. The {@code tcp:host:port udp:host:port}
+   * format is also accepted, in which case the UDP address is used.
+   */
+  public static XrayUdpSpanExporter create(String daemonAddress) throws IOException {
+    return new XrayUdpSpanExporter(parseAddress(daemonAddress));
+  }
+
+  private final InetSocketAddress address;
+  private final DatagramChannel channel;
+  private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+  private final DatagramOutputStream output = new DatagramOutputStream(buffer);
+  private final char[] scratch = new char[64];
+  private final AtomicLong droppedSpans = new AtomicLong();
+
+  // Visible for testing
+  XrayUdpSpanExporter(InetSocketAddress address) throws IOException {
+    this.address = address;
+    channel = DatagramChannel.open();
+  }
+
+  @Override
+  public synchronized CompletableResultCode export(Collection<SpanData> spans) {
+    Map<String, SpanData> spansById = new HashMap<>();
+    for (SpanData span : spans) {
+      spansById.put(span.getSpanId(), span);
+    }
+    Map<String, List<SpanData>> children = new HashMap<>();
+    List<SpanData> roots = new ArrayList<>();
+    for (SpanData span : spans) {
+      SpanData parent = spansById.get(span.getParentSpanId());
+      if (parent != null && parent != span && parent.getTraceId().equals(span.getTraceId())) {
+        List<SpanData> siblings = children.get(parent.getSpanId());
+        if (siblings == null) {
+          siblings = new ArrayList<>();
+          children.put(parent.getSpanId(), siblings);
+        }
+        siblings.add(span);
+      } else {
+        roots.add(span);
+      }
+    }
+
+    boolean success = true;
+    for (SpanData root : roots) {
+      success &= send(root, children);
+    }
+    return success ? CompletableResultCode.ofSuccess() : CompletableResultCode.ofFailure();
+  }
+
+  @Override
+  public CompletableResultCode flush() {
+    return CompletableResultCode.ofSuccess();
+  }
+
+  @Override
+  public synchronized CompletableResultCode shutdown() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      logger.log(Level.FINE, "Error closing X-Ray daemon channel.", e);
+    }
+    return CompletableResultCode.ofSuccess();
+  }
+
+  /** Returns the number of spans dropped because their document did not fit in a datagram. */
+  public long getDroppedSpans() {
+    return droppedSpans.get();
+  }
+
+  private boolean send(SpanData span, Map<String, List<SpanData>> children) {
+    if (encode(span, children)) {
+      return sendDatagram();
+    }
+    List<SpanData> spanChildren = children.get(span.getSpanId());
+    if (spanChildren == null) {
+      droppedSpans.incrementAndGet();
+      logger.log(Level.FINE, "Span {0} is too large for a datagram.", span.getName());
+      return true;
+    }
+    // Too large with its subsegments nested, so send the span alone and each child on its own.
+    boolean success = true;
+    if (encode(span, null)) {
+      success = sendDatagram();
+    } else {
+      droppedSpans.incrementAndGet();
+    }
+    for (SpanData child : spanChildren) {
+      success &= send(child, children);
+    }
+    return success;
+  }
+
+  private boolean sendDatagram() {
+    try {
+      channel.send(buffer, address);
+      return true;
+    } catch (IOException e) {
+      logger.log(Level.FINE, "Error sending segment to X-Ray daemon.", e);
+      return false;
+    }
+  }
+
+  // Encodes the document for a span into the buffer, ready to send, returning false if it does not
+  // fit in a datagram.
+  private boolean encode(SpanData span, @Nullable Map<String, List<SpanData>> children) {
+    // Cast for Java 8, where ByteBuffer does not override the Buffer methods.
+    ((Buffer) buffer).clear();
+    buffer.put(HEADER);
+    output.reset();
+    // Closing the generator returns its buffers to Jackson's recycler, so it is closed even when
+    // the document overflows.
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(output)) {
+      writeDocument(generator, span, children, false);
+    } catch (DatagramFullException e) {
+      return false;
+    } catch (IOException e) {
+      // Not possible when writing to the buffer.
+      throw new IllegalStateException(e);
+    }
+    ((Buffer) buffer).flip();
+    return true;
+  }
+
+  private void writeDocument(
+      JsonGenerator generator,
+      SpanData span,
+      @Nullable Map<String, List<SpanData>> children,
+      boolean nested)
+      throws IOException {
+    ReadableAttributes attributes = span.getAttributes();
+    boolean hasParent = !span.getParentSpanId().equals(INVALID_SPAN_ID);
+    // The first span of a trace in this service is a segment, all others are subsegments.
+    boolean segment = !nested && (!hasParent || span.getHasRemoteParent());
+
+    generator.writeStartObject();
+    generator.writeStringField("name", truncate(name(span, segment)));
+    generator.writeStringField("id", span.getSpanId());
+    if (!nested) {
+      generator.writeFieldName("trace_id");
+      writeTraceId(generator, span.getTraceId());
+      if (!segment) {
+        generator.writeStringField("type", "subsegment");
+      }
+      if (hasParent) {
+        generator.writeStringField("parent_id", span.getParentSpanId());
+      }
+    }
+    generator.writeFieldName("start_time");
+    writeEpochSeconds(generator, span.getStartEpochNanos());
+    generator.writeFieldName("end_time");
+    writeEpochSeconds(generator, span.getEndEpochNanos());
+
+    if (segment) {
+      String origin =
+          XrayOrigins.fromCloudPlatform(span.getResource().getAttributes().get(CLOUD_PLATFORM));
+      if (origin != null) {
+        generator.writeStringField("origin", origin);
+      }
+    } else if (span.getKind() == Span.Kind.CLIENT || span.getKind() == Span.Kind.PRODUCER) {
+      generator.writeStringField("namespace", "remote");
+    }
+
+    Long statusCode = attributes.get(HTTP_STATUS_CODE);
+    writeHttp(generator, attributes, statusCode);
+    if (statusCode != null && statusCode >= 400 && statusCode < 500) {
+      generator.writeBooleanField("error", true);
+      if (statusCode == 429) {
+        generator.writeBooleanField("throttle", true);
+      }
+    } else if ((statusCode != null && statusCode >= 500)
+        || span.getStatus().getCanonicalCode() == StatusCanonicalCode.ERROR) {
+      generator.writeBooleanField("fault", true);
+    }
+
+    if (!attributes.isEmpty()) {
+      generator.writeObjectFieldStart("metadata");
+      generator.writeObjectFieldStart("default");
+      writeAttributes(generator, attributes);
+      generator.writeEndObject();
+      generator.writeEndObject();
+    }
+
+    List<SpanData> spanChildren = children != null ? children.get(span.getSpanId()) : null;
+    if (spanChildren != null) {
+      generator.writeArrayFieldStart("subsegments");
+      for (SpanData child : spanChildren) {
+        writeDocument(generator, child, children, true);
+      }
+      generator.writeEndArray();
+    }
+    generator.writeEndObject();
+  }
+
+  private static String name(SpanData span, boolean segment) {
+    if (segment) {
+      String serviceName = span.getResource().getAttributes().get(SERVICE_NAME);
+      if (serviceName != null) {
+        return serviceName;
+      }
+    } else if (span.getKind() == Span.Kind.CLIENT) {
+      String peerName = span.getAttributes().get(NET_PEER_NAME);
+      if (peerName != null) {
+        return peerName;
+      }
+    }
+    return span.getName();
+  }
+
+  private static void writeHttp(
+      JsonGenerator generator, ReadableAttributes attributes, @Nullable Long statusCode)
+      throws IOException {
+    String method = attributes.get(HTTP_METHOD);
+    if (method == null) {
+      return;
+    }
+    generator.writeObjectFieldStart("http");
+    generator.writeObjectFieldStart("request");
+    generator.writeStringField("method", method);
+    String url = attributes.get(HTTP_URL);
+    if (url != null) {
+      generator.writeStringField("url", url);
+    } else {
+      String host = attributes.get(HTTP_HOST);
+      String target = attributes.get(HTTP_TARGET);
+      if (host != null && target != null) {
+        String scheme = attributes.get(HTTP_SCHEME);
+        generator.writeStringField(
+            "url", (scheme != null ? scheme : "http") + "://" + host + target);
+      }
+    }
+    writeStringIfNotNull(generator, "user_agent", attributes.get(HTTP_USER_AGENT));
+    writeStringIfNotNull(generator, "client_ip", attributes.get(HTTP_CLIENT_IP));
+    generator.writeEndObject();
+    Long contentLength = attributes.get(HTTP_RESPONSE_CONTENT_LENGTH);
+    if (statusCode != null || contentLength != null) {
+      generator.writeObjectFieldStart("response");
+      if (statusCode != null) {
+        generator.writeNumberField("status", statusCode);
+      }
+      if (contentLength != null) {
+        generator.writeNumberField("content_length", contentLength);
+      }
+      generator.writeEndObject();
+    }
+    generator.writeEndObject();
+  }
+
+  private static void writeStringIfNotNull(
+      JsonGenerator generator, String name, @Nullable String value) throws IOException {
+    if (value != null) {
+      generator.writeStringField(name, value);
+    }
+  }
+
+  private static void writeAttributes(final JsonGenerator generator, ReadableAttributes attributes)
+      throws IOException {
+    final IOException[] error = new IOException[1];
+    attributes.forEach(
+        new AttributeConsumer() {
+          @Override
+          public <T> void consume(AttributeKey<T> key, T value) {
+            if (error[0] != null) {
+              return;
+            }
+            try {
+              generator.writeFieldName(key.getKey());
+              writeValue(generator, value);
+            } catch (IOException e) {
+              error[0] = e;
+            }
+          }
+        });
+    if (error[0] != null) {
+      throw error[0];
+    }
+  }
+
+  private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+    if (value instanceof String) {
+      generator.writeString((String) value);
+    } else if (value instanceof Boolean) {
+      generator.writeBoolean((Boolean) value);
+    } else if (value instanceof Long) {
+      generator.writeNumber((Long) value);
+    } else if (value instanceof Double) {
+      generator.writeNumber((Double) value);
+    } else if (value instanceof List) {
+      generator.writeStartArray();
+      for (Object element : (List<?>) value) {
+        writeValue(generator, element);
+      }
+      generator.writeEndArray();
+    } else {
+      generator.writeString(String.valueOf(value));
+    }
+  }
+
+  // Writes 1-{8 hex epoch}-{24 hex random} without allocating.
+  private void writeTraceId(JsonGenerator generator, String traceId) throws IOException {
+    scratch[0] = '1';
+    scratch[1] = '-';
+    traceId.getChars(0, 8, scratch, 2);
+    scratch[10] = '-';
+    traceId.getChars(8, 32, scratch, 11);
+    generator.writeString(scratch, 0, 35);
+  }
+
+  // Writes epoch seconds with microsecond precision, the resolution X-Ray keeps, as an exact
+  // decimal rather than through a double.
+  private void writeEpochSeconds(JsonGenerator generator, long epochNanos) throws IOException {
+    long micros = epochNanos / 1000;
+    long seconds = micros / 1_000_000;
+    int fraction = (int) (micros % 1_000_000);
+    int length = 0;
+    String secondsString = Long.toString(seconds);
+    secondsString.getChars(0, secondsString.length(), scratch, 0);
+    length += secondsString.length();
+    scratch[length++] = '.';
+    for (int divisor = 100_000; divisor > 0; divisor /= 10) {
+      scratch[length++] = (char) ('0' + fraction / divisor % 10);
+    }
+    generator.writeNumber(scratch, 0, length);
+  }
+
+  private static String truncate(String name) {
+    return name.length() <= MAX_NAME_LENGTH ? name : name.substring(0, MAX_NAME_LENGTH);
+  }
+
+  private static InetSocketAddress parseAddress(String daemonAddress) {
+    String address = daemonAddress.trim();
+    for (String part : address.split("\\s+")) {
+      if (part.startsWith("udp:")) {
+        address = part.substring("udp:".length());
+      }
+    }
+    int colon = address.lastIndexOf(':');
+    if (colon <= 0) {
+      throw new IllegalArgumentException("Invalid X-Ray daemon address: " + daemonAddress);
+    }
+    return new InetSocketAddress(
+        address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+  }
+
+  private static final class DatagramFullException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    static final DatagramFullException INSTANCE = new DatagramFullException();
+
+    private DatagramFullException() {
+      super("Document does not fit in a datagram");
+    }
+
+    // Thrown on every oversized document, so skip filling in a stack trace nobody reads.
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  private static final class DatagramOutputStream extends OutputStream {
+
+    private final ByteBuffer buffer;
+
+    // Set once a write overflows the buffer. Later writes, such as the generator flushing as it is
+    // closed, are discarded instead of throwing again.
+    private boolean full;
+
+    DatagramOutputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    void reset() {
+      full = false;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (full) {
+        return;
+      }
+      if (!buffer.hasRemaining()) {
+        full = true;
+        throw DatagramFullException.INSTANCE;
+      }
+      buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (full) {
+        return;
+      }
+      if (buffer.remaining() < len) {
+        full = true;
+        throw DatagramFullException.INSTANCE;
+      }
+      buffer.put(b, off, len);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.internal;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Reads small JSON documents, like metadata and sampling API responses, into maps, lists, strings,
+ * numbers and booleans. Documents this small are not worth the weight of a databinding library.
+ */
+public final class JsonReader {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  /** Reads a JSON object, returning an empty map if the document is not an object. */
+  public static Map<String, Object> readObject(InputStream json) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+      Object value = readValue(parser, parser.nextToken());
+      return asObject(value);
+    }
+  }
+
+  /** Reads a JSON object, returning an empty map if the document is not an object. */
+  public static Map<String, Object> readObject(byte[] json) throws IOException {
+    try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+      Object value = readValue(parser, parser.nextToken());
+      return asObject(value);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public static Map<String, Object> asObject(@Nullable Object value) {
+    if (value instanceof Map) {
+      return (Map<String, Object>) value;
+    }
+    return Collections.emptyMap();
+  }
+
+  public static List<?> asList(@Nullable Object value) {
+    if (value instanceof List) {
+      return (List<?>) value;
+    }
+    return Collections.emptyList();
+  }
+
+  @Nullable
+  public static String getString(Map<String, Object> object, String field) {
+    Object value = object.get(field);
+    return value instanceof String ? (String) value : null;
+  }
+
+  public static double getDouble(Map<String, Object> object, String field, double defaultValue) {
+    Object value = object.get(field);
+    return value instanceof Number ? ((Number) value).doubleValue() : defaultValue;
+  }
+
+  public static long getLong(Map<String, Object> object, String field, long defaultValue) {
+    Object value = object.get(field);
+    return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+  }
+
+  @Nullable
+  private static Object readValue(JsonParser parser, @Nullable JsonToken token) throws IOException {
+    if (token == null) {
+      return null;
+    }
+    switch (token) {
+      case START_OBJECT:
+        Map<String, Object> object = new LinkedHashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+          String name = parser.getCurrentName();
+          object.put(name, readValue(parser, parser.nextToken()));
+        }
+        return object;
+      case START_ARRAY:
+        List<Object> array = new ArrayList<>();
+        JsonToken next;
+        while ((next = parser.nextToken()) != JsonToken.END_ARRAY && next != null) {
+          array.add(readValue(parser, next));
+        }
+        return array;
+      case VALUE_STRING:
+        return parser.getText();
+      case VALUE_NUMBER_INT:
+      case VALUE_NUMBER_FLOAT:
+        return parser.getNumberValue();
+      case VALUE_TRUE:
+        return Boolean.TRUE;
+      case VALUE_FALSE:
+        return Boolean.FALSE;
+      default:
+        return null;
+    }
+  }
+
+  private JsonReader() {}
+}
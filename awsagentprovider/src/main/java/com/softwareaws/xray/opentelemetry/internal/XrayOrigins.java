@@ -0,0 +1,47 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.internal;
+
+import javax.annotation.Nullable;
+
+/** Maps resource attributes to the origin types X-Ray uses for services. */
+public final class XrayOrigins {
+
+  /**
+   * Returns the X-Ray origin, e.g. {@code AWS::EC2::Instance}, for a {@code cloud.platform}
+   * resource attribute, or {@code null} if X-Ray has no origin for the platform.
+   */
+  @Nullable
+  public static String fromCloudPlatform(@Nullable String cloudPlatform) {
+    if (cloudPlatform == null) {
+      return null;
+    }
+    switch (cloudPlatform) {
+      case "aws_ec2":
+        return "AWS::EC2::Instance";
+      case "aws_ecs":
+        return "AWS::ECS::Container";
+      case "aws_eks":
+        return "AWS::EKS::Container";
+      case "aws_elastic_beanstalk":
+        return "AWS::ElasticBeanstalk::Environment";
+      default:
+        return null;
+    }
+  }
+
+  private XrayOrigins() {}
+}
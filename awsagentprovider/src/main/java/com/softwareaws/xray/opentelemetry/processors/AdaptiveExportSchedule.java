@@ -0,0 +1,105 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.processors;
+
+/**
+ * Decides how many spans are exported at once and how long spans wait before a partial batch is
+ * exported, adjusting both after every export within fixed bounds. When the buffer fills up,
+ * exports are made sooner and larger so the export thread keeps up; when it stays nearly empty, the
+ * delay grows so a trickle of spans costs few export calls, and batches shrink back after a burst.
+ * Batches are also halved when exports get slow, keeping each call well within the export timeout.
+ *
+ * <p>With equal lower and upper bounds the schedule is fixed.
+ */
+final class AdaptiveExportSchedule {
+
+  // Buffer occupancy at or above which exports are made sooner and larger.
+  private static final double HIGH_OCCUPANCY = 0.5;
+  // Buffer occupancy at or below which the delay grows.
+  private static final double LOW_OCCUPANCY = 0.1;
+
+  private final int minBatchSize;
+  private final int maxBatchSize;
+  private final long minDelayNanos;
+  private final long maxDelayNanos;
+  private final long slowExportNanos;
+
+  // Written only by the export thread, read by producers deciding whether to wake it.
+  private volatile int batchSize;
+  private volatile long delayNanos;
+  private volatile long smoothedExportNanos;
+
+  AdaptiveExportSchedule(
+      int minBatchSize,
+      int maxBatchSize,
+      long minDelayNanos,
+      long maxDelayNanos,
+      long initialDelayNanos,
+      long exportTimeoutNanos) {
+    if (minBatchSize < 1 || minBatchSize > maxBatchSize) {
+      throw new IllegalArgumentException("batch size bounds must be positive and ordered");
+    }
+    if (minDelayNanos < 0 || minDelayNanos > maxDelayNanos) {
+      throw new IllegalArgumentException("delay bounds must be non-negative and ordered");
+    }
+    this.minBatchSize = minBatchSize;
+    this.maxBatchSize = maxBatchSize;
+    this.minDelayNanos = minDelayNanos;
+    this.maxDelayNanos = maxDelayNanos;
+    slowExportNanos = exportTimeoutNanos / 4;
+    batchSize = minBatchSize;
+    delayNanos = Math.max(minDelayNanos, Math.min(maxDelayNanos, initialDelayNanos));
+  }
+
+  int batchSize() {
+    return batchSize;
+  }
+
+  long delayNanos() {
+    return delayNanos;
+  }
+
+  /** Returns the moving average of export durations, or 0 before the first export. */
+  long smoothedExportNanos() {
+    return smoothedExportNanos;
+  }
+
+  /**
+   * Updates the schedule after an export which took {@code exportNanos}, leaving {@code queued} of
+   * {@code capacity} spans in the buffer. Only called from the export thread.
+   */
+  void update(int queued, int capacity, long exportNanos) {
+    long smoothed = smoothedExportNanos;
+    smoothed = smoothed == 0 ? exportNanos : smoothed - (smoothed >> 3) + (exportNanos >> 3);
+    smoothedExportNanos = smoothed;
+
+    int nextBatchSize = batchSize;
+    long nextDelayNanos = delayNanos;
+    double occupancy = (double) queued / capacity;
+    if (occupancy >= HIGH_OCCUPANCY) {
+      nextBatchSize = nextBatchSize * 2;
+      nextDelayNanos = nextDelayNanos / 2;
+    } else if (occupancy <= LOW_OCCUPANCY) {
+      nextBatchSize = nextBatchSize / 2;
+      nextDelayNanos = nextDelayNanos + nextDelayNanos / 2 + 1;
+    }
+    if (smoothed > slowExportNanos) {
+      nextBatchSize = nextBatchSize / 2;
+    }
+    batchSize = Math.max(minBatchSize, Math.min(maxBatchSize, nextBatchSize));
+    delayNanos = Math.max(minDelayNanos, Math.min(maxDelayNanos, nextDelayNanos));
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.processors;
+
+import io.opentelemetry.common.AttributeConsumer;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the total size of a span's attributes when the span is converted for export by the AWS span
+ * processor, and counts the attribute values which were truncated or dropped doing so. The SDK
+ * enforces the attribute count and value length limits of the {@code TraceConfig} as attributes are
+ * set, but has no limit on a span's total size, which spans with several large JSON-serialized
+ * attributes exceed. This limit only applies at export, so spans still hold their full attributes
+ * until then.
+ *
+ * <p>Sizes are estimated counting a character of a string as a byte and other values as eight
+ * bytes, plus the length of each key. Once the limit is reached, string values are cut to fit and
+ * later values are dropped. Only values changed here are counted, since the SDK truncates values to
+ * its length limit without recording it.
+ */
+final class AttributeLimits {
+
+  static final int UNLIMITED = Integer.MAX_VALUE;
+
+  private static final int NON_STRING_VALUE_BYTES = 8;
+
+  private final int maxTotalBytes;
+
+  private final LongAdder truncatedValues;
+
+  AttributeLimits(int maxTotalBytes) {
+    this(maxTotalBytes, new LongAdder());
+  }
+
+  private AttributeLimits(int maxTotalBytes, LongAdder truncatedValues) {
+    this.maxTotalBytes = maxTotalBytes;
+    this.truncatedValues = truncatedValues;
+  }
+
+  /** Returns limits with a new size which keep adding to this one's count of truncated values. */
+  AttributeLimits withLimit(int maxTotalBytes) {
+    return new AttributeLimits(maxTotalBytes, truncatedValues);
+  }
+
+  boolean isUnlimited() {
+    return maxTotalBytes == UNLIMITED;
+  }
+
+  /** Returns the span, or a copy of it with attributes within the total size limit. */
+  SpanData apply(SpanData span) {
+    ReadableAttributes attributes = span.getAttributes();
+    if (attributes.isEmpty() || isUnlimited()) {
+      return span;
+    }
+    Sizer sizer = new Sizer();
+    attributes.forEach(sizer);
+    if (sizer.bytes <= maxTotalBytes) {
+      return span;
+    }
+    Limiter limiter = new Limiter();
+    attributes.forEach(limiter);
+    truncatedValues.add(limiter.truncated);
+    return new ForwardingSpanData(span, limiter.attributes.build(), span.getResource());
+  }
+
+  /** Returns the number of attribute values truncated or dropped to fit the total size limit. */
+  long getTruncatedValues() {
+    return truncatedValues.sum();
+  }
+
+  private static int valueBytes(Object value) {
+    if (value instanceof String) {
+      return ((String) value).length();
+    }
+    if (value instanceof List) {
+      int bytes = 0;
+      for (Object element : (List<?>) value) {
+        bytes += valueBytes(element);
+      }
+      return bytes;
+    }
+    return NON_STRING_VALUE_BYTES;
+  }
+
+  private static final class Sizer implements AttributeConsumer {
+    private long bytes;
+
+    @Override
+    public <T> void consume(AttributeKey<T> key, T value) {
+      bytes += key.getKey().length() + valueBytes(value);
+    }
+  }
+
+  private final class Limiter implements AttributeConsumer {
+    private final Attributes.Builder attributes = Attributes.newBuilder();
+    private long remaining = maxTotalBytes;
+    private int truncated;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void consume(AttributeKey<T> key, T value) {
+      long bytes = key.getKey().length() + valueBytes(value);
+      if (bytes <= remaining) {
+        attributes.setAttribute(key, value);
+        remaining -= bytes;
+        return;
+      }
+      truncated++;
+      long available = remaining - key.getKey().length();
+      if (value instanceof String && available > 0) {
+        String string = (String) value;
+        int end = (int) available;
+        // Don't split a surrogate pair.
+        if (Character.isHighSurrogate(string.charAt(end - 1))) {
+          end--;
+        }
+        attributes.setAttribute((AttributeKey<String>) key, string.substring(0, end));
+      }
+      remaining = 0;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.processors;
+
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.sdk.common.InstrumentationLibraryInfo;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.TraceState;
+import java.util.List;
+
+/**
+ * A span with its attributes or resource replaced, as exported by the span processors. Attributes
+ * dropped from the span are still counted by {@link #getTotalAttributeCount()}, so exporters report
+ * them as dropped.
+ */
+final class ForwardingSpanData implements SpanData {
+  private final SpanData delegate;
+  private final ReadableAttributes attributes;
+  private final Resource resource;
+
+  ForwardingSpanData(SpanData delegate, ReadableAttributes attributes, Resource resource) {
+    this.delegate = delegate;
+    this.attributes = attributes;
+    this.resource = resource;
+  }
+
+  @Override
+  public ReadableAttributes getAttributes() {
+    return attributes;
+  }
+
+  @Override
+  public String getTraceId() {
+    return delegate.getTraceId();
+  }
+
+  @Override
+  public String getSpanId() {
+    return delegate.getSpanId();
+  }
+
+  @Override
+  public boolean isSampled() {
+    return delegate.isSampled();
+  }
+
+  @Override
+  public TraceState getTraceState() {
+    return delegate.getTraceState();
+  }
+
+  @Override
+  public String getParentSpanId() {
+    return delegate.getParentSpanId();
+  }
+
+  @Override
+  public Resource getResource() {
+    return resource;
+  }
+
+  @Override
+  public InstrumentationLibraryInfo getInstrumentationLibraryInfo() {
+    return delegate.getInstrumentationLibraryInfo();
+  }
+
+  @Override
+  public String getName() {
+    return delegate.getName();
+  }
+
+  @Override
+  public Span.Kind getKind() {
+    return delegate.getKind();
+  }
+
+  @Override
+  public long getStartEpochNanos() {
+    return delegate.getStartEpochNanos();
+  }
+
+  @Override
+  public List<Event> getEvents() {
+    return delegate.getEvents();
+  }
+
+  @Override
+  public List<Link> getLinks() {
+    return delegate.getLinks();
+  }
+
+  @Override
+  public SpanData.Status getStatus() {
+    return delegate.getStatus();
+  }
+
+  @Override
+  public long getEndEpochNanos() {
+    return delegate.getEndEpochNanos();
+  }
+
+  @Override
+  public boolean getHasRemoteParent() {
+    return delegate.getHasRemoteParent();
+  }
+
+  @Override
+  public boolean getHasEnded() {
+    return delegate.getHasEnded();
+  }
+
+  @Override
+  public int getTotalRecordedEvents() {
+    return delegate.getTotalRecordedEvents();
+  }
+
+  @Override
+  public int getTotalRecordedLinks() {
+    return delegate.getTotalRecordedLinks();
+  }
+
+  @Override
+  public int getTotalAttributeCount() {
+    return delegate.getTotalAttributeCount();
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.processors;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, preallocated multi-producer single-consumer queue. Offers are lock-free, not
+ * wait-free: a producer claims a slot with a compare-and-set on the producer index and retries when
+ * another producer claimed the slot first, so under contention some producer always succeeds but a
+ * given one may retry several times. Offers never wait for the consumer and fail fast when the
+ * buffer is full. Only the single consumer removes elements, in bulk, and it stops at a claimed
+ * slot until its producer has stored the element.
+ */
+final class MpscRingBuffer<T> {
+
+  private final AtomicReferenceArray<T> buffer;
+  private final int mask;
+
+  private final AtomicLong producerIndex = new AtomicLong();
+  // Written only by the consumer, read by producers to check for space.
+  private final AtomicLong consumerIndex = new AtomicLong();
+
+  MpscRingBuffer(int requestedCapacity) {
+    if (requestedCapacity < 1 || requestedCapacity > 1 << 30) {
+      throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+    }
+    int capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+    if (capacity == 0) {
+      capacity = 1;
+    }
+    buffer = new AtomicReferenceArray<>(capacity);
+    mask = capacity - 1;
+  }
+
+  /** Adds the element if there is space, returning {@code false} if the buffer is full. */
+  boolean offer(T element) {
+    while (true) {
+      long index = producerIndex.get();
+      if (index - consumerIndex.get() > mask) {
+        return false;
+      }
+      if (producerIndex.compareAndSet(index, index + 1)) {
+        // Ordered after the claim, the consumer stops at the slot until this store is visible.
+        buffer.lazySet((int) index & mask, element);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Moves up to {@code limit} elements into {@code drain} in insertion order, returning how many
+   * were moved. Must only be called from the consumer thread.
+   */
+  int drainTo(List<? super T> drain, int limit) {
+    long index = consumerIndex.get();
+    int drained = 0;
+    while (drained < limit) {
+      int offset = (int) index & mask;
+      T element = buffer.get(offset);
+      if (element == null) {
+        // Empty, or a producer has claimed the slot but not yet stored its element.
+        break;
+      }
+      buffer.lazySet(offset, null);
+      drain.add(element);
+      index++;
+      drained++;
+    }
+    if (drained > 0) {
+      consumerIndex.lazySet(index);
+    }
+    return drained;
+  }
+
+  /** Returns the number of elements claimed but not yet drained, which may be briefly stale. */
+  int size() {
+    return (int) Math.max(0, producerIndex.get() - consumerIndex.get());
+  }
+
+  /** Returns the number of slots ever claimed by producers. */
+  long producerIndex() {
+    return producerIndex.get();
+  }
+
+  /** Returns the number of elements ever drained by the consumer. */
+  long consumerIndex() {
+    return consumerIndex.get();
+  }
+
+  int capacity() {
+    return mask + 1;
+  }
+}
@@ -0,0 +1,647 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.processors;
+
+import io.opentelemetry.OpenTelemetry;
+import io.opentelemetry.common.Labels;
+import io.opentelemetry.metrics.AsynchronousInstrument;
+import io.opentelemetry.metrics.LongValueObserver;
+import io.opentelemetry.metrics.Meter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * A span processor that hands ended spans to a single export thread through a preallocated
+ * lock-free ring buffer, replacing the SDK's {@code BatchSpanProcessor} whose blocking queue is
+ * contended when many request threads end spans at once. Ending a span never takes a lock; the
+ * export thread drains the buffer in bulk and converts spans to {@link SpanData} off the request
+ * path.
+ *
+ * <p>All settings except the buffer size and name can be changed while spans are being exported
+ * with {@link #reconfigure(Builder, Callable)}, without losing the spans in the buffer.
+ */
+public final class RingBufferSpanProcessor implements SpanProcessor {
+
+  private static final Logger logger = Logger.getLogger(RingBufferSpanProcessor.class.getName());
+
+  private static final List<RingBufferSpanProcessor> METRIC_PROCESSORS =
+      new CopyOnWriteArrayList<>();
+  private static final AtomicBoolean METRICS_REGISTERED = new AtomicBoolean();
+
+  /** What to do with an ended span when the buffer is full. */
+  public enum DropPolicy {
+    /** Drop the span immediately, never delaying the thread that ended it. */
+    DROP,
+    /** Wait up to the offer timeout for the export thread to make space, then drop the span. */
+    WAIT;
+
+    /** Returns the policy for a configuration value, {@code drop} or {@code wait}. */
+    public static DropPolicy parse(String value) {
+      return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+  }
+
+  private final MpscRingBuffer<ReadableSpan> buffer;
+  private final boolean registerMetrics;
+  private final Labels metricLabels;
+
+  // Replaced by the export thread when reconfigured, between exports.
+  private SpanExporter exporter;
+  private long exportTimeoutMillis;
+  private volatile AdaptiveExportSchedule schedule;
+  private volatile DropPolicy dropPolicy;
+  private volatile long offerTimeoutNanos;
+  private volatile AttributeLimits attributeLimits;
+  @Nullable private volatile Resource resource;
+
+  private final Thread worker;
+  // Set by the worker before parking, so producers only pay for an unpark when it is waiting.
+  private final AtomicBoolean workerParked = new AtomicBoolean();
+  private final Queue<CompletableResultCode> pendingFlushes = new ConcurrentLinkedQueue<>();
+  private final Queue<Reconfiguration> pendingReconfigurations = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean shutdown = new AtomicBoolean();
+  private final CompletableResultCode shutdownResult = new CompletableResultCode();
+  private final LongAdder droppedSpans = new LongAdder();
+
+  private RingBufferSpanProcessor(Builder builder) {
+    buffer = new MpscRingBuffer<>(builder.bufferSize);
+    exporter = builder.exporter;
+    registerMetrics = builder.registerMetrics;
+    attributeLimits = new AttributeLimits(builder.maxAttributeBytes);
+    applySettings(builder);
+    String threadName = "aws-otel-span-exporter";
+    if (builder.name.isEmpty()) {
+      metricLabels = Labels.empty();
+    } else {
+      metricLabels = Labels.of("exporter", builder.name);
+      threadName += "-" + builder.name;
+    }
+
+    worker = new Thread(new Worker(), threadName);
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  public static Builder newBuilder(SpanExporter exporter) {
+    return new Builder(exporter);
+  }
+
+  /**
+   * Applies the settings of {@code settings} to the running processor, except its exporter, buffer
+   * size, name and metrics registration, which are fixed when it is built. If {@code
+   * exporterFactory} is not null, the exporter it creates replaces the current one, which is then
+   * shut down. Spans already in the buffer are exported with the new settings and exporter.
+   *
+   * <p>The export thread applies the change between two exports and creates the new exporter
+   * itself, so the replaced exporter is idle while it is created, which lets both use the same
+   * resources, like a spill file. If creating the exporter fails, the current one is kept and the
+   * returned result fails.
+   */
+  public CompletableResultCode reconfigure(
+      Builder settings, @Nullable Callable<? extends SpanExporter> exporterFactory) {
+    settings.validate();
+    Reconfiguration reconfiguration = new Reconfiguration(settings, exporterFactory);
+    pendingReconfigurations.add(reconfiguration);
+    LockSupport.unpark(worker);
+    if (shutdown.get() && pendingReconfigurations.remove(reconfiguration)) {
+      reconfiguration.result.fail();
+    }
+    return reconfiguration.result;
+  }
+
+  // Called by the constructor, then only by the export thread.
+  private void applySettings(Builder builder) {
+    int maxExportBatchSize = Math.min(builder.maxExportBatchSize, buffer.capacity());
+    long scheduleDelayNanos = TimeUnit.MILLISECONDS.toNanos(builder.scheduleDelayMillis);
+    long exportTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(builder.exportTimeoutMillis);
+    if (builder.adaptiveScheduling) {
+      schedule =
+          new AdaptiveExportSchedule(
+              Math.min(builder.minExportBatchSize, maxExportBatchSize),
+              maxExportBatchSize,
+              TimeUnit.MILLISECONDS.toNanos(builder.minScheduleDelayMillis),
+              TimeUnit.MILLISECONDS.toNanos(builder.maxScheduleDelayMillis),
+              scheduleDelayNanos,
+              exportTimeoutNanos);
+    } else {
+      schedule =
+          new AdaptiveExportSchedule(
+              maxExportBatchSize,
+              maxExportBatchSize,
+              scheduleDelayNanos,
+              scheduleDelayNanos,
+              scheduleDelayNanos,
+              exportTimeoutNanos);
+    }
+    exportTimeoutMillis = builder.exportTimeoutMillis;
+    dropPolicy = builder.dropPolicy;
+    offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(builder.offerTimeoutMillis);
+    attributeLimits = attributeLimits.withLimit(builder.maxAttributeBytes);
+    resource = builder.resource;
+  }
+
+  @Override
+  public void onStart(ReadWriteSpan span) {}
+
+  @Override
+  public boolean isStartRequired() {
+    return false;
+  }
+
+  @Override
+  public void onEnd(ReadableSpan span) {
+    if (!span.getSpanContext().isSampled() || shutdown.get()) {
+      return;
+    }
+    if (!buffer.offer(span) && !(dropPolicy == DropPolicy.WAIT && offerWithTimeout(span))) {
+      droppedSpans.increment();
+      return;
+    }
+    if (buffer.size() >= schedule.batchSize()) {
+      wakeWorker();
+    }
+  }
+
+  @Override
+  public boolean isEndRequired() {
+    return true;
+  }
+
+  @Override
+  public CompletableResultCode forceFlush() {
+    CompletableResultCode result = new CompletableResultCode();
+    pendingFlushes.add(result);
+    LockSupport.unpark(worker);
+    // Once shut down, the export thread may already have completed its last flush. Everything in
+    // the buffer is exported as it shuts down, so the flush completes with the shutdown.
+    if (shutdown.get() && pendingFlushes.remove(result)) {
+      return shutdownResult;
+    }
+    return result;
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    if (shutdown.compareAndSet(false, true)) {
+      LockSupport.unpark(worker);
+    }
+    return shutdownResult;
+  }
+
+  /** Returns the number of spans dropped because the buffer was full. */
+  public long getDroppedSpans() {
+    return droppedSpans.sum();
+  }
+
+  /** Returns the number of queued spans which currently triggers an export. */
+  public int getExportBatchSize() {
+    return schedule.batchSize();
+  }
+
+  /** Returns the current longest time spans wait in the buffer before being exported. */
+  public long getScheduleDelayMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(schedule.delayNanos());
+  }
+
+  /** Returns the moving average of the time the exporter takes to export a batch. */
+  public long getExportLatencyMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(schedule.smoothedExportNanos());
+  }
+
+  /** Returns the number of ended spans waiting in the buffer to be exported. */
+  public int getQueuedSpans() {
+    return buffer.size();
+  }
+
+  /**
+   * Returns the number of attribute values truncated or dropped as spans were exported to fit
+   * {@link Builder#setMaxAttributeBytes(int)}. Values truncated by the SDK as they were set aren't
+   * counted.
+   */
+  public long getTruncatedAttributeValues() {
+    return attributeLimits.getTruncatedValues();
+  }
+
+  // Reports the schedules' current decisions as gauges, labeled with each processor's name. The
+  // instruments are registered once for all processors, since registering an instrument again
+  // replaces its callback. The meter is looked up from an export thread, since processors may be
+  // created while OpenTelemetry itself is initializing.
+  private static void registerMetrics() {
+    Meter meter = OpenTelemetry.getMeter("com.softwareaws.xray.opentelemetry.processors");
+    meter
+        .longValueObserverBuilder("otel.aws.span_processor.batch_size")
+        .setDescription("The number of spans which triggers an export.")
+        .setUnit("1")
+        .build()
+        .setCallback(
+            new ProcessorGauge() {
+              @Override
+              long value(RingBufferSpanProcessor processor) {
+                return processor.getExportBatchSize();
+              }
+            });
+    meter
+        .longValueObserverBuilder("otel.aws.span_processor.schedule_delay")
+        .setDescription("The longest time spans wait before being exported.")
+        .setUnit("ms")
+        .build()
+        .setCallback(
+            new ProcessorGauge() {
+              @Override
+              long value(RingBufferSpanProcessor processor) {
+                return processor.getScheduleDelayMillis();
+              }
+            });
+    meter
+        .longValueObserverBuilder("otel.aws.span_processor.export_latency")
+        .setDescription("The moving average of the time taken to export a batch.")
+        .setUnit("ms")
+        .build()
+        .setCallback(
+            new ProcessorGauge() {
+              @Override
+              long value(RingBufferSpanProcessor processor) {
+                return processor.getExportLatencyMillis();
+              }
+            });
+    meter
+        .longValueObserverBuilder("otel.aws.span_processor.queue_size")
+        .setDescription("The number of spans waiting to be exported.")
+        .setUnit("1")
+        .build()
+        .setCallback(
+            new ProcessorGauge() {
+              @Override
+              long value(RingBufferSpanProcessor processor) {
+                return processor.getQueuedSpans();
+              }
+            });
+    meter
+        .longValueObserverBuilder("otel.aws.span_processor.dropped_spans")
+        .setDescription("The number of spans dropped because the buffer was full.")
+        .setUnit("1")
+        .build()
+        .setCallback(
+            new ProcessorGauge() {
+              @Override
+              long value(RingBufferSpanProcessor processor) {
+                return processor.getDroppedSpans();
+              }
+            });
+    meter
+        .longValueObserverBuilder("otel.aws.span_processor.export_truncated_attribute_values")
+        .setDescription(
+            "The number of attribute values truncated or dropped as spans were exported.")
+        .setUnit("1")
+        .build()
+        .setCallback(
+            new ProcessorGauge() {
+              @Override
+              long value(RingBufferSpanProcessor processor) {
+                return processor.getTruncatedAttributeValues();
+              }
+            });
+  }
+
+  private abstract static class ProcessorGauge
+      implements AsynchronousInstrument.Callback<LongValueObserver.LongResult> {
+
+    abstract long value(RingBufferSpanProcessor processor);
+
+    @Override
+    public void update(LongValueObserver.LongResult result) {
+      for (RingBufferSpanProcessor processor : METRIC_PROCESSORS) {
+        result.observe(value(processor), processor.metricLabels);
+      }
+    }
+  }
+
+  private boolean offerWithTimeout(ReadableSpan span) {
+    wakeWorker();
+    long deadline = System.nanoTime() + offerTimeoutNanos;
+    while (System.nanoTime() - deadline < 0) {
+      LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+      if (buffer.offer(span)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void wakeWorker() {
+    if (workerParked.compareAndSet(true, false)) {
+      LockSupport.unpark(worker);
+    }
+  }
+
+  private static final class Reconfiguration {
+
+    final Builder settings;
+    @Nullable final Callable<? extends SpanExporter> exporterFactory;
+    final CompletableResultCode result = new CompletableResultCode();
+
+    Reconfiguration(Builder settings, @Nullable Callable<? extends SpanExporter> exporterFactory) {
+      this.settings = settings;
+      this.exporterFactory = exporterFactory;
+    }
+  }
+
+  private final class Worker implements Runnable {
+
+    private final List<ReadableSpan> drained = new ArrayList<>();
+    private final List<SpanData> batch = new ArrayList<>();
+
+    @Override
+    public void run() {
+      if (registerMetrics) {
+        METRIC_PROCESSORS.add(RingBufferSpanProcessor.this);
+        if (METRICS_REGISTERED.compareAndSet(false, true)) {
+          try {
+            registerMetrics();
+          } catch (RuntimeException e) {
+            logger.log(Level.FINE, "Could not register span processor metrics.", e);
+          }
+        }
+      }
+      long nextExportNanos = System.nanoTime() + schedule.delayNanos();
+      while (!shutdown.get()) {
+        if (!pendingReconfigurations.isEmpty()) {
+          reconfigure();
+          nextExportNanos = System.nanoTime() + schedule.delayNanos();
+          continue;
+        }
+        if (!pendingFlushes.isEmpty()) {
+          flush();
+          nextExportNanos = System.nanoTime() + schedule.delayNanos();
+          continue;
+        }
+        long waitNanos = nextExportNanos - System.nanoTime();
+        if (buffer.size() < schedule.batchSize() && waitNanos > 0) {
+          workerParked.set(true);
+          // Recheck after publishing the flag so a producer that filled the batch in between is
+          // not missed.
+          if (buffer.size() < schedule.batchSize()
+              && pendingFlushes.isEmpty()
+              && pendingReconfigurations.isEmpty()) {
+            LockSupport.parkNanos(RingBufferSpanProcessor.this, waitNanos);
+          }
+          workerParked.set(false);
+          continue;
+        }
+        exportBatch();
+        nextExportNanos = System.nanoTime() + schedule.delayNanos();
+      }
+
+      flush();
+      exporter.shutdown();
+      Reconfiguration reconfiguration;
+      while ((reconfiguration = pendingReconfigurations.poll()) != null) {
+        reconfiguration.result.fail();
+      }
+      METRIC_PROCESSORS.remove(RingBufferSpanProcessor.this);
+      shutdownResult.succeed();
+    }
+
+    private void reconfigure() {
+      Reconfiguration reconfiguration;
+      while ((reconfiguration = pendingReconfigurations.poll()) != null) {
+        applySettings(reconfiguration.settings);
+        if (reconfiguration.exporterFactory == null) {
+          reconfiguration.result.succeed();
+          continue;
+        }
+        SpanExporter replaced = exporter;
+        try {
+          exporter = reconfiguration.exporterFactory.call();
+        } catch (Exception e) {
+          logger.log(Level.WARNING, "Could not create exporter, keeping the current one.", e);
+          reconfiguration.result.fail();
+          continue;
+        }
+        replaced.shutdown();
+        reconfiguration.result.succeed();
+      }
+    }
+
+    private void flush() {
+      // Spans ended before the flush was requested have all claimed slots by now, but their
+      // producers may still be storing them, so drain up to the claimed index rather than until
+      // the buffer looks empty, which may never happen under load.
+      long target = buffer.producerIndex();
+      while (buffer.consumerIndex() < target) {
+        if (exportBatch() == 0) {
+          Thread.yield();
+        }
+      }
+      CompletableResultCode result;
+      while ((result = pendingFlushes.poll()) != null) {
+        result.succeed();
+      }
+    }
+
+    private int exportBatch() {
+      int count = buffer.drainTo(drained, schedule.batchSize());
+      if (count == 0) {
+        return 0;
+      }
+      Resource exportResource = resource;
+      for (int i = 0; i < count; i++) {
+        SpanData span = drained.get(i).toSpanData();
+        if (exportResource != null && span.getResource() != exportResource) {
+          span = new ForwardingSpanData(span, span.getAttributes(), exportResource);
+        }
+        batch.add(attributeLimits.apply(span));
+      }
+      drained.clear();
+      long startNanos = System.nanoTime();
+      try {
+        CompletableResultCode result = exporter.export(batch);
+        final CountDownLatch done = new CountDownLatch(1);
+        result.whenComplete(
+            new Runnable() {
+              @Override
+              public void run() {
+                done.countDown();
+              }
+            });
+        if (!done.await(exportTimeoutMillis, TimeUnit.MILLISECONDS)) {
+          logger.log(Level.FINE, "Timed out exporting {0} spans.", count);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, "Exporter threw an exception.", e);
+      } finally {
+        batch.clear();
+      }
+      schedule.update(buffer.size(), buffer.capacity(), System.nanoTime() - startNanos);
+      return count;
+    }
+  }
+
+  public static final class Builder {
+
+    private final SpanExporter exporter;
+    private int bufferSize = 2048;
+    private int maxExportBatchSize = 512;
+    private long scheduleDelayMillis = 5000;
+    private long exportTimeoutMillis = 30000;
+    private DropPolicy dropPolicy = DropPolicy.DROP;
+    private long offerTimeoutMillis = 100;
+    private boolean adaptiveScheduling;
+    private int minExportBatchSize = 64;
+    private long minScheduleDelayMillis = 50;
+    private long maxScheduleDelayMillis = 10000;
+    private boolean registerMetrics;
+    private String name = "";
+    private int maxAttributeBytes = AttributeLimits.UNLIMITED;
+    @Nullable private Resource resource;
+
+    private Builder(SpanExporter exporter) {
+      this.exporter = exporter;
+    }
+
+    /** Sets the capacity of the ring buffer, rounded up to a power of two. */
+    public Builder setBufferSize(int bufferSize) {
+      this.bufferSize = bufferSize;
+      return this;
+    }
+
+    public Builder setMaxExportBatchSize(int maxExportBatchSize) {
+      this.maxExportBatchSize = maxExportBatchSize;
+      return this;
+    }
+
+    /** Sets the longest time spans wait in the buffer before a partial batch is exported. */
+    public Builder setScheduleDelayMillis(long scheduleDelayMillis) {
+      this.scheduleDelayMillis = scheduleDelayMillis;
+      return this;
+    }
+
+    public Builder setExportTimeoutMillis(long exportTimeoutMillis) {
+      this.exportTimeoutMillis = exportTimeoutMillis;
+      return this;
+    }
+
+    public Builder setDropPolicy(DropPolicy dropPolicy) {
+      this.dropPolicy = dropPolicy;
+      return this;
+    }
+
+    /** Sets how long {@link DropPolicy#WAIT} waits for space in the buffer. */
+    public Builder setOfferTimeoutMillis(long offerTimeoutMillis) {
+      this.offerTimeoutMillis = offerTimeoutMillis;
+      return this;
+    }
+
+    /**
+     * Sets whether the export batch size and schedule delay adapt to how full the buffer is and how
+     * long exports take. Batches then range from the minimum export batch size to the maximum,
+     * starting at the minimum, and the delay ranges between the minimum and maximum schedule
+     * delays, starting at the schedule delay.
+     */
+    public Builder setAdaptiveScheduling(boolean adaptiveScheduling) {
+      this.adaptiveScheduling = adaptiveScheduling;
+      return this;
+    }
+
+    public Builder setMinExportBatchSize(int minExportBatchSize) {
+      this.minExportBatchSize = minExportBatchSize;
+      return this;
+    }
+
+    public Builder setMinScheduleDelayMillis(long minScheduleDelayMillis) {
+      this.minScheduleDelayMillis = minScheduleDelayMillis;
+      return this;
+    }
+
+    public Builder setMaxScheduleDelayMillis(long maxScheduleDelayMillis) {
+      this.maxScheduleDelayMillis = maxScheduleDelayMillis;
+      return this;
+    }
+
+    /**
+     * Sets the name of the processor's destination, which names its export thread and labels its
+     * metrics.
+     */
+    public Builder setName(String name) {
+      this.name = name;
+      return this;
+    }
+
+    /** Sets whether the schedule and queue size are reported as OpenTelemetry metrics. */
+    public Builder setRegisterMetrics(boolean registerMetrics) {
+      this.registerMetrics = registerMetrics;
+      return this;
+    }
+
+    /**
+     * Sets the most bytes of attribute keys and values a span exports, approximately. Values past
+     * the limit are truncated or dropped as spans are converted for export.
+     */
+    public Builder setMaxAttributeBytes(int maxAttributeBytes) {
+      this.maxAttributeBytes = maxAttributeBytes;
+      return this;
+    }
+
+    /**
+     * Sets the resource of exported spans, replacing the one the tracer provider gave them, e.g. a
+     * resource detected after the provider was created.
+     */
+    public Builder setResource(@Nullable Resource resource) {
+      this.resource = resource;
+      return this;
+    }
+
+    public RingBufferSpanProcessor build() {
+      validate();
+      return new RingBufferSpanProcessor(this);
+    }
+
+    private void validate() {
+      if (maxExportBatchSize < 1) {
+        throw new IllegalArgumentException("maxExportBatchSize must be positive");
+      }
+      if (adaptiveScheduling && minExportBatchSize < 1) {
+        throw new IllegalArgumentException("minExportBatchSize must be positive");
+      }
+      if (adaptiveScheduling && minScheduleDelayMillis > maxScheduleDelayMillis) {
+        throw new IllegalArgumentException(
+            "minScheduleDelayMillis must not exceed maxScheduleDelayMillis");
+      }
+    }
+  }
+}
@@ -0,0 +1,495 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.processors;
+
+import io.opentelemetry.common.AttributeConsumer;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.InstrumentationLibraryInfo;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.StatusCanonicalCode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A span processor that holds the spans of each trace until its local root span ends, and only then
+ * decides whether to pass the whole trace on to the next processors. A trace is kept if any of its
+ * spans has an error status, takes at least the latency threshold, or has an attribute matching one
+ * of the attribute rules, so the head sampler can record every trace without every trace being
+ * exported.
+ *
+ * <p>Traces whose local root hasn't ended within the decision wait since their last span ended, for
+ * example because the root is still running, are decided on the spans buffered so far. They are
+ * checked as spans end and by a background sweep. Memory is capped by the number of buffered traces
+ * and spans; when either is exceeded the least recently touched traces are decided early. Spans
+ * ending after their trace was decided follow the decision, which is remembered for as many traces
+ * as are buffered. The exception is a trace dropped before its local root ended: its later spans
+ * are buffered again and kept as soon as one of them matches, such as a root which turns out slow.
+ * The spans dropped early are lost.
+ */
+public final class TailSamplingSpanProcessor implements SpanProcessor {
+
+  private static final Logger logger = Logger.getLogger(TailSamplingSpanProcessor.class.getName());
+
+  private static final String INVALID_SPAN_ID = "0000000000000000";
+
+  private static final long MIN_SWEEP_INTERVAL_MILLIS = 10;
+
+  private enum Decision {
+    KEEP,
+    DROP,
+    // Dropped before the local root span ended, so a later matching span can still keep the trace.
+    DROP_EARLY
+  }
+
+  private final List<SpanProcessor> next;
+  private final long latencyThresholdNanos;
+  private final Map<String, String> attributeRules;
+  private final long decisionWaitNanos;
+  private final int maxTraces;
+  private final int maxSpans;
+
+  private final Object lock = new Object();
+
+  // Ordered from least to most recently touched, guarded by lock.
+  private final LinkedHashMap<String, PendingTrace> pending = new LinkedHashMap<>(16, 0.75f, true);
+
+  // Guarded by lock.
+  private final LinkedHashMap<String, Decision> decided;
+
+  // Guarded by lock.
+  private int bufferedSpans;
+  private boolean shutdown;
+
+  private final LongAdder keptTraces = new LongAdder();
+  private final LongAdder droppedTraces = new LongAdder();
+  private final LongAdder evictedTraces = new LongAdder();
+
+  private final ScheduledExecutorService sweeper;
+
+  private TailSamplingSpanProcessor(Builder builder) {
+    next = new ArrayList<>(builder.next);
+    latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(builder.latencyThresholdMillis);
+    attributeRules = new HashMap<>(builder.attributeRules);
+    decisionWaitNanos = TimeUnit.MILLISECONDS.toNanos(builder.decisionWaitMillis);
+    maxTraces = builder.maxTraces;
+    maxSpans = builder.maxSpans;
+    final int maxDecisions = maxTraces;
+    decided =
+        new LinkedHashMap<String, Decision>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Decision> eldest) {
+            return size() > maxDecisions;
+          }
+        };
+
+    // Decides stale traces when no spans end to trigger it, at most a quarter of the decision wait
+    // late.
+    sweeper =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "aws-otel-tail-sampling-sweeper");
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    long sweepIntervalMillis = Math.max(MIN_SWEEP_INTERVAL_MILLIS, builder.decisionWaitMillis / 4);
+    sweeper.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              sweep();
+            } catch (RuntimeException e) {
+              logger.log(Level.FINE, "Failed to decide stale traces.", e);
+            }
+          }
+        },
+        sweepIntervalMillis,
+        sweepIntervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /** Returns a new {@link Builder} for a processor passing kept traces to {@code next}. */
+  public static Builder newBuilder(Collection<? extends SpanProcessor> next) {
+    return new Builder(next);
+  }
+
+  @Override
+  public void onStart(ReadWriteSpan span) {
+    for (SpanProcessor processor : next) {
+      if (processor.isStartRequired()) {
+        processor.onStart(span);
+      }
+    }
+  }
+
+  @Override
+  public boolean isStartRequired() {
+    for (SpanProcessor processor : next) {
+      if (processor.isStartRequired()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void onEnd(ReadableSpan span) {
+    if (!span.getSpanContext().isSampled()) {
+      return;
+    }
+    // Converted once, for the rules and for the next processors.
+    SpanData data = span.toSpanData();
+    ReadableSpan ended = new EndedSpan(span.getSpanContext(), data);
+    String traceId = data.getTraceId();
+    boolean matches = matches(data);
+    boolean localRoot = data.getHasRemoteParent() || data.getParentSpanId().equals(INVALID_SPAN_ID);
+    long now = System.nanoTime();
+
+    List<ReadableSpan> kept = null;
+    synchronized (lock) {
+      if (shutdown) {
+        return;
+      }
+      Decision decision = decided.get(traceId);
+      if (decision == Decision.KEEP) {
+        kept = Collections.singletonList(ended);
+      } else if (decision == null || decision == Decision.DROP_EARLY) {
+        PendingTrace trace = pending.get(traceId);
+        if (trace == null) {
+          trace = new PendingTrace();
+          if (decision != null) {
+            decided.remove(traceId);
+            trace.reopened = true;
+          }
+          pending.put(traceId, trace);
+        }
+        trace.spans.add(ended);
+        trace.keep |= matches;
+        trace.lastTouchedNanos = now;
+        bufferedSpans++;
+        // A reopened trace is kept as soon as it matches, so its later spans are not dropped again
+        // while its local root is still running.
+        if (localRoot || (trace.reopened && trace.keep)) {
+          kept = decide(traceId, pending.remove(traceId), localRoot, kept);
+        }
+      }
+      kept = decideStale(now, kept);
+    }
+    forward(kept);
+  }
+
+  @Override
+  public boolean isEndRequired() {
+    return true;
+  }
+
+  /** Decides all buffered traces on the spans ended so far, then flushes the next processors. */
+  @Override
+  public CompletableResultCode forceFlush() {
+    forward(decideAll());
+    List<CompletableResultCode> results = new ArrayList<>(next.size());
+    for (SpanProcessor processor : next) {
+      results.add(processor.forceFlush());
+    }
+    return CompletableResultCode.ofAll(results);
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    synchronized (lock) {
+      if (shutdown) {
+        return CompletableResultCode.ofSuccess();
+      }
+      shutdown = true;
+    }
+    sweeper.shutdownNow();
+    forward(decideAll());
+    List<CompletableResultCode> results = new ArrayList<>(next.size());
+    for (SpanProcessor processor : next) {
+      results.add(processor.shutdown());
+    }
+    return CompletableResultCode.ofAll(results);
+  }
+
+  /** Returns the number of traces passed on to the next processors. */
+  public long getKeptTraces() {
+    return keptTraces.sum();
+  }
+
+  /**
+   * Returns the number of traces which matched no rule and were dropped. A trace dropped early and
+   * kept after a later span matched is only counted as kept.
+   */
+  public long getDroppedTraces() {
+    return droppedTraces.sum();
+  }
+
+  /** Returns the number of traces decided early to stay within the buffer limits. */
+  public long getEvictedTraces() {
+    return evictedTraces.sum();
+  }
+
+  /** Returns the number of spans buffered while waiting for their traces to be decided. */
+  public int getBufferedSpans() {
+    synchronized (lock) {
+      return bufferedSpans;
+    }
+  }
+
+  private boolean matches(SpanData span) {
+    if (span.getStatus().getCanonicalCode() == StatusCanonicalCode.ERROR) {
+      return true;
+    }
+    if (latencyThresholdNanos > 0
+        && span.getEndEpochNanos() - span.getStartEpochNanos() >= latencyThresholdNanos) {
+      return true;
+    }
+    if (attributeRules.isEmpty()) {
+      return false;
+    }
+    AttributeMatcher matcher = new AttributeMatcher();
+    span.getAttributes().forEach(matcher);
+    return matcher.matched;
+  }
+
+  // Decides traces which were untouched for the decision wait, then the least recently touched
+  // traces until the buffer is within its limits. Must be called with the lock held.
+  private List<ReadableSpan> decideStale(long now, List<ReadableSpan> kept) {
+    Iterator<Map.Entry<String, PendingTrace>> it = pending.entrySet().iterator();
+    while (it.hasNext()) {
+      Map.Entry<String, PendingTrace> eldest = it.next();
+      boolean expired = now - eldest.getValue().lastTouchedNanos >= decisionWaitNanos;
+      boolean overLimit = pending.size() > maxTraces || bufferedSpans > maxSpans;
+      if (!expired && !overLimit) {
+        break;
+      }
+      it.remove();
+      if (!expired) {
+        evictedTraces.increment();
+      }
+      kept = decide(eldest.getKey(), eldest.getValue(), false, kept);
+    }
+    return kept;
+  }
+
+  private void sweep() {
+    List<ReadableSpan> kept;
+    synchronized (lock) {
+      if (shutdown) {
+        return;
+      }
+      kept = decideStale(System.nanoTime(), null);
+    }
+    forward(kept);
+  }
+
+  private List<ReadableSpan> decideAll() {
+    List<ReadableSpan> kept = null;
+    synchronized (lock) {
+      for (Map.Entry<String, PendingTrace> entry : pending.entrySet()) {
+        kept = decide(entry.getKey(), entry.getValue(), false, kept);
+      }
+      pending.clear();
+    }
+    return kept;
+  }
+
+  // Records the decision for a trace removed from pending, adding its spans to kept if it is kept.
+  // rootEnded is false when the trace is decided early. Must be called with the lock held.
+  private List<ReadableSpan> decide(
+      String traceId, PendingTrace trace, boolean rootEnded, List<ReadableSpan> kept) {
+    bufferedSpans -= trace.spans.size();
+    if (!trace.keep) {
+      decided.put(traceId, rootEnded ? Decision.DROP : Decision.DROP_EARLY);
+      // A reopened trace was already counted when it was first dropped.
+      if (!trace.reopened) {
+        droppedTraces.increment();
+      }
+      return kept;
+    }
+    decided.put(traceId, Decision.KEEP);
+    if (trace.reopened) {
+      droppedTraces.decrement();
+    }
+    keptTraces.increment();
+    if (kept == null) {
+      kept = new ArrayList<>(trace.spans);
+    } else {
+      kept.addAll(trace.spans);
+    }
+    return kept;
+  }
+
+  // Called without the lock held, since the next processors may block briefly when full.
+  private void forward(List<ReadableSpan> spans) {
+    if (spans == null) {
+      return;
+    }
+    for (ReadableSpan span : spans) {
+      for (SpanProcessor processor : next) {
+        if (processor.isEndRequired()) {
+          processor.onEnd(span);
+        }
+      }
+    }
+  }
+
+  private static final class PendingTrace {
+    private final List<ReadableSpan> spans = new ArrayList<>();
+    private boolean keep;
+    // Whether the trace was dropped early before these spans ended.
+    private boolean reopened;
+    private long lastTouchedNanos;
+  }
+
+  // An ended span passed on with the SpanData converted for the rules, so the next processors don't
+  // convert it again.
+  private static final class EndedSpan implements ReadableSpan {
+    private final SpanContext spanContext;
+    private final SpanData data;
+
+    EndedSpan(SpanContext spanContext, SpanData data) {
+      this.spanContext = spanContext;
+      this.data = data;
+    }
+
+    @Override
+    public SpanContext getSpanContext() {
+      return spanContext;
+    }
+
+    @Override
+    public String getName() {
+      return data.getName();
+    }
+
+    @Override
+    public SpanData toSpanData() {
+      return data;
+    }
+
+    @Override
+    public InstrumentationLibraryInfo getInstrumentationLibraryInfo() {
+      return data.getInstrumentationLibraryInfo();
+    }
+
+    @Override
+    public boolean hasEnded() {
+      return true;
+    }
+
+    @Override
+    public long getLatencyNanos() {
+      return data.getEndEpochNanos() - data.getStartEpochNanos();
+    }
+  }
+
+  private final class AttributeMatcher implements AttributeConsumer {
+    private boolean matched;
+
+    @Override
+    public <T> void consume(AttributeKey<T> key, T value) {
+      String expected = attributeRules.get(key.getKey());
+      if (expected != null && expected.equals(String.valueOf(value))) {
+        matched = true;
+      }
+    }
+  }
+
+  public static final class Builder {
+
+    private final List<SpanProcessor> next;
+    private long latencyThresholdMillis = 1000;
+    private final Map<String, String> attributeRules = new HashMap<>();
+    private long decisionWaitMillis = 30000;
+    private int maxTraces = 10000;
+    private int maxSpans = 100000;
+
+    private Builder(Collection<? extends SpanProcessor> next) {
+      this.next = new ArrayList<>(next);
+    }
+
+    /**
+     * Sets the span duration at or above which a trace is kept, or zero to keep traces regardless
+     * of latency.
+     */
+    public Builder setLatencyThresholdMillis(long latencyThresholdMillis) {
+      this.latencyThresholdMillis = latencyThresholdMillis;
+      return this;
+    }
+
+    /**
+     * Adds a rule keeping traces with a span whose attribute {@code key} has {@code value}, as a
+     * string.
+     */
+    public Builder addAttributeRule(String key, String value) {
+      attributeRules.put(key, value);
+      return this;
+    }
+
+    /**
+     * Sets how long a trace waits for its local root span to end after its last span ended before
+     * it is decided anyway.
+     */
+    public Builder setDecisionWaitMillis(long decisionWaitMillis) {
+      this.decisionWaitMillis = decisionWaitMillis;
+      return this;
+    }
+
+    /** Sets the most traces buffered at once. */
+    public Builder setMaxTraces(int maxTraces) {
+      this.maxTraces = maxTraces;
+      return this;
+    }
+
+    /** Sets the most spans buffered at once, across all traces. */
+    public Builder setMaxSpans(int maxSpans) {
+      this.maxSpans = maxSpans;
+      return this;
+    }
+
+    public TailSamplingSpanProcessor build() {
+      if (maxTraces < 1) {
+        throw new IllegalArgumentException("maxTraces must be positive");
+      }
+      if (maxSpans < 1) {
+        throw new IllegalArgumentException("maxSpans must be positive");
+      }
+      return new TailSamplingSpanProcessor(this);
+    }
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.propagators;
+
+import io.grpc.Context;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link FusedPropagator} which only injects the header formats each destination host uses, out
+ * of X-Ray, W3C trace context and B3.
+ *
+ * <p>The formats of a host are configured statically, matching the destination's host name or IP
+ * address, or learned from the trace headers of the requests a peer sends to this service, assuming
+ * a peer reads the formats it writes. Learned formats expire when a peer hasn't sent a request for
+ * a while, and every probe interval one request to each learned peer still carries every format, so
+ * peers which only read a format they don't write keep being reached. Hosts with neither configured
+ * nor learned formats get every format.
+ *
+ * <p>Learned formats are keyed by IP address on both sides: the source address of inbound requests,
+ * and the destination of outbound requests only when it is addressed by IP address. Host names are
+ * never resolved, so destinations addressed by name only use static formats. Learning is therefore
+ * only effective when peers call each other directly by IP address, e.g. pod to pod within a
+ * cluster, and not through load balancers or NAT, where the source address isn't the address
+ * requests are sent to. Peers are only known for the carriers {@link CarrierHosts} reads.
+ */
+public final class AdaptivePropagator implements TextMapPropagator {
+
+  private final FusedPropagator delegate = FusedPropagator.getInstance();
+  private final List<HostFormats> configuredFormats;
+  private final long probeIntervalNanos;
+  private final long learnedTtlNanos;
+  private final int maxLearnedHosts;
+  private final ConcurrentHashMap<String, LearnedFormats> learnedFormats =
+      new ConcurrentHashMap<>();
+
+  private AdaptivePropagator(Builder builder) {
+    configuredFormats = new ArrayList<>(builder.configuredFormats);
+    probeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(builder.probeIntervalMillis);
+    learnedTtlNanos = TimeUnit.MILLISECONDS.toNanos(builder.learnedTtlMillis);
+    maxLearnedHosts = builder.maxLearnedHosts;
+  }
+
+  /** Returns a new {@link Builder} for {@link AdaptivePropagator}. */
+  public static Builder newBuilder() {
+    return new Builder();
+  }
+
+  @Override
+  public List<String> fields() {
+    return delegate.fields();
+  }
+
+  @Override
+  public <C> void inject(Context context, @Nullable C carrier, Setter<C> setter) {
+    inject(context, carrier, setter, System.nanoTime());
+  }
+
+  @Override
+  public <C> Context extract(Context context, @Nullable C carrier, Getter<C> getter) {
+    return extract(context, carrier, getter, System.nanoTime());
+  }
+
+  <C> void inject(Context context, @Nullable C carrier, Setter<C> setter, long nowNanos) {
+    String host = CarrierHosts.outboundHost(carrier);
+    int formats = host != null ? formatsFor(host, nowNanos) : FusedPropagator.ALL_FORMATS;
+    delegate.inject(context, carrier, setter, formats);
+  }
+
+  <C> Context extract(Context context, @Nullable C carrier, Getter<C> getter, long nowNanos) {
+    String address = CarrierHosts.inboundAddress(carrier);
+    if (address != null) {
+      int formats = delegate.formatsIn(carrier, getter);
+      if (formats != 0) {
+        learn(address, formats, nowNanos);
+      }
+    }
+    return delegate.extract(context, carrier, getter);
+  }
+
+  // Returns the formats to inject for a destination host.
+  int formatsFor(String host, long nowNanos) {
+    for (HostFormats configured : configuredFormats) {
+      if (configured.matches(host)) {
+        return configured.formats;
+      }
+    }
+    String address = CarrierHosts.ipAddress(host);
+    LearnedFormats learned = address != null ? learnedFormats.get(address) : null;
+    if (learned == null) {
+      return FusedPropagator.ALL_FORMATS;
+    }
+    if (nowNanos - learned.learnedAtNanos > learnedTtlNanos) {
+      learnedFormats.remove(address, learned);
+      return FusedPropagator.ALL_FORMATS;
+    }
+    if (learned.shouldProbe(nowNanos, probeIntervalNanos)) {
+      return FusedPropagator.ALL_FORMATS;
+    }
+    return learned.formats;
+  }
+
+  // Adds formats seen from an IP address. Once the maximum number of hosts is learned, other hosts
+  // are only learned as learned hosts expire.
+  void learn(String address, int formats, long nowNanos) {
+    LearnedFormats learned = learnedFormats.get(address);
+    if (learned == null) {
+      if (learnedFormats.size() >= maxLearnedHosts) {
+        return;
+      }
+      learned = new LearnedFormats(formats, nowNanos, probeIntervalNanos);
+      LearnedFormats existing = learnedFormats.putIfAbsent(address, learned);
+      if (existing == null) {
+        return;
+      }
+      learned = existing;
+    }
+    learned.update(formats, nowNanos, learnedTtlNanos);
+  }
+
+  int getLearnedHostCount() {
+    return learnedFormats.size();
+  }
+
+  // Racing updates may briefly lose a format, which is added back by the host's next request.
+  private static final class LearnedFormats {
+    volatile int formats;
+    volatile long learnedAtNanos;
+    private final AtomicLong nextProbeNanos;
+
+    LearnedFormats(int formats, long nowNanos, long probeIntervalNanos) {
+      this.formats = formats;
+      learnedAtNanos = nowNanos;
+      nextProbeNanos = new AtomicLong(nowNanos + probeIntervalNanos);
+    }
+
+    void update(int seenFormats, long nowNanos, long learnedTtlNanos) {
+      // Formats not seen within the TTL are forgotten.
+      formats = nowNanos - learnedAtNanos > learnedTtlNanos ? seenFormats : formats | seenFormats;
+      learnedAtNanos = nowNanos;
+    }
+
+    boolean shouldProbe(long nowNanos, long probeIntervalNanos) {
+      long next = nextProbeNanos.get();
+      return nowNanos - next >= 0
+          && nextProbeNanos.compareAndSet(next, nowNanos + probeIntervalNanos);
+    }
+  }
+
+  private static final class HostFormats {
+    private final String host;
+    private final boolean isSuffix;
+    final int formats;
+
+    HostFormats(String pattern, int formats) {
+      isSuffix = pattern.startsWith("*");
+      host = (isSuffix ? pattern.substring(1) : pattern).toLowerCase(Locale.ROOT);
+      this.formats = formats;
+    }
+
+    boolean matches(String value) {
+      return isSuffix
+          ? value.regionMatches(true, value.length() - host.length(), host, 0, host.length())
+          : value.equalsIgnoreCase(host);
+    }
+  }
+
+  public static final class Builder {
+
+    private final List<HostFormats> configuredFormats = new ArrayList<>();
+    private long probeIntervalMillis = TimeUnit.MINUTES.toMillis(1);
+    private long learnedTtlMillis = TimeUnit.MINUTES.toMillis(10);
+    private int maxLearnedHosts = 1000;
+
+    private Builder() {}
+
+    /**
+     * Always injects {@code formats} for hosts matching {@code hostPattern}, which is a host name
+     * or IP address, or a suffix like {@code *.svc.cluster.local}. Formats are named as in {@code
+     * otel.propagators} and joined with {@code +}, like {@code xray+tracecontext}. Hosts are
+     * matched against patterns in the order they were added.
+     *
+     * @throws IllegalArgumentException if a format is not one of {@code xray}, {@code tracecontext}
+     *     or {@code b3}.
+     */
+    public Builder addHostFormats(String hostPattern, String formats) {
+      configuredFormats.add(new HostFormats(hostPattern, parseFormats(formats)));
+      return this;
+    }
+
+    /** Sets how often a learned host still gets every format. Defaults to 1 minute. */
+    public Builder setProbeIntervalMillis(long probeIntervalMillis) {
+      this.probeIntervalMillis = probeIntervalMillis;
+      return this;
+    }
+
+    /**
+     * Sets how long formats learned from a host are used after its last request. Defaults to 10
+     * minutes.
+     */
+    public Builder setLearnedTtlMillis(long learnedTtlMillis) {
+      this.learnedTtlMillis = learnedTtlMillis;
+      return this;
+    }
+
+    /** Sets the maximum number of hosts to learn formats of. Defaults to 1000. */
+    public Builder setMaxLearnedHosts(int maxLearnedHosts) {
+      this.maxLearnedHosts = maxLearnedHosts;
+      return this;
+    }
+
+    public AdaptivePropagator build() {
+      return new AdaptivePropagator(this);
+    }
+
+    private static int parseFormats(String formats) {
+      int parsed = 0;
+      for (String format : formats.split("\\+")) {
+        switch (format.trim().toLowerCase(Locale.ROOT)) {
+          case "xray":
+            parsed |= FusedPropagator.XRAY;
+            break;
+          case "tracecontext":
+            parsed |= FusedPropagator.TRACE_CONTEXT;
+            break;
+          case "b3":
+            parsed |= FusedPropagator.B3;
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown propagation format: " + format);
+        }
+      }
+      return parsed;
+    }
+  }
+}
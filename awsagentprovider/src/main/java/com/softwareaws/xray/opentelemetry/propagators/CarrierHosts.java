@@ -0,0 +1,203 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.propagators;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Finds the peer of propagation carriers. Propagators only see carriers as objects, so peers are
+ * only read from the carrier types of known HTTP libraries: the URI or URL of outbound {@link
+ * URLConnection}s, Apache HttpClient's {@code HttpUriRequest}s, Spring's {@code HttpRequest}s and
+ * the JDK's {@code java.net.http.HttpRequest}s, and the remote address of inbound servlet requests.
+ * Other carriers have no known peer. {@link URLConnection} is read directly, and the accessors of
+ * the other types, which the agent can't link against, are resolved to a method handle once per
+ * carrier class.
+ */
+final class CarrierHosts {
+
+  // The public types declaring the accessors, by name, so none of them need to be loadable here.
+  private static final Map<String, String> OUTBOUND_ACCESSORS = new HashMap<>();
+  private static final Map<String, String> INBOUND_ACCESSORS = new HashMap<>();
+
+  static {
+    OUTBOUND_ACCESSORS.put("org.apache.http.client.methods.HttpUriRequest", "getURI");
+    OUTBOUND_ACCESSORS.put("org.springframework.http.HttpRequest", "getURI");
+    OUTBOUND_ACCESSORS.put("java.net.http.HttpRequest", "uri");
+    // The remote address, since the remote host may need a reverse DNS lookup.
+    INBOUND_ACCESSORS.put("javax.servlet.ServletRequest", "getRemoteAddr");
+    INBOUND_ACCESSORS.put("jakarta.servlet.ServletRequest", "getRemoteAddr");
+  }
+
+  private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+  private static final ClassValue<Accessor> OUTBOUND =
+      new ClassValue<Accessor>() {
+        @Override
+        protected Accessor computeValue(Class<?> type) {
+          return new Accessor(findAccessor(type, OUTBOUND_ACCESSORS));
+        }
+      };
+
+  private static final ClassValue<Accessor> INBOUND =
+      new ClassValue<Accessor>() {
+        @Override
+        protected Accessor computeValue(Class<?> type) {
+          return new Accessor(findAccessor(type, INBOUND_ACCESSORS));
+        }
+      };
+
+  /** Returns the host an outbound request carrier is sent to, or {@code null} if unknown. */
+  @Nullable
+  static String outboundHost(@Nullable Object carrier) {
+    if (carrier == null) {
+      return null;
+    }
+    Object target =
+        carrier instanceof URLConnection
+            ? ((URLConnection) carrier).getURL()
+            : OUTBOUND.get(carrier.getClass()).invoke(carrier);
+    if (target instanceof URI) {
+      return ((URI) target).getHost();
+    }
+    if (target instanceof URL) {
+      return ((URL) target).getHost();
+    }
+    return null;
+  }
+
+  /**
+   * Returns the IP address an inbound request carrier was sent from, in the form of {@link
+   * #ipAddress(String)}, or {@code null} if unknown.
+   */
+  @Nullable
+  static String inboundAddress(@Nullable Object carrier) {
+    if (carrier == null) {
+      return null;
+    }
+    Object address = INBOUND.get(carrier.getClass()).invoke(carrier);
+    return address instanceof String ? ipAddress((String) address) : null;
+  }
+
+  /**
+   * Returns {@code host} in the form {@link InetAddress#getHostAddress()} writes it if it is an IP
+   * address, or {@code null} if it is a host name. Host names are never resolved.
+   */
+  @Nullable
+  static String ipAddress(String host) {
+    if (host.startsWith("[") && host.endsWith("]")) {
+      host = host.substring(1, host.length() - 1);
+    }
+    if (host.isEmpty()) {
+      return null;
+    }
+    if (host.indexOf(':') < 0) {
+      return isIpv4Address(host) ? host : null;
+    }
+    for (int i = 0; i < host.length(); i++) {
+      char c = host.charAt(i);
+      if (Character.digit(c, 16) < 0 && c != ':' && c != '.' && c != '%') {
+        return null;
+      }
+    }
+    try {
+      // An IPv6 literal, which is parsed without a lookup.
+      return InetAddress.getByName(host).getHostAddress();
+    } catch (UnknownHostException | SecurityException e) {
+      return null;
+    }
+  }
+
+  private static boolean isIpv4Address(String host) {
+    int parts = 0;
+    int digits = 0;
+    for (int i = 0; i < host.length(); i++) {
+      char c = host.charAt(i);
+      if (c == '.') {
+        if (digits == 0) {
+          return false;
+        }
+        parts++;
+        digits = 0;
+      } else if (c >= '0' && c <= '9' && digits < 3) {
+        digits++;
+      } else {
+        return false;
+      }
+    }
+    return parts == 3 && digits > 0;
+  }
+
+  // Returns the accessor of the first known type the carrier class extends or implements.
+  @Nullable
+  private static MethodHandle findAccessor(Class<?> type, Map<String, String> accessors) {
+    for (Class<?> current = type; current != null; current = current.getSuperclass()) {
+      String name = accessors.get(current.getName());
+      if (name != null) {
+        return accessor(current, name);
+      }
+      for (Class<?> implemented : current.getInterfaces()) {
+        MethodHandle accessor = findAccessor(implemented, accessors);
+        if (accessor != null) {
+          return accessor;
+        }
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private static MethodHandle accessor(Class<?> type, String name) {
+    try {
+      return MethodHandles.publicLookup().unreflect(type.getMethod(name)).asType(ACCESSOR_TYPE);
+    } catch (NoSuchMethodException | IllegalAccessException | SecurityException e) {
+      return null;
+    }
+  }
+
+  private static final class Accessor {
+    @Nullable private final MethodHandle handle;
+
+    Accessor(@Nullable MethodHandle handle) {
+      this.handle = handle;
+    }
+
+    @Nullable
+    Object invoke(Object carrier) {
+      if (handle == null) {
+        return null;
+      }
+      try {
+        return (Object) handle.invokeExact(carrier);
+      } catch (Error e) {
+        throw e;
+      } catch (Throwable t) {
+        return null;
+      }
+    }
+  }
+
+  private CarrierHosts() {}
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.propagators;
+
+import io.grpc.Context;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import io.opentelemetry.trace.DefaultSpan;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.TraceState;
+import io.opentelemetry.trace.TracingContextUtils;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link TextMapPropagator} for the X-Ray, W3C trace context and B3 multiple header formats,
+ * equivalent to combining {@code AwsXRayPropagator}, {@code HttpTraceContext} and {@code
+ * B3Propagator.getMultipleHeaderPropagator()} in that order, as {@code
+ * otel.propagators=xray,tracecontext,b3} does.
+ *
+ * <p>Combined propagators each look up the current span and format its IDs, and each extract their
+ * headers in turn with later formats replacing earlier ones. This reads the span context once and
+ * copies its IDs straight into each header, and extracts the formats from last to first, stopping
+ * at the first valid one without reading or parsing the headers it would replace.
+ */
+public final class FusedPropagator implements TextMapPropagator {
+
+  static final String XRAY_HEADER = "X-Amzn-Trace-Id";
+  static final String TRACE_PARENT = "traceparent";
+  static final String TRACE_STATE = "tracestate";
+  static final String B3_TRACE_ID = "X-B3-TraceId";
+  static final String B3_SPAN_ID = "X-B3-SpanId";
+  static final String B3_SAMPLED = "X-B3-Sampled";
+
+  // Bits of the formats to inject, and of the formats found in a carrier.
+  static final int XRAY = 1;
+  static final int TRACE_CONTEXT = 1 << 1;
+  static final int B3 = 1 << 2;
+  static final int ALL_FORMATS = XRAY | TRACE_CONTEXT | B3;
+
+  private static final List<String> FIELDS =
+      Collections.unmodifiableList(
+          Arrays.asList(
+              XRAY_HEADER, TRACE_PARENT, TRACE_STATE, B3_TRACE_ID, B3_SPAN_ID, B3_SAMPLED));
+
+  private static final byte FLAGS_DEFAULT = 0;
+  private static final byte FLAGS_SAMPLED = 1;
+
+  private static final int TRACE_ID_LENGTH = 32;
+  private static final int SPAN_ID_LENGTH = 16;
+
+  // 00-<trace ID>-<span ID>-<flags>
+  private static final int TRACE_PARENT_TRACE_ID = 3;
+  private static final int TRACE_PARENT_SPAN_ID = TRACE_PARENT_TRACE_ID + TRACE_ID_LENGTH + 1;
+  private static final int TRACE_PARENT_FLAGS = TRACE_PARENT_SPAN_ID + SPAN_ID_LENGTH + 1;
+  private static final int TRACE_PARENT_LENGTH = TRACE_PARENT_FLAGS + 2;
+  private static final int TRACE_STATE_MAX_MEMBERS = 32;
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private static final ThreadLocal<XrayTraceHeader> XRAY_HEADERS =
+      new ThreadLocal<XrayTraceHeader>() {
+        @Override
+        protected XrayTraceHeader initialValue() {
+          return new XrayTraceHeader();
+        }
+      };
+
+  private static final FusedPropagator INSTANCE = new FusedPropagator();
+
+  /** Returns the {@link FusedPropagator}. */
+  public static FusedPropagator getInstance() {
+    return INSTANCE;
+  }
+
+  private FusedPropagator() {}
+
+  @Override
+  public List<String> fields() {
+    return FIELDS;
+  }
+
+  @Override
+  public <C> void inject(Context context, @Nullable C carrier, Setter<C> setter) {
+    inject(context, carrier, setter, ALL_FORMATS);
+  }
+
+  <C> void inject(Context context, @Nullable C carrier, Setter<C> setter, int formats) {
+    SpanContext spanContext = TracingContextUtils.getSpan(context).getContext();
+    if (!spanContext.isValid()) {
+      return;
+    }
+    String traceId = spanContext.getTraceIdAsHexString();
+    String spanId = spanContext.getSpanIdAsHexString();
+    boolean sampled = spanContext.isSampled();
+
+    if ((formats & XRAY) != 0) {
+      XrayTraceHeader xrayHeader = XRAY_HEADERS.get();
+      int xrayLength = xrayHeader.format(traceId, spanId, sampled);
+      setter.set(carrier, XRAY_HEADER, new String(xrayHeader.buffer(), 0, xrayLength));
+    }
+
+    if ((formats & TRACE_CONTEXT) != 0) {
+      injectTraceContext(traceId, spanId, spanContext, carrier, setter);
+    }
+
+    if ((formats & B3) != 0) {
+      setter.set(carrier, B3_TRACE_ID, traceId);
+      setter.set(carrier, B3_SPAN_ID, spanId);
+      setter.set(carrier, B3_SAMPLED, sampled ? "1" : "0");
+    }
+  }
+
+  @Override
+  public <C> Context extract(Context context, @Nullable C carrier, Getter<C> getter) {
+    SpanContext spanContext = extractB3(carrier, getter);
+    if (spanContext == null) {
+      spanContext = extractTraceContext(carrier, getter);
+    }
+    if (spanContext == null) {
+      spanContext = extractXray(carrier, getter);
+    }
+    if (spanContext == null) {
+      return context;
+    }
+    return TracingContextUtils.withSpan(DefaultSpan.create(spanContext), context);
+  }
+
+  // Returns the formats with a header in the carrier, whether valid or not.
+  <C> int formatsIn(@Nullable C carrier, Getter<C> getter) {
+    int formats = 0;
+    if (getter.get(carrier, XRAY_HEADER) != null) {
+      formats |= XRAY;
+    }
+    if (getter.get(carrier, TRACE_PARENT) != null) {
+      formats |= TRACE_CONTEXT;
+    }
+    if (getter.get(carrier, B3_TRACE_ID) != null) {
+      formats |= B3;
+    }
+    return formats;
+  }
+
+  private static <C> void injectTraceContext(
+      String traceId,
+      String spanId,
+      SpanContext spanContext,
+      @Nullable C carrier,
+      Setter<C> setter) {
+    char[] traceParent = new char[TRACE_PARENT_LENGTH];
+    traceParent[0] = '0';
+    traceParent[1] = '0';
+    traceParent[TRACE_PARENT_TRACE_ID - 1] = '-';
+    traceId.getChars(0, TRACE_ID_LENGTH, traceParent, TRACE_PARENT_TRACE_ID);
+    traceParent[TRACE_PARENT_SPAN_ID - 1] = '-';
+    spanId.getChars(0, SPAN_ID_LENGTH, traceParent, TRACE_PARENT_SPAN_ID);
+    traceParent[TRACE_PARENT_FLAGS - 1] = '-';
+    byte flags = spanContext.getTraceFlags();
+    traceParent[TRACE_PARENT_FLAGS] = HEX[(flags >> 4) & 0xF];
+    traceParent[TRACE_PARENT_FLAGS + 1] = HEX[flags & 0xF];
+    setter.set(carrier, TRACE_PARENT, new String(traceParent));
+    List<TraceState.Entry> entries = spanContext.getTraceState().getEntries();
+    if (!entries.isEmpty()) {
+      setter.set(carrier, TRACE_STATE, toTraceStateHeader(entries));
+    }
+  }
+
+  private static String toTraceStateHeader(List<TraceState.Entry> entries) {
+    StringBuilder header = new StringBuilder();
+    for (TraceState.Entry entry : entries) {
+      if (header.length() > 0) {
+        header.append(',');
+      }
+      header.append(entry.getKey()).append('=').append(entry.getValue());
+    }
+    return header.toString();
+  }
+
+  @Nullable
+  private static <C> SpanContext extractB3(@Nullable C carrier, Getter<C> getter) {
+    String traceId = getter.get(carrier, B3_TRACE_ID);
+    if (traceId == null) {
+      return null;
+    }
+    if (traceId.length() == SPAN_ID_LENGTH) {
+      // 64-bit B3 trace IDs are padded to 128 bits.
+      traceId = "0000000000000000" + traceId;
+    }
+    String spanId = getter.get(carrier, B3_SPAN_ID);
+    if (!isHex(traceId, TRACE_ID_LENGTH) || !isHex(spanId, SPAN_ID_LENGTH)) {
+      return null;
+    }
+    String sampled = getter.get(carrier, B3_SAMPLED);
+    boolean isSampled = "1".equals(sampled) || "true".equals(sampled);
+    return validOrNull(
+        SpanContext.createFromRemoteParent(
+            traceId, spanId, isSampled ? FLAGS_SAMPLED : FLAGS_DEFAULT, TraceState.getDefault()));
+  }
+
+  @Nullable
+  private static <C> SpanContext extractTraceContext(@Nullable C carrier, Getter<C> getter) {
+    String traceParent = getter.get(carrier, TRACE_PARENT);
+    if (traceParent == null || traceParent.length() < TRACE_PARENT_LENGTH) {
+      return null;
+    }
+    // Later versions may append fields, version ff is invalid.
+    String version = traceParent.substring(0, 2);
+    boolean hasMoreFields = traceParent.length() > TRACE_PARENT_LENGTH;
+    if (hasMoreFields
+        && (version.equals("00") || traceParent.charAt(TRACE_PARENT_LENGTH) != '-')) {
+      return null;
+    }
+    if (!isHex(version, 0, 2)
+        || version.equals("ff")
+        || traceParent.charAt(TRACE_PARENT_TRACE_ID - 1) != '-'
+        || traceParent.charAt(TRACE_PARENT_SPAN_ID - 1) != '-'
+        || traceParent.charAt(TRACE_PARENT_FLAGS - 1) != '-'
+        || !isHex(traceParent, TRACE_PARENT_TRACE_ID, TRACE_ID_LENGTH)
+        || !isHex(traceParent, TRACE_PARENT_SPAN_ID, SPAN_ID_LENGTH)
+        || !isHex(traceParent, TRACE_PARENT_FLAGS, 2)) {
+      return null;
+    }
+    byte flags =
+        (byte)
+            (Character.digit(traceParent.charAt(TRACE_PARENT_FLAGS), 16) << 4
+                | Character.digit(traceParent.charAt(TRACE_PARENT_FLAGS + 1), 16));
+    return validOrNull(
+        SpanContext.createFromRemoteParent(
+            traceParent.substring(TRACE_PARENT_TRACE_ID, TRACE_PARENT_SPAN_ID - 1),
+            traceParent.substring(TRACE_PARENT_SPAN_ID, TRACE_PARENT_FLAGS - 1),
+            flags,
+            parseTraceState(getter.get(carrier, TRACE_STATE))));
+  }
+
+  // Like HttpTraceContext, an invalid trace state is dropped without dropping the span context.
+  private static TraceState parseTraceState(@Nullable String header) {
+    if (header == null || header.isEmpty()) {
+      return TraceState.getDefault();
+    }
+    String[] members = header.split(",");
+    if (members.length > TRACE_STATE_MAX_MEMBERS) {
+      return TraceState.getDefault();
+    }
+    TraceState.Builder builder = TraceState.builder();
+    try {
+      // The builder adds entries to the front, so add them in reverse to keep their order.
+      for (int i = members.length - 1; i >= 0; i--) {
+        String member = members[i].trim();
+        int separator = member.indexOf('=');
+        if (separator <= 0) {
+          return TraceState.getDefault();
+        }
+        builder.set(member.substring(0, separator), member.substring(separator + 1));
+      }
+    } catch (IllegalArgumentException e) {
+      return TraceState.getDefault();
+    }
+    return builder.build();
+  }
+
+  @Nullable
+  private static <C> SpanContext extractXray(@Nullable C carrier, Getter<C> getter) {
+    String header = getter.get(carrier, XRAY_HEADER);
+    if (header == null) {
+      return null;
+    }
+    XrayTraceHeader xrayHeader = XRAY_HEADERS.get();
+    if (!xrayHeader.parse(header) || !xrayHeader.hasParent()) {
+      return null;
+    }
+    byte flags =
+        xrayHeader.getSampling() == XrayTraceHeader.Sampling.SAMPLED
+            ? FLAGS_SAMPLED
+            : FLAGS_DEFAULT;
+    return validOrNull(
+        SpanContext.createFromRemoteParent(
+            xrayHeader.getTraceIdAsHexString(),
+            xrayHeader.getParentIdAsHexString(),
+            flags,
+            TraceState.getDefault()));
+  }
+
+  @Nullable
+  private static SpanContext validOrNull(SpanContext spanContext) {
+    return spanContext.isValid() ? spanContext : null;
+  }
+
+  // Whether the value is exactly length lower case hex digits.
+  private static boolean isHex(@Nullable String value, int length) {
+    return value != null && value.length() == length && isHex(value, 0, length);
+  }
+
+  // Whether the value has length lower case hex digits from start.
+  private static boolean isHex(String value, int start, int length) {
+    if (value.length() < start + length) {
+      return false;
+    }
+    for (int i = start; i < start + length; i++) {
+      char c = value.charAt(i);
+      if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
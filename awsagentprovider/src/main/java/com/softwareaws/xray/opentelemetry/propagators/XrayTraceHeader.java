@@ -0,0 +1,352 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.propagators;
+
+import javax.annotation.Nullable;
+
+/**
+ * Parses and formats {@code X-Amzn-Trace-Id} headers without allocating. Headers are scanned in
+ * place by index and their IDs decoded with a lookup table, and headers are formatted into a char
+ * buffer owned by the codec. Fields other than {@code Root}, {@code Parent} and {@code Sampled},
+ * like {@code Lineage} or {@code Self}, are kept as bounds into the parsed header and only copied
+ * when requested. An instance holds the last parsed header and is not thread safe, so it is meant
+ * to be reused by a single thread.
+ */
+public final class XrayTraceHeader {
+
+  /** The value of a header's {@code Sampled} field. */
+  public enum Sampling {
+    SAMPLED,
+    NOT_SAMPLED,
+    /** {@code Sampled=?}, the receiver is asked to make the sampling decision. */
+    REQUESTED,
+    /** No or an unrecognized {@code Sampled} field. */
+    UNKNOWN,
+  }
+
+  private static final String ROOT = "Root";
+  private static final String PARENT = "Parent";
+  private static final String SAMPLED = "Sampled";
+
+  private static final int EPOCH_LENGTH = 8;
+  private static final int TRACE_ID_LENGTH = 32;
+  private static final int PARENT_ID_LENGTH = 16;
+  // 1-<epoch>-<unique ID>
+  private static final int ROOT_LENGTH = 2 + TRACE_ID_LENGTH + 1;
+  private static final int UNIQUE_ID_OFFSET = 2 + EPOCH_LENGTH + 1;
+
+  // Root=1-<epoch>-<unique ID>;Parent=<parent ID>;Sampled=<0 or 1>
+  private static final String ROOT_PREFIX = "Root=1-";
+  private static final String PARENT_PREFIX = ";Parent=";
+  private static final String SAMPLED_PREFIX = ";Sampled=";
+  private static final int FORMATTED_EPOCH = ROOT_PREFIX.length();
+  private static final int FORMATTED_UNIQUE_ID = FORMATTED_EPOCH + EPOCH_LENGTH + 1;
+  private static final int FORMATTED_PARENT_ID =
+      FORMATTED_UNIQUE_ID + TRACE_ID_LENGTH - EPOCH_LENGTH + PARENT_PREFIX.length();
+  private static final int FORMATTED_SAMPLED =
+      FORMATTED_PARENT_ID + PARENT_ID_LENGTH + SAMPLED_PREFIX.length();
+
+  /** The length of headers formatted by {@link #format}. */
+  public static final int FORMATTED_LENGTH = FORMATTED_SAMPLED + 1;
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  // The value of each lower case hex digit, and -1 for every other ASCII character.
+  private static final byte[] HEX_VALUES = new byte[128];
+
+  static {
+    for (int i = 0; i < HEX_VALUES.length; i++) {
+      HEX_VALUES[i] = -1;
+    }
+    for (int i = 0; i < HEX_DIGITS.length; i++) {
+      HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+    }
+  }
+
+  private final char[] buffer = new char[FORMATTED_LENGTH];
+
+  private CharSequence header = "";
+  private int rootStart;
+  private int parentStart;
+  private long traceIdHigh;
+  private long traceIdLow;
+  private long parentId;
+  private Sampling sampling = Sampling.UNKNOWN;
+  // The start and end index of each extra field.
+  private int[] extraFields = new int[8];
+  private int extraFieldCount;
+
+  // The value decoded by the last successful decodeHex.
+  private long decoded;
+
+  /**
+   * Parses {@code header}, returning whether it has a valid {@code Root} field and, if present, a
+   * valid {@code Parent} field. The header is retained until the next call, so extra fields can be
+   * read from it.
+   */
+  public boolean parse(CharSequence header) {
+    this.header = header;
+    rootStart = -1;
+    parentStart = -1;
+    traceIdHigh = 0;
+    traceIdLow = 0;
+    parentId = 0;
+    sampling = Sampling.UNKNOWN;
+    extraFieldCount = 0;
+
+    boolean valid = true;
+    int length = header.length();
+    int start = 0;
+    while (start <= length && valid) {
+      int end = indexOf(header, ';', start, length);
+      if (end < 0) {
+        end = length;
+      }
+      valid = parseField(skipWhitespace(start, end), trimWhitespace(start, end));
+      start = end + 1;
+    }
+    return valid && rootStart >= 0;
+  }
+
+  /** Returns the upper 64 bits of the parsed trace ID, the epoch and first unique ID digits. */
+  public long getTraceIdHigh() {
+    return traceIdHigh;
+  }
+
+  /** Returns the lower 64 bits of the parsed trace ID. */
+  public long getTraceIdLow() {
+    return traceIdLow;
+  }
+
+  /**
+   * Returns the trace ID of a successfully parsed header as 32 hex digits, the OpenTelemetry form
+   * of X-Ray trace IDs.
+   */
+  public String getTraceIdAsHexString() {
+    char[] traceId = new char[TRACE_ID_LENGTH];
+    for (int i = 0; i < EPOCH_LENGTH; i++) {
+      traceId[i] = header.charAt(rootStart + 2 + i);
+    }
+    for (int i = EPOCH_LENGTH; i < TRACE_ID_LENGTH; i++) {
+      traceId[i] = header.charAt(rootStart + UNIQUE_ID_OFFSET + i - EPOCH_LENGTH);
+    }
+    return new String(traceId);
+  }
+
+  /** Returns whether the parsed header has a {@code Parent} field. */
+  public boolean hasParent() {
+    return parentStart >= 0;
+  }
+
+  /** Returns the parsed parent ID, or 0 if the header has none. */
+  public long getParentId() {
+    return parentId;
+  }
+
+  /** Returns the parsed parent ID as 16 hex digits, or {@code null} if the header has none. */
+  @Nullable
+  public String getParentIdAsHexString() {
+    if (parentStart < 0) {
+      return null;
+    }
+    return header.subSequence(parentStart, parentStart + PARENT_ID_LENGTH).toString();
+  }
+
+  /** Returns the parsed {@code Sampled} field. */
+  public Sampling getSampling() {
+    return sampling;
+  }
+
+  /** Returns the number of fields other than {@code Root}, {@code Parent} and {@code Sampled}. */
+  public int getExtraFieldCount() {
+    return extraFieldCount;
+  }
+
+  /** Returns the extra field at {@code index} as it appears in the header, like {@code Self=1}. */
+  public CharSequence getExtraField(int index) {
+    if (index < 0 || index >= extraFieldCount) {
+      throw new IndexOutOfBoundsException("Extra field " + index + " of " + extraFieldCount);
+    }
+    return header.subSequence(extraFields[index * 2], extraFields[index * 2 + 1]);
+  }
+
+  /**
+   * Formats a header with the given IDs into {@link #buffer()}, returning its length. The trace ID
+   * must be 32 and the parent ID 16 lower case hex digits.
+   */
+  public int format(CharSequence traceIdHex, CharSequence parentIdHex, boolean sampled) {
+    writePrefixes(sampled);
+    for (int i = 0; i < EPOCH_LENGTH; i++) {
+      buffer[FORMATTED_EPOCH + i] = traceIdHex.charAt(i);
+    }
+    for (int i = EPOCH_LENGTH; i < TRACE_ID_LENGTH; i++) {
+      buffer[FORMATTED_UNIQUE_ID + i - EPOCH_LENGTH] = traceIdHex.charAt(i);
+    }
+    for (int i = 0; i < PARENT_ID_LENGTH; i++) {
+      buffer[FORMATTED_PARENT_ID + i] = parentIdHex.charAt(i);
+    }
+    return FORMATTED_LENGTH;
+  }
+
+  /** Formats a header with the given IDs into {@link #buffer()}, returning its length. */
+  public int format(long traceIdHigh, long traceIdLow, long parentId, boolean sampled) {
+    writePrefixes(sampled);
+    writeHex(traceIdHigh >>> 32, EPOCH_LENGTH, FORMATTED_EPOCH);
+    writeHex(traceIdHigh, EPOCH_LENGTH, FORMATTED_UNIQUE_ID);
+    writeHex(traceIdLow, PARENT_ID_LENGTH, FORMATTED_UNIQUE_ID + EPOCH_LENGTH);
+    writeHex(parentId, PARENT_ID_LENGTH, FORMATTED_PARENT_ID);
+    return FORMATTED_LENGTH;
+  }
+
+  /** Returns the buffer headers are formatted into, reused by every call to {@link #format}. */
+  public char[] buffer() {
+    return buffer;
+  }
+
+  // Returns false if a known field has an invalid value.
+  private boolean parseField(int start, int end) {
+    if (start >= end) {
+      return true;
+    }
+    int separator = indexOf(header, '=', start, end);
+    if (separator < 0) {
+      addExtraField(start, end);
+      return true;
+    }
+    int keyEnd = trimWhitespace(start, separator);
+    int valueStart = skipWhitespace(separator + 1, end);
+    int valueLength = end - valueStart;
+    if (regionEquals(start, keyEnd, ROOT)) {
+      if (valueLength != ROOT_LENGTH
+          || header.charAt(valueStart) != '1'
+          || header.charAt(valueStart + 1) != '-'
+          || header.charAt(valueStart + UNIQUE_ID_OFFSET - 1) != '-'
+          || !decodeHex(valueStart + 2, EPOCH_LENGTH)) {
+        return false;
+      }
+      long epoch = decoded;
+      if (!decodeHex(valueStart + UNIQUE_ID_OFFSET, EPOCH_LENGTH)) {
+        return false;
+      }
+      traceIdHigh = epoch << 32 | decoded;
+      if (!decodeHex(valueStart + UNIQUE_ID_OFFSET + EPOCH_LENGTH, PARENT_ID_LENGTH)) {
+        return false;
+      }
+      traceIdLow = decoded;
+      rootStart = valueStart;
+    } else if (regionEquals(start, keyEnd, PARENT)) {
+      if (valueLength != PARENT_ID_LENGTH || !decodeHex(valueStart, PARENT_ID_LENGTH)) {
+        return false;
+      }
+      parentId = decoded;
+      parentStart = valueStart;
+    } else if (regionEquals(start, keyEnd, SAMPLED)) {
+      sampling = Sampling.UNKNOWN;
+      if (valueLength == 1) {
+        char value = header.charAt(valueStart);
+        if (value == '1') {
+          sampling = Sampling.SAMPLED;
+        } else if (value == '0') {
+          sampling = Sampling.NOT_SAMPLED;
+        } else if (value == '?') {
+          sampling = Sampling.REQUESTED;
+        }
+      }
+    } else {
+      addExtraField(start, end);
+    }
+    return true;
+  }
+
+  private void addExtraField(int start, int end) {
+    if (extraFieldCount * 2 == extraFields.length) {
+      int[] grown = new int[extraFields.length * 2];
+      System.arraycopy(extraFields, 0, grown, 0, extraFields.length);
+      extraFields = grown;
+    }
+    extraFields[extraFieldCount * 2] = start;
+    extraFields[extraFieldCount * 2 + 1] = end;
+    extraFieldCount++;
+  }
+
+  // Decodes length lower case hex digits into decoded, returning false if any is invalid. Invalid
+  // digits are accumulated and checked once, instead of branching on each.
+  private boolean decodeHex(int start, int length) {
+    long value = 0;
+    int invalid = 0;
+    for (int i = start; i < start + length; i++) {
+      char c = header.charAt(i);
+      int digit = c < HEX_VALUES.length ? HEX_VALUES[c] : -1;
+      invalid |= digit;
+      value = value << 4 | (digit & 0xF);
+    }
+    decoded = value;
+    return invalid >= 0;
+  }
+
+  private void writePrefixes(boolean sampled) {
+    ROOT_PREFIX.getChars(0, ROOT_PREFIX.length(), buffer, 0);
+    buffer[FORMATTED_UNIQUE_ID - 1] = '-';
+    PARENT_PREFIX.getChars(
+        0, PARENT_PREFIX.length(), buffer, FORMATTED_PARENT_ID - PARENT_PREFIX.length());
+    SAMPLED_PREFIX.getChars(
+        0, SAMPLED_PREFIX.length(), buffer, FORMATTED_SAMPLED - SAMPLED_PREFIX.length());
+    buffer[FORMATTED_SAMPLED] = sampled ? '1' : '0';
+  }
+
+  // Writes the lower digits hex digits of value at offset.
+  private void writeHex(long value, int digits, int offset) {
+    for (int i = digits - 1; i >= 0; i--) {
+      buffer[offset + i] = HEX_DIGITS[(int) (value & 0xF)];
+      value >>>= 4;
+    }
+  }
+
+  private boolean regionEquals(int start, int end, String value) {
+    if (end - start != value.length()) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      if (header.charAt(start + i) != value.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int skipWhitespace(int start, int end) {
+    while (start < end && header.charAt(start) == ' ') {
+      start++;
+    }
+    return start;
+  }
+
+  private int trimWhitespace(int start, int end) {
+    while (end > start && header.charAt(end - 1) == ' ') {
+      end--;
+    }
+    return end;
+  }
+
+  private static int indexOf(CharSequence value, char c, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (value.charAt(i) == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.resources;
+
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.resources.Resource;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Detects the AWS environment the application runs in. All detectors run in parallel, each with its
+ * own timeout and all within one overall deadline, so startup off AWS never waits for a sequence
+ * of connection timeouts.
+ */
+public final class AwsResourceDetection {
+
+  private static final Logger logger = Logger.getLogger(AwsResourceDetection.class.getName());
+
+  /**
+   * Returns a {@link Resource} describing the AWS environment, or an empty {@link Resource} if none
+   * is detected before the deadline. If {@code cacheFile} is set, attributes detected earlier on
+   * the same host are read from it instead of detecting them again.
+   */
+  public static Resource detect(
+      @Nullable String imdsEndpointOverride,
+      @Nullable String cacheFile,
+      int detectorTimeoutMillis,
+      long deadlineMillis) {
+    ResourceCache cache = null;
+    String identity = null;
+    if (cacheFile != null) {
+      identity = ResourceCache.currentIdentity();
+      if (identity != null) {
+        cache = new ResourceCache(Paths.get(cacheFile));
+      }
+    }
+
+    Map<String, String> attributes = cache != null ? cache.read(identity) : null;
+    if (attributes == null) {
+      attributes =
+          new AwsResourceDetection(defaultDetectors(imdsEndpointOverride))
+              .detectAttributes(detectorTimeoutMillis, deadlineMillis);
+      // Only successful detection is cached, since failures may be transient.
+      if (cache != null && !attributes.isEmpty()) {
+        cache.write(identity, attributes);
+      }
+    }
+
+    Attributes.Builder builder = Attributes.newBuilder();
+    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+      builder.setAttribute(attribute.getKey(), attribute.getValue());
+    }
+    return Resource.create(builder.build());
+  }
+
+  // Detectors of more specific environments come later, so their attributes win. EKS and ECS on
+  // EC2 and Beanstalk environments all run on EC2 instances.
+  private static List<ResourceDetector> defaultDetectors(@Nullable String imdsEndpointOverride) {
+    Map<String, String> environment = System.getenv();
+    return Arrays.asList(
+        new Ec2ResourceDetector(
+            imdsEndpointOverride,
+            environment,
+            Paths.get("/sys/devices/virtual/dmi/id/sys_vendor"),
+            Paths.get("/sys/hypervisor/uuid")),
+        new BeanstalkResourceDetector(Paths.get("/var/elasticbeanstalk/xray/environment.conf")),
+        new EcsResourceDetector(environment, Paths.get("/proc/self/cgroup")),
+        new EksResourceDetector(
+            environment,
+            Paths.get("/var/run/secrets/kubernetes.io/serviceaccount/token"),
+            Paths.get("/proc/self/cgroup")));
+  }
+
+  private final List<ResourceDetector> detectors;
+
+  // Visible for testing
+  AwsResourceDetection(List<ResourceDetector> detectors) {
+    this.detectors = detectors;
+  }
+
+  // Visible for testing
+  Map<String, String> detectAttributes(final int detectorTimeoutMillis, long deadlineMillis) {
+    long startNanos = System.nanoTime();
+    long detectorDeadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(detectorTimeoutMillis);
+    long overallDeadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            detectors.size(),
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "aws-otel-resource-detector");
+                thread.setDaemon(true);
+                return thread;
+              }
+            });
+    try {
+      List<Future<Map<String, String>>> futures = new ArrayList<>(detectors.size());
+      for (final ResourceDetector detector : detectors) {
+        futures.add(
+            executor.submit(
+                new Callable<Map<String, String>>() {
+                  @Override
+                  public Map<String, String> call() throws Exception {
+                    return detector.detect(detectorTimeoutMillis);
+                  }
+                }));
+      }
+
+      Map<String, String> attributes = new LinkedHashMap<>();
+      for (int i = 0; i < detectors.size(); i++) {
+        Future<Map<String, String>> future = futures.get(i);
+        long waitNanos = Math.min(detectorDeadlineNanos, overallDeadlineNanos) - System.nanoTime();
+        try {
+          attributes.putAll(future.get(Math.max(0, waitNanos), TimeUnit.NANOSECONDS));
+        } catch (TimeoutException e) {
+          future.cancel(true);
+          logger.log(Level.FINE, "Resource detector {0} timed out.", detectors.get(i).name());
+        } catch (ExecutionException e) {
+          logger.log(
+              Level.FINE,
+              "Resource detector " + detectors.get(i).name() + " failed.",
+              e.getCause());
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+      return attributes;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
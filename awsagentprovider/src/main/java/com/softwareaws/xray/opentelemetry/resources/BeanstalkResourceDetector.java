@@ -0,0 +1,60 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.resources;
+
+import com.softwareaws.xray.opentelemetry.internal.JsonReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Detects an Elastic Beanstalk environment from the configuration file Beanstalk provisions. */
+final class BeanstalkResourceDetector implements ResourceDetector {
+
+  private final Path configFile;
+
+  BeanstalkResourceDetector(Path configFile) {
+    this.configFile = configFile;
+  }
+
+  @Override
+  public String name() {
+    return "beanstalk";
+  }
+
+  @Override
+  public Map<String, String> detect(int timeoutMillis) throws IOException {
+    if (!Files.isRegularFile(configFile)) {
+      return Collections.emptyMap();
+    }
+
+    Map<String, Object> config = JsonReader.readObject(Files.readAllBytes(configFile));
+    Map<String, String> attributes = new LinkedHashMap<>();
+    attributes.put("cloud.provider", "aws");
+    attributes.put("cloud.platform", "aws_elastic_beanstalk");
+    Object deploymentId = config.get("deployment_id");
+    if (deploymentId != null) {
+      attributes.put("service.instance.id", String.valueOf(deploymentId));
+    }
+    DetectorUtil.putIfNotNull(
+        attributes, "service.version", JsonReader.getString(config, "version_label"));
+    DetectorUtil.putIfNotNull(
+        attributes, "service.namespace", JsonReader.getString(config, "environment_name"));
+    return attributes;
+  }
+}
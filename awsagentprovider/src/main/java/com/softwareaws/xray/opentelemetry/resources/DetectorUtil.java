@@ -0,0 +1,110 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.resources;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+final class DetectorUtil {
+
+  private static final int CONTAINER_ID_LENGTH = 64;
+
+  /** Returns the trimmed contents of a small file, or {@code null} if it cannot be read. */
+  @Nullable
+  static String readFile(Path path) {
+    try {
+      return new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim();
+    } catch (IOException | SecurityException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the container ID from a cgroup file like {@code /proc/self/cgroup}, where the lines of
+   * containerized processes end with the 64 character hex ID of the container.
+   */
+  @Nullable
+  static String containerIdFromCgroup(Path cgroup) {
+    String contents = readFile(cgroup);
+    if (contents == null) {
+      return null;
+    }
+    for (String line : contents.split("\n")) {
+      String trimmed = line.trim();
+      if (trimmed.endsWith(".scope")) {
+        trimmed = trimmed.substring(0, trimmed.length() - ".scope".length());
+      }
+      if (trimmed.length() > CONTAINER_ID_LENGTH) {
+        String candidate = trimmed.substring(trimmed.length() - CONTAINER_ID_LENGTH);
+        if (isHex(candidate)) {
+          return candidate;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the container ID from a mount table like {@code /proc/self/mountinfo}, where container
+   * runtimes mount files like {@code /etc/hostname} from a directory named after the container,
+   * e.g. {@code /var/lib/docker/containers/<id>/hostname}.
+   */
+  @Nullable
+  static String containerIdFromMountinfo(Path mountinfo) {
+    String contents = readFile(mountinfo);
+    if (contents == null) {
+      return null;
+    }
+    for (String line : contents.split("\n")) {
+      // The fourth field is the root of the mount in its file system, the fifth its mount point.
+      String[] fields = line.split(" ");
+      if (fields.length < 5
+          || !(fields[4].equals("/etc/hostname")
+              || fields[4].equals("/etc/hosts")
+              || fields[4].equals("/etc/resolv.conf"))) {
+        continue;
+      }
+      for (String segment : fields[3].split("/")) {
+        if (segment.length() == CONTAINER_ID_LENGTH && isHex(segment)) {
+          return segment;
+        }
+      }
+    }
+    return null;
+  }
+
+  static void putIfNotNull(Map<String, String> map, String key, @Nullable String value) {
+    if (value != null && !value.isEmpty()) {
+      map.put(key, value);
+    }
+  }
+
+  private static boolean isHex(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private DetectorUtil() {}
+}
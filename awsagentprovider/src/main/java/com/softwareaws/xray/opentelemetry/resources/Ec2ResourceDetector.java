@@ -0,0 +1,140 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.resources;
+
+import com.softwareaws.xray.opentelemetry.internal.JsonReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Detects an EC2 instance using the instance metadata service (IMDS). Where the environment shows
+ * there is no IMDS to ask, like on Fargate or Lambda or on hardware which isn't EC2's, detection
+ * returns immediately instead of waiting for the request to time out.
+ */
+final class Ec2ResourceDetector implements ResourceDetector {
+
+  private static final String DEFAULT_ENDPOINT = "169.254.169.254";
+
+  private final String endpoint;
+  private final boolean endpointOverridden;
+  private final Map<String, String> environment;
+  // Files identifying the hardware on Linux. On Nitro instances the DMI vendor is "Amazon EC2", and
+  // on Xen instances the hypervisor UUID starts with "ec2".
+  private final Path sysVendorFile;
+  private final Path hypervisorUuidFile;
+
+  Ec2ResourceDetector(
+      @Nullable String endpointOverride,
+      Map<String, String> environment,
+      Path sysVendorFile,
+      Path hypervisorUuidFile) {
+    String endpoint = endpointOverride != null ? endpointOverride : DEFAULT_ENDPOINT;
+    this.endpoint = endpoint.startsWith("http") ? endpoint : "http://" + endpoint;
+    this.endpointOverridden = endpointOverride != null;
+    this.environment = environment;
+    this.sysVendorFile = sysVendorFile;
+    this.hypervisorUuidFile = hypervisorUuidFile;
+  }
+
+  @Override
+  public String name() {
+    return "ec2";
+  }
+
+  @Override
+  public Map<String, String> detect(int timeoutMillis) throws IOException {
+    if (hasNoImds() || (!endpointOverridden && isKnownNotEc2())) {
+      return Collections.emptyMap();
+    }
+
+    Map<String, String> headers = new LinkedHashMap<>();
+    String token = fetchToken(timeoutMillis);
+    if (token != null) {
+      headers.put("X-aws-ec2-metadata-token", token);
+    }
+
+    Map<String, Object> identity =
+        JsonReader.readObject(
+            HttpMetadata.fetch(
+                "GET",
+                endpoint + "/latest/dynamic/instance-identity/document",
+                headers,
+                timeoutMillis));
+
+    Map<String, String> attributes = new LinkedHashMap<>();
+    attributes.put("cloud.provider", "aws");
+    attributes.put("cloud.platform", "aws_ec2");
+    DetectorUtil.putIfNotNull(
+        attributes, "cloud.account.id", JsonReader.getString(identity, "accountId"));
+    DetectorUtil.putIfNotNull(attributes, "cloud.region", JsonReader.getString(identity, "region"));
+    DetectorUtil.putIfNotNull(
+        attributes, "cloud.zone", JsonReader.getString(identity, "availabilityZone"));
+    DetectorUtil.putIfNotNull(attributes, "host.id", JsonReader.getString(identity, "instanceId"));
+    DetectorUtil.putIfNotNull(
+        attributes, "host.type", JsonReader.getString(identity, "instanceType"));
+    DetectorUtil.putIfNotNull(
+        attributes, "host.image.id", JsonReader.getString(identity, "imageId"));
+    try {
+      attributes.put(
+          "host.name",
+          HttpMetadata.fetchString(
+              "GET", endpoint + "/latest/meta-data/hostname", headers, timeoutMillis));
+    } catch (IOException e) {
+      // The hostname is optional, e.g. in VPCs without DNS hostnames.
+    }
+    return attributes;
+  }
+
+  // IMDSv2 requires a session token. Instances allowing IMDSv1 can be queried without one.
+  @Nullable
+  private String fetchToken(int timeoutMillis) {
+    try {
+      return HttpMetadata.fetchString(
+          "PUT",
+          endpoint + "/latest/api/token",
+          Collections.singletonMap("X-aws-ec2-metadata-token-ttl-seconds", "60"),
+          timeoutMillis);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  // Fargate tasks and Lambda functions run on EC2 hardware, but can't reach IMDS, so requests to it
+  // would only time out.
+  private boolean hasNoImds() {
+    return "AWS_ECS_FARGATE".equals(environment.get("AWS_EXECUTION_ENV"))
+        || environment.containsKey("AWS_LAMBDA_FUNCTION_NAME");
+  }
+
+  // Reading a couple of sysfs files is much cheaper than waiting for IMDS to time out off EC2.
+  // When the files are not readable, e.g. outside Linux, we cannot tell and query IMDS anyway.
+  private boolean isKnownNotEc2() {
+    String vendor = DetectorUtil.readFile(sysVendorFile);
+    String hypervisorUuid = DetectorUtil.readFile(hypervisorUuidFile);
+    if (vendor == null && hypervisorUuid == null) {
+      return false;
+    }
+    boolean nitro = vendor != null && vendor.startsWith("Amazon EC2");
+    boolean xen =
+        hypervisorUuid != null && hypervisorUuid.toLowerCase(Locale.ROOT).startsWith("ec2");
+    return !nitro && !xen;
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.resources;
+
+import com.softwareaws.xray.opentelemetry.internal.JsonReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/** Detects an ECS task using the task metadata endpoint ECS provides to each container. */
+final class EcsResourceDetector implements ResourceDetector {
+
+  private final Map<String, String> environment;
+  private final Path cgroup;
+
+  EcsResourceDetector(Map<String, String> environment, Path cgroup) {
+    this.environment = environment;
+    this.cgroup = cgroup;
+  }
+
+  @Override
+  public String name() {
+    return "ecs";
+  }
+
+  @Override
+  public Map<String, String> detect(int timeoutMillis) throws IOException {
+    String metadataUri = environment.get("ECS_CONTAINER_METADATA_URI_V4");
+    boolean v4 = metadataUri != null;
+    if (!v4) {
+      metadataUri = environment.get("ECS_CONTAINER_METADATA_URI");
+    }
+    if (metadataUri == null) {
+      return Collections.emptyMap();
+    }
+
+    Map<String, String> attributes = new LinkedHashMap<>();
+    attributes.put("cloud.provider", "aws");
+    attributes.put("cloud.platform", "aws_ecs");
+
+    Map<String, Object> container =
+        JsonReader.readObject(
+            HttpMetadata.fetch(
+                "GET", metadataUri, Collections.<String, String>emptyMap(), timeoutMillis));
+    String containerId = JsonReader.getString(container, "DockerId");
+    if (containerId == null) {
+      containerId = DetectorUtil.containerIdFromCgroup(cgroup);
+    }
+    DetectorUtil.putIfNotNull(attributes, "container.id", containerId);
+    DetectorUtil.putIfNotNull(
+        attributes, "container.name", JsonReader.getString(container, "Name"));
+    DetectorUtil.putIfNotNull(
+        attributes, "aws.ecs.container.arn", JsonReader.getString(container, "ContainerARN"));
+
+    if (v4) {
+      Map<String, Object> task =
+          JsonReader.readObject(
+              HttpMetadata.fetch(
+                  "GET",
+                  metadataUri + "/task",
+                  Collections.<String, String>emptyMap(),
+                  timeoutMillis));
+      String taskArn = JsonReader.getString(task, "TaskARN");
+      DetectorUtil.putIfNotNull(attributes, "aws.ecs.task.arn", taskArn);
+      DetectorUtil.putIfNotNull(attributes, "aws.ecs.cluster.arn", clusterArn(task, taskArn));
+      DetectorUtil.putIfNotNull(
+          attributes, "aws.ecs.launchtype", lowerCase(JsonReader.getString(task, "LaunchType")));
+      DetectorUtil.putIfNotNull(
+          attributes, "cloud.zone", JsonReader.getString(task, "AvailabilityZone"));
+      if (taskArn != null) {
+        // arn:aws:ecs:<region>:<account>:task/...
+        String[] parts = taskArn.split(":");
+        if (parts.length > 4) {
+          DetectorUtil.putIfNotNull(attributes, "cloud.region", parts[3]);
+          DetectorUtil.putIfNotNull(attributes, "cloud.account.id", parts[4]);
+        }
+      }
+    }
+    return attributes;
+  }
+
+  // The cluster is a name on EC2 launch type tasks, but always an ARN on Fargate.
+  @Nullable
+  private static String clusterArn(Map<String, Object> task, @Nullable String taskArn) {
+    String cluster = JsonReader.getString(task, "Cluster");
+    if (cluster == null || cluster.startsWith("arn:") || taskArn == null) {
+      return cluster;
+    }
+    int taskSeparator = taskArn.indexOf(":task/");
+    if (taskSeparator < 0) {
+      return cluster;
+    }
+    return taskArn.substring(0, taskSeparator) + ":cluster/" + cluster;
+  }
+
+  @Nullable
+  private static String lowerCase(@Nullable String value) {
+    return value != null ? value.toLowerCase(Locale.ROOT) : null;
+  }
+}
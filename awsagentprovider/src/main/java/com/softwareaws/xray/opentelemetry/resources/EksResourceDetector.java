@@ -0,0 +1,61 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.resources;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Detects a pod running in EKS from the service account Kubernetes mounts into every pod. The
+ * cluster name is only available from the Kubernetes API, so it is read from the {@code
+ * K8S_CLUSTER_NAME} environment variable if the pod spec provides it.
+ */
+final class EksResourceDetector implements ResourceDetector {
+
+  private final Map<String, String> environment;
+  private final Path serviceAccountToken;
+  private final Path cgroup;
+
+  EksResourceDetector(Map<String, String> environment, Path serviceAccountToken, Path cgroup) {
+    this.environment = environment;
+    this.serviceAccountToken = serviceAccountToken;
+    this.cgroup = cgroup;
+  }
+
+  @Override
+  public String name() {
+    return "eks";
+  }
+
+  @Override
+  public Map<String, String> detect(int timeoutMillis) {
+    if (environment.get("KUBERNETES_SERVICE_HOST") == null
+        || !Files.isRegularFile(serviceAccountToken)) {
+      return Collections.emptyMap();
+    }
+
+    Map<String, String> attributes = new LinkedHashMap<>();
+    attributes.put("cloud.provider", "aws");
+    attributes.put("cloud.platform", "aws_eks");
+    DetectorUtil.putIfNotNull(attributes, "k8s.cluster.name", environment.get("K8S_CLUSTER_NAME"));
+    DetectorUtil.putIfNotNull(
+        attributes, "container.id", DetectorUtil.containerIdFromCgroup(cgroup));
+    return attributes;
+  }
+}
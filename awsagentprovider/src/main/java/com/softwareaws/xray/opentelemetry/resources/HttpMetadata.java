@@ -0,0 +1,67 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.resources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/** Fetches documents from metadata services, which are all local, small and unauthenticated. */
+final class HttpMetadata {
+
+  static byte[] fetch(String method, String url, Map<String, String> headers, int timeoutMillis)
+      throws IOException {
+    // Metadata services are link-local, so never go through a proxy.
+    HttpURLConnection connection =
+        (HttpURLConnection) new URL(url).openConnection(Proxy.NO_PROXY);
+    try {
+      connection.setConnectTimeout(timeoutMillis);
+      connection.setReadTimeout(timeoutMillis);
+      connection.setRequestMethod(method);
+      for (Map.Entry<String, String> header : headers.entrySet()) {
+        connection.setRequestProperty(header.getKey(), header.getValue());
+      }
+      int status = connection.getResponseCode();
+      if (status != HttpURLConnection.HTTP_OK) {
+        throw new IOException("Request to " + url + " failed with status " + status);
+      }
+      try (InputStream in = connection.getInputStream()) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+      }
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  static String fetchString(
+      String method, String url, Map<String, String> headers, int timeoutMillis)
+      throws IOException {
+    return new String(fetch(method, url, headers, timeoutMillis), StandardCharsets.UTF_8).trim();
+  }
+
+  private HttpMetadata() {}
+}
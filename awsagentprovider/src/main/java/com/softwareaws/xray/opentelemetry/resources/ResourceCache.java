@@ -0,0 +1,174 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.resources;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Caches detected resource attributes in a file, so later JVMs on the same host can skip the
+ * metadata round-trips. Entries are only valid for the same instance, boot and container, which are
+ * all read from local files. The cache is written atomically, so concurrent writers never leave a
+ * partial file behind, and read with a single small read.
+ */
+final class ResourceCache {
+
+  private static final Logger logger = Logger.getLogger(ResourceCache.class.getName());
+
+  private static final String IDENTITY_KEY = "identity";
+  private static final String ATTRIBUTE_PREFIX = "attribute.";
+
+  /** Returns the identity of the current host, boot and container if it can be determined. */
+  @Nullable
+  static String currentIdentity() {
+    return identity(
+        Paths.get("/sys/devices/virtual/dmi/id/board_asset_tag"),
+        Paths.get("/var/lib/cloud/data/instance-id"),
+        Paths.get("/proc/stat"),
+        Paths.get("/proc/self/cgroup"),
+        Paths.get("/proc/self/mountinfo"),
+        Paths.get("/proc/sys/kernel/hostname"));
+  }
+
+  // Visible for testing
+  @Nullable
+  static String identity(
+      Path assetTag,
+      Path cloudInitInstanceId,
+      Path procStat,
+      Path cgroup,
+      Path mountinfo,
+      Path hostname) {
+    // Nitro instances expose the instance ID as the asset tag, and cloud-init records it on
+    // instances it provisioned.
+    String instanceId = DetectorUtil.readFile(assetTag);
+    if (instanceId == null || !instanceId.startsWith("i-")) {
+      instanceId = DetectorUtil.readFile(cloudInitInstanceId);
+    }
+    if (instanceId == null || !instanceId.startsWith("i-")) {
+      return null;
+    }
+
+    String bootTime = null;
+    String stat = DetectorUtil.readFile(procStat);
+    if (stat != null) {
+      for (String line : stat.split("\n")) {
+        if (line.startsWith("btime ")) {
+          bootTime = line.substring("btime ".length()).trim();
+          break;
+        }
+      }
+    }
+    if (bootTime == null) {
+      return null;
+    }
+
+    // Under cgroup v2 the cgroup file no longer names the container, but the files container
+    // runtimes mount into it still do. Failing both, the hostname of the UTS namespace tells apart
+    // containers of most runtimes, and the host itself. Without any of them, containers on the
+    // same host would share attributes like container.id, so nothing is cached.
+    String containerId = DetectorUtil.containerIdFromCgroup(cgroup);
+    if (containerId == null) {
+      containerId = DetectorUtil.containerIdFromMountinfo(mountinfo);
+    }
+    if (containerId == null) {
+      String name = DetectorUtil.readFile(hostname);
+      if (name == null || name.isEmpty()) {
+        return null;
+      }
+      containerId = "hostname:" + name;
+    }
+    return instanceId + '/' + bootTime + '/' + containerId;
+  }
+
+  private final Path file;
+
+  ResourceCache(Path file) {
+    this.file = file;
+  }
+
+  /** Returns the cached attributes if they were stored for {@code identity}. */
+  @Nullable
+  Map<String, String> read(String identity) {
+    Properties properties = new Properties();
+    try {
+      properties.load(new ByteArrayInputStream(Files.readAllBytes(file)));
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException | IllegalArgumentException e) {
+      logger.log(Level.FINE, "Could not read resource cache " + file, e);
+      return null;
+    }
+
+    if (!identity.equals(properties.getProperty(IDENTITY_KEY))) {
+      return null;
+    }
+    Map<String, String> attributes = new LinkedHashMap<>();
+    for (String name : properties.stringPropertyNames()) {
+      if (name.startsWith(ATTRIBUTE_PREFIX)) {
+        attributes.put(name.substring(ATTRIBUTE_PREFIX.length()), properties.getProperty(name));
+      }
+    }
+    return attributes.isEmpty() ? null : Collections.unmodifiableMap(attributes);
+  }
+
+  /** Stores {@code attributes} for {@code identity}, replacing any previous entry. */
+  void write(String identity, Map<String, String> attributes) {
+    Properties properties = new Properties();
+    properties.setProperty(IDENTITY_KEY, identity);
+    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+      properties.setProperty(ATTRIBUTE_PREFIX + attribute.getKey(), attribute.getValue());
+    }
+
+    Path directory = file.toAbsolutePath().getParent();
+    Path temp = null;
+    try {
+      Files.createDirectories(directory);
+      temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+      try (OutputStream out = Files.newOutputStream(temp)) {
+        properties.store(out, "AWS OpenTelemetry resource cache");
+      }
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      temp = null;
+    } catch (AtomicMoveNotSupportedException e) {
+      logger.log(Level.FINE, "Resource cache " + file + " does not support atomic writes.", e);
+    } catch (IOException e) {
+      logger.log(Level.FINE, "Could not write resource cache " + file, e);
+    } finally {
+      if (temp != null) {
+        try {
+          Files.deleteIfExists(temp);
+        } catch (IOException e) {
+          // Best effort.
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.resources;
+
+import java.util.Map;
+
+/** Detects attributes describing the environment the application runs in. */
+interface ResourceDetector {
+
+  /** Returns the name of this detector, for logging. */
+  String name();
+
+  /**
+   * Returns the detected attributes, or an empty map if the application is not running in this
+   * detector's environment. Network calls must not block for longer than {@code timeoutMillis}.
+   */
+  Map<String, String> detect(int timeoutMillis) throws Exception;
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.sampler;
+
+import javax.annotation.Nullable;
+
+/**
+ * Matches values against the case-insensitive patterns of X-Ray sampling rules, where {@code *}
+ * matches any sequence of characters and {@code ?} matches any single character.
+ */
+final class GlobMatcher {
+
+  static boolean matches(String pattern, @Nullable String value) {
+    if (pattern.equals("*")) {
+      return true;
+    }
+    if (value == null) {
+      return false;
+    }
+
+    int p = 0;
+    int v = 0;
+    int starPattern = -1;
+    int starValue = 0;
+    while (v < value.length()) {
+      // A '*' in the pattern is always a wildcard, even where the value has a literal '*'.
+      if (p < pattern.length() && pattern.charAt(p) == '*') {
+        starPattern = p++;
+        starValue = v;
+      } else if (p < pattern.length()
+          && (pattern.charAt(p) == '?' || equalsIgnoreCase(pattern.charAt(p), value.charAt(v)))) {
+        p++;
+        v++;
+      } else if (starPattern >= 0) {
+        p = starPattern + 1;
+        v = ++starValue;
+      } else {
+        return false;
+      }
+    }
+    while (p < pattern.length() && pattern.charAt(p) == '*') {
+      p++;
+    }
+    return p == pattern.length();
+  }
+
+  private static boolean equalsIgnoreCase(char a, char b) {
+    return a == b || Character.toLowerCase(a) == Character.toLowerCase(b);
+  }
+
+  private GlobMatcher() {}
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.sampler;
+
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.sdk.trace.Sampler;
+import io.opentelemetry.sdk.trace.Samplers;
+import io.opentelemetry.sdk.trace.data.SpanData.Link;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.SpanContext;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Sampler} which applies a sampling ratio and a rate limit per {@link Span.Kind}, or per
+ * span name pattern, to the spans its delegate samples, so low-value spans like the {@code
+ * INTERNAL} spans of controller methods can be thinned out while keeping the traces they belong to.
+ *
+ * <p>Spans keep the decision of their parent: a span whose parent was not sampled is not sampled,
+ * so no exported span has an unexported local parent. A span dropped by a kind or name rule
+ * therefore prunes its entire subtree, whatever the kinds of the spans in it: dropping an {@code
+ * INTERNAL} controller span also drops the {@code CLIENT} spans of the database and HTTP calls made
+ * under it, and, since its context propagates as not sampled, the spans of the remote services
+ * those calls reach. Spans with a remote parent follow the upstream decision. Ratios are applied to
+ * the trace ID, so the spans a rule keeps in a trace are kept together.
+ */
+public final class SpanKindSampler implements Sampler {
+
+  private static final SamplingResult NOT_SAMPLED = Samplers.emptySamplingResult(Decision.DROP);
+
+  private final Sampler delegate;
+  private final Map<Span.Kind, Rule> kindRules;
+  private final List<NameRule> nameRules;
+
+  private SpanKindSampler(Builder builder) {
+    delegate = builder.delegate;
+    kindRules = new EnumMap<>(builder.kindRules);
+    nameRules = new ArrayList<>(builder.nameRules);
+  }
+
+  /** Returns a new {@link Builder} applying rules to the spans {@code delegate} samples. */
+  public static Builder newBuilder(Sampler delegate) {
+    return new Builder(delegate);
+  }
+
+  @Override
+  public SamplingResult shouldSample(
+      @Nullable SpanContext parentContext,
+      String traceId,
+      String name,
+      Span.Kind spanKind,
+      ReadableAttributes attributes,
+      List<Link> parentLinks) {
+    SamplingResult result =
+        delegate.shouldSample(parentContext, traceId, name, spanKind, attributes, parentLinks);
+    if (result.getDecision() != Decision.RECORD_AND_SAMPLE
+        || (parentContext != null && parentContext.isValid() && parentContext.isRemote())) {
+      return result;
+    }
+    Rule rule = findRule(name, spanKind);
+    return rule == null || rule.sample(traceId) ? result : NOT_SAMPLED;
+  }
+
+  @Override
+  public String getDescription() {
+    return "SpanKindSampler{delegate=" + delegate.getDescription() + "}";
+  }
+
+  @Nullable
+  private Rule findRule(String name, Span.Kind spanKind) {
+    for (NameRule nameRule : nameRules) {
+      if (GlobMatcher.matches(nameRule.pattern, name)) {
+        return nameRule.rule;
+      }
+    }
+    return kindRules.get(spanKind);
+  }
+
+  private static final class NameRule {
+    private final String pattern;
+    private final Rule rule;
+
+    NameRule(String pattern, Rule rule) {
+      this.pattern = pattern;
+      this.rule = rule;
+    }
+  }
+
+  // Samples a ratio of traces, then limits the samples to a rate with a token bucket holding a
+  // second of samples.
+  private static final class Rule {
+    private final long idUpperBound;
+    @Nullable private final TokenBucket limiter;
+
+    Rule(double ratio, double maxPerSecond) {
+      if (ratio >= 1.0) {
+        idUpperBound = Long.MAX_VALUE;
+      } else if (ratio <= 0.0) {
+        idUpperBound = Long.MIN_VALUE;
+      } else {
+        idUpperBound = (long) (ratio * Long.MAX_VALUE);
+      }
+      limiter = maxPerSecond > 0 ? new TokenBucket(maxPerSecond) : null;
+    }
+
+    boolean sample(String traceId) {
+      if (idUpperBound != Long.MAX_VALUE
+          && (lowerTraceIdBits(traceId) & Long.MAX_VALUE) >= idUpperBound) {
+        return false;
+      }
+      return limiter == null || limiter.tryAcquire(System.nanoTime());
+    }
+
+    // Like the SDK's probability sampler, uses the lower 64 bits of the trace ID, which are
+    // random in both W3C and X-Ray trace IDs.
+    private static long lowerTraceIdBits(String traceId) {
+      long bits = 0;
+      for (int i = traceId.length() - 16; i < traceId.length(); i++) {
+        bits = bits << 4 | Character.digit(traceId.charAt(i), 16);
+      }
+      return bits;
+    }
+  }
+
+  // A lock-free token bucket, tracking the time at which the bucket would be full again instead
+  // of the number of tokens, so taking a token is a single compare-and-set.
+  static final class TokenBucket {
+    private final long nanosPerToken;
+    private final long capacityNanos;
+    private final AtomicLong fullAtNanos;
+
+    TokenBucket(double tokensPerSecond) {
+      nanosPerToken = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / tokensPerSecond));
+      capacityNanos = Math.max(nanosPerToken, TimeUnit.SECONDS.toNanos(1));
+      fullAtNanos = new AtomicLong(System.nanoTime());
+    }
+
+    boolean tryAcquire(long nowNanos) {
+      while (true) {
+        long fullAt = fullAtNanos.get();
+        long next = (fullAt - nowNanos > 0 ? fullAt : nowNanos) + nanosPerToken;
+        if (next - nowNanos > capacityNanos) {
+          return false;
+        }
+        if (fullAtNanos.compareAndSet(fullAt, next)) {
+          return true;
+        }
+      }
+    }
+  }
+
+  public static final class Builder {
+
+    private final Sampler delegate;
+    private final Map<Span.Kind, Rule> kindRules = new EnumMap<>(Span.Kind.class);
+    private final List<NameRule> nameRules = new ArrayList<>();
+
+    private Builder(Sampler delegate) {
+      this.delegate = delegate;
+    }
+
+    /**
+     * Samples {@code ratio} of the spans of a kind, up to {@code maxPerSecond}, or without a rate
+     * limit if it isn't positive.
+     */
+    public Builder setKindRule(Span.Kind kind, double ratio, double maxPerSecond) {
+      kindRules.put(kind, new Rule(ratio, maxPerSecond));
+      return this;
+    }
+
+    /**
+     * Samples {@code ratio} of the spans whose name matches {@code pattern}, up to {@code
+     * maxPerSecond}, or without a rate limit if it isn't positive. {@code *} and {@code ?} in the
+     * pattern match any characters and any single character. Span name rules are tried in the order
+     * they were added, before the kind rules.
+     */
+    public Builder addSpanNameRule(String pattern, double ratio, double maxPerSecond) {
+      nameRules.add(new NameRule(pattern, new Rule(ratio, maxPerSecond)));
+      return this;
+    }
+
+    public SpanKindSampler build() {
+      return new SpanKindSampler(this);
+    }
+  }
+}
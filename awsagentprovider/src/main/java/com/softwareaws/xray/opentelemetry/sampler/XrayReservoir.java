@@ -0,0 +1,73 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.sampler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The per-second reservoir of a sampling rule. Until X-Ray assigns a quota to this client, and
+ * after an assigned quota expires, the reservoir borrows one sample per second so every rule keeps
+ * a trickle of traces.
+ */
+final class XrayReservoir {
+
+  static final int NONE = 0;
+  static final int TAKEN = 1;
+  static final int BORROWED = 2;
+
+  private static final int COUNT_BITS = 20;
+  private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+  private static final long MILLIS_PER_SECOND = TimeUnit.SECONDS.toMillis(1);
+
+  // The epoch second in the upper bits and the number of samples taken in that second in the
+  // lower COUNT_BITS, so both are reset together without locking.
+  private final AtomicLong state = new AtomicLong();
+
+  private volatile int quota = -1;
+  private volatile long quotaExpiresAtMillis;
+
+  /**
+   * Takes a sample from the reservoir if there is one left in the current second, returning {@link
+   * #TAKEN} or {@link #BORROWED} on success and {@link #NONE} otherwise.
+   */
+  int take(long nowMillis) {
+    int quota = this.quota;
+    boolean haveQuota = quota >= 0 && nowMillis < quotaExpiresAtMillis;
+    long limit = haveQuota ? Math.min(quota, COUNT_MASK) : 1;
+    if (limit == 0) {
+      return NONE;
+    }
+
+    long second = nowMillis / MILLIS_PER_SECOND;
+    while (true) {
+      long current = state.get();
+      long used = current >>> COUNT_BITS == second ? current & COUNT_MASK : 0;
+      if (used >= limit) {
+        return NONE;
+      }
+      if (state.compareAndSet(current, second << COUNT_BITS | used + 1)) {
+        return haveQuota ? TAKEN : BORROWED;
+      }
+    }
+  }
+
+  void setQuota(int quota, long expiresAtMillis) {
+    // Write the expiry first so a reader never pairs a new quota with a stale expiry.
+    this.quotaExpiresAtMillis = expiresAtMillis;
+    this.quota = quota;
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.sampler;
+
+import com.softwareaws.xray.opentelemetry.internal.XrayOrigins;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.Sampler;
+import io.opentelemetry.sdk.trace.Samplers;
+import io.opentelemetry.sdk.trace.data.SpanData.Link;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.SpanContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Sampler} applying X-Ray centralized sampling rules to root spans. Each rule samples up
+ * to its reservoir quota per second and a fixed rate of requests beyond that. Rules, and the quotas
+ * and rates assigned to this client, are polled in the background from the X-Ray sampling API.
+ * Spans with a valid parent follow the parent's decision.
+ *
+ * <p>The poller requests the rules with {@link java.net.HttpURLConnection}, which the agent
+ * instruments, so spans started on the poller's thread are never sampled, or the agent would trace
+ * its own sampling requests.
+ */
+public final class XraySampler implements Sampler, Closeable {
+
+  private static final Logger logger = Logger.getLogger(XraySampler.class.getName());
+
+  public static final String DEFAULT_ENDPOINT = "http://127.0.0.1:2000";
+
+  private static final long TARGETS_POLLING_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private static final SamplingResult SAMPLED =
+      Samplers.emptySamplingResult(Decision.RECORD_AND_SAMPLE);
+  private static final SamplingResult NOT_SAMPLED = Samplers.emptySamplingResult(Decision.DROP);
+
+  private static final AttributeKey<String> SERVICE_NAME = AttributeKey.stringKey("service.name");
+  private static final AttributeKey<String> CLOUD_PLATFORM =
+      AttributeKey.stringKey("cloud.platform");
+  private static final AttributeKey<String> AWS_RESOURCE_ARN =
+      AttributeKey.stringKey("aws.resource.arn");
+
+  /**
+   * Creates an {@link XraySampler} polling rules from {@code endpoint} every {@code
+   * rulesPollingIntervalMillis}, matching the service described by {@code resource}.
+   */
+  public static XraySampler create(
+      String endpoint, Resource resource, long rulesPollingIntervalMillis) {
+    ReadableAttributes attributes = resource.getAttributes();
+    XraySampler sampler =
+        new XraySampler(
+            new XraySamplingClient(endpoint),
+            attributes.get(SERVICE_NAME),
+            XrayOrigins.fromCloudPlatform(attributes.get(CLOUD_PLATFORM)),
+            attributes.get(AWS_RESOURCE_ARN));
+    sampler.start(rulesPollingIntervalMillis);
+    return sampler;
+  }
+
+  private final XraySamplingClient client;
+  @Nullable private final String serviceName;
+  @Nullable private final String serviceType;
+  @Nullable private final String resourceArn;
+  private final String clientId;
+  private final XraySamplingRule fallbackRule = XraySamplingRule.createDefault();
+
+  // Visible for testing
+  @Nullable ScheduledExecutorService poller;
+
+  private volatile List<XraySamplingRule> rules = Collections.emptyList();
+  private volatile long rulesFetchedAtMillis;
+
+  // Visible for testing
+  XraySampler(
+      XraySamplingClient client,
+      @Nullable String serviceName,
+      @Nullable String serviceType,
+      @Nullable String resourceArn) {
+    this.client = client;
+    this.serviceName = serviceName;
+    this.serviceType = serviceType;
+    this.resourceArn = resourceArn;
+    this.clientId = generateClientId();
+  }
+
+  @Override
+  public SamplingResult shouldSample(
+      @Nullable SpanContext parentContext,
+      String traceId,
+      String name,
+      Span.Kind spanKind,
+      ReadableAttributes attributes,
+      List<Link> parentLinks) {
+    if (Thread.currentThread() instanceof PollerThread) {
+      return NOT_SAMPLED;
+    }
+    if (parentContext != null && parentContext.isValid()) {
+      return parentContext.isSampled() ? SAMPLED : NOT_SAMPLED;
+    }
+
+    long nowMillis = System.currentTimeMillis();
+    for (XraySamplingRule rule : rules) {
+      if (rule.matches(serviceName, serviceType, resourceArn, attributes)) {
+        return rule.sample(nowMillis) ? SAMPLED : NOT_SAMPLED;
+      }
+    }
+    return fallbackRule.sample(nowMillis) ? SAMPLED : NOT_SAMPLED;
+  }
+
+  @Override
+  public String getDescription() {
+    return "XraySampler{endpoint=" + client.getEndpoint() + "}";
+  }
+
+  @Override
+  public void close() {
+    if (poller != null) {
+      poller.shutdownNow();
+    }
+  }
+
+  // Visible for testing
+  void refreshRules() throws IOException {
+    List<XraySamplingRule> fetched = client.getSamplingRules();
+    Map<String, XraySamplingRule> previous = new HashMap<>();
+    for (XraySamplingRule rule : rules) {
+      previous.put(rule.getName(), rule);
+    }
+
+    // Keep the state of rules that have not changed so their reservoirs and targets carry over.
+    List<XraySamplingRule> updated = new ArrayList<>(fetched.size());
+    for (XraySamplingRule rule : fetched) {
+      XraySamplingRule existing = previous.get(rule.getName());
+      updated.add(existing != null && existing.hasSameDefinition(rule) ? existing : rule);
+    }
+    Collections.sort(updated);
+    rules = Collections.unmodifiableList(updated);
+    rulesFetchedAtMillis = System.currentTimeMillis();
+  }
+
+  // Visible for testing
+  void refreshTargets() throws IOException {
+    List<XraySamplingRule> currentRules = rules;
+    if (currentRules.isEmpty()) {
+      return;
+    }
+    XraySamplingClient.Targets targets =
+        client.getSamplingTargets(clientId, currentRules, System.currentTimeMillis());
+
+    Map<String, XraySamplingRule> byName = new HashMap<>();
+    for (XraySamplingRule rule : currentRules) {
+      byName.put(rule.getName(), rule);
+    }
+    for (XraySamplingClient.Target target : targets.targets) {
+      XraySamplingRule rule = byName.get(target.ruleName);
+      if (rule != null) {
+        rule.applyTarget(
+            target.fixedRate, target.reservoirQuota, target.reservoirQuotaExpiresAtMillis);
+      }
+    }
+    if (targets.lastRuleModificationMillis > rulesFetchedAtMillis) {
+      refreshRules();
+    }
+  }
+
+  private void start(long rulesPollingIntervalMillis) {
+    poller =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                return new PollerThread(runnable);
+              }
+            });
+    // Jitter the first targets poll so a fleet started together does not poll in lockstep.
+    long targetsDelayMillis =
+        TARGETS_POLLING_INTERVAL_MILLIS
+            + ThreadLocalRandom.current().nextLong(TimeUnit.SECONDS.toMillis(1));
+    poller.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              refreshRules();
+            } catch (IOException | RuntimeException e) {
+              logger.log(Level.FINE, "Failed to fetch X-Ray sampling rules.", e);
+            }
+          }
+        },
+        0,
+        rulesPollingIntervalMillis,
+        TimeUnit.MILLISECONDS);
+    poller.scheduleWithFixedDelay(
+        new Runnable() {
+          @Override
+          public void run() {
+            try {
+              refreshTargets();
+            } catch (IOException | RuntimeException e) {
+              logger.log(Level.FINE, "Failed to fetch X-Ray sampling targets.", e);
+            }
+          }
+        },
+        targetsDelayMillis,
+        TARGETS_POLLING_INTERVAL_MILLIS,
+        TimeUnit.MILLISECONDS);
+  }
+
+  private static final class PollerThread extends Thread {
+    PollerThread(Runnable runnable) {
+      super(runnable, "aws-xray-sampling-poller");
+      setDaemon(true);
+    }
+  }
+
+  private static String generateClientId() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return String.format("%016x%08x", random.nextLong(), random.nextInt());
+  }
+}
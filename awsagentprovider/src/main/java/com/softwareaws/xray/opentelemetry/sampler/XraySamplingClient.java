@@ -0,0 +1,175 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.sampler;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.softwareaws.xray.opentelemetry.internal.JsonReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A client for the X-Ray sampling APIs, as proxied by the X-Ray daemon or the OpenTelemetry
+ * Collector, or served by a local stand-in in tests.
+ */
+final class XraySamplingClient {
+
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private static final int CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(1);
+  private static final int READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(2);
+
+  /** A sampling target assigned to this client for a rule. */
+  static final class Target {
+    final String ruleName;
+    final double fixedRate;
+    final int reservoirQuota;
+    final long reservoirQuotaExpiresAtMillis;
+
+    Target(
+        String ruleName, double fixedRate, int reservoirQuota, long reservoirQuotaExpiresAtMillis) {
+      this.ruleName = ruleName;
+      this.fixedRate = fixedRate;
+      this.reservoirQuota = reservoirQuota;
+      this.reservoirQuotaExpiresAtMillis = reservoirQuotaExpiresAtMillis;
+    }
+  }
+
+  /** The targets for this client and when the rules were last modified. */
+  static final class Targets {
+    final List<Target> targets;
+    final long lastRuleModificationMillis;
+
+    Targets(List<Target> targets, long lastRuleModificationMillis) {
+      this.targets = targets;
+      this.lastRuleModificationMillis = lastRuleModificationMillis;
+    }
+  }
+
+  private final String endpoint;
+
+  XraySamplingClient(String endpoint) {
+    this.endpoint =
+        endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+  }
+
+  String getEndpoint() {
+    return endpoint;
+  }
+
+  List<XraySamplingRule> getSamplingRules() throws IOException {
+    List<XraySamplingRule> rules = new ArrayList<>();
+    String nextToken = null;
+    do {
+      ByteArrayOutputStream request = new ByteArrayOutputStream();
+      try (JsonGenerator json = JSON_FACTORY.createGenerator(request)) {
+        json.writeStartObject();
+        if (nextToken != null) {
+          json.writeStringField("NextToken", nextToken);
+        }
+        json.writeEndObject();
+      }
+
+      Map<String, Object> response = post("/GetSamplingRules", request.toByteArray());
+      for (Object record : JsonReader.asList(response.get("SamplingRuleRecords"))) {
+        XraySamplingRule rule =
+            XraySamplingRule.fromJson(
+                JsonReader.asObject(JsonReader.asObject(record).get("SamplingRule")));
+        if (rule != null) {
+          rules.add(rule);
+        }
+      }
+      nextToken = JsonReader.getString(response, "NextToken");
+    } while (nextToken != null && !nextToken.isEmpty());
+    return rules;
+  }
+
+  Targets getSamplingTargets(String clientId, List<XraySamplingRule> rules, long nowMillis)
+      throws IOException {
+    ByteArrayOutputStream request = new ByteArrayOutputStream();
+    try (JsonGenerator json = JSON_FACTORY.createGenerator(request)) {
+      json.writeStartObject();
+      json.writeArrayFieldStart("SamplingStatisticsDocuments");
+      for (XraySamplingRule rule : rules) {
+        long[] statistics = rule.drainStatistics();
+        json.writeStartObject();
+        json.writeStringField("RuleName", rule.getName());
+        json.writeStringField("ClientID", clientId);
+        json.writeNumberField("Timestamp", TimeUnit.MILLISECONDS.toSeconds(nowMillis));
+        json.writeNumberField("RequestCount", statistics[0]);
+        json.writeNumberField("SampledCount", statistics[1]);
+        json.writeNumberField("BorrowCount", statistics[2]);
+        json.writeEndObject();
+      }
+      json.writeEndArray();
+      json.writeEndObject();
+    }
+
+    Map<String, Object> response = post("/SamplingTargets", request.toByteArray());
+    List<Target> targets = new ArrayList<>();
+    for (Object document : JsonReader.asList(response.get("SamplingTargetDocuments"))) {
+      Map<String, Object> target = JsonReader.asObject(document);
+      String ruleName = JsonReader.getString(target, "RuleName");
+      if (ruleName == null) {
+        continue;
+      }
+      targets.add(
+          new Target(
+              ruleName,
+              JsonReader.getDouble(target, "FixedRate", 0),
+              (int) JsonReader.getLong(target, "ReservoirQuota", -1),
+              secondsToMillis(JsonReader.getDouble(target, "ReservoirQuotaTTL", 0))));
+    }
+    return new Targets(
+        targets, secondsToMillis(JsonReader.getDouble(response, "LastRuleModification", 0)));
+  }
+
+  private Map<String, Object> post(String path, byte[] body) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(endpoint + path).openConnection();
+    try {
+      connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+      connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+      connection.setRequestMethod("POST");
+      connection.setRequestProperty("Content-Type", "application/json");
+      connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode(body.length);
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body);
+      }
+      int status = connection.getResponseCode();
+      if (status != HttpURLConnection.HTTP_OK) {
+        throw new IOException("Sampling request to " + path + " failed with status " + status);
+      }
+      try (InputStream in = connection.getInputStream()) {
+        return JsonReader.readObject(in);
+      }
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  private static long secondsToMillis(double seconds) {
+    return (long) (seconds * TimeUnit.SECONDS.toMillis(1));
+  }
+}
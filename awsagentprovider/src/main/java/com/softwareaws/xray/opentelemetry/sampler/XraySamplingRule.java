@@ -0,0 +1,218 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.sampler;
+
+import com.softwareaws.xray.opentelemetry.internal.JsonReader;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.ReadableAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/** A sampling rule as defined in the X-Ray console, with its reservoir and statistics. */
+final class XraySamplingRule implements Comparable<XraySamplingRule> {
+
+  private static final AttributeKey<String> HTTP_METHOD = AttributeKey.stringKey("http.method");
+  private static final AttributeKey<String> HTTP_TARGET = AttributeKey.stringKey("http.target");
+  private static final AttributeKey<String> HTTP_URL = AttributeKey.stringKey("http.url");
+  private static final AttributeKey<String> HTTP_HOST = AttributeKey.stringKey("http.host");
+  private static final AttributeKey<String> NET_HOST_NAME =
+      AttributeKey.stringKey("net.host.name");
+
+  /** The rule used before any rules have been fetched, matching X-Ray's default rule. */
+  static XraySamplingRule createDefault() {
+    return new XraySamplingRule(
+        "Default", 10000, 0.05, 1, "*", "*", "*", "*", "*", "*", Collections.emptyMap());
+  }
+
+  @Nullable
+  static XraySamplingRule fromJson(Map<String, Object> json) {
+    String name = JsonReader.getString(json, "RuleName");
+    if (name == null) {
+      return null;
+    }
+    Map<String, String> attributes = new LinkedHashMap<>();
+    for (Map.Entry<String, Object> attribute :
+        JsonReader.asObject(json.get("Attributes")).entrySet()) {
+      if (attribute.getValue() instanceof String) {
+        attributes.put(attribute.getKey(), (String) attribute.getValue());
+      }
+    }
+    return new XraySamplingRule(
+        name,
+        (int) JsonReader.getLong(json, "Priority", Integer.MAX_VALUE),
+        JsonReader.getDouble(json, "FixedRate", 0),
+        (int) JsonReader.getLong(json, "ReservoirSize", 0),
+        wildcardIfNull(JsonReader.getString(json, "ServiceName")),
+        wildcardIfNull(JsonReader.getString(json, "ServiceType")),
+        wildcardIfNull(JsonReader.getString(json, "Host")),
+        wildcardIfNull(JsonReader.getString(json, "HTTPMethod")),
+        wildcardIfNull(JsonReader.getString(json, "URLPath")),
+        wildcardIfNull(JsonReader.getString(json, "ResourceARN")),
+        attributes);
+  }
+
+  private final String name;
+  private final int priority;
+  private final double configuredFixedRate;
+  private final int reservoirSize;
+  private final String serviceName;
+  private final String serviceType;
+  private final String host;
+  private final String httpMethod;
+  private final String urlPath;
+  private final String resourceArn;
+  private final Map<String, String> attributes;
+
+  private final XrayReservoir reservoir = new XrayReservoir();
+  private final LongAdder requestCount = new LongAdder();
+  private final LongAdder sampledCount = new LongAdder();
+  private final LongAdder borrowCount = new LongAdder();
+
+  private volatile double fixedRate;
+
+  XraySamplingRule(
+      String name,
+      int priority,
+      double fixedRate,
+      int reservoirSize,
+      String serviceName,
+      String serviceType,
+      String host,
+      String httpMethod,
+      String urlPath,
+      String resourceArn,
+      Map<String, String> attributes) {
+    this.name = name;
+    this.priority = priority;
+    this.configuredFixedRate = fixedRate;
+    this.fixedRate = fixedRate;
+    this.reservoirSize = reservoirSize;
+    this.serviceName = serviceName;
+    this.serviceType = serviceType;
+    this.host = host;
+    this.httpMethod = httpMethod;
+    this.urlPath = urlPath;
+    this.resourceArn = resourceArn;
+    this.attributes = attributes;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  boolean isDefault() {
+    return name.equals("Default");
+  }
+
+  boolean matches(
+      @Nullable String serviceName,
+      @Nullable String serviceType,
+      @Nullable String resourceArn,
+      ReadableAttributes spanAttributes) {
+    if (!GlobMatcher.matches(this.serviceName, serviceName)
+        || !GlobMatcher.matches(this.serviceType, serviceType)
+        || !GlobMatcher.matches(this.resourceArn, resourceArn)
+        || !GlobMatcher.matches(httpMethod, spanAttributes.get(HTTP_METHOD))
+        || !GlobMatcher.matches(urlPath, urlPath(spanAttributes))
+        || !GlobMatcher.matches(host, host(spanAttributes))) {
+      return false;
+    }
+    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+      String value = spanAttributes.get(AttributeKey.stringKey(attribute.getKey()));
+      if (!GlobMatcher.matches(attribute.getValue(), value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Records a request matched by this rule and returns whether it should be sampled. */
+  boolean sample(long nowMillis) {
+    requestCount.increment();
+    int taken = reservoir.take(nowMillis);
+    if (taken == XrayReservoir.BORROWED) {
+      borrowCount.increment();
+    }
+    if (taken != XrayReservoir.NONE || ThreadLocalRandom.current().nextDouble() < fixedRate) {
+      sampledCount.increment();
+      return true;
+    }
+    return false;
+  }
+
+  void applyTarget(double fixedRate, int reservoirQuota, long reservoirQuotaExpiresAtMillis) {
+    this.fixedRate = fixedRate;
+    reservoir.setQuota(reservoirQuota, reservoirQuotaExpiresAtMillis);
+  }
+
+  /** Returns the request, sampled and borrow counts since the last call and resets them. */
+  long[] drainStatistics() {
+    return new long[] {
+      requestCount.sumThenReset(), sampledCount.sumThenReset(), borrowCount.sumThenReset()
+    };
+  }
+
+  /** Returns whether {@code other} has the same definition, ignoring state assigned by targets. */
+  boolean hasSameDefinition(XraySamplingRule other) {
+    return name.equals(other.name)
+        && priority == other.priority
+        && Double.compare(configuredFixedRate, other.configuredFixedRate) == 0
+        && reservoirSize == other.reservoirSize
+        && serviceName.equals(other.serviceName)
+        && serviceType.equals(other.serviceType)
+        && host.equals(other.host)
+        && httpMethod.equals(other.httpMethod)
+        && urlPath.equals(other.urlPath)
+        && resourceArn.equals(other.resourceArn)
+        && attributes.equals(other.attributes);
+  }
+
+  @Override
+  public int compareTo(XraySamplingRule other) {
+    int byPriority = Integer.compare(priority, other.priority);
+    return byPriority != 0 ? byPriority : name.compareTo(other.name);
+  }
+
+  @Nullable
+  private static String urlPath(ReadableAttributes attributes) {
+    String target = attributes.get(HTTP_TARGET);
+    if (target == null) {
+      String url = attributes.get(HTTP_URL);
+      if (url == null) {
+        return null;
+      }
+      int schemeEnd = url.indexOf("://");
+      int pathStart = url.indexOf('/', schemeEnd < 0 ? 0 : schemeEnd + 3);
+      target = pathStart < 0 ? "/" : url.substring(pathStart);
+    }
+    int queryStart = target.indexOf('?');
+    return queryStart < 0 ? target : target.substring(0, queryStart);
+  }
+
+  @Nullable
+  private static String host(ReadableAttributes attributes) {
+    String host = attributes.get(HTTP_HOST);
+    return host != null ? host : attributes.get(NET_HOST_NAME);
+  }
+
+  private static String wildcardIfNull(@Nullable String value) {
+    return value != null ? value : "*";
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class AwsConfigPropertiesTest {
+
+  @AfterEach
+  void clearProperties() {
+    System.clearProperty("otel.aws.test.value");
+  }
+
+  @Test
+  void environmentVariableName() {
+    assertThat(AwsConfigProperties.toEnvironmentVariable("otel.aws.imds.endpointOverride"))
+        .isEqualTo("OTEL_AWS_IMDS_ENDPOINT_OVERRIDE");
+    assertThat(AwsConfigProperties.toEnvironmentVariable("otel.aws.idsGenerator"))
+        .isEqualTo("OTEL_AWS_IDS_GENERATOR");
+  }
+
+  @Test
+  void readsSystemProperty() {
+    System.setProperty("otel.aws.test.value", " 42 ");
+
+    assertThat(AwsConfigProperties.getString("otel.aws.test.value")).isEqualTo("42");
+    assertThat(AwsConfigProperties.getInt("otel.aws.test.value", 1)).isEqualTo(42);
+  }
+
+  @Test
+  void fallsBackToDefault() {
+    assertThat(AwsConfigProperties.getString("otel.aws.test.value")).isNull();
+    assertThat(AwsConfigProperties.getLong("otel.aws.test.value", 7)).isEqualTo(7);
+
+    System.setProperty("otel.aws.test.value", "not a number");
+    assertThat(AwsConfigProperties.getDouble("otel.aws.test.value", 0.5)).isEqualTo(0.5);
+  }
+}
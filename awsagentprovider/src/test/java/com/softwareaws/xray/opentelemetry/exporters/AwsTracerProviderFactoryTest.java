@@ -16,11 +16,14 @@
 package com.softwareaws.xray.opentelemetry.exporters;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
 
 import com.google.common.primitives.Ints;
 import io.opentelemetry.trace.TracerProvider;
+import java.io.ByteArrayOutputStream;
 import java.util.concurrent.TimeUnit;
 import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
 
 class AwsTracerProviderFactoryTest {
 
@@ -35,4 +38,12 @@ class AwsTracerProviderFactoryTest {
     int epoch = Ints.fromBytes(traceId[0], traceId[1], traceId[2], traceId[3]);
     assertThat(epoch).isGreaterThanOrEqualTo(startTimeSecs);
   }
+
+  @Test
+  void keepsOnlyStringsInSystemProperties() {
+    var properties = System.getProperties();
+    assertThat(properties.stringPropertyNames()).hasSameSizeAs(properties.keySet());
+    assertThatCode(() -> properties.store(new ByteArrayOutputStream(), null))
+        .doesNotThrowAnyException();
+  }
 }
@@ -0,0 +1,301 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.exporters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.grpc.Metadata;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.ServerInterceptors;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceResponse;
+import io.opentelemetry.proto.collector.trace.v1.TraceServiceGrpc;
+import io.opentelemetry.proto.trace.v1.Span;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.TracerSdkProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Tracer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchingOtlpSpanExporterTest {
+
+  private static final Metadata.Key<String> GRPC_ENCODING =
+      Metadata.Key.of("grpc-encoding", Metadata.ASCII_STRING_MARSHALLER);
+
+  private final List<SpanData> ended = new ArrayList<>();
+  private final List<ExportTraceServiceRequest> requests = new CopyOnWriteArrayList<>();
+  private final List<String> encodings = new CopyOnWriteArrayList<>();
+
+  @TempDir Path tempDir;
+
+  private volatile boolean unavailable;
+
+  private Tracer tracer;
+  private int nextSpan;
+  private Server collector;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    TracerSdkProvider provider = TracerSdkProvider.builder().build();
+    provider.addSpanProcessor(new CapturingProcessor());
+    tracer = provider.get("test");
+
+    collector = startCollector(0);
+  }
+
+  @AfterEach
+  void tearDown() {
+    collector.shutdownNow();
+  }
+
+  @Test
+  void exportsCompressedRequests() throws IOException {
+    endSpans(10, 1000);
+
+    var exporter = newExporter(true);
+    try {
+      assertThat(exporter.export(ended).isSuccess()).isTrue();
+    } finally {
+      exporter.shutdown();
+    }
+
+    assertThat(requests).hasSizeGreaterThan(1);
+    assertThat(requests.stream().mapToInt(BatchingOtlpSpanExporterTest::spanCount).sum())
+        .isEqualTo(10);
+    assertThat(encodings).hasSameSizeAs(requests).containsOnly("gzip");
+  }
+
+  @Test
+  void exportsUncompressedRequests() throws IOException {
+    endSpans(1, 10);
+
+    var exporter = newExporter(false);
+    try {
+      assertThat(exporter.export(ended).isSuccess()).isTrue();
+      // Reuses the serialization buffer.
+      assertThat(exporter.export(ended).isSuccess()).isTrue();
+    } finally {
+      exporter.shutdown();
+    }
+
+    assertThat(requests).hasSize(2);
+    assertThat(requests.get(0)).isEqualTo(OtlpSpanAdapter.toProtoRequest(ended));
+    assertThat(requests.get(1)).isEqualTo(requests.get(0));
+    assertThat(encodings).containsOnly("identity");
+  }
+
+  @Test
+  void spillsWhileCollectorUnavailable() throws Exception {
+    int port = collector.getPort();
+    collector.shutdownNow().awaitTermination();
+
+    var exporter =
+        newExporterBuilder(port, true)
+            .setSpillFile(tempDir.resolve("spill/otlp.spill"))
+            .setSpillFileMaxBytes(64 * 1024)
+            .build();
+    try {
+      endSpans(1, 10);
+      assertThat(exporter.export(ended).isSuccess()).isTrue();
+      ended.clear();
+      endSpans(2, 10);
+      // Not sent while older requests are still spilled.
+      assertThat(exporter.export(ended).isSuccess()).isTrue();
+
+      collector = startCollector(port);
+      // The channel may still be backing off from the failed connection.
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (!exporter.flush().isSuccess()) {
+        assertThat(System.nanoTime() - deadline).isNegative();
+        Thread.sleep(100);
+      }
+
+      assertThat(requests).hasSize(2);
+      assertThat(spanNames(requests.get(0))).containsExactly("span-0");
+      assertThat(spanNames(requests.get(1))).containsExactly("span-1", "span-2");
+    } finally {
+      exporter.shutdown();
+    }
+  }
+
+  @Test
+  void spillsRestOfBatchAfterFailedRequest() throws Exception {
+    unavailable = true;
+    var exporter =
+        newExporterBuilder(collector.getPort(), true)
+            .setSpillFile(tempDir.resolve("otlp.spill"))
+            .setSpillFileMaxBytes(256 * 1024)
+            .build();
+    try {
+      endSpans(10, 1000);
+      assertThat(exporter.export(ended).isSuccess()).isTrue();
+      // Only the first request of the batch was sent.
+      assertThat(encodings).hasSize(1);
+
+      ended.clear();
+      endSpans(10, 1000);
+      assertThat(exporter.export(ended).isSuccess()).isTrue();
+      // Only the oldest spilled request was replayed.
+      assertThat(encodings).hasSize(2);
+
+      unavailable = false;
+      assertThat(exporter.flush().isSuccess()).isTrue();
+    } finally {
+      exporter.shutdown();
+    }
+
+    assertThat(requests).hasSizeGreaterThan(2);
+    assertThat(requests.stream().flatMap(request -> spanNames(request).stream()))
+        .containsExactlyElementsOf(
+            IntStream.range(0, 20).mapToObj(i -> "span-" + i).collect(Collectors.toList()));
+  }
+
+  @Test
+  void marshallerParsesStreamedRequest() throws IOException {
+    byte[] encoded = new byte[20000];
+    new Random(0).nextBytes(encoded);
+    var marshaller = new BatchingOtlpSpanExporter.EncodedRequestMarshaller();
+
+    BatchingOtlpSpanExporter.EncodedRequest request =
+        marshaller.parse(new ByteArrayInputStream(encoded));
+
+    assertThat(marshaller.stream(request).readAllBytes()).isEqualTo(encoded);
+  }
+
+  private BatchingOtlpSpanExporter newExporter(boolean compression) throws IOException {
+    return newExporterBuilder(collector.getPort(), compression).build();
+  }
+
+  private static BatchingOtlpSpanExporter.Builder newExporterBuilder(
+      int port, boolean compression) {
+    return BatchingOtlpSpanExporter.newBuilder()
+        .setEndpoint("localhost:" + port)
+        .setTimeoutMillis(5000)
+        .setMaxRequestBytes(3000)
+        .setCompression(compression);
+  }
+
+  private Server startCollector(int port) throws IOException {
+    return ServerBuilder.forPort(port)
+        .addService(
+            ServerInterceptors.intercept(new RecordingCollector(), new EncodingInterceptor()))
+        .build()
+        .start();
+  }
+
+  private void endSpans(int count, int attributeLength) {
+    String value = "x".repeat(attributeLength);
+    for (int i = 0; i < count; i++) {
+      tracer
+          .spanBuilder("span-" + nextSpan++)
+          .setAttribute("aws.dynamodb.item", value)
+          .startSpan()
+          .end();
+    }
+  }
+
+  private static List<String> spanNames(ExportTraceServiceRequest request) {
+    return request.getResourceSpansList().stream()
+        .flatMap(resourceSpans -> resourceSpans.getInstrumentationLibrarySpansList().stream())
+        .flatMap(librarySpans -> librarySpans.getSpansList().stream())
+        .map(Span::getName)
+        .collect(Collectors.toList());
+  }
+
+  private static int spanCount(ExportTraceServiceRequest request) {
+    return request.getResourceSpansList().stream()
+        .flatMap(resourceSpans -> resourceSpans.getInstrumentationLibrarySpansList().stream())
+        .mapToInt(librarySpans -> librarySpans.getSpansList().size())
+        .sum();
+  }
+
+  private final class RecordingCollector extends TraceServiceGrpc.TraceServiceImplBase {
+    @Override
+    public void export(
+        ExportTraceServiceRequest request,
+        StreamObserver<ExportTraceServiceResponse> responseObserver) {
+      if (unavailable) {
+        responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+        return;
+      }
+      requests.add(request);
+      responseObserver.onNext(ExportTraceServiceResponse.getDefaultInstance());
+      responseObserver.onCompleted();
+    }
+  }
+
+  private final class EncodingInterceptor implements ServerInterceptor {
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(
+        ServerCall<ReqT, RespT> call, Metadata headers, ServerCallHandler<ReqT, RespT> next) {
+      String encoding = headers.get(GRPC_ENCODING);
+      encodings.add(encoding != null ? encoding : "identity");
+      return next.startCall(call, headers);
+    }
+  }
+
+  private final class CapturingProcessor implements SpanProcessor {
+    @Override
+    public void onStart(ReadWriteSpan span) {}
+
+    @Override
+    public boolean isStartRequired() {
+      return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+      ended.add(span.toSpanData());
+    }
+
+    @Override
+    public boolean isEndRequired() {
+      return true;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
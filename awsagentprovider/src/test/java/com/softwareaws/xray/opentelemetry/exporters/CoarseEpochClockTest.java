@@ -0,0 +1,71 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.exporters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class CoarseEpochClockTest {
+
+  private final CoarseEpochClock clock = new CoarseEpochClock();
+
+  @Test
+  void addsElapsedNanosToPublishedTime() {
+    long sleepMillis = clock.tick(1_000_100, 0);
+
+    assertThat(sleepMillis).isEqualTo(1_000);
+    assertThat(clock.epochSeconds(0)).isEqualTo(1_000);
+    assertThat(clock.epochSeconds(TimeUnit.MILLISECONDS.toNanos(899))).isEqualTo(1_000);
+    assertThat(clock.epochSeconds(TimeUnit.MILLISECONDS.toNanos(900))).isEqualTo(1_001);
+  }
+
+  @Test
+  void doesNotReadWallClockJustBeforeTick() {
+    long publishedNanos = 1_000;
+    clock.tick(1_000_100, publishedNanos);
+
+    // The next tick is due a second after the last one, and may run a little late.
+    for (long millis = 990; millis <= 1_100; millis++) {
+      long nowNanos = publishedNanos + TimeUnit.MILLISECONDS.toNanos(millis);
+      assertThat(clock.epochSeconds(nowNanos)).isEqualTo((1_000_100 + millis) / 1_000);
+    }
+  }
+
+  @Test
+  void readsWallClockWhenTickerStalls() {
+    long startTimeSecs = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    long publishedNanos = 1_000;
+    clock.tick(1_000_100, publishedNanos);
+
+    long maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(CoarseEpochClock.MAX_AGE_MILLIS);
+    assertThat(clock.epochSeconds(publishedNanos + maxAgeNanos)).isEqualTo(1_002);
+    // The ticker missed its next publishes, e.g. paused for a few seconds.
+    assertThat(clock.epochSeconds(publishedNanos + maxAgeNanos + 1))
+        .isGreaterThanOrEqualTo(startTimeSecs);
+    assertThat(clock.epochSeconds(publishedNanos + TimeUnit.SECONDS.toNanos(5)))
+        .isGreaterThanOrEqualTo(startTimeSecs)
+        .isLessThanOrEqualTo(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+  }
+
+  @Test
+  void neverBehindWallClock() {
+    long startTimeSecs = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+    assertThat(CoarseEpochClock.getInstance().epochSeconds()).isGreaterThanOrEqualTo(startTimeSecs);
+  }
+}
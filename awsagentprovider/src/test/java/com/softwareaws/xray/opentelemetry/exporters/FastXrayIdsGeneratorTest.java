@@ -0,0 +1,51 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.exporters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+class FastXrayIdsGeneratorTest {
+
+  private final FastXrayIdsGenerator generator = new FastXrayIdsGenerator();
+
+  @RepeatedTest(20)
+  void traceIdStartsWithEpochSeconds() {
+    long startTimeSecs = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+    String traceId = generator.generateTraceId();
+    long endTimeSecs = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+    assertThat(traceId).hasSize(32).matches("[0-9a-f]{32}");
+    long epoch = Long.parseLong(traceId.substring(0, 8), 16);
+    assertThat(epoch).isBetween(startTimeSecs, endTimeSecs);
+  }
+
+  @RepeatedTest(20)
+  void spanIdIsValid() {
+    String spanId = generator.generateSpanId();
+
+    assertThat(spanId).hasSize(16).matches("[0-9a-f]{16}").isNotEqualTo("0000000000000000");
+  }
+
+  @Test
+  void idsAreUnique() {
+    assertThat(generator.generateTraceId()).isNotEqualTo(generator.generateTraceId());
+    assertThat(generator.generateSpanId()).isNotEqualTo(generator.generateSpanId());
+  }
+}
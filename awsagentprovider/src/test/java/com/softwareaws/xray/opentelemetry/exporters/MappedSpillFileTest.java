@@ -0,0 +1,126 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.exporters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedSpillFileTest {
+
+  @TempDir Path tempDir;
+
+  @Test
+  void firstInFirstOut() throws IOException {
+    try (var spill = MappedSpillFile.open(tempDir.resolve("spill"), 1024)) {
+      assertThat(spill.isEmpty()).isTrue();
+      assertThat(spill.peekLength()).isEqualTo(-1);
+
+      append(spill, "one");
+      append(spill, "two");
+
+      assertThat(take(spill)).isEqualTo("one");
+      assertThat(take(spill)).isEqualTo("two");
+      assertThat(spill.isEmpty()).isTrue();
+    }
+  }
+
+  @Test
+  void rejectsWhenFull() throws IOException {
+    // 1000 bytes for records after the header.
+    try (var spill = MappedSpillFile.open(tempDir.resolve("spill"), 1024)) {
+      String record = "x".repeat(396);
+      assertThat(append(spill, record)).isTrue();
+      assertThat(append(spill, record)).isTrue();
+      assertThat(append(spill, record)).isFalse();
+
+      assertThat(take(spill)).isEqualTo(record);
+      assertThat(append(spill, record)).isTrue();
+    }
+  }
+
+  @Test
+  void wrapsAround() throws IOException {
+    try (var spill = MappedSpillFile.open(tempDir.resolve("spill"), 1024)) {
+      String record = "x".repeat(296);
+      // Three records fit in the ring. Once the first is removed, only the space before the read
+      // position is free, so the fourth wraps around.
+      assertThat(append(spill, "a" + record)).isTrue();
+      assertThat(append(spill, "b" + record)).isTrue();
+      assertThat(append(spill, "c" + record)).isTrue();
+      assertThat(append(spill, "d" + record)).isFalse();
+      assertThat(take(spill)).isEqualTo("a" + record);
+      assertThat(append(spill, "d" + record)).isTrue();
+      assertThat(take(spill)).isEqualTo("b" + record);
+      assertThat(take(spill)).isEqualTo("c" + record);
+      assertThat(take(spill)).isEqualTo("d" + record);
+      assertThat(spill.isEmpty()).isTrue();
+    }
+  }
+
+  @Test
+  void reopensWithRecords() throws IOException {
+    Path file = tempDir.resolve("spill");
+    try (var spill = MappedSpillFile.open(file, 1024)) {
+      append(spill, "one");
+      append(spill, "two");
+      take(spill);
+    }
+    try (var spill = MappedSpillFile.open(file, 1024)) {
+      assertThat(take(spill)).isEqualTo("two");
+      assertThat(spill.isEmpty()).isTrue();
+    }
+  }
+
+  @Test
+  void startsEmptyWithOtherSize() throws IOException {
+    Path file = tempDir.resolve("spill");
+    try (var spill = MappedSpillFile.open(file, 1024)) {
+      append(spill, "one");
+    }
+    try (var spill = MappedSpillFile.open(file, 2048)) {
+      assertThat(spill.isEmpty()).isTrue();
+    }
+  }
+
+  @Test
+  void startsEmptyWhenCorrupt() throws IOException {
+    Path file = tempDir.resolve("spill");
+    Files.write(file, new byte[1024]);
+    try (var spill = MappedSpillFile.open(file, 1024)) {
+      assertThat(spill.isEmpty()).isTrue();
+      append(spill, "one");
+      assertThat(take(spill)).isEqualTo("one");
+    }
+  }
+
+  private static boolean append(MappedSpillFile spill, String record) {
+    byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+    return spill.append(bytes, 0, bytes.length);
+  }
+
+  private static String take(MappedSpillFile spill) {
+    byte[] bytes = new byte[spill.peekLength()];
+    spill.read(bytes);
+    spill.remove();
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
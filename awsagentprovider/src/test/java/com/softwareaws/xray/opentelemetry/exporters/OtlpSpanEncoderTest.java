@@ -0,0 +1,264 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.exporters;
+
+import static io.opentelemetry.common.AttributeKey.booleanKey;
+import static io.opentelemetry.common.AttributeKey.doubleKey;
+import static io.opentelemetry.common.AttributeKey.longArrayKey;
+import static io.opentelemetry.common.AttributeKey.longKey;
+import static io.opentelemetry.common.AttributeKey.stringArrayKey;
+import static io.opentelemetry.common.AttributeKey.stringKey;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.Context;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.exporters.otlp.OtlpGrpcSpanExporter;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceResponse;
+import io.opentelemetry.proto.collector.trace.v1.TraceServiceGrpc;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.TracerSdkProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.StatusCanonicalCode;
+import io.opentelemetry.trace.Tracer;
+import io.opentelemetry.trace.TracingContextUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class OtlpSpanEncoderTest {
+
+  private final List<SpanData> ended = new ArrayList<>();
+
+  @Test
+  void encodesLikeProtobufMessages() throws Exception {
+    endVariedSpans();
+
+    var encoder = new OtlpSpanEncoder();
+    byte[] encoded = Arrays.copyOf(encoder.buffer(), encoder.encode(ended));
+
+    ExportTraceServiceRequest expected = OtlpSpanAdapter.toProtoRequest(ended);
+    assertThat(encoded).isEqualTo(expected.toByteArray());
+    assertThat(ExportTraceServiceRequest.parseFrom(encoded)).isEqualTo(expected);
+    assertThat(expected.getResourceSpansCount()).isEqualTo(2);
+    assertThat(expected.getResourceSpans(0).getInstrumentationLibrarySpansCount()).isEqualTo(2);
+  }
+
+  @Test
+  void encodesLikeSdkExporter() throws Exception {
+    endVariedSpans();
+    List<ExportTraceServiceRequest> received = new CopyOnWriteArrayList<>();
+    String serverName = InProcessServerBuilder.generateName();
+    Server server =
+        InProcessServerBuilder.forName(serverName)
+            .directExecutor()
+            .addService(
+                new TraceServiceGrpc.TraceServiceImplBase() {
+                  @Override
+                  public void export(
+                      ExportTraceServiceRequest request,
+                      StreamObserver<ExportTraceServiceResponse> responseObserver) {
+                    received.add(request);
+                    responseObserver.onNext(ExportTraceServiceResponse.getDefaultInstance());
+                    responseObserver.onCompleted();
+                  }
+                })
+            .build()
+            .start();
+    ManagedChannel channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+    try {
+      var exporter = OtlpGrpcSpanExporter.newBuilder().setChannel(channel).build();
+      assertThat(exporter.export(ended).join(10, TimeUnit.SECONDS).isSuccess()).isTrue();
+    } finally {
+      channel.shutdownNow();
+      server.shutdownNow();
+    }
+
+    var encoder = new OtlpSpanEncoder();
+    byte[] encoded = Arrays.copyOf(encoder.buffer(), encoder.encode(ended));
+
+    assertThat(received).hasSize(1);
+    assertThat(ExportTraceServiceRequest.parseFrom(encoded)).isEqualTo(received.get(0));
+    assertThat(encoded).isEqualTo(received.get(0).toByteArray());
+  }
+
+  @Test
+  void reusesBuffer() {
+    endSpans(newProvider(Resource.getEmpty()).get("test"), 2, 10);
+
+    var encoder = new OtlpSpanEncoder();
+    int size = encoder.encode(ended);
+    byte[] buffer = encoder.buffer();
+    byte[] first = Arrays.copyOf(buffer, size);
+
+    assertThat(encoder.encode(ended)).isEqualTo(size);
+    assertThat(encoder.buffer()).isSameAs(buffer);
+    assertThat(Arrays.copyOf(encoder.buffer(), size)).isEqualTo(first);
+  }
+
+  @Test
+  void splitsRequestsBySize() throws Exception {
+    endSpans(newProvider(Resource.getEmpty()).get("test"), 10, 1000);
+
+    var split = encodeRequests(3000);
+
+    assertThat(split).hasSizeGreaterThan(1);
+    assertThat(split)
+        .allSatisfy(request -> assertThat(request.getSerializedSize()).isLessThan(3000));
+    assertThat(split.stream().mapToInt(OtlpSpanEncoderTest::spanCount).sum()).isEqualTo(10);
+  }
+
+  @Test
+  void splitsRequestsAcrossGroups() throws Exception {
+    TracerSdkProvider provider = newProvider(Resource.getEmpty());
+    endSpans(provider.get("one"), 3, 1000);
+    endSpans(provider.get("two"), 3, 1000);
+
+    var split = encodeRequests(2500);
+
+    assertThat(split)
+        .allSatisfy(request -> assertThat(request.getSerializedSize()).isLessThan(2500));
+    assertThat(split.stream().mapToInt(OtlpSpanEncoderTest::spanCount).sum()).isEqualTo(6);
+  }
+
+  @Test
+  void sendsOversizedSpanAlone() throws Exception {
+    endSpans(newProvider(Resource.getEmpty()).get("test"), 3, 1000);
+
+    var split = encodeRequests(100);
+
+    assertThat(split).hasSize(3);
+    assertThat(split).allSatisfy(request -> assertThat(spanCount(request)).isEqualTo(1));
+  }
+
+  private List<ExportTraceServiceRequest> encodeRequests(int maxRequestBytes)
+      throws InvalidProtocolBufferException {
+    var encoder = new OtlpSpanEncoder();
+    var requests = new ArrayList<ExportTraceServiceRequest>();
+    int count = encoder.prepare(ended);
+    for (int from = 0, to; from < count; from = to) {
+      to = encoder.requestEnd(from, maxRequestBytes);
+      int size = encoder.encode(from, to);
+      requests.add(ExportTraceServiceRequest.parseFrom(Arrays.copyOf(encoder.buffer(), size)));
+    }
+    return requests;
+  }
+
+  private void endVariedSpans() {
+    Tracer tracer = newProvider(Resource.getEmpty()).get("test", "1.0");
+    Tracer otherLibrary = newProvider(Resource.getEmpty()).get("other");
+    Tracer otherResource =
+        newProvider(Resource.create(Attributes.of(stringKey("service.name"), "orders")))
+            .get("test");
+
+    Span parent =
+        tracer
+            .spanBuilder("parent")
+            .setSpanKind(Span.Kind.SERVER)
+            .setAttribute(stringKey("http.method"), "GET")
+            .setAttribute(longKey("http.status_code"), 500L)
+            .setAttribute(booleanKey("error"), true)
+            .setAttribute(doubleKey("sampling.ratio"), 0.25)
+            .setAttribute(stringArrayKey("aws.table_names"), List.of("orders", ""))
+            .setAttribute(longArrayKey("sizes"), List.of(0L, -1L))
+            .startSpan();
+    parent.addEvent("retry", Attributes.of(longKey("attempt"), 2L));
+    parent.setStatus(StatusCanonicalCode.ERROR, "Internal error");
+    // Default values are written in AnyValue, which is a oneof.
+    Span child =
+        otherLibrary
+            .spanBuilder("")
+            .setParent(context(parent))
+            .setSpanKind(Span.Kind.CLIENT)
+            .setAttribute(stringKey("empty"), "")
+            .setAttribute(booleanKey("retried"), false)
+            .setAttribute(longKey("zero"), 0L)
+            .addLink(parent.getContext(), Attributes.of(stringKey("link.type"), "retry"))
+            .startSpan();
+    child.end();
+    otherResource.spanBuilder("consumer").setSpanKind(Span.Kind.CONSUMER).startSpan().end();
+    tracer.spanBuilder("internal").setParent(context(parent)).startSpan().end();
+    parent.end();
+  }
+
+  private TracerSdkProvider newProvider(Resource resource) {
+    TracerSdkProvider provider = TracerSdkProvider.builder().setResource(resource).build();
+    provider.addSpanProcessor(new CapturingProcessor());
+    return provider;
+  }
+
+  private static void endSpans(Tracer tracer, int count, int attributeLength) {
+    String value = "x".repeat(attributeLength);
+    for (int i = 0; i < count; i++) {
+      tracer.spanBuilder("span-" + i).setAttribute("aws.dynamodb.item", value).startSpan().end();
+    }
+  }
+
+  private static int spanCount(ExportTraceServiceRequest request) {
+    return request.getResourceSpansList().stream()
+        .flatMap(resourceSpans -> resourceSpans.getInstrumentationLibrarySpansList().stream())
+        .mapToInt(librarySpans -> librarySpans.getSpansList().size())
+        .sum();
+  }
+
+  private final class CapturingProcessor implements SpanProcessor {
+    @Override
+    public void onStart(ReadWriteSpan span) {}
+
+    @Override
+    public boolean isStartRequired() {
+      return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+      ended.add(span.toSpanData());
+    }
+
+    @Override
+    public boolean isEndRequired() {
+      return true;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+
+  private static Context context(Span span) {
+    return TracingContextUtils.withSpan(span, Context.current());
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.exporters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.softwareaws.xray.opentelemetry.internal.JsonReader;
+import io.grpc.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.TracerSdkProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.Tracer;
+import io.opentelemetry.trace.TracingContextUtils;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class XrayUdpSpanExporterTest {
+
+  private final List<SpanData> ended = new ArrayList<>();
+  private Tracer tracer;
+
+  private DatagramSocket daemon;
+  private XrayUdpSpanExporter exporter;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    TracerSdkProvider provider = TracerSdkProvider.builder().build();
+    provider.addSpanProcessor(new CapturingProcessor());
+    tracer = provider.get("test");
+
+    daemon = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+    daemon.setSoTimeout(5000);
+    exporter =
+        new XrayUdpSpanExporter(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), daemon.getLocalPort()));
+  }
+
+  @AfterEach
+  void tearDown() {
+    exporter.shutdown();
+    daemon.close();
+  }
+
+  @Test
+  void nestsChildrenInParentDocument() throws IOException {
+    Span server =
+        tracer
+            .spanBuilder("/hello")
+            .setSpanKind(Span.Kind.SERVER)
+            .setAttribute("http.method", "GET")
+            .setAttribute("http.url", "http://localhost:8080/hello")
+            .setAttribute("http.status_code", 500L)
+            .startSpan();
+    tracer
+        .spanBuilder("HTTP GET")
+        .setSpanKind(Span.Kind.CLIENT)
+        .setParent(TracingContextUtils.withSpan(server, Context.current()))
+        .setAttribute("net.peer.name", "backend")
+        .startSpan()
+        .end();
+    server.end();
+
+    assertThat(exporter.export(ended).isSuccess()).isTrue();
+
+    Map<String, Object> segment = receive();
+    String traceId = server.getContext().getTraceIdAsHexString();
+    assertThat(segment.get("trace_id"))
+        .isEqualTo("1-" + traceId.substring(0, 8) + "-" + traceId.substring(8));
+    assertThat(segment.get("id")).isEqualTo(server.getContext().getSpanIdAsHexString());
+    assertThat(segment).doesNotContainKeys("type", "parent_id");
+    assertThat(segment.get("fault")).isEqualTo(true);
+    assertThat(segment.get("start_time")).isInstanceOf(Double.class);
+    Map<String, Object> request =
+        JsonReader.asObject(JsonReader.asObject(segment.get("http")).get("request"));
+    assertThat(request.get("method")).isEqualTo("GET");
+    assertThat(request.get("url")).isEqualTo("http://localhost:8080/hello");
+
+    List<?> subsegments = JsonReader.asList(segment.get("subsegments"));
+    assertThat(subsegments).hasSize(1);
+    Map<String, Object> subsegment = JsonReader.asObject(subsegments.get(0));
+    assertThat(subsegment.get("name")).isEqualTo("backend");
+    assertThat(subsegment.get("namespace")).isEqualTo("remote");
+
+    assertNothingReceived();
+  }
+
+  @Test
+  void sendsChildrenSeparatelyWhenTooLarge() throws IOException {
+    char[] large = new char[XrayUdpSpanExporter.MAX_DATAGRAM_SIZE / 2];
+    Arrays.fill(large, 'a');
+    Span server = tracer.spanBuilder("/hello").setSpanKind(Span.Kind.SERVER).startSpan();
+    Context context = TracingContextUtils.withSpan(server, Context.current());
+    for (int i = 0; i < 2; i++) {
+      tracer
+          .spanBuilder("child")
+          .setParent(context)
+          .setAttribute("large", new String(large))
+          .startSpan()
+          .end();
+    }
+    server.end();
+
+    assertThat(exporter.export(ended).isSuccess()).isTrue();
+
+    Map<String, Object> segment = receive();
+    assertThat(segment.get("id")).isEqualTo(server.getContext().getSpanIdAsHexString());
+    assertThat(segment).doesNotContainKey("subsegments");
+    for (int i = 0; i < 2; i++) {
+      Map<String, Object> subsegment = receive();
+      assertThat(subsegment.get("type")).isEqualTo("subsegment");
+      assertThat(subsegment.get("parent_id")).isEqualTo(segment.get("id"));
+      assertThat(subsegment.get("trace_id")).isEqualTo(segment.get("trace_id"));
+    }
+    assertThat(exporter.getDroppedSpans()).isZero();
+  }
+
+  @Test
+  void dropsSpanLargerThanDatagram() throws IOException {
+    char[] large = new char[XrayUdpSpanExporter.MAX_DATAGRAM_SIZE];
+    Arrays.fill(large, 'a');
+    tracer.spanBuilder("huge").setAttribute("large", new String(large)).startSpan().end();
+
+    assertThat(exporter.export(ended).isSuccess()).isTrue();
+
+    assertThat(exporter.getDroppedSpans()).isEqualTo(1);
+    assertNothingReceived();
+  }
+
+  @Test
+  void sendsWholeDocumentsNearDatagramLimit() throws IOException {
+    // Sizes around the limit overflow either while writing the document or while the generator
+    // flushes on close. Each span is either dropped or arrives as a complete document.
+    long sent = 0;
+    for (int size = XrayUdpSpanExporter.MAX_DATAGRAM_SIZE - 1000;
+        size < XrayUdpSpanExporter.MAX_DATAGRAM_SIZE;
+        size += 10) {
+      char[] large = new char[size];
+      Arrays.fill(large, 'a');
+      ended.clear();
+      tracer.spanBuilder("span").setAttribute("large", new String(large)).startSpan().end();
+      long dropped = exporter.getDroppedSpans();
+
+      assertThat(exporter.export(ended).isSuccess()).isTrue();
+
+      if (exporter.getDroppedSpans() == dropped) {
+        assertThat(receive().get("name")).isEqualTo("span");
+        sent++;
+      }
+    }
+    assertThat(sent).isPositive();
+    assertThat(exporter.getDroppedSpans()).isPositive();
+
+    ended.clear();
+    tracer.spanBuilder("small").startSpan().end();
+    assertThat(exporter.export(ended).isSuccess()).isTrue();
+    assertThat(receive().get("name")).isEqualTo("small");
+    assertNothingReceived();
+  }
+
+  private Map<String, Object> receive() throws IOException {
+    byte[] data = new byte[XrayUdpSpanExporter.MAX_DATAGRAM_SIZE];
+    DatagramPacket packet = new DatagramPacket(data, data.length);
+    daemon.receive(packet);
+    String datagram = new String(data, 0, packet.getLength(), StandardCharsets.UTF_8);
+    int newline = datagram.indexOf('\n');
+    assertThat(datagram.substring(0, newline)).isEqualTo("{\"format\":\"json\",\"version\":1}");
+    return JsonReader.readObject(datagram.substring(newline + 1).getBytes(StandardCharsets.UTF_8));
+  }
+
+  private void assertNothingReceived() throws IOException {
+    daemon.setSoTimeout(100);
+    try {
+      daemon.receive(new DatagramPacket(new byte[1], 1));
+      throw new AssertionError("Unexpected datagram");
+    } catch (SocketTimeoutException e) {
+      // Expected
+    }
+  }
+
+  private final class CapturingProcessor implements SpanProcessor {
+    @Override
+    public void onStart(ReadWriteSpan span) {}
+
+    @Override
+    public boolean isStartRequired() {
+      return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+      ended.add(span.toSpanData());
+    }
+
+    @Override
+    public boolean isEndRequired() {
+      return true;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveExportScheduleTest {
+
+  private static final long FAST_EXPORT = TimeUnit.MILLISECONDS.toNanos(5);
+  private static final long SLOW_EXPORT = TimeUnit.SECONDS.toNanos(20);
+
+  @Test
+  void exportsSoonerAndLargerUnderPressure() {
+    var schedule = newSchedule();
+    assertThat(schedule.batchSize()).isEqualTo(64);
+    assertThat(schedule.delayNanos()).isEqualTo(millis(1000));
+
+    schedule.update(1500, 2048, FAST_EXPORT);
+    assertThat(schedule.batchSize()).isEqualTo(128);
+    assertThat(schedule.delayNanos()).isEqualTo(millis(500));
+
+    for (int i = 0; i < 20; i++) {
+      schedule.update(1500, 2048, FAST_EXPORT);
+    }
+    assertThat(schedule.batchSize()).isEqualTo(512);
+    assertThat(schedule.delayNanos()).isEqualTo(millis(50));
+  }
+
+  @Test
+  void waitsLongerWhenIdle() {
+    var schedule = newSchedule();
+
+    schedule.update(0, 2048, FAST_EXPORT);
+    assertThat(schedule.delayNanos()).isGreaterThan(millis(1000));
+
+    for (int i = 0; i < 20; i++) {
+      schedule.update(0, 2048, FAST_EXPORT);
+    }
+    assertThat(schedule.delayNanos()).isEqualTo(millis(10000));
+    assertThat(schedule.batchSize()).isEqualTo(64);
+  }
+
+  @Test
+  void recoversAfterBurst() {
+    var schedule = newSchedule();
+    for (int i = 0; i < 20; i++) {
+      schedule.update(1500, 2048, FAST_EXPORT);
+    }
+    assertThat(schedule.batchSize()).isEqualTo(512);
+    assertThat(schedule.delayNanos()).isEqualTo(millis(50));
+
+    schedule.update(100, 2048, FAST_EXPORT);
+    assertThat(schedule.batchSize()).isEqualTo(256);
+    assertThat(schedule.delayNanos()).isGreaterThan(millis(50));
+
+    for (int i = 0; i < 20; i++) {
+      schedule.update(0, 2048, FAST_EXPORT);
+    }
+    assertThat(schedule.batchSize()).isEqualTo(64);
+    assertThat(schedule.delayNanos()).isEqualTo(millis(10000));
+  }
+
+  @Test
+  void keepsScheduleWithModerateLoad() {
+    var schedule = newSchedule();
+
+    schedule.update(500, 2048, FAST_EXPORT);
+    assertThat(schedule.batchSize()).isEqualTo(64);
+    assertThat(schedule.delayNanos()).isEqualTo(millis(1000));
+    assertThat(schedule.smoothedExportNanos()).isEqualTo(FAST_EXPORT);
+  }
+
+  @Test
+  void shrinksBatchesWhenExportsAreSlow() {
+    var schedule = newSchedule();
+    for (int i = 0; i < 3; i++) {
+      schedule.update(1500, 2048, FAST_EXPORT);
+    }
+    assertThat(schedule.batchSize()).isEqualTo(512);
+
+    // Once the average export takes longer than a quarter of the export timeout, batches stop
+    // growing under pressure and shrink otherwise.
+    for (int i = 0; i < 4; i++) {
+      schedule.update(1500, 2048, SLOW_EXPORT);
+    }
+    assertThat(schedule.smoothedExportNanos()).isGreaterThan(millis(7500));
+    assertThat(schedule.batchSize()).isEqualTo(512);
+
+    schedule.update(500, 2048, SLOW_EXPORT);
+    assertThat(schedule.batchSize()).isEqualTo(256);
+  }
+
+  @Test
+  void fixedWithEqualBounds() {
+    var schedule =
+        new AdaptiveExportSchedule(
+            512, 512, millis(5000), millis(5000), millis(5000), millis(30000));
+
+    schedule.update(2048, 2048, SLOW_EXPORT);
+    schedule.update(0, 2048, FAST_EXPORT);
+    assertThat(schedule.batchSize()).isEqualTo(512);
+    assertThat(schedule.delayNanos()).isEqualTo(millis(5000));
+  }
+
+  private static AdaptiveExportSchedule newSchedule() {
+    return new AdaptiveExportSchedule(
+        64, 512, millis(50), millis(10000), millis(1000), millis(30000));
+  }
+
+  private static long millis(long millis) {
+    return TimeUnit.MILLISECONDS.toNanos(millis);
+  }
+}
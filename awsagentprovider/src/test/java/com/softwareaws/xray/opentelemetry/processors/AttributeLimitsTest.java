@@ -0,0 +1,117 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.processors;
+
+import static io.opentelemetry.common.AttributeKey.stringKey;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.common.AttributeConsumer;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.TracerSdkProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span;
+import org.junit.jupiter.api.Test;
+
+class AttributeLimitsTest {
+
+  private final TracerSdkProvider provider = TracerSdkProvider.builder().build();
+
+  @Test
+  void keepsSpansWithinLimits() {
+    var limits = new AttributeLimits(1000);
+    SpanData span = endSpan("x".repeat(100), "y".repeat(100));
+
+    assertThat(limits.apply(span)).isSameAs(span);
+    assertThat(limits.getTruncatedValues()).isZero();
+  }
+
+  @Test
+  void truncatesValuesPastTotalBytes() {
+    var limits = new AttributeLimits(150);
+    SpanData span = endSpan("x".repeat(100), "y".repeat(100));
+
+    SpanData limited = limits.apply(span);
+
+    assertThat(attributeBytes(limited)).isEqualTo(150);
+    assertThat(limited.getAttributes().size()).isEqualTo(2);
+    assertThat(limited.getTotalAttributeCount()).isEqualTo(2);
+    assertThat(limited.getName()).isEqualTo(span.getName());
+    assertThat(limited.getSpanId()).isEqualTo(span.getSpanId());
+    assertThat(limits.getTruncatedValues()).isEqualTo(1);
+  }
+
+  @Test
+  void dropsValuesWithoutRoom() {
+    var limits = new AttributeLimits(10);
+    SpanData span = endSpan("x".repeat(100), "y".repeat(100));
+
+    SpanData limited = limits.apply(span);
+
+    assertThat(attributeBytes(limited)).isLessThanOrEqualTo(10);
+    assertThat(limited.getAttributes().size()).isEqualTo(1);
+    assertThat(limited.getTotalAttributeCount()).isEqualTo(2);
+    assertThat(limits.getTruncatedValues()).isEqualTo(2);
+  }
+
+  @Test
+  void countsOnlyValuesChangedAtExport() {
+    provider.updateActiveTraceConfig(
+        provider.getActiveTraceConfig().toBuilder().setMaxLengthOfAttributeValues(10).build());
+    var limits = new AttributeLimits(12);
+    SpanData span = endSpan("x".repeat(100), "short");
+
+    assertThat(span.getAttributes().get(stringKey("a"))).hasSize(10);
+    SpanData limited = limits.apply(span);
+
+    assertThat(limited.getAttributes().get(stringKey("a"))).hasSize(10);
+    assertThat(limited.getAttributes().get(stringKey("b"))).isNull();
+    assertThat(limits.getTruncatedValues()).isEqualTo(1);
+  }
+
+  @Test
+  void keepsCountingWithNewLimit() {
+    var limits = new AttributeLimits(150);
+    limits.apply(endSpan("x".repeat(100), "y".repeat(100)));
+
+    var updated = limits.withLimit(AttributeLimits.UNLIMITED);
+    assertThat(updated.isUnlimited()).isTrue();
+    updated.apply(endSpan("x".repeat(100), "y".repeat(100)));
+
+    assertThat(updated.getTruncatedValues()).isEqualTo(1);
+  }
+
+  private SpanData endSpan(String a, String b) {
+    Span span = provider.get("test").spanBuilder("span").startSpan();
+    span.setAttribute("a", a);
+    span.setAttribute("b", b);
+    span.end();
+    return ((ReadableSpan) span).toSpanData();
+  }
+
+  private static int attributeBytes(SpanData span) {
+    var bytes = new int[1];
+    span.getAttributes()
+        .forEach(
+            new AttributeConsumer() {
+              @Override
+              public <T> void consume(AttributeKey<T> key, T value) {
+                bytes[0] += key.getKey().length() + ((String) value).length();
+              }
+            });
+    return bytes[0];
+  }
+}
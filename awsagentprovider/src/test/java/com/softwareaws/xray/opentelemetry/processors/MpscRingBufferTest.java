@@ -0,0 +1,92 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+
+class MpscRingBufferTest {
+
+  @Test
+  void roundsCapacityToPowerOfTwo() {
+    assertThat(new MpscRingBuffer<String>(1).capacity()).isEqualTo(1);
+    assertThat(new MpscRingBuffer<String>(5).capacity()).isEqualTo(8);
+    assertThat(new MpscRingBuffer<String>(8).capacity()).isEqualTo(8);
+  }
+
+  @Test
+  void rejectsWhenFull() {
+    var buffer = new MpscRingBuffer<String>(2);
+    assertThat(buffer.offer("a")).isTrue();
+    assertThat(buffer.offer("b")).isTrue();
+    assertThat(buffer.offer("c")).isFalse();
+
+    var drained = new ArrayList<String>();
+    assertThat(buffer.drainTo(drained, 1)).isEqualTo(1);
+    assertThat(buffer.offer("c")).isTrue();
+    assertThat(buffer.drainTo(drained, 10)).isEqualTo(2);
+    assertThat(drained).containsExactly("a", "b", "c");
+    assertThat(buffer.size()).isZero();
+  }
+
+  @Test
+  void concurrentProducers() throws Exception {
+    int producers = 4;
+    int perProducer = 100_000;
+    var buffer = new MpscRingBuffer<Integer>(1024);
+    var start = new CountDownLatch(1);
+    var threads = new ArrayList<Thread>();
+    for (int p = 0; p < producers; p++) {
+      int base = p * perProducer;
+      var thread =
+          new Thread(
+              () -> {
+                try {
+                  start.await();
+                } catch (InterruptedException e) {
+                  throw new AssertionError(e);
+                }
+                for (int i = 0; i < perProducer; i++) {
+                  while (!buffer.offer(base + i)) {
+                    Thread.onSpinWait();
+                  }
+                }
+              });
+      thread.start();
+      threads.add(thread);
+    }
+
+    start.countDown();
+    var seen = new HashSet<Integer>();
+    List<Integer> drained = new ArrayList<>();
+    while (seen.size() < producers * perProducer) {
+      buffer.drainTo(drained, 256);
+      for (Integer value : drained) {
+        assertThat(seen.add(value)).isTrue();
+      }
+      drained.clear();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertThat(buffer.size()).isZero();
+  }
+}
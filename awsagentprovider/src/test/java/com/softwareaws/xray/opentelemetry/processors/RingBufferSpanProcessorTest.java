@@ -0,0 +1,302 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.processors;
+
+import static io.opentelemetry.common.AttributeKey.stringKey;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.TracerSdkProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.trace.Tracer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class RingBufferSpanProcessorTest {
+
+  @Test
+  void exportsOnFlush() {
+    var exporter = new RecordingExporter();
+    var processor =
+        RingBufferSpanProcessor.newBuilder(exporter).setScheduleDelayMillis(60_000).build();
+    Tracer tracer = newTracer(processor);
+
+    tracer.spanBuilder("one").startSpan().end();
+    tracer.spanBuilder("two").startSpan().end();
+    assertThat(exporter.spanNames()).isEmpty();
+
+    awaitResult(processor.forceFlush());
+    assertThat(exporter.spanNames()).containsExactly("one", "two");
+
+    awaitResult(processor.shutdown());
+    assertThat(exporter.shutdown).isTrue();
+  }
+
+  @Test
+  void flushAfterShutdownCompletes() {
+    var processor = RingBufferSpanProcessor.newBuilder(new RecordingExporter()).build();
+    awaitResult(processor.shutdown());
+
+    awaitResult(processor.forceFlush());
+  }
+
+  @Test
+  void exportsFullBatchWithoutWaitingForDelay() throws Exception {
+    var exporter = new RecordingExporter();
+    var processor =
+        RingBufferSpanProcessor.newBuilder(exporter)
+            .setMaxExportBatchSize(2)
+            .setScheduleDelayMillis(60_000)
+            .build();
+    Tracer tracer = newTracer(processor);
+
+    tracer.spanBuilder("one").startSpan().end();
+    tracer.spanBuilder("two").startSpan().end();
+
+    assertThat(exporter.exported.await(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(exporter.spanNames()).containsExactly("one", "two");
+    awaitResult(processor.shutdown());
+  }
+
+  @Test
+  void dropsWhenFull() throws Exception {
+    var exporter = new RecordingExporter();
+    exporter.blockExports();
+    var processor =
+        RingBufferSpanProcessor.newBuilder(exporter)
+            .setBufferSize(2)
+            .setMaxExportBatchSize(2)
+            .setScheduleDelayMillis(60_000)
+            .build();
+    Tracer tracer = newTracer(processor);
+
+    // The first batch is taken by the blocked exporter, the next fills the buffer.
+    tracer.spanBuilder("one").startSpan().end();
+    tracer.spanBuilder("two").startSpan().end();
+    assertThat(exporter.exported.await(10, TimeUnit.SECONDS)).isTrue();
+    tracer.spanBuilder("three").startSpan().end();
+    tracer.spanBuilder("four").startSpan().end();
+    tracer.spanBuilder("five").startSpan().end();
+
+    assertThat(processor.getDroppedSpans()).isEqualTo(1);
+
+    exporter.unblockExports();
+    awaitResult(processor.shutdown());
+    assertThat(exporter.spanNames()).containsExactly("one", "two", "three", "four");
+  }
+
+  @Test
+  void capsAttributeBytes() {
+    var exporter = new RecordingExporter();
+    var processor =
+        RingBufferSpanProcessor.newBuilder(exporter)
+            .setScheduleDelayMillis(60_000)
+            .setMaxAttributeBytes(100)
+            .build();
+    Tracer tracer = newTracer(processor);
+
+    tracer
+        .spanBuilder("large")
+        .setAttribute("aws.dynamodb.item", "x".repeat(1000))
+        .startSpan()
+        .end();
+    awaitResult(processor.forceFlush());
+
+    String value = exporter.spans.get(0).getAttributes().get(stringKey("aws.dynamodb.item"));
+    assertThat(value).hasSize(100 - "aws.dynamodb.item".length());
+    assertThat(processor.getTruncatedAttributeValues()).isEqualTo(1);
+    awaitResult(processor.shutdown());
+  }
+
+  @Test
+  void replacesResourceOfExportedSpans() {
+    var exporter = new RecordingExporter();
+    var detected =
+        Resource.getDefault()
+            .merge(Resource.create(Attributes.of(stringKey("cloud.provider"), "aws")));
+    var processor =
+        RingBufferSpanProcessor.newBuilder(exporter)
+            .setScheduleDelayMillis(60_000)
+            .setResource(detected)
+            .build();
+    Tracer tracer = newTracer(processor);
+
+    tracer.spanBuilder("span").startSpan().end();
+    awaitResult(processor.forceFlush());
+
+    assertThat(exporter.spans.get(0).getResource()).isSameAs(detected);
+    assertThat(exporter.spans.get(0).getName()).isEqualTo("span");
+    awaitResult(processor.shutdown());
+  }
+
+  @Test
+  void blockedDestinationDoesNotDelayOthers() throws Exception {
+    var blockedExporter = new RecordingExporter();
+    blockedExporter.blockExports();
+    var blocked =
+        RingBufferSpanProcessor.newBuilder(blockedExporter)
+            .setName("blocked")
+            .setBufferSize(2)
+            .setMaxExportBatchSize(1)
+            .build();
+    var exporter = new RecordingExporter();
+    var processor =
+        RingBufferSpanProcessor.newBuilder(exporter)
+            .setName("other")
+            .setMaxExportBatchSize(1)
+            .build();
+    TracerSdkProvider provider = TracerSdkProvider.builder().build();
+    provider.addSpanProcessor(blocked);
+    provider.addSpanProcessor(processor);
+    Tracer tracer = provider.get("test");
+
+    tracer.spanBuilder("span-0").startSpan().end();
+    assertThat(blockedExporter.exported.await(10, TimeUnit.SECONDS)).isTrue();
+    for (int i = 1; i < 10; i++) {
+      tracer.spanBuilder("span-" + i).startSpan().end();
+    }
+
+    awaitResult(processor.forceFlush());
+    assertThat(exporter.spans).hasSize(10);
+    assertThat(processor.getDroppedSpans()).isZero();
+    // One span is held by the blocked export, two fill the buffer.
+    assertThat(blocked.getDroppedSpans()).isEqualTo(7);
+
+    blockedExporter.unblockExports();
+    awaitResult(blocked.shutdown());
+    awaitResult(processor.shutdown());
+  }
+
+  @Test
+  void reconfigureExportsQueuedSpansToNewExporter() {
+    var exporter = new RecordingExporter();
+    var processor =
+        RingBufferSpanProcessor.newBuilder(exporter).setScheduleDelayMillis(60_000).build();
+    Tracer tracer = newTracer(processor);
+
+    tracer.spanBuilder("one").startSpan().end();
+    tracer.spanBuilder("two").startSpan().end();
+    var newExporter = new RecordingExporter();
+    awaitResult(
+        processor.reconfigure(
+            RingBufferSpanProcessor.newBuilder(null)
+                .setMaxExportBatchSize(8)
+                .setScheduleDelayMillis(60_000),
+            () -> newExporter));
+
+    assertThat(exporter.shutdown).isTrue();
+    assertThat(processor.getExportBatchSize()).isEqualTo(8);
+    tracer.spanBuilder("three").startSpan().end();
+    awaitResult(processor.forceFlush());
+    assertThat(exporter.spans).isEmpty();
+    assertThat(newExporter.spanNames()).containsExactly("one", "two", "three");
+    awaitResult(processor.shutdown());
+  }
+
+  @Test
+  void reconfigureKeepsExporterWhenNewOneFails() {
+    var exporter = new RecordingExporter();
+    var processor =
+        RingBufferSpanProcessor.newBuilder(exporter).setScheduleDelayMillis(60_000).build();
+    Tracer tracer = newTracer(processor);
+
+    var result =
+        processor.reconfigure(
+            RingBufferSpanProcessor.newBuilder(null).setScheduleDelayMillis(60_000),
+            () -> {
+              throw new IllegalStateException("unavailable");
+            });
+    awaitResult(result);
+    assertThat(result.isSuccess()).isFalse();
+
+    tracer.spanBuilder("one").startSpan().end();
+    awaitResult(processor.forceFlush());
+    assertThat(exporter.shutdown).isFalse();
+    assertThat(exporter.spanNames()).containsExactly("one");
+    awaitResult(processor.shutdown());
+  }
+
+  private static Tracer newTracer(RingBufferSpanProcessor processor) {
+    TracerSdkProvider provider = TracerSdkProvider.builder().build();
+    provider.addSpanProcessor(processor);
+    return provider.get("test");
+  }
+
+  private static void awaitResult(CompletableResultCode result) {
+    var done = new CountDownLatch(1);
+    result.whenComplete(done::countDown);
+    try {
+      assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static final class RecordingExporter implements SpanExporter {
+
+    final List<SpanData> spans = new CopyOnWriteArrayList<>();
+    final CountDownLatch exported = new CountDownLatch(1);
+    private volatile CountDownLatch blocked = new CountDownLatch(0);
+    volatile boolean shutdown;
+
+    void blockExports() {
+      blocked = new CountDownLatch(1);
+    }
+
+    void unblockExports() {
+      blocked.countDown();
+    }
+
+    List<String> spanNames() {
+      var names = new ArrayList<String>();
+      for (SpanData span : spans) {
+        names.add(span.getName());
+      }
+      return names;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> batch) {
+      spans.addAll(batch);
+      exported.countDown();
+      try {
+        blocked.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      shutdown = true;
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
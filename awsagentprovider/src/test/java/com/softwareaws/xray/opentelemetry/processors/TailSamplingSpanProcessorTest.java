@@ -0,0 +1,314 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.processors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.grpc.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.TracerSdkProvider;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.StatusCanonicalCode;
+import io.opentelemetry.trace.Tracer;
+import io.opentelemetry.trace.TracingContextUtils;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TailSamplingSpanProcessorTest {
+
+  private final RecordingProcessor next = new RecordingProcessor();
+
+  @Test
+  void keepsTracesWithErrors() {
+    var processor = TailSamplingSpanProcessor.newBuilder(List.of(next)).build();
+    Tracer tracer = newTracer(processor);
+
+    Span root = tracer.spanBuilder("failed").startSpan();
+    Span child = tracer.spanBuilder("failed-child").setParent(context(root)).startSpan();
+    child.setStatus(StatusCanonicalCode.ERROR);
+    child.end();
+    assertThat(next.names).isEmpty();
+    root.end();
+
+    Span ok = tracer.spanBuilder("ok").startSpan();
+    tracer.spanBuilder("ok-child").setParent(context(ok)).startSpan().end();
+    ok.end();
+
+    assertThat(next.names).containsExactly("failed-child", "failed");
+    assertThat(processor.getKeptTraces()).isEqualTo(1);
+    assertThat(processor.getDroppedTraces()).isEqualTo(1);
+    assertThat(processor.getBufferedSpans()).isZero();
+  }
+
+  @Test
+  void keepsSlowTraces() throws Exception {
+    var processor =
+        TailSamplingSpanProcessor.newBuilder(List.of(next)).setLatencyThresholdMillis(100).build();
+    Tracer tracer = newTracer(processor);
+
+    Span slow = tracer.spanBuilder("slow").startSpan();
+    Thread.sleep(150);
+    slow.end();
+    tracer.spanBuilder("fast").startSpan().end();
+
+    assertThat(next.names).containsExactly("slow");
+  }
+
+  @Test
+  void keepsTracesMatchingAttributeRules() {
+    var processor =
+        TailSamplingSpanProcessor.newBuilder(List.of(next))
+            .addAttributeRule("http.status_code", "429")
+            .build();
+    Tracer tracer = newTracer(processor);
+
+    tracer.spanBuilder("throttled").setAttribute("http.status_code", 429).startSpan().end();
+    tracer.spanBuilder("ok").setAttribute("http.status_code", 200).startSpan().end();
+
+    assertThat(next.names).containsExactly("throttled");
+  }
+
+  @Test
+  void spansEndingAfterDecisionFollowIt() {
+    var processor = TailSamplingSpanProcessor.newBuilder(List.of(next)).build();
+    Tracer tracer = newTracer(processor);
+
+    Span root = tracer.spanBuilder("root").startSpan();
+    Span async = tracer.spanBuilder("async").setParent(context(root)).startSpan();
+    root.setStatus(StatusCanonicalCode.ERROR);
+    root.end();
+    async.end();
+
+    assertThat(next.names).containsExactly("root", "async");
+    assertThat(processor.getBufferedSpans()).isZero();
+  }
+
+  @Test
+  void evictsLeastRecentlyTouchedTraces() {
+    var processor = TailSamplingSpanProcessor.newBuilder(List.of(next)).setMaxTraces(2).build();
+    Tracer tracer = newTracer(processor);
+
+    Span first = tracer.spanBuilder("first").startSpan();
+    Span second = tracer.spanBuilder("second").startSpan();
+    Span third = tracer.spanBuilder("third").startSpan();
+    tracer.spanBuilder("first-child").setParent(context(first)).startSpan().end();
+    Span failed = tracer.spanBuilder("second-child").setParent(context(second)).startSpan();
+    failed.setStatus(StatusCanonicalCode.ERROR);
+    failed.end();
+    tracer.spanBuilder("first-child-2").setParent(context(first)).startSpan().end();
+    // The second trace is now the least recently touched.
+    tracer.spanBuilder("third-child").setParent(context(third)).startSpan().end();
+
+    assertThat(processor.getEvictedTraces()).isEqualTo(1);
+    assertThat(next.names).containsExactly("second-child");
+    assertThat(processor.getBufferedSpans()).isEqualTo(3);
+
+    // Later spans of the evicted trace follow its decision.
+    second.end();
+    assertThat(next.names).containsExactly("second-child", "second");
+  }
+
+  @Test
+  void decidesTracesAfterDecisionWait() throws Exception {
+    var processor =
+        TailSamplingSpanProcessor.newBuilder(List.of(next)).setDecisionWaitMillis(50).build();
+    Tracer tracer = newTracer(processor);
+
+    Span root = tracer.spanBuilder("root").startSpan();
+    Span child = tracer.spanBuilder("child").setParent(context(root)).startSpan();
+    child.setStatus(StatusCanonicalCode.ERROR);
+    child.end();
+    Thread.sleep(100);
+    tracer.spanBuilder("other").startSpan().end();
+
+    assertThat(next.names).containsExactly("child");
+    assertThat(processor.getEvictedTraces()).isZero();
+  }
+
+  @Test
+  void sweepsStaleTracesWithoutNewSpans() throws Exception {
+    var processor =
+        TailSamplingSpanProcessor.newBuilder(List.of(next)).setDecisionWaitMillis(50).build();
+    Tracer tracer = newTracer(processor);
+
+    Span root = tracer.spanBuilder("root").startSpan();
+    Span child = tracer.spanBuilder("child").setParent(context(root)).startSpan();
+    child.setStatus(StatusCanonicalCode.ERROR);
+    child.end();
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (next.names.isEmpty()) {
+      assertThat(System.nanoTime() - deadline).isNegative();
+      Thread.sleep(10);
+    }
+    assertThat(next.names).containsExactly("child");
+    assertThat(processor.getBufferedSpans()).isZero();
+  }
+
+  @Test
+  void keepsTraceDroppedEarlyWhenLaterSpanMatches() throws Exception {
+    var processor =
+        TailSamplingSpanProcessor.newBuilder(List.of(next))
+            .setMaxTraces(1)
+            .setDecisionWaitMillis(60000)
+            .build();
+    Tracer tracer = newTracer(processor);
+
+    Span root = tracer.spanBuilder("root").startSpan();
+    tracer.spanBuilder("early").setParent(context(root)).startSpan().end();
+    // Evicts the first trace, dropping it before its root ended.
+    Span otherRoot = tracer.spanBuilder("other-root").startSpan();
+    tracer.spanBuilder("other").setParent(context(otherRoot)).startSpan().end();
+    assertThat(processor.getEvictedTraces()).isEqualTo(1);
+    assertThat(processor.getDroppedTraces()).isEqualTo(1);
+
+    // Reopens the first trace, evicting the other one.
+    tracer.spanBuilder("late").setParent(context(root)).startSpan().end();
+    assertThat(processor.getEvictedTraces()).isEqualTo(2);
+    root.setStatus(StatusCanonicalCode.ERROR);
+    root.end();
+
+    // The spans dropped early are lost, the later ones are kept with the root.
+    assertThat(next.names).containsExactly("late", "root");
+    assertThat(processor.getKeptTraces()).isEqualTo(1);
+    assertThat(processor.getDroppedTraces()).isEqualTo(1);
+  }
+
+  @Test
+  void keepsTraceDroppedEarlyAsSoonAsSpanMatches() {
+    var processor = TailSamplingSpanProcessor.newBuilder(List.of(next)).build();
+    Tracer tracer = newTracer(processor);
+
+    Span root = tracer.spanBuilder("root").startSpan();
+    tracer.spanBuilder("early").setParent(context(root)).startSpan().end();
+    processor.forceFlush();
+    assertThat(processor.getDroppedTraces()).isEqualTo(1);
+
+    Span failed = tracer.spanBuilder("failed").setParent(context(root)).startSpan();
+    failed.setStatus(StatusCanonicalCode.ERROR);
+    failed.end();
+    assertThat(next.names).containsExactly("failed");
+
+    root.end();
+    assertThat(next.names).containsExactly("failed", "root");
+    assertThat(processor.getKeptTraces()).isEqualTo(1);
+    assertThat(processor.getDroppedTraces()).isZero();
+    assertThat(processor.getBufferedSpans()).isZero();
+  }
+
+  @Test
+  void dropsLateSpansOfTracesDroppedAtRoot() {
+    var processor = TailSamplingSpanProcessor.newBuilder(List.of(next)).build();
+    Tracer tracer = newTracer(processor);
+
+    Span root = tracer.spanBuilder("root").startSpan();
+    Span async = tracer.spanBuilder("async").setParent(context(root)).startSpan();
+    root.end();
+    async.setStatus(StatusCanonicalCode.ERROR);
+    async.end();
+
+    assertThat(next.names).isEmpty();
+    assertThat(processor.getBufferedSpans()).isZero();
+  }
+
+  @Test
+  void passesConvertedSpanData() {
+    var processor = TailSamplingSpanProcessor.newBuilder(List.of(next)).build();
+    Tracer tracer = newTracer(processor);
+
+    Span root = tracer.spanBuilder("root").startSpan();
+    root.setStatus(StatusCanonicalCode.ERROR);
+    root.end();
+
+    assertThat(next.spans).hasSize(1);
+    ReadableSpan kept = next.spans.get(0);
+    assertThat(kept.toSpanData()).isSameAs(kept.toSpanData());
+    assertThat(kept.getSpanContext()).isEqualTo(root.getContext());
+    assertThat(kept.hasEnded()).isTrue();
+  }
+
+  @Test
+  void flushDecidesBufferedTraces() {
+    var processor = TailSamplingSpanProcessor.newBuilder(List.of(next)).build();
+    Tracer tracer = newTracer(processor);
+
+    Span root = tracer.spanBuilder("root").startSpan();
+    Span child = tracer.spanBuilder("child").setParent(context(root)).startSpan();
+    child.setStatus(StatusCanonicalCode.ERROR);
+    child.end();
+
+    assertThat(processor.forceFlush().isSuccess()).isTrue();
+    assertThat(next.names).containsExactly("child");
+    assertThat(next.flushed).isTrue();
+
+    processor.shutdown();
+    assertThat(next.shutdown).isTrue();
+  }
+
+  private static Tracer newTracer(TailSamplingSpanProcessor processor) {
+    TracerSdkProvider provider = TracerSdkProvider.builder().build();
+    provider.addSpanProcessor(processor);
+    return provider.get("test");
+  }
+
+  private static final class RecordingProcessor implements SpanProcessor {
+
+    final List<String> names = new CopyOnWriteArrayList<>();
+    final List<ReadableSpan> spans = new CopyOnWriteArrayList<>();
+    volatile boolean flushed;
+    volatile boolean shutdown;
+
+    @Override
+    public void onStart(ReadWriteSpan span) {}
+
+    @Override
+    public boolean isStartRequired() {
+      return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+      names.add(span.getName());
+      spans.add(span);
+    }
+
+    @Override
+    public boolean isEndRequired() {
+      return true;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      shutdown = true;
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+      flushed = true;
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+
+  private static Context context(Span span) {
+    return TracingContextUtils.withSpan(span, Context.current());
+  }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.propagators;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.grpc.Context;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import io.opentelemetry.trace.DefaultSpan;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.TraceFlags;
+import io.opentelemetry.trace.TraceState;
+import io.opentelemetry.trace.TracingContextUtils;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+
+class AdaptivePropagatorTest {
+
+  private static final Context CONTEXT =
+      TracingContextUtils.withSpan(
+          DefaultSpan.create(
+              SpanContext.create(
+                  "5f84c7a1e7d1852db2ee3f9aa3e5b8c1",
+                  "53995c3f42cd8ad8",
+                  TraceFlags.getSampled(),
+                  TraceState.getDefault())),
+          Context.ROOT);
+
+  private static final TextMapPropagator.Setter<URLConnection> SETTER =
+      URLConnection::setRequestProperty;
+  private static final TextMapPropagator.Getter<HttpServletRequest> GETTER =
+      HttpServletRequest::getHeader;
+
+  private static final String TRACE_PARENT =
+      "00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01";
+
+  private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  private final AdaptivePropagator propagator =
+      AdaptivePropagator.newBuilder()
+          .setProbeIntervalMillis(TimeUnit.MINUTES.toMillis(1))
+          .setLearnedTtlMillis(TimeUnit.MINUTES.toMillis(10))
+          .build();
+
+  @Test
+  void injectsEveryFormatForUnknownHosts() {
+    assertThat(inject(propagator, "10.0.0.5", 0))
+        .containsOnlyKeys(
+            "X-Amzn-Trace-Id", "traceparent", "X-B3-TraceId", "X-B3-SpanId", "X-B3-Sampled");
+  }
+
+  @Test
+  void injectsFormatsLearnedFromHost() {
+    extract("10.0.0.5", Map.of("traceparent", TRACE_PARENT), 0);
+
+    assertThat(inject(propagator, "10.0.0.5", 1)).containsOnlyKeys("traceparent");
+    assertThat(inject(propagator, "10.0.0.6", 1)).hasSize(5);
+
+    extract("10.0.0.5", Map.of("X-Amzn-Trace-Id", "Root=1-5f84c7a1-e7d1852db2ee3f9aa3e5b8c1"), 2);
+    assertThat(inject(propagator, "10.0.0.5", 3))
+        .containsOnlyKeys("traceparent", "X-Amzn-Trace-Id");
+  }
+
+  @Test
+  void probesWithEveryFormat() {
+    extract("10.0.0.5", Map.of("X-B3-TraceId", "e7d1852db2ee3f9a"), 0);
+
+    assertThat(inject(propagator, "10.0.0.5", MINUTE_NANOS - 1)).hasSize(3);
+    assertThat(inject(propagator, "10.0.0.5", MINUTE_NANOS)).hasSize(5);
+    assertThat(inject(propagator, "10.0.0.5", MINUTE_NANOS + 1)).hasSize(3);
+  }
+
+  @Test
+  void forgetsHostsWhichStopSending() {
+    extract("10.0.0.5", Map.of("X-B3-TraceId", "e7d1852db2ee3f9a"), 0);
+
+    assertThat(inject(propagator, "10.0.0.5", 10 * MINUTE_NANOS + 1)).hasSize(5);
+    assertThat(propagator.getLearnedHostCount()).isZero();
+  }
+
+  @Test
+  void configuredFormatsTakePrecedence() {
+    var configured =
+        AdaptivePropagator.newBuilder()
+            .addHostFormats("payments.internal", "xray+b3")
+            .addHostFormats("*.internal", "tracecontext")
+            .addHostFormats("10.0.0.5", "xray")
+            .build();
+    extract(configured, "10.0.0.5", Map.of("X-B3-TraceId", "e7d1852db2ee3f9a"), 0);
+
+    assertThat(inject(configured, "PAYMENTS.internal", 0))
+        .containsOnlyKeys("X-Amzn-Trace-Id", "X-B3-TraceId", "X-B3-SpanId", "X-B3-Sampled");
+    assertThat(inject(configured, "orders.internal", 0)).containsOnlyKeys("traceparent");
+    assertThat(inject(configured, "10.0.0.5", 0)).containsOnlyKeys("X-Amzn-Trace-Id");
+    assertThat(inject(configured, "example.com", 0)).hasSize(5);
+    assertThatThrownBy(() -> AdaptivePropagator.newBuilder().addHostFormats("*", "jaeger"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void limitsLearnedHosts() {
+    var limited = AdaptivePropagator.newBuilder().setMaxLearnedHosts(1).build();
+    extract(limited, "10.0.0.5", Map.of("X-B3-TraceId", "e7d1852db2ee3f9a"), 0);
+    extract(limited, "10.0.0.6", Map.of("X-B3-TraceId", "e7d1852db2ee3f9a"), 0);
+
+    assertThat(limited.getLearnedHostCount()).isEqualTo(1);
+    assertThat(inject(limited, "10.0.0.6", 0)).hasSize(5);
+  }
+
+  @Test
+  void onlyUsesLearnedFormatsForIpAddresses() {
+    extract("0:0:0:0:0:0:0:1", Map.of("traceparent", TRACE_PARENT), 0);
+    extract("127.0.0.1", Map.of("traceparent", TRACE_PARENT), 0);
+
+    assertThat(inject(propagator, "[::1]", 1)).containsOnlyKeys("traceparent");
+    assertThat(inject(propagator, "127.0.0.1", 1)).containsOnlyKeys("traceparent");
+    // The same peer called by name isn't matched, since names aren't resolved.
+    assertThat(inject(propagator, "localhost", 1)).hasSize(5);
+  }
+
+  @Test
+  void readsPeersOfKnownCarriers() throws Exception {
+    // Opening a connection doesn't connect it.
+    var connection = new URL("http://example.com:8080/orders").openConnection();
+
+    assertThat(CarrierHosts.outboundHost(connection)).isEqualTo("example.com");
+    assertThat(CarrierHosts.outboundHost(new Object())).isNull();
+    assertThat(CarrierHosts.outboundHost(new OutboundRequest())).isNull();
+    assertThat(CarrierHosts.inboundAddress(servletRequest("10.0.0.5", Map.of())))
+        .isEqualTo("10.0.0.5");
+    assertThat(CarrierHosts.inboundAddress(servletRequest("example.com", Map.of()))).isNull();
+  }
+
+  @Test
+  void recognizesIpAddresses() {
+    assertThat(CarrierHosts.ipAddress("10.0.0.5")).isEqualTo("10.0.0.5");
+    assertThat(CarrierHosts.ipAddress("[::1]")).isEqualTo("0:0:0:0:0:0:0:1");
+    assertThat(CarrierHosts.ipAddress("fe80::1")).isEqualTo("fe80:0:0:0:0:0:0:1");
+    assertThat(CarrierHosts.ipAddress("10.0.0")).isNull();
+    assertThat(CarrierHosts.ipAddress("10.0.0.5.nip.io")).isNull();
+    assertThat(CarrierHosts.ipAddress("cafe")).isNull();
+    assertThat(CarrierHosts.ipAddress("")).isNull();
+  }
+
+  private void extract(String address, Map<String, String> headers, long nowNanos) {
+    extract(propagator, address, headers, nowNanos);
+  }
+
+  private static void extract(
+      AdaptivePropagator propagator, String address, Map<String, String> headers, long nowNanos) {
+    propagator.extract(Context.ROOT, servletRequest(address, headers), GETTER, nowNanos);
+  }
+
+  private static Map<String, String> inject(
+      AdaptivePropagator propagator, String host, long nowNanos) {
+    URLConnection connection;
+    try {
+      connection = new URL("http://" + host + ":8080/orders").openConnection();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    propagator.inject(CONTEXT, connection, SETTER, nowNanos);
+    var headers = new HashMap<String, String>();
+    connection.getRequestProperties().forEach((key, values) -> headers.put(key, values.get(0)));
+    return headers;
+  }
+
+  private static HttpServletRequest servletRequest(String address, Map<String, String> headers) {
+    return (HttpServletRequest)
+        Proxy.newProxyInstance(
+            AdaptivePropagatorTest.class.getClassLoader(),
+            new Class<?>[] {HttpServletRequest.class},
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "getRemoteAddr":
+                  return address;
+                case "getHeader":
+                  return headers.get(args[0]);
+                default:
+                  throw new UnsupportedOperationException(method.getName());
+              }
+            });
+  }
+
+  // Has the accessor of a known carrier type, but isn't one.
+  public static final class OutboundRequest {
+    public URI getURI() {
+      return URI.create("http://10.0.0.5:8080/orders");
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.propagators;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.grpc.Context;
+import io.opentelemetry.context.propagation.DefaultContextPropagators;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import io.opentelemetry.extensions.trace.propagation.AwsXRayPropagator;
+import io.opentelemetry.extensions.trace.propagation.B3Propagator;
+import io.opentelemetry.trace.DefaultSpan;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.TraceFlags;
+import io.opentelemetry.trace.TraceState;
+import io.opentelemetry.trace.TracingContextUtils;
+import io.opentelemetry.trace.propagation.HttpTraceContext;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class FusedPropagatorTest {
+
+  private static final String TRACE_ID = "5f84c7a1e7d1852db2ee3f9aa3e5b8c1";
+  private static final String SPAN_ID = "53995c3f42cd8ad8";
+  private static final String XRAY_TRACE_ID = "1-5f84c7a1-e7d1852db2ee3f9aa3e5b8c1";
+
+  private static final TextMapPropagator COMBINED =
+      DefaultContextPropagators.builder()
+          .addTextMapPropagator(AwsXRayPropagator.getInstance())
+          .addTextMapPropagator(HttpTraceContext.getInstance())
+          .addTextMapPropagator(B3Propagator.getMultipleHeaderPropagator())
+          .build()
+          .getTextMapPropagator();
+
+  private static final TextMapPropagator.Setter<Map<String, String>> SETTER = Map::put;
+  private static final TextMapPropagator.Getter<Map<String, String>> GETTER = Map::get;
+
+  @Test
+  void injectsLikeCombinedPropagators() {
+    TraceState traceState = TraceState.builder().set("foo", "bar").set("xray", "1").build();
+    for (var spanContext :
+        List.of(
+            SpanContext.create(TRACE_ID, SPAN_ID, TraceFlags.getSampled(), traceState),
+            SpanContext.create(
+                TRACE_ID, SPAN_ID, TraceFlags.getDefault(), TraceState.getDefault()))) {
+      Context context = TracingContextUtils.withSpan(DefaultSpan.create(spanContext), Context.ROOT);
+      var expected = new HashMap<String, String>();
+      COMBINED.inject(context, expected, SETTER);
+      var actual = new HashMap<String, String>();
+      FusedPropagator.getInstance().inject(context, actual, SETTER);
+
+      assertThat(actual).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  void injectsNothingWithoutSpan() {
+    var carrier = new HashMap<String, String>();
+    FusedPropagator.getInstance().inject(Context.ROOT, carrier, SETTER);
+
+    assertThat(carrier).isEmpty();
+  }
+
+  @Test
+  void extractsLikeCombinedPropagators() {
+    String otherTraceId = "0af7651916cd43dd8448eb211c80319c";
+    String otherSpanId = "b7ad6b7169203331";
+    String xray = "Root=" + XRAY_TRACE_ID + ";Parent=" + SPAN_ID + ";Sampled=1";
+    String traceParent = "00-" + otherTraceId + "-" + otherSpanId + "-01";
+    List<Map<String, String>> carriers =
+        List.of(
+            Map.of(),
+            Map.of("X-Amzn-Trace-Id", xray),
+            Map.of("X-Amzn-Trace-Id", "Sampled=0;Parent=" + SPAN_ID + ";Root=" + XRAY_TRACE_ID),
+            Map.of("X-Amzn-Trace-Id", "Root=" + XRAY_TRACE_ID + ";Sampled=1"),
+            Map.of("traceparent", traceParent),
+            Map.of("traceparent", traceParent, "tracestate", "foo=bar,xray=1"),
+            Map.of("traceparent", "00-" + otherTraceId + "-" + otherSpanId + "-00"),
+            Map.of("traceparent", "ff-" + otherTraceId + "-" + otherSpanId + "-01"),
+            Map.of("traceparent", "00-" + otherTraceId.toUpperCase() + "-" + otherSpanId + "-01"),
+            Map.of("traceparent", "00-00000000000000000000000000000000-" + otherSpanId + "-01"),
+            Map.of("X-B3-TraceId", TRACE_ID, "X-B3-SpanId", SPAN_ID, "X-B3-Sampled", "1"),
+            Map.of("X-B3-TraceId", TRACE_ID.substring(16), "X-B3-SpanId", SPAN_ID),
+            Map.of("X-B3-TraceId", TRACE_ID, "X-B3-SpanId", "0000000000000000"),
+            Map.of("X-Amzn-Trace-Id", xray, "traceparent", traceParent),
+            Map.of("X-Amzn-Trace-Id", xray, "traceparent", "00-invalid"),
+            Map.of(
+                "X-Amzn-Trace-Id",
+                xray,
+                "traceparent",
+                traceParent,
+                "X-B3-TraceId",
+                TRACE_ID.substring(16),
+                "X-B3-SpanId",
+                "1234567890abcdef",
+                "X-B3-Sampled",
+                "true"));
+    for (Map<String, String> carrier : carriers) {
+      SpanContext expected =
+          TracingContextUtils.getSpan(COMBINED.extract(Context.ROOT, carrier, GETTER))
+              .getContext();
+      SpanContext actual =
+          TracingContextUtils.getSpan(
+                  FusedPropagator.getInstance().extract(Context.ROOT, carrier, GETTER))
+              .getContext();
+
+      assertThat(actual).describedAs(carrier.toString()).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  void fieldsIncludeInjectedHeaders() {
+    TraceState traceState = TraceState.builder().set("foo", "bar").build();
+    SpanContext spanContext =
+        SpanContext.create(TRACE_ID, SPAN_ID, TraceFlags.getSampled(), traceState);
+    Context context = TracingContextUtils.withSpan(DefaultSpan.create(spanContext), Context.ROOT);
+    var carrier = new HashMap<String, String>();
+    FusedPropagator.getInstance().inject(context, carrier, SETTER);
+
+    assertThat(FusedPropagator.getInstance().fields())
+        .containsExactlyInAnyOrderElementsOf(carrier.keySet());
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.propagators;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.softwareaws.xray.opentelemetry.propagators.XrayTraceHeader.Sampling;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+class XrayTraceHeaderTest {
+
+  private static final String HEADER =
+      "Root=1-5f84c7a1-e7d1852db2ee3f9aa3e5b8c1;Parent=53995c3f42cd8ad8;Sampled=1";
+
+  private static final Pattern ROOT = Pattern.compile("1-[0-9a-f]{8}-[0-9a-f]{24}");
+  private static final Pattern PARENT = Pattern.compile("[0-9a-f]{16}");
+
+  private final XrayTraceHeader header = new XrayTraceHeader();
+
+  @Test
+  void parsesHeader() {
+    assertThat(header.parse(HEADER)).isTrue();
+    assertThat(header.getTraceIdAsHexString()).isEqualTo("5f84c7a1e7d1852db2ee3f9aa3e5b8c1");
+    assertThat(header.getTraceIdHigh()).isEqualTo(0x5f84c7a1e7d1852dL);
+    assertThat(header.getTraceIdLow()).isEqualTo(0xb2ee3f9aa3e5b8c1L);
+    assertThat(header.hasParent()).isTrue();
+    assertThat(header.getParentIdAsHexString()).isEqualTo("53995c3f42cd8ad8");
+    assertThat(header.getParentId()).isEqualTo(0x53995c3f42cd8ad8L);
+    assertThat(header.getSampling()).isEqualTo(Sampling.SAMPLED);
+    assertThat(header.getExtraFieldCount()).isZero();
+  }
+
+  @Test
+  void keepsExtraFields() {
+    assertThat(
+            header.parse(
+                " Sampled=? ; Root = 1-5f84c7a1-e7d1852db2ee3f9aa3e5b8c1;"
+                    + "Lineage=a87bd80c:1|68fd508a:5;Self=1-5f84c7a1-12456789abcdef012345678;"))
+        .isTrue();
+    assertThat(header.hasParent()).isFalse();
+    assertThat(header.getParentIdAsHexString()).isNull();
+    assertThat(header.getSampling()).isEqualTo(Sampling.REQUESTED);
+    assertThat(header.getExtraFieldCount()).isEqualTo(2);
+    assertThat(header.getExtraField(0).toString()).isEqualTo("Lineage=a87bd80c:1|68fd508a:5");
+    assertThat(header.getExtraField(1).toString())
+        .isEqualTo("Self=1-5f84c7a1-12456789abcdef012345678");
+  }
+
+  @Test
+  void rejectsInvalidIds() {
+    assertThat(header.parse("Parent=53995c3f42cd8ad8;Sampled=1")).isFalse();
+    assertThat(header.parse("Root=1-5F84C7A1-e7d1852db2ee3f9aa3e5b8c1")).isFalse();
+    assertThat(header.parse("Root=1-5f84c7a1-e7d1852db2ee3f9aa3e5b8c")).isFalse();
+    assertThat(header.parse("Root=2-5f84c7a1-e7d1852db2ee3f9aa3e5b8c1")).isFalse();
+    assertThat(header.parse("Root=1-5f84c7a1-e7d1852db2ee3f9aa3e5b8c1;Parent=53995c3f42cd8ad"))
+        .isFalse();
+  }
+
+  @Test
+  void formatsIntoBuffer() {
+    int length = header.format("5f84c7a1e7d1852db2ee3f9aa3e5b8c1", "53995c3f42cd8ad8", true);
+    assertThat(new String(header.buffer(), 0, length)).isEqualTo(HEADER);
+
+    char[] buffer = header.buffer();
+    length = header.format(0x5f84c7a1e7d1852dL, 0xb2ee3f9aa3e5b8c1L, 0x53995c3f42cd8ad8L, false);
+    assertThat(header.buffer()).isSameAs(buffer);
+    assertThat(new String(buffer, 0, length)).isEqualTo(HEADER.replace("Sampled=1", "Sampled=0"));
+  }
+
+  // Compares parsing against a straightforward reference parser for random and mutated headers,
+  // and checks that every valid header formats back to the same IDs.
+  @Test
+  void fuzz() {
+    var random = new Random(20201019);
+    for (int i = 0; i < 100_000; i++) {
+      String value = randomHeader(random);
+
+      Reference expected = Reference.parse(value);
+      boolean parsed = header.parse(value);
+
+      assertThat(parsed).describedAs(value).isEqualTo(expected != null);
+      if (!parsed) {
+        continue;
+      }
+      assertThat(header.getTraceIdAsHexString()).describedAs(value).isEqualTo(expected.traceId);
+      assertThat(header.getParentIdAsHexString()).describedAs(value).isEqualTo(expected.parentId);
+      assertThat(header.getSampling()).describedAs(value).isEqualTo(expected.sampling);
+      var extraFields = new ArrayList<String>();
+      for (int j = 0; j < header.getExtraFieldCount(); j++) {
+        extraFields.add(header.getExtraField(j).toString());
+      }
+      assertThat(extraFields).describedAs(value).isEqualTo(expected.extraFields);
+
+      int length =
+          header.format(
+              header.getTraceIdHigh(),
+              header.getTraceIdLow(),
+              header.getParentId(),
+              header.getSampling() == Sampling.SAMPLED);
+      String formatted = new String(header.buffer(), 0, length);
+      assertThat(header.parse(formatted)).isTrue();
+      assertThat(header.getTraceIdAsHexString()).isEqualTo(expected.traceId);
+      if (expected.parentId != null) {
+        assertThat(header.getParentIdAsHexString()).isEqualTo(expected.parentId);
+      }
+    }
+  }
+
+  private static String randomHeader(Random random) {
+    if (random.nextInt(4) == 0) {
+      // Mutate a valid header, mostly producing invalid IDs.
+      var mutated = new StringBuilder(HEADER);
+      for (int i = random.nextInt(3); i >= 0; i--) {
+        int index = random.nextInt(mutated.length());
+        switch (random.nextInt(3)) {
+          case 0:
+            mutated.setCharAt(index, randomChar(random));
+            break;
+          case 1:
+            mutated.insert(index, randomChar(random));
+            break;
+          default:
+            mutated.deleteCharAt(index);
+        }
+      }
+      return mutated.toString();
+    }
+    String[] fields = {
+      "Root=1-" + randomHex(random, 8) + "-" + randomHex(random, 24),
+      "Root=1-" + randomHex(random, 8) + "-" + randomHex(random, 23),
+      "Parent=" + randomHex(random, 16),
+      "Parent=" + randomHex(random, 15) + randomChar(random),
+      "Sampled=" + "10?x".charAt(random.nextInt(4)),
+      "Self=1-" + randomHex(random, 8) + "-" + randomHex(random, 24),
+      "Lineage=a87bd80c:1|68fd508a:5",
+      "NoValue",
+      "Root",
+      "",
+      String.valueOf(randomChar(random)),
+    };
+    List<String> chosen = new ArrayList<>();
+    for (int i = random.nextInt(5); i >= 0; i--) {
+      String field = fields[random.nextInt(fields.length)];
+      String padding = random.nextInt(4) == 0 ? " " : "";
+      chosen.add(padding + field + padding);
+    }
+    Collections.shuffle(chosen, random);
+    return String.join(";", chosen);
+  }
+
+  private static String randomHex(Random random, int length) {
+    var hex = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      hex.append("0123456789abcdef".charAt(random.nextInt(16)));
+    }
+    return hex.toString();
+  }
+
+  private static char randomChar(Random random) {
+    String interesting = ";= -?0aAfFgz\u00e9\u4e2d";
+    return interesting.charAt(random.nextInt(interesting.length()));
+  }
+
+  private static final class Reference {
+    String traceId;
+    String parentId;
+    Sampling sampling = Sampling.UNKNOWN;
+    final List<String> extraFields = new ArrayList<>();
+
+    static Reference parse(String header) {
+      var parsed = new Reference();
+      for (String field : header.split(";", -1)) {
+        field = trimSpaces(field);
+        if (field.isEmpty()) {
+          continue;
+        }
+        int separator = field.indexOf('=');
+        if (separator < 0) {
+          parsed.extraFields.add(field);
+          continue;
+        }
+        String key = trimSpaces(field.substring(0, separator));
+        String value = trimSpaces(field.substring(separator + 1));
+        switch (key) {
+          case "Root":
+            if (!ROOT.matcher(value).matches()) {
+              return null;
+            }
+            parsed.traceId = value.substring(2, 10) + value.substring(11);
+            break;
+          case "Parent":
+            if (!PARENT.matcher(value).matches()) {
+              return null;
+            }
+            parsed.parentId = value;
+            break;
+          case "Sampled":
+            parsed.sampling =
+                value.equals("1")
+                    ? Sampling.SAMPLED
+                    : value.equals("0")
+                        ? Sampling.NOT_SAMPLED
+                        : value.equals("?") ? Sampling.REQUESTED : Sampling.UNKNOWN;
+            break;
+          default:
+            parsed.extraFields.add(field);
+        }
+      }
+      return parsed.traceId != null ? parsed : null;
+    }
+
+    private static String trimSpaces(String value) {
+      int start = 0;
+      int end = value.length();
+      while (start < end && value.charAt(start) == ' ') {
+        start++;
+      }
+      while (end > start && value.charAt(end - 1) == ' ') {
+        end--;
+      }
+      return value.substring(start, end);
+    }
+  }
+}
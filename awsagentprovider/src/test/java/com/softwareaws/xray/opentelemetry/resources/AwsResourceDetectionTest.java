@@ -0,0 +1,109 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.resources;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class AwsResourceDetectionTest {
+
+  @Test
+  void mergesDetectorsInOrder() {
+    var detection =
+        new AwsResourceDetection(
+            List.of(
+                detector("ec2", Map.of("cloud.platform", "aws_ec2", "host.id", "i-1234")),
+                detector("empty", Map.of()),
+                detector("eks", Map.of("cloud.platform", "aws_eks"))));
+
+    assertThat(detection.detectAttributes(1000, 1000))
+        .containsOnly(entry("cloud.platform", "aws_eks"), entry("host.id", "i-1234"));
+  }
+
+  @Test
+  void slowDetectorsDoNotDelayStartup() {
+    var detection =
+        new AwsResourceDetection(
+            List.of(
+                sleepingDetector("slow1"),
+                detector("ec2", Map.of("host.id", "i-1234")),
+                sleepingDetector("slow2"),
+                sleepingDetector("slow3")));
+
+    long startNanos = System.nanoTime();
+    var attributes = detection.detectAttributes(100, 200);
+    long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+    assertThat(attributes).containsOnly(entry("host.id", "i-1234"));
+    // Detectors run in parallel, so three hanging detectors cost one timeout, not three.
+    assertThat(elapsedMillis).isLessThan(1000);
+  }
+
+  @Test
+  void failingDetectorIsSkipped() {
+    var detection =
+        new AwsResourceDetection(
+            List.of(
+                new ResourceDetector() {
+                  @Override
+                  public String name() {
+                    return "failing";
+                  }
+
+                  @Override
+                  public Map<String, String> detect(int timeoutMillis) {
+                    throw new IllegalStateException("boom");
+                  }
+                },
+                detector("ecs", Map.of("cloud.platform", "aws_ecs"))));
+
+    assertThat(detection.detectAttributes(1000, 1000))
+        .containsOnly(entry("cloud.platform", "aws_ecs"));
+  }
+
+  private static ResourceDetector detector(String name, Map<String, String> attributes) {
+    return new ResourceDetector() {
+      @Override
+      public String name() {
+        return name;
+      }
+
+      @Override
+      public Map<String, String> detect(int timeoutMillis) {
+        return attributes;
+      }
+    };
+  }
+
+  private static ResourceDetector sleepingDetector(String name) {
+    return new ResourceDetector() {
+      @Override
+      public String name() {
+        return name;
+      }
+
+      @Override
+      public Map<String, String> detect(int timeoutMillis) throws InterruptedException {
+        Thread.sleep(10_000);
+        return Map.of();
+      }
+    };
+  }
+}
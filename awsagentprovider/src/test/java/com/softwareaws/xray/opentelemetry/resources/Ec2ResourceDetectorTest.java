@@ -0,0 +1,134 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.resources;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class Ec2ResourceDetectorTest {
+
+  private static final String IDENTITY =
+      "{\"accountId\":\"123456789012\",\"architecture\":\"x86_64\","
+          + "\"availabilityZone\":\"us-west-2b\",\"imageId\":\"ami-5fb8c835\","
+          + "\"instanceId\":\"i-1234567890abcdef0\",\"instanceType\":\"t2.micro\","
+          + "\"region\":\"us-west-2\"}";
+
+  @TempDir Path sysfs;
+
+  private HttpServer imds;
+  private final AtomicInteger requests = new AtomicInteger();
+
+  @BeforeEach
+  void startImds() throws IOException {
+    imds = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    imds.createContext("/latest/api/token", exchange -> respond(exchange, "token"));
+    imds.createContext(
+        "/latest/dynamic/instance-identity/document",
+        exchange -> {
+          if (!"token".equals(exchange.getRequestHeaders().getFirst("X-aws-ec2-metadata-token"))) {
+            exchange.sendResponseHeaders(401, -1);
+            exchange.close();
+            return;
+          }
+          respond(exchange, IDENTITY);
+        });
+    imds.createContext(
+        "/latest/meta-data/hostname", exchange -> respond(exchange, "ip-172-12-34-567.ec2"));
+    imds.start();
+  }
+
+  @AfterEach
+  void stopImds() {
+    imds.stop(0);
+  }
+
+  @Test
+  void detectsInstance() throws IOException {
+    var detector = newDetector("127.0.0.1:" + imds.getAddress().getPort(), Map.of());
+
+    assertThat(detector.detect(1000))
+        .containsOnly(
+            entry("cloud.provider", "aws"),
+            entry("cloud.platform", "aws_ec2"),
+            entry("cloud.account.id", "123456789012"),
+            entry("cloud.region", "us-west-2"),
+            entry("cloud.zone", "us-west-2b"),
+            entry("host.id", "i-1234567890abcdef0"),
+            entry("host.type", "t2.micro"),
+            entry("host.image.id", "ami-5fb8c835"),
+            entry("host.name", "ip-172-12-34-567.ec2"));
+  }
+
+  @Test
+  void failsWithoutImds() {
+    int port = imds.getAddress().getPort();
+    imds.stop(0);
+    var detector = newDetector("127.0.0.1:" + port, Map.of());
+
+    assertThatThrownBy(() -> detector.detect(100)).isInstanceOf(IOException.class);
+  }
+
+  @Test
+  void skipsImdsOnFargateAndLambda() throws IOException {
+    String endpoint = "127.0.0.1:" + imds.getAddress().getPort();
+
+    assertThat(newDetector(endpoint, Map.of("AWS_EXECUTION_ENV", "AWS_ECS_FARGATE")).detect(1000))
+        .isEmpty();
+    assertThat(newDetector(endpoint, Map.of("AWS_LAMBDA_FUNCTION_NAME", "fn")).detect(1000))
+        .isEmpty();
+    assertThat(requests).hasValue(0);
+  }
+
+  @Test
+  void skipsImdsOnOtherHardware() throws IOException {
+    Files.writeString(sysfs.resolve("sys_vendor"), "QEMU\n");
+
+    // Without an endpoint override this would otherwise time out on the link-local address.
+    assertThat(newDetector(null, Map.of()).detect(100)).isEmpty();
+  }
+
+  private Ec2ResourceDetector newDetector(
+      @Nullable String endpointOverride, Map<String, String> environment) {
+    return new Ec2ResourceDetector(
+        endpointOverride, environment, sysfs.resolve("sys_vendor"), sysfs.resolve("uuid"));
+  }
+
+  private void respond(HttpExchange exchange, String body) throws IOException {
+    requests.incrementAndGet();
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+}
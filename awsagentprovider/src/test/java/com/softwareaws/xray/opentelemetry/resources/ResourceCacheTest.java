@@ -0,0 +1,124 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.resources;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ResourceCacheTest {
+
+  private static final String CONTAINER_ID =
+      "ac679f8a8319c8cf7d38e1adf263bc08d23e3cd0c3ef2d3bce1f1e6aa0f5a1b3";
+
+  @TempDir Path tempDir;
+
+  @Test
+  void roundTrip() {
+    var cache = new ResourceCache(tempDir.resolve("cache/resource.properties"));
+    cache.write("i-1234/1600000000/host", Map.of("host.id", "i-1234", "cloud.region", "us-east-1"));
+
+    assertThat(cache.read("i-1234/1600000000/host"))
+        .containsOnly(entry("host.id", "i-1234"), entry("cloud.region", "us-east-1"));
+  }
+
+  @Test
+  void otherIdentityMisses() {
+    var cache = new ResourceCache(tempDir.resolve("resource.properties"));
+    cache.write("i-1234/1600000000/host", Map.of("host.id", "i-1234"));
+
+    // Rebooted
+    assertThat(cache.read("i-1234/1600000999/host")).isNull();
+  }
+
+  @Test
+  void missingOrCorruptFileMisses() throws IOException {
+    var file = tempDir.resolve("resource.properties");
+    var cache = new ResourceCache(file);
+
+    assertThat(cache.read("i-1234/1600000000/host")).isNull();
+
+    Files.writeString(file, "identity=i-1234/1600000000/host\\u00");
+    assertThat(cache.read("i-1234/1600000000/host")).isNull();
+  }
+
+  @Test
+  void identity() throws IOException {
+    Path assetTag = Files.writeString(tempDir.resolve("board_asset_tag"), "i-0abc\n");
+    Path cloudInit = tempDir.resolve("instance-id");
+    Path stat = Files.writeString(tempDir.resolve("stat"), "cpu 1 2 3\nbtime 1600000000\n");
+    Path cgroup =
+        Files.writeString(tempDir.resolve("cgroup"), "1:name=systemd:/docker/" + CONTAINER_ID);
+
+    assertThat(identity(assetTag, cloudInit, stat, cgroup))
+        .isEqualTo("i-0abc/1600000000/" + CONTAINER_ID);
+  }
+
+  @Test
+  void identityOfCgroupV2Container() throws IOException {
+    Path assetTag = Files.writeString(tempDir.resolve("board_asset_tag"), "i-0abc\n");
+    Path stat = Files.writeString(tempDir.resolve("stat"), "btime 1600000000\n");
+    Path cgroup = Files.writeString(tempDir.resolve("cgroup"), "0::/\n");
+    Files.writeString(
+        tempDir.resolve("mountinfo"),
+        "22 1 259:1 / / rw,relatime - overlay overlay rw\n"
+            + "613 22 259:1 /var/lib/docker/containers/"
+            + CONTAINER_ID
+            + "/hostname /etc/hostname rw,relatime - ext4 /dev/nvme0n1p1 rw\n");
+
+    assertThat(identity(assetTag, tempDir.resolve("instance-id"), stat, cgroup))
+        .isEqualTo("i-0abc/1600000000/" + CONTAINER_ID);
+  }
+
+  @Test
+  void identityFallsBackToHostname() throws IOException {
+    Path assetTag = Files.writeString(tempDir.resolve("board_asset_tag"), "i-0abc\n");
+    Path stat = Files.writeString(tempDir.resolve("stat"), "btime 1600000000\n");
+    Path cgroup = Files.writeString(tempDir.resolve("cgroup"), "0::/\n");
+
+    // Without a container ID or hostname, containers on the host would share an entry.
+    assertThat(identity(assetTag, tempDir.resolve("instance-id"), stat, cgroup)).isNull();
+
+    Files.writeString(tempDir.resolve("hostname"), "web-7d4b9c-x2x9k\n");
+    assertThat(identity(assetTag, tempDir.resolve("instance-id"), stat, cgroup))
+        .isEqualTo("i-0abc/1600000000/hostname:web-7d4b9c-x2x9k");
+  }
+
+  @Test
+  void noIdentityOffEc2() throws IOException {
+    Path assetTag = Files.writeString(tempDir.resolve("board_asset_tag"), "Default string");
+    Path stat = Files.writeString(tempDir.resolve("stat"), "btime 1600000000\n");
+
+    assertThat(identity(assetTag, tempDir.resolve("instance-id"), stat, tempDir.resolve("cgroup")))
+        .isNull();
+  }
+
+  private String identity(Path assetTag, Path cloudInit, Path stat, Path cgroup) {
+    return ResourceCache.identity(
+        assetTag,
+        cloudInit,
+        stat,
+        cgroup,
+        tempDir.resolve("mountinfo"),
+        tempDir.resolve("hostname"));
+  }
+}
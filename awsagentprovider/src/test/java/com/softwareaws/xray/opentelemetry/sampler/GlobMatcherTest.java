@@ -0,0 +1,91 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.sampler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class GlobMatcherTest {
+
+  @Test
+  void wildcards() {
+    assertThat(GlobMatcher.matches("*", null)).isTrue();
+    assertThat(GlobMatcher.matches("/api/*", "/api/orders/1")).isTrue();
+    assertThat(GlobMatcher.matches("/api/*/items", "/api/orders/items")).isTrue();
+    assertThat(GlobMatcher.matches("/api/?", "/api/1")).isTrue();
+    assertThat(GlobMatcher.matches("/api/?", "/api/12")).isFalse();
+    assertThat(GlobMatcher.matches("/api/*", "/health")).isFalse();
+    assertThat(GlobMatcher.matches("GET", null)).isFalse();
+  }
+
+  @Test
+  void caseInsensitive() {
+    assertThat(GlobMatcher.matches("get", "GET")).isTrue();
+    assertThat(GlobMatcher.matches("My-Service", "my-service")).isTrue();
+  }
+
+  @Test
+  void literalStarInValue() {
+    assertThat(GlobMatcher.matches("a*", "a*b")).isTrue();
+    assertThat(GlobMatcher.matches("*b", "a*b")).isTrue();
+    assertThat(GlobMatcher.matches("/x/*/y", "/x/*/z/y")).isTrue();
+    assertThat(GlobMatcher.matches("a*c", "a*b")).isFalse();
+  }
+
+  @Test
+  void agreesWithReferenceMatcher() {
+    var random = new Random(42);
+    String alphabet = "ab*?A";
+    for (int i = 0; i < 20000; i++) {
+      String pattern = randomString(random, alphabet, 6);
+      String value = randomString(random, alphabet, 8);
+      assertThat(GlobMatcher.matches(pattern, value))
+          .as("pattern %s, value %s", pattern, value)
+          .isEqualTo(referenceMatches(pattern, value));
+    }
+  }
+
+  private static String randomString(Random random, String alphabet, int maxLength) {
+    var sb = new StringBuilder();
+    int length = random.nextInt(maxLength + 1);
+    for (int i = 0; i < length; i++) {
+      sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return sb.toString();
+  }
+
+  // The semantics of the X-Ray SDKs' SearchPattern.wildcardMatch as a table-driven match: case
+  // insensitive, '*' matches any sequence and '?' any single character, with no escaping.
+  private static boolean referenceMatches(String pattern, String value) {
+    String p = pattern.toLowerCase();
+    String v = value.toLowerCase();
+    boolean[][] match = new boolean[p.length() + 1][v.length() + 1];
+    match[0][0] = true;
+    for (int i = 1; i <= p.length(); i++) {
+      char c = p.charAt(i - 1);
+      for (int j = 0; j <= v.length(); j++) {
+        if (c == '*') {
+          match[i][j] = match[i - 1][j] || (j > 0 && match[i][j - 1]);
+        } else {
+          match[i][j] = j > 0 && match[i - 1][j - 1] && (c == '?' || c == v.charAt(j - 1));
+        }
+      }
+    }
+    return match[p.length()][v.length()];
+  }
+}
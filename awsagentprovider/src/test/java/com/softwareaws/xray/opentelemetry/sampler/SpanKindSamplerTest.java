@@ -0,0 +1,179 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.sampler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.trace.Sampler;
+import io.opentelemetry.sdk.trace.Sampler.Decision;
+import io.opentelemetry.sdk.trace.Samplers;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.TraceFlags;
+import io.opentelemetry.trace.TraceState;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class SpanKindSamplerTest {
+
+  private static final String TRACE_ID = "5f84c7a1e7d1852db2ee3f9aa3e5b8c1";
+  private static final SpanContext ROOT = SpanContext.getInvalid();
+
+  @Test
+  void childrenFollowParentDecision() {
+    var sampler =
+        SpanKindSampler.newBuilder(Samplers.parentBased(Samplers.alwaysOn()))
+            .setKindRule(Span.Kind.INTERNAL, 0, 0)
+            .build();
+
+    assertThat(sample(sampler, ROOT, Span.Kind.SERVER)).isEqualTo(Decision.RECORD_AND_SAMPLE);
+    assertThat(sample(sampler, ROOT, Span.Kind.INTERNAL)).isEqualTo(Decision.DROP);
+    assertThat(sample(sampler, parent(true, false), Span.Kind.INTERNAL)).isEqualTo(Decision.DROP);
+    assertThat(sample(sampler, parent(true, false), Span.Kind.CLIENT))
+        .isEqualTo(Decision.RECORD_AND_SAMPLE);
+    // The child of a dropped span.
+    assertThat(sample(sampler, parent(false, false), Span.Kind.CLIENT)).isEqualTo(Decision.DROP);
+  }
+
+  @Test
+  void droppedInternalSpanPrunesOutboundCalls() {
+    var sampler =
+        SpanKindSampler.newBuilder(Samplers.parentBased(Samplers.alwaysOn()))
+            .setKindRule(Span.Kind.INTERNAL, 0, 0)
+            .build();
+
+    assertThat(sample(sampler, parent(true, false), Span.Kind.INTERNAL)).isEqualTo(Decision.DROP);
+    // No rule applies to CLIENT spans, but the call is made under the dropped INTERNAL span.
+    assertThat(sample(sampler, parent(false, false), Span.Kind.CLIENT)).isEqualTo(Decision.DROP);
+    // The service the call reaches sees an unsampled remote parent.
+    assertThat(sample(sampler, parent(false, true), Span.Kind.SERVER)).isEqualTo(Decision.DROP);
+  }
+
+  @Test
+  void remoteParentDecides() {
+    var sampler =
+        SpanKindSampler.newBuilder(Samplers.parentBased(Samplers.alwaysOn()))
+            .setKindRule(Span.Kind.SERVER, 0, 0)
+            .build();
+
+    assertThat(sample(sampler, parent(true, true), Span.Kind.SERVER))
+        .isEqualTo(Decision.RECORD_AND_SAMPLE);
+    assertThat(sample(sampler, parent(false, true), Span.Kind.SERVER)).isEqualTo(Decision.DROP);
+  }
+
+  @Test
+  void ratioDependsOnTraceId() {
+    var sampler =
+        SpanKindSampler.newBuilder(Samplers.alwaysOn())
+            .setKindRule(Span.Kind.INTERNAL, 0.5, 0)
+            .build();
+
+    String lowId = "5f84c7a1e7d1852d0000000000000001";
+    String highId = "5f84c7a1e7d1852d7fffffffffffffff";
+    for (int i = 0; i < 2; i++) {
+      assertThat(sampleRoot(sampler, lowId, "span", Span.Kind.INTERNAL))
+          .isEqualTo(Decision.RECORD_AND_SAMPLE);
+      assertThat(sampleRoot(sampler, highId, "span", Span.Kind.INTERNAL)).isEqualTo(Decision.DROP);
+    }
+  }
+
+  @Test
+  void ratioMasksSignBitOfTraceId() {
+    var sampler =
+        SpanKindSampler.newBuilder(Samplers.alwaysOn())
+            .setKindRule(Span.Kind.INTERNAL, 0.5, 0)
+            .build();
+
+    // The lower bits are kept as they are once the sign bit is cleared, not negated.
+    assertThat(sampleRoot(sampler, "5f84c7a1e7d1852d8000000000000001", "span", Span.Kind.INTERNAL))
+        .isEqualTo(Decision.RECORD_AND_SAMPLE);
+    assertThat(sampleRoot(sampler, "5f84c7a1e7d1852dffffffffffffffff", "span", Span.Kind.INTERNAL))
+        .isEqualTo(Decision.DROP);
+  }
+
+  @Test
+  void limitsRate() {
+    var sampler =
+        SpanKindSampler.newBuilder(Samplers.alwaysOn()).setKindRule(Span.Kind.CLIENT, 1, 2).build();
+
+    assertThat(sample(sampler, ROOT, Span.Kind.CLIENT)).isEqualTo(Decision.RECORD_AND_SAMPLE);
+    assertThat(sample(sampler, ROOT, Span.Kind.CLIENT)).isEqualTo(Decision.RECORD_AND_SAMPLE);
+    assertThat(sample(sampler, ROOT, Span.Kind.CLIENT)).isEqualTo(Decision.DROP);
+    assertThat(sample(sampler, ROOT, Span.Kind.SERVER)).isEqualTo(Decision.RECORD_AND_SAMPLE);
+  }
+
+  @Test
+  void spanNameRulesComeFirst() {
+    var sampler =
+        SpanKindSampler.newBuilder(Samplers.alwaysOn())
+            .addSpanNameRule("AppController.*", 0, 0)
+            .addSpanNameRule("Repository.*", 1, 0)
+            .setKindRule(Span.Kind.INTERNAL, 0, 0)
+            .build();
+
+    assertThat(sampleRoot(sampler, TRACE_ID, "AppController.index", Span.Kind.SERVER))
+        .isEqualTo(Decision.DROP);
+    assertThat(sampleRoot(sampler, TRACE_ID, "Repository.findAll", Span.Kind.INTERNAL))
+        .isEqualTo(Decision.RECORD_AND_SAMPLE);
+    assertThat(sampleRoot(sampler, TRACE_ID, "Service.call", Span.Kind.INTERNAL))
+        .isEqualTo(Decision.DROP);
+  }
+
+  @Test
+  void tokenBucketRefills() {
+    var bucket = new SpanKindSampler.TokenBucket(10);
+    long now = System.nanoTime();
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(bucket.tryAcquire(now)).isTrue();
+    }
+    assertThat(bucket.tryAcquire(now)).isFalse();
+    assertThat(bucket.tryAcquire(now + TimeUnit.MILLISECONDS.toNanos(100))).isTrue();
+    assertThat(bucket.tryAcquire(now + TimeUnit.MILLISECONDS.toNanos(100))).isFalse();
+    // Idle time doesn't grow the bucket past a second of tokens.
+    long later = now + TimeUnit.SECONDS.toNanos(10);
+    for (int i = 0; i < 10; i++) {
+      assertThat(bucket.tryAcquire(later)).isTrue();
+    }
+    assertThat(bucket.tryAcquire(later)).isFalse();
+  }
+
+  private static Decision sample(Sampler sampler, SpanContext parent, Span.Kind spanKind) {
+    return sampleRoot(sampler, parent, TRACE_ID, "span", spanKind);
+  }
+
+  private static Decision sampleRoot(
+      Sampler sampler, String traceId, String name, Span.Kind spanKind) {
+    return sampleRoot(sampler, ROOT, traceId, name, spanKind);
+  }
+
+  private static Decision sampleRoot(
+      Sampler sampler, SpanContext parent, String traceId, String name, Span.Kind spanKind) {
+    return sampler
+        .shouldSample(parent, traceId, name, spanKind, Attributes.empty(), Collections.emptyList())
+        .getDecision();
+  }
+
+  private static SpanContext parent(boolean sampled, boolean remote) {
+    byte flags = sampled ? TraceFlags.getSampled() : TraceFlags.getDefault();
+    return remote
+        ? SpanContext.createFromRemoteParent(
+            TRACE_ID, "b2ee3f9aa3e5b8c1", flags, TraceState.getDefault())
+        : SpanContext.create(TRACE_ID, "b2ee3f9aa3e5b8c1", flags, TraceState.getDefault());
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.sampler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.Sampler.Decision;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.TracerSdkProvider;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.Tracer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class XraySamplerTest {
+
+  private static final String RULES =
+      "{\"SamplingRuleRecords\":["
+          + "{\"SamplingRule\":{\"RuleName\":\"Health\",\"Priority\":1,\"FixedRate\":0.0,"
+          + "\"ReservoirSize\":0,\"ServiceName\":\"my-service\",\"ServiceType\":\"*\","
+          + "\"Host\":\"*\",\"HTTPMethod\":\"GET\",\"URLPath\":\"/health*\","
+          + "\"ResourceARN\":\"*\",\"Version\":1,\"Attributes\":{}}},"
+          + "{\"SamplingRule\":{\"RuleName\":\"Default\",\"Priority\":10000,\"FixedRate\":1.0,"
+          + "\"ReservoirSize\":1,\"ServiceName\":\"*\",\"ServiceType\":\"*\",\"Host\":\"*\","
+          + "\"HTTPMethod\":\"*\",\"URLPath\":\"*\",\"ResourceARN\":\"*\",\"Version\":1}}"
+          + "]}";
+
+  private static HttpServer server;
+
+  @BeforeAll
+  static void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/GetSamplingRules", exchange -> respond(exchange, RULES));
+    server.createContext(
+        "/SamplingTargets",
+        exchange -> {
+          long ttl = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 60;
+          respond(
+              exchange,
+              "{\"SamplingTargetDocuments\":[{\"RuleName\":\"Health\",\"FixedRate\":0.0,"
+                  + "\"ReservoirQuota\":0,\"ReservoirQuotaTTL\":"
+                  + ttl
+                  + ",\"Interval\":10}],\"LastRuleModification\":0}");
+        });
+    server.start();
+  }
+
+  @AfterAll
+  static void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  void appliesMatchingRule() throws IOException {
+    XraySampler sampler = newSampler("my-service");
+    sampler.refreshRules();
+    sampler.refreshTargets();
+
+    assertThat(sample(sampler, "GET", "/health?verbose=true")).isEqualTo(Decision.DROP);
+    assertThat(sample(sampler, "POST", "/health")).isEqualTo(Decision.RECORD_AND_SAMPLE);
+    assertThat(sample(sampler, "GET", "/orders")).isEqualTo(Decision.RECORD_AND_SAMPLE);
+  }
+
+  @Test
+  void ruleForOtherService() throws IOException {
+    XraySampler sampler = newSampler("other-service");
+    sampler.refreshRules();
+    sampler.refreshTargets();
+
+    assertThat(sample(sampler, "GET", "/health")).isEqualTo(Decision.RECORD_AND_SAMPLE);
+  }
+
+  @Test
+  void borrowsBeforeTargetsAssigned() throws IOException {
+    XraySampler sampler = newSampler("my-service");
+    sampler.refreshRules();
+
+    // The first request of a second is borrowed from the reservoir even though the rule's fixed
+    // rate is 0.
+    assertThat(sample(sampler, "GET", "/health")).isEqualTo(Decision.RECORD_AND_SAMPLE);
+  }
+
+  @Test
+  void pollerStartsNoSpans() throws Exception {
+    XraySampler sampler =
+        XraySampler.create(
+            "http://127.0.0.1:" + server.getAddress().getPort(),
+            Resource.getDefault(),
+            TimeUnit.MINUTES.toMillis(5));
+    var started = new AtomicInteger();
+    var provider = TracerSdkProvider.builder().build();
+    provider.updateActiveTraceConfig(
+        provider.getActiveTraceConfig().toBuilder().setSampler(sampler).build());
+    provider.addSpanProcessor(new CountingProcessor(started));
+    Tracer tracer = provider.get("test");
+
+    // Stands in for the agent's HttpURLConnection instrumentation, which starts a span for each of
+    // the poller's requests.
+    Span polled =
+        sampler
+            .poller
+            .submit(() -> tracer.spanBuilder("HTTP POST").setSpanKind(Span.Kind.CLIENT).startSpan())
+            .get();
+    Span other = tracer.spanBuilder("GET /orders").startSpan();
+
+    assertThat(polled.isRecording()).isFalse();
+    assertThat(polled.getContext().isSampled()).isFalse();
+    assertThat(other.isRecording()).isTrue();
+    assertThat(started).hasValue(1);
+    sampler.close();
+    provider.shutdown();
+  }
+
+  private static XraySampler newSampler(String serviceName) {
+    return new XraySampler(
+        new XraySamplingClient("http://127.0.0.1:" + server.getAddress().getPort()),
+        serviceName,
+        null,
+        null);
+  }
+
+  private static Decision sample(XraySampler sampler, String method, String target) {
+    return sampler
+        .shouldSample(
+            null,
+            "5f6b3a7a0000000000000000000000aa",
+            "span",
+            Span.Kind.SERVER,
+            Attributes.newBuilder()
+                .setAttribute("http.method", method)
+                .setAttribute("http.target", target)
+                .build(),
+            Collections.emptyList())
+        .getDecision();
+  }
+
+  private static void respond(HttpExchange exchange, String body) throws IOException {
+    exchange.getRequestBody().readAllBytes();
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(200, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static final class CountingProcessor implements SpanProcessor {
+    private final AtomicInteger started;
+
+    CountingProcessor(AtomicInteger started) {
+      this.started = started;
+    }
+
+    @Override
+    public void onStart(ReadWriteSpan span) {
+      started.incrementAndGet();
+    }
+
+    @Override
+    public boolean isStartRequired() {
+      return true;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {}
+
+    @Override
+    public boolean isEndRequired() {
+      return false;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode forceFlush() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.exporters;
+
+import com.google.protobuf.ByteString;
+import io.opentelemetry.common.AttributeConsumer;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.common.v1.AnyValue;
+import io.opentelemetry.proto.common.v1.ArrayValue;
+import io.opentelemetry.proto.common.v1.InstrumentationLibrary;
+import io.opentelemetry.proto.common.v1.KeyValue;
+import io.opentelemetry.proto.resource.v1.Resource;
+import io.opentelemetry.proto.trace.v1.InstrumentationLibrarySpans;
+import io.opentelemetry.proto.trace.v1.ResourceSpans;
+import io.opentelemetry.proto.trace.v1.Span;
+import io.opentelemetry.proto.trace.v1.Status;
+import io.opentelemetry.sdk.common.InstrumentationLibraryInfo;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.StatusCanonicalCode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts spans and their resources to OTLP protobuf messages, like the SDK's OTLP exporter, whose
+ * converter is not public. Tests and benchmarks use it as a reference for {@link OtlpSpanEncoder}.
+ */
+public final class OtlpSpanAdapter {
+
+  // STATUS_CODE_OK and STATUS_CODE_UNKNOWN_ERROR in the OTLP protocol version of the SDK.
+  private static final int STATUS_CODE_OK = 0;
+  private static final int STATUS_CODE_UNKNOWN_ERROR = 2;
+
+  /** Converts spans to a single export request, grouped by resource and instrumentation library. */
+  public static ExportTraceServiceRequest toProtoRequest(Collection<SpanData> spans) {
+    Map<io.opentelemetry.sdk.resources.Resource, Map<InstrumentationLibraryInfo, List<Span>>>
+        groups = new LinkedHashMap<>();
+    for (SpanData span : spans) {
+      Map<InstrumentationLibraryInfo, List<Span>> libraries = groups.get(span.getResource());
+      if (libraries == null) {
+        libraries = new LinkedHashMap<>();
+        groups.put(span.getResource(), libraries);
+      }
+      List<Span> librarySpans = libraries.get(span.getInstrumentationLibraryInfo());
+      if (librarySpans == null) {
+        librarySpans = new ArrayList<>();
+        libraries.put(span.getInstrumentationLibraryInfo(), librarySpans);
+      }
+      librarySpans.add(toProtoSpan(span));
+    }
+
+    ExportTraceServiceRequest.Builder request = ExportTraceServiceRequest.newBuilder();
+    for (Map.Entry<
+            io.opentelemetry.sdk.resources.Resource, Map<InstrumentationLibraryInfo, List<Span>>>
+        resourceEntry : groups.entrySet()) {
+      ResourceSpans.Builder resourceSpans =
+          ResourceSpans.newBuilder().setResource(toProtoResource(resourceEntry.getKey()));
+      for (Map.Entry<InstrumentationLibraryInfo, List<Span>> libraryEntry :
+          resourceEntry.getValue().entrySet()) {
+        resourceSpans.addInstrumentationLibrarySpans(
+            InstrumentationLibrarySpans.newBuilder()
+                .setInstrumentationLibrary(toProtoInstrumentationLibrary(libraryEntry.getKey()))
+                .addAllSpans(libraryEntry.getValue()));
+      }
+      request.addResourceSpans(resourceSpans);
+    }
+    return request.build();
+  }
+
+  static Span toProtoSpan(SpanData span) {
+    Span.Builder builder =
+        Span.newBuilder()
+            .setTraceId(hexToByteString(span.getTraceId()))
+            .setSpanId(hexToByteString(span.getSpanId()))
+            .setName(span.getName())
+            .setKind(toProtoKind(span.getKind()))
+            .setStartTimeUnixNano(span.getStartEpochNanos())
+            .setEndTimeUnixNano(span.getEndEpochNanos())
+            .addAllAttributes(toProtoAttributes(span.getAttributes()))
+            .setDroppedAttributesCount(span.getTotalAttributeCount() - span.getAttributes().size());
+    String parentSpanId = span.getParentSpanId();
+    if (!isZero(parentSpanId)) {
+      builder.setParentSpanId(hexToByteString(parentSpanId));
+    }
+    for (SpanData.Event event : span.getEvents()) {
+      builder.addEvents(
+          Span.Event.newBuilder()
+              .setTimeUnixNano(event.getEpochNanos())
+              .setName(event.getName())
+              .addAllAttributes(toProtoAttributes(event.getAttributes()))
+              .setDroppedAttributesCount(
+                  event.getTotalAttributeCount() - event.getAttributes().size()));
+    }
+    builder.setDroppedEventsCount(span.getTotalRecordedEvents() - span.getEvents().size());
+    for (SpanData.Link link : span.getLinks()) {
+      builder.addLinks(
+          Span.Link.newBuilder()
+              .setTraceId(hexToByteString(link.getContext().getTraceIdAsHexString()))
+              .setSpanId(hexToByteString(link.getContext().getSpanIdAsHexString()))
+              .addAllAttributes(toProtoAttributes(link.getAttributes()))
+              .setDroppedAttributesCount(
+                  link.getTotalAttributeCount() - link.getAttributes().size()));
+    }
+    builder.setDroppedLinksCount(span.getTotalRecordedLinks() - span.getLinks().size());
+    builder.setStatus(toProtoStatus(span.getStatus()));
+    return builder.build();
+  }
+
+  static Resource toProtoResource(io.opentelemetry.sdk.resources.Resource resource) {
+    return Resource.newBuilder()
+        .addAllAttributes(toProtoAttributes(resource.getAttributes()))
+        .build();
+  }
+
+  static InstrumentationLibrary toProtoInstrumentationLibrary(InstrumentationLibraryInfo library) {
+    InstrumentationLibrary.Builder builder =
+        InstrumentationLibrary.newBuilder().setName(library.getName());
+    if (library.getVersion() != null) {
+      builder.setVersion(library.getVersion());
+    }
+    return builder.build();
+  }
+
+  static List<KeyValue> toProtoAttributes(ReadableAttributes attributes) {
+    final List<KeyValue> keyValues = new ArrayList<>(attributes.size());
+    attributes.forEach(
+        new AttributeConsumer() {
+          @Override
+          public <T> void consume(AttributeKey<T> key, T value) {
+            keyValues.add(
+                KeyValue.newBuilder().setKey(key.getKey()).setValue(toProtoValue(value)).build());
+          }
+        });
+    return keyValues;
+  }
+
+  private static AnyValue toProtoValue(Object value) {
+    AnyValue.Builder builder = AnyValue.newBuilder();
+    if (value instanceof String) {
+      builder.setStringValue((String) value);
+    } else if (value instanceof Boolean) {
+      builder.setBoolValue((Boolean) value);
+    } else if (value instanceof Long) {
+      builder.setIntValue((Long) value);
+    } else if (value instanceof Double) {
+      builder.setDoubleValue((Double) value);
+    } else if (value instanceof List) {
+      ArrayValue.Builder array = ArrayValue.newBuilder();
+      for (Object element : (List<?>) value) {
+        array.addValues(toProtoValue(element));
+      }
+      builder.setArrayValue(array);
+    } else {
+      builder.setStringValue(String.valueOf(value));
+    }
+    return builder.build();
+  }
+
+  private static Span.SpanKind toProtoKind(io.opentelemetry.trace.Span.Kind kind) {
+    switch (kind) {
+      case SERVER:
+        return Span.SpanKind.SPAN_KIND_SERVER;
+      case CLIENT:
+        return Span.SpanKind.SPAN_KIND_CLIENT;
+      case PRODUCER:
+        return Span.SpanKind.SPAN_KIND_PRODUCER;
+      case CONSUMER:
+        return Span.SpanKind.SPAN_KIND_CONSUMER;
+      default:
+        return Span.SpanKind.SPAN_KIND_INTERNAL;
+    }
+  }
+
+  private static Status toProtoStatus(SpanData.Status status) {
+    Status.Builder builder =
+        Status.newBuilder()
+            .setCodeValue(
+                status.getCanonicalCode() == StatusCanonicalCode.ERROR
+                    ? STATUS_CODE_UNKNOWN_ERROR
+                    : STATUS_CODE_OK);
+    if (status.getDescription() != null) {
+      builder.setMessage(status.getDescription());
+    }
+    return builder.build();
+  }
+
+  private static boolean isZero(String hex) {
+    for (int i = 0; i < hex.length(); i++) {
+      if (hex.charAt(i) != '0') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static ByteString hexToByteString(String hex) {
+    return ByteString.copyFrom(hexToBytes(hex));
+  }
+
+  static byte[] hexToBytes(String hex) {
+    byte[] bytes = new byte[hex.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] =
+          (byte)
+              (Character.digit(hex.charAt(i * 2), 16) << 4
+                  | Character.digit(hex.charAt(i * 2 + 1), 16));
+    }
+    return bytes;
+  }
+
+  private OtlpSpanAdapter() {}
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+plugins {
+  java
+  id("me.champeau.gradle.jmh") version "0.5.0"
+}
+
+dependencies {
+  jmhImplementation(project(":awsagentprovider"))
+  jmhImplementation(testFixtures(project(":awsagentprovider")))
+  jmhImplementation("io.opentelemetry:opentelemetry-exporters-otlp")
+  jmhImplementation("io.opentelemetry:opentelemetry-extension-trace-propagators")
+  jmhImplementation("io.opentelemetry:opentelemetry-proto")
+  jmhImplementation("io.opentelemetry:opentelemetry-sdk")
+}
+
+jmh {
+  // Results are written to build/reports/jmh/results.json for comparison across releases.
+  resultFormat = "JSON"
+  failOnError = true
+
+  val jmhIncludes: String? by project
+  if (jmhIncludes != null) {
+    include = listOf(jmhIncludes)
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.benchmarks;
+
+import com.softwareaws.xray.opentelemetry.exporters.AwsTracerProviderFactory;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.Tracer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Spans shaped like instrumented AWS SDK calls, with HTTP attributes and the JSON-serialized
+ * DynamoDB attributes from docs/aws-sdk-semantic-conventions.md.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AttributesSpanBenchmark {
+
+  private static final Tracer TRACER = new AwsTracerProviderFactory().create().get("benchmark");
+
+  private static final String CONSUMED_CAPACITY =
+      "[{\"TableName\":\"orders\",\"CapacityUnits\":1.5,\"ReadCapacityUnits\":1.5,"
+          + "\"Table\":{\"ReadCapacityUnits\":1.0},\"GlobalSecondaryIndexes\":"
+          + "{\"by-customer\":{\"ReadCapacityUnits\":0.5}}}]";
+
+  private static final String ITEM_COLLECTION_METRICS =
+      "{\"orders\":[{\"ItemCollectionKey\":{\"customer\":{\"S\":\"c-1234567890\"}},"
+          + "\"SizeEstimateRangeGB\":[0.5,1.0]}]}";
+
+  @Benchmark
+  @Threads(1)
+  public Span attributes_01Thread() {
+    return startEnd();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Span attributes_04Threads() {
+    return startEnd();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public Span attributes_16Threads() {
+    return startEnd();
+  }
+
+  private static Span startEnd() {
+    Span span =
+        TRACER
+            .spanBuilder("DynamoDB.BatchWriteItem")
+            .setSpanKind(Span.Kind.CLIENT)
+            .setAttribute("rpc.system", "aws-api")
+            .setAttribute("rpc.service", "DynamoDB")
+            .setAttribute("rpc.method", "BatchWriteItem")
+            .setAttribute("http.method", "POST")
+            .setAttribute("http.url", "https://dynamodb.us-west-2.amazonaws.com/")
+            .setAttribute("net.peer.name", "dynamodb.us-west-2.amazonaws.com")
+            .setAttribute("net.peer.port", 443)
+            .startSpan();
+    span.setAttribute("db.system", "dynamodb");
+    span.setAttribute("db.operation", "BatchWriteItem");
+    span.setAttribute("aws.agent", "java-aws-sdk");
+    span.setAttribute("aws.region", "us-west-2");
+    span.setAttribute("aws.request_id", "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789ABCDEF");
+    span.setAttribute("awssdk.consumed_capacity", CONSUMED_CAPACITY);
+    span.setAttribute("awssdk.item_collection_metrics", ITEM_COLLECTION_METRICS);
+    span.setAttribute("http.status_code", 200);
+    span.setAttribute("http.response_content_length", 1024);
+    span.end();
+    return span;
+  }
+}
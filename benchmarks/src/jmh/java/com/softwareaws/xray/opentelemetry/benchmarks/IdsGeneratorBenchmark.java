@@ -0,0 +1,77 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.benchmarks;
+
+import com.softwareaws.xray.opentelemetry.exporters.FastXrayIdsGenerator;
+import io.opentelemetry.sdk.extensions.trace.aws.AwsXRayIdsGenerator;
+import io.opentelemetry.sdk.trace.IdsGenerator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdsGeneratorBenchmark {
+
+  @Param({"fast", "sdk"})
+  public String generator;
+
+  private IdsGenerator idsGenerator;
+
+  @Setup
+  public void setUp() {
+    idsGenerator =
+        generator.equals("sdk") ? new AwsXRayIdsGenerator() : new FastXrayIdsGenerator();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public String traceId_01Thread() {
+    return idsGenerator.generateTraceId();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public String traceId_16Threads() {
+    return idsGenerator.generateTraceId();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public String spanId_01Thread() {
+    return idsGenerator.generateSpanId();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public String spanId_16Threads() {
+    return idsGenerator.generateSpanId();
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.benchmarks;
+
+import com.softwareaws.xray.opentelemetry.exporters.OtlpSpanAdapter;
+import com.softwareaws.xray.opentelemetry.exporters.OtlpSpanEncoder;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.TracerSdkProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.Tracer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encodes a batch of spans shaped like instrumented AWS SDK calls as an OTLP export request, by
+ * building protobuf messages and serializing them as the SDK's OTLP exporter does, and by writing
+ * the request directly with {@link OtlpSpanEncoder}. Run with {@code -prof gc} to compare
+ * allocations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OtlpEncoderBenchmark {
+
+  @Param({"1", "64", "512"})
+  public int batchSize;
+
+  private List<SpanData> spans;
+
+  private final OtlpSpanEncoder encoder = new OtlpSpanEncoder();
+
+  @Setup
+  public void setUp() {
+    spans = awsSdkSpans(batchSize);
+  }
+
+  /** Returns ended spans shaped like instrumented AWS SDK calls. */
+  static List<SpanData> awsSdkSpans(int count) {
+    Tracer tracer = TracerSdkProvider.builder().build().get("benchmark");
+    List<SpanData> spans = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      Span span =
+          tracer
+              .spanBuilder("DynamoDB.BatchWriteItem")
+              .setSpanKind(Span.Kind.CLIENT)
+              .setAttribute("rpc.system", "aws-api")
+              .setAttribute("rpc.service", "DynamoDB")
+              .setAttribute("rpc.method", "BatchWriteItem")
+              .setAttribute("http.method", "POST")
+              .setAttribute("http.url", "https://dynamodb.us-west-2.amazonaws.com/")
+              .setAttribute("net.peer.name", "dynamodb.us-west-2.amazonaws.com")
+              .setAttribute("net.peer.port", 443)
+              .startSpan();
+      span.setAttribute("db.system", "dynamodb");
+      span.setAttribute("aws.region", "us-west-2");
+      span.setAttribute("aws.request_id", "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789ABCDEF");
+      span.setAttribute("http.status_code", 200);
+      span.end();
+      spans.add(((ReadableSpan) span).toSpanData());
+    }
+    return spans;
+  }
+
+  @Benchmark
+  public byte[] protobufMessages() {
+    return OtlpSpanAdapter.toProtoRequest(spans).toByteArray();
+  }
+
+  @Benchmark
+  public int directEncoder() {
+    return encoder.encode(spans);
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.benchmarks;
+
+import com.softwareaws.xray.opentelemetry.exporters.BatchingOtlpSpanExporter;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.opentelemetry.exporters.otlp.OtlpGrpcSpanExporter;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
+import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceResponse;
+import io.opentelemetry.proto.collector.trace.v1.TraceServiceGrpc;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Exports a batch of spans shaped like instrumented AWS SDK calls to a collector on the loopback
+ * interface, with the SDK's OTLP exporter and with {@link BatchingOtlpSpanExporter}. Each export
+ * waits for the collector's response. Compression is off for both, so the difference is in how
+ * requests are encoded and sent. Run with {@code -prof gc} to compare allocations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OtlpExporterBenchmark {
+
+  @Param({"64", "512"})
+  public int batchSize;
+
+  private List<SpanData> spans;
+  private Server collector;
+  private OtlpGrpcSpanExporter sdkExporter;
+  private BatchingOtlpSpanExporter batchingExporter;
+
+  @Setup
+  public void setUp() throws IOException {
+    spans = OtlpEncoderBenchmark.awsSdkSpans(batchSize);
+    collector =
+        ServerBuilder.forPort(0)
+            .addService(
+                new TraceServiceGrpc.TraceServiceImplBase() {
+                  @Override
+                  public void export(
+                      ExportTraceServiceRequest request,
+                      StreamObserver<ExportTraceServiceResponse> responseObserver) {
+                    responseObserver.onNext(ExportTraceServiceResponse.getDefaultInstance());
+                    responseObserver.onCompleted();
+                  }
+                })
+            .build()
+            .start();
+    sdkExporter =
+        OtlpGrpcSpanExporter.newBuilder()
+            .setChannel(
+                ManagedChannelBuilder.forAddress("localhost", collector.getPort())
+                    .usePlaintext()
+                    .build())
+            .setDeadlineMs(10000)
+            .build();
+    batchingExporter =
+        BatchingOtlpSpanExporter.newBuilder()
+            .setEndpoint("localhost:" + collector.getPort())
+            .setTimeoutMillis(10000)
+            .setCompression(false)
+            .build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    sdkExporter.shutdown();
+    batchingExporter.shutdown();
+    collector.shutdownNow();
+  }
+
+  @Benchmark
+  public CompletableResultCode sdkExporter() {
+    return sdkExporter.export(spans).join(10, TimeUnit.SECONDS);
+  }
+
+  @Benchmark
+  public CompletableResultCode batchingExporter() {
+    return batchingExporter.export(spans);
+  }
+}
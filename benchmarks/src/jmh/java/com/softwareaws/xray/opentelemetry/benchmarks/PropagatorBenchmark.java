@@ -0,0 +1,118 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.benchmarks;
+
+import com.softwareaws.xray.opentelemetry.exporters.AwsTracerProviderFactory;
+import com.softwareaws.xray.opentelemetry.propagators.FusedPropagator;
+import io.grpc.Context;
+import io.opentelemetry.context.propagation.DefaultContextPropagators;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import io.opentelemetry.extensions.trace.propagation.AwsXRayPropagator;
+import io.opentelemetry.extensions.trace.propagation.B3Propagator;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.TracingContextUtils;
+import io.opentelemetry.trace.propagation.HttpTraceContext;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Inject and extract with the xray,tracecontext,b3 propagators AwsAgentBootstrap configures, as
+ * combined by the agent or as the {@link FusedPropagator} it installs instead.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PropagatorBenchmark {
+
+  private static final TextMapPropagator.Setter<Map<String, String>> SETTER =
+      new TextMapPropagator.Setter<Map<String, String>>() {
+        @Override
+        public void set(Map<String, String> carrier, String key, String value) {
+          carrier.put(key, value);
+        }
+      };
+
+  private static final TextMapPropagator.Getter<Map<String, String>> GETTER =
+      new TextMapPropagator.Getter<Map<String, String>>() {
+        @Override
+        public String get(Map<String, String> carrier, String key) {
+          return carrier.get(key);
+        }
+      };
+
+  @Param({"combined", "fused"})
+  public String propagators;
+
+  private TextMapPropagator propagator;
+  private Context context;
+  private Map<String, String> outbound;
+  private Map<String, String> inbound;
+
+  @Setup
+  public void setUp() {
+    if (propagators.equals("fused")) {
+      propagator = FusedPropagator.getInstance();
+    } else {
+      propagator =
+          DefaultContextPropagators.builder()
+              .addTextMapPropagator(AwsXRayPropagator.getInstance())
+              .addTextMapPropagator(HttpTraceContext.getInstance())
+              .addTextMapPropagator(B3Propagator.getMultipleHeaderPropagator())
+              .build()
+              .getTextMapPropagator();
+    }
+
+    Span span =
+        new AwsTracerProviderFactory()
+            .create()
+            .get("benchmark")
+            .spanBuilder("benchmark")
+            .startSpan();
+    context = TracingContextUtils.withSpan(span, Context.ROOT);
+    span.end();
+
+    outbound = new HashMap<>();
+    inbound = new HashMap<>();
+    propagator.inject(context, inbound, SETTER);
+  }
+
+  @Benchmark
+  public Map<String, String> inject() {
+    outbound.clear();
+    propagator.inject(context, outbound, SETTER);
+    return outbound;
+  }
+
+  @Benchmark
+  public Context extract() {
+    return propagator.extract(Context.ROOT, inbound, GETTER);
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.benchmarks;
+
+import com.softwareaws.xray.opentelemetry.propagators.XrayTraceHeader;
+import io.grpc.Context;
+import io.opentelemetry.context.propagation.TextMapPropagator;
+import io.opentelemetry.extensions.trace.propagation.AwsXRayPropagator;
+import io.opentelemetry.trace.DefaultSpan;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.TraceFlags;
+import io.opentelemetry.trace.TraceState;
+import io.opentelemetry.trace.TracingContextUtils;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse and format an {@code X-Amzn-Trace-Id} header as sent by an ALB, with {@link
+ * XrayTraceHeader} and with the SDK's {@link AwsXRayPropagator}. Run with {@code -prof gc} to
+ * compare allocations.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class XrayTraceHeaderBenchmark {
+
+  private static final String TRACE_ID = "5f84c7a1e7d1852db2ee3f9aa3e5b8c1";
+  private static final String PARENT_ID = "53995c3f42cd8ad8";
+  private static final String HEADER =
+      "Self=1-5f84c7a2-1f2e3d4c5b6a79880a1b2c3d;Root=1-5f84c7a1-e7d1852db2ee3f9aa3e5b8c1;"
+          + "Parent=53995c3f42cd8ad8;Sampled=1;Lineage=a87bd80c:1|68fd508a:5";
+
+  private static final TextMapPropagator.Setter<Map<String, String>> SETTER =
+      new TextMapPropagator.Setter<Map<String, String>>() {
+        @Override
+        public void set(Map<String, String> carrier, String key, String value) {
+          carrier.put(key, value);
+        }
+      };
+
+  private static final TextMapPropagator.Getter<Map<String, String>> GETTER =
+      new TextMapPropagator.Getter<Map<String, String>>() {
+        @Override
+        public String get(Map<String, String> carrier, String key) {
+          return carrier.get(key);
+        }
+      };
+
+  private final XrayTraceHeader header = new XrayTraceHeader();
+  private final Map<String, String> inbound =
+      Collections.singletonMap("X-Amzn-Trace-Id", HEADER);
+  private final Map<String, String> outbound = new HashMap<>();
+  private final Context context =
+      TracingContextUtils.withSpan(
+          DefaultSpan.create(
+              SpanContext.create(
+                  TRACE_ID, PARENT_ID, TraceFlags.getSampled(), TraceState.getDefault())),
+          Context.ROOT);
+
+  @Benchmark
+  public long codecParse() {
+    header.parse(HEADER);
+    return header.getTraceIdLow() ^ header.getParentId();
+  }
+
+  @Benchmark
+  public char[] codecFormat() {
+    header.format(TRACE_ID, PARENT_ID, true);
+    return header.buffer();
+  }
+
+  @Benchmark
+  public Context propagatorExtract() {
+    return AwsXRayPropagator.getInstance().extract(Context.ROOT, inbound, GETTER);
+  }
+
+  @Benchmark
+  public Map<String, String> propagatorInject() {
+    outbound.clear();
+    AwsXRayPropagator.getInstance().inject(context, outbound, SETTER);
+    return outbound;
+  }
+}
@@ -79,6 +79,11 @@ val DEPENDENCY_SETS = listOf(
       "opentelemetry-sdk-tracing"
     )
   ),
+  DependencySet(
+    "javax.servlet",
+    "4.0.1",
+    listOf("javax.servlet-api")
+  ),
   DependencySet(
     "org.assertj",
     "3.17.0",
@@ -13,6 +13,9 @@
  * permissions and limitations under the License.
  */
 
+import java.io.DataInputStream
+import java.util.zip.ZipFile
+
 plugins {
   java
   `maven-publish`
@@ -33,9 +36,110 @@ dependencies {
   implementation("io.opentelemetry.javaagent", "opentelemetry-javaagent", classifier = "all")
 }
 
+// Returns the values of a class file's String and Class constants.
+fun stringConstants(classFile: ByteArray): List<String> {
+  val input = DataInputStream(classFile.inputStream())
+  input.skipBytes(8) // magic, minor_version, major_version
+  val count = input.readUnsignedShort()
+  val utf8 = arrayOfNulls<String>(count)
+  val nameIndexes = mutableListOf<Int>()
+  var i = 1
+  while (i < count) {
+    when (val tag = input.readUnsignedByte()) {
+      1 -> utf8[i] = input.readUTF()
+      7, 8 -> nameIndexes.add(input.readUnsignedShort())
+      16, 19, 20 -> input.skipBytes(2)
+      15 -> input.skipBytes(3)
+      3, 4, 9, 10, 11, 12, 17, 18 -> input.skipBytes(4)
+      5, 6 -> {
+        input.skipBytes(8)
+        i++
+      }
+      else -> throw GradleException("Unexpected constant pool tag $tag")
+    }
+    i++
+  }
+  return nameIndexes.mapNotNull { utf8[it] }
+}
+
+// Returns the class and package names referenced by a class file's String and Class constants.
+// Instrumentation matchers refer to library types by name, so these include every type a bundled
+// instrumentation can match, as well as the names of super types used in hierarchy matchers.
+fun referencedNames(constants: List<String>): List<String> {
+  val name = Regex("^[A-Za-z_$][\\w$]*(\\.[\\w$]+)+\\.?$")
+  return constants.map { it.replace('/', '.') }.filter { name.matches(it) }
+}
+
+// Returns the instrumentation names of InstrumentationPruner's table, the first string of each
+// row of INSTRUMENTATION_PACKAGES.
+fun prunedInstrumentationNames(source: File): List<String> {
+  val table = source.readText().substringAfter("INSTRUMENTATION_PACKAGES = {").substringBefore("};")
+  return Regex("\\{\\s*\"([^\"]+)\"").findAll(table).map { it.groupValues[1] }.toList()
+}
+
+val instrumentationIndexDir = file("$buildDir/generated/instrumentation-index")
+val instrumentationIndexTask = tasks.register("instrumentationIndex") {
+  val agentClasspath = configurations.runtimeClasspath.get()
+  val indexFile = file("$instrumentationIndexDir/aws-otel/instrumentation-index.txt")
+  val prunerSource =
+    file("src/main/java/com/softwareaws/xray/opentelemetry/agentbootstrap/InstrumentationPruner.java")
+  inputs.files(agentClasspath)
+  inputs.file(prunerSource)
+  outputs.dir(instrumentationIndexDir)
+
+  doLast {
+    val instrumentationPackages = listOf(
+      "inst/io/opentelemetry/javaagent/instrumentation/",
+      "inst/io/opentelemetry/instrumentation/auto/"
+    )
+    val names = sortedSetOf<String>()
+    val constants = hashSetOf<String>()
+    for (jar in agentClasspath) {
+      ZipFile(jar).use { zip ->
+        for (entry in zip.entries()) {
+          val isInstrumentation = instrumentationPackages.any { entry.name.startsWith(it) }
+          if (isInstrumentation && entry.name.endsWith(".classdata")) {
+            val classConstants = stringConstants(zip.getInputStream(entry).use { it.readBytes() })
+            constants.addAll(classConstants)
+            names.addAll(referencedNames(classConstants))
+          }
+        }
+      }
+    }
+    // Instrumentation modules pass their names to their super constructor as string constants, so
+    // a pruned name missing from them would disable nothing, leaving its library's matchers on.
+    val prunedNames = prunedInstrumentationNames(prunerSource)
+    if (prunedNames.isEmpty()) {
+      throw GradleException("No instrumentation names found in $prunerSource.")
+    }
+    val unknownNames = prunedNames.filter { it !in constants }
+    if (unknownNames.isNotEmpty()) {
+      throw GradleException(
+        "InstrumentationPruner names instrumentation the bundled agent doesn't have: $unknownNames"
+      )
+    }
+    // An empty index would make every package look uninstrumented, so fail instead if the agent's
+    // layout changes.
+    if (names.isEmpty()) {
+      throw GradleException("No instrumentation modules found in the agent jar.")
+    }
+    indexFile.parentFile.mkdirs()
+    indexFile.writeText(
+      names.joinToString(
+        "\n",
+        prefix = "# Types and packages referenced by bundled instrumentation, sorted.\n",
+        postfix = "\n"
+      )
+    )
+  }
+}
+
 val agentProviderShadowJarTask = project(":awsagentprovider").tasks.named<Jar>("shadowJar")
 tasks {
   processResources {
+    from(instrumentationIndexDir)
+    dependsOn(instrumentationIndexTask)
+
     val providerArchive = agentProviderShadowJarTask.get().archiveFile
     from(zipTree(providerArchive)) {
       into("inst")
@@ -78,17 +182,113 @@ tasks {
   }
 }
 
+val baseImage = "ghcr.io/anuraaga/amazoncorretto-distroless:alpha"
+val agentPath = "/aws-observability/classpath/aws-opentelemetry-agent-$version.jar"
+val javaToolOptions = mutableListOf("-javaagent:$agentPath")
+
+// Trains a class data sharing archive by running the spring-boot smoke test app with the agent in
+// the base image, so the archive matches the exact JVM build it will be used with. The base image
+// is Java 11, which only supports static AppCDS archives, and the classpath of applications built
+// on the image is unknown, so only the JDK classes from the training run are archived. An archive
+// with an empty application classpath stays valid for any classpath the application uses.
+val enableCds: String? by project
+if (enableCds == "true") {
+  project.evaluationDependsOn(":smoke-tests:spring-boot")
+
+  val springBootJarTask = project(":smoke-tests:spring-boot").tasks.named<Jar>("bootJar")
+  val cdsDir = file("$buildDir/cds")
+  val cdsImageDir = file("$buildDir/cds-image")
+  val classList = file("$cdsDir/classes.lst")
+  val jdkClassList = file("$cdsDir/jdk-classes.lst")
+
+  tasks {
+    val trainCdsClassList by registering(Exec::class) {
+      dependsOn("shadowJar", springBootJarTask)
+
+      val agentJar = named<Jar>("shadowJar").get().archiveFile.get().asFile
+      val appJar = springBootJarTask.get().archiveFile.get().asFile
+      inputs.files(agentJar, appJar)
+      outputs.file(classList)
+
+      doFirst {
+        cdsDir.mkdirs()
+      }
+
+      commandLine(
+        "docker", "run", "--rm",
+        "-v", "$agentJar:$agentPath:ro",
+        "-v", "$appJar:/app.jar:ro",
+        "-v", "$cdsDir:/cds",
+        "--entrypoint", "java",
+        baseImage,
+        "-javaagent:$agentPath",
+        "-XX:DumpLoadedClassList=/cds/classes.lst",
+        "-jar", "/app.jar",
+        "--smoketest.cds-training=true"
+      )
+    }
+
+    val dumpCdsArchive by registering(Exec::class) {
+      dependsOn(trainCdsClassList)
+
+      inputs.file(classList)
+      outputs.dir(cdsImageDir)
+
+      doFirst {
+        jdkClassList.writeText(
+          classList.readLines()
+            .filter { Regex("^(java|javax|jdk|sun|com/sun)/").containsMatchIn(it) }
+            .joinToString("\n", postfix = "\n")
+        )
+        cdsImageDir.mkdirs()
+      }
+
+      commandLine(
+        "docker", "run", "--rm",
+        "-v", "$cdsDir:/cds",
+        "-v", "$cdsImageDir:/cds-image",
+        "--entrypoint", "java",
+        baseImage,
+        "-Xshare:dump",
+        "-XX:SharedClassListFile=/cds/jdk-classes.lst",
+        "-XX:SharedArchiveFile=/cds-image/aws-opentelemetry-agent.jsa"
+      )
+    }
+
+    for (jibTask in listOf("jib", "jibDockerBuild", "jibBuildTar")) {
+      named(jibTask) {
+        dependsOn(dumpCdsArchive)
+      }
+    }
+  }
+
+  jib {
+    extraDirectories {
+      paths {
+        path {
+          setFrom(cdsImageDir)
+          into = "/aws-observability/cds"
+        }
+      }
+    }
+  }
+
+  // -Xshare:auto falls back to the JDK's default archive if this one can't be mapped.
+  javaToolOptions.add("-XX:SharedArchiveFile=/aws-observability/cds/aws-opentelemetry-agent.jsa")
+  javaToolOptions.add("-Xshare:auto")
+}
+
 jib {
   to {
     image = "ghcr.io/anuraaga/aws-opentelemetry-java-base:alpha"
   }
   from {
-    image = "ghcr.io/anuraaga/amazoncorretto-distroless:alpha"
+    image = baseImage
   }
   container {
     appRoot = "/aws-observability"
     setEntrypoint("INHERIT")
-    environment = mapOf("JAVA_TOOL_OPTIONS" to "-javaagent:/aws-observability/classpath/aws-opentelemetry-agent-$version.jar")
+    environment = mapOf("JAVA_TOOL_OPTIONS" to javaToolOptions.joinToString(" "))
   }
   containerizingMode = "packaged"
 }
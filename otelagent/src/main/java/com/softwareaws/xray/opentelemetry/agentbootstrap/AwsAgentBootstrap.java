@@ -16,21 +16,304 @@
 package com.softwareaws.xray.opentelemetry.agentbootstrap;
 
 import io.opentelemetry.javaagent.OpenTelemetryAgent;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.instrument.Instrumentation;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class AwsAgentBootstrap {
 
+  private static final String INSTRUMENTATION_INDEX = "/aws-otel/instrumentation-index.txt";
+
+  private static final AtomicBoolean STARTED = new AtomicBoolean();
+
+  // Packages of common libraries that often load many classes at startup. Each is excluded from
+  // instrumentation unless the index shows that a bundled instrumentation refers to a type in it,
+  // or to a package containing it. The index can't see hierarchy matchers, which match a library's
+  // classes through the JDK or framework types they extend, so language runtimes like Kotlin, Scala
+  // and Groovy, whose classes commonly implement Runnable or Executor, are not listed.
+  private static final String[] EXCLUSION_CANDIDATES = {
+    "com.amazonaws.thirdparty.",
+    "com.fasterxml.jackson.",
+    "com.google.common.",
+    "com.google.gson.",
+    "com.google.protobuf.",
+    "com.sun.xml.",
+    "javassist.",
+    "org.antlr.",
+    "org.apache.commons.codec.",
+    "org.apache.commons.io.",
+    "org.apache.commons.lang.",
+    "org.apache.commons.lang3.",
+    "org.apache.xerces.",
+    "org.aspectj.",
+    "org.bouncycastle.",
+    "org.hibernate.validator.",
+    "org.joda.time.",
+    "org.objectweb.asm.",
+    "org.springframework.boot.autoconfigure.",
+    "org.springframework.core.annotation.",
+    "org.yaml.snakeyaml.",
+    "software.amazon.awssdk.thirdparty.",
+  };
+
   public static void premain(final String agentArgs, final Instrumentation inst) {
     agentmain(agentArgs, inst);
   }
 
   public static void agentmain(final String agentArgs, final Instrumentation inst) {
+    if (!STARTED.compareAndSet(false, true)) {
+      reconfigure(agentArgs);
+      return;
+    }
+    long startNanos = System.nanoTime();
     System.setProperty(
         "io.opentelemetry.javaagent.shaded.io.opentelemetry.trace.spi.TracerProviderFactory",
         "com.softwareaws.xray.opentelemetry.exporters.AwsTracerProviderFactory");
     if (System.getProperty("otel.propagators", "").isEmpty()) {
       System.setProperty("otel.propagators", "xray,tracecontext,b3");
+      // The tracer provider publishes a propagator handling all three formats in one pass.
+      if (getConfig("otel.aws.propagator.fused", "OTEL_AWS_PROPAGATOR_FUSED") == null) {
+        System.setProperty("otel.aws.propagator.fused", "true");
+      }
     }
+    if ("ringBuffer".equals(getConfig("otel.aws.spanProcessor", "OTEL_AWS_SPAN_PROCESSOR"))
+        || getConfig("otel.aws.exporter", "OTEL_AWS_EXPORTER") != null
+        || Boolean.parseBoolean(
+            getConfig("otel.aws.tailSampling.enabled", "OTEL_AWS_TAIL_SAMPLING_ENABLED"))) {
+      // Spans are exported by the AWS span processor, so disable the agent's exporter instead of
+      // exporting every span twice.
+      System.setProperty("otel.exporter", "none");
+    }
+    excludeUninstrumentedPackages();
+    pruneInstrumentation();
     OpenTelemetryAgent.agentmain(agentArgs, inst);
+    installFusedPropagator();
+    reportStartupTime(System.nanoTime() - startNanos);
+  }
+
+  // Every class loaded by the application is checked against the matchers of all instrumentation,
+  // which requires resolving its type hierarchy. Classes excluded by otel.trace.classes.exclude are
+  // rejected before any of that work, so when enabled, exclude packages no bundled instrumentation
+  // refers to. This is opt-in, since a class in an excluded package is no longer matched by
+  // instrumentation of the types it extends.
+  private static void excludeUninstrumentedPackages() {
+    if (!Boolean.parseBoolean(
+        getConfig(
+            "otel.aws.instrumentation.index.enabled", "OTEL_AWS_INSTRUMENTATION_INDEX_ENABLED"))) {
+      return;
+    }
+
+    InputStream index = AwsAgentBootstrap.class.getResourceAsStream(INSTRUMENTATION_INDEX);
+    String[] referenced = index != null ? readInstrumentationIndex(index) : null;
+    if (referenced == null) {
+      return;
+    }
+
+    String excludes = getConfig("otel.trace.classes.exclude", "OTEL_TRACE_CLASSES_EXCLUDE");
+    StringBuilder merged = new StringBuilder(excludes != null ? excludes.trim() : "");
+    for (String candidate : EXCLUSION_CANDIDATES) {
+      if (!isReferenced(candidate, referenced)) {
+        if (merged.length() > 0) {
+          merged.append(',');
+        }
+        merged.append(candidate).append('*');
+      }
+    }
+    System.setProperty("otel.trace.classes.exclude", merged.toString());
+  }
+
+  // Each bundled instrumentation's matchers run against every loaded class, even if the library it
+  // instruments is missing. When enabled, instrumentation of libraries not on the class path is
+  // disabled with otel.integration.<name>.enabled=false, unless that property is configured.
+  private static void pruneInstrumentation() {
+    if (!Boolean.parseBoolean(
+        getConfig(
+            "otel.aws.instrumentation.pruning.enabled",
+            "OTEL_AWS_INSTRUMENTATION_PRUNING_ENABLED"))) {
+      return;
+    }
+    InstrumentationPruner.Result result =
+        InstrumentationPruner.scan(
+            System.getProperty("java.class.path"),
+            System.getProperty("sun.java.command"),
+            getAgentJar());
+
+    List<String> report = new ArrayList<>();
+    report.add("# Instrumentation disabled because its library is not on the class path.");
+    report.add(
+        "scanned "
+            + result.scannedJars
+            + " jars, "
+            + result.inflatedNestedJars
+            + " of them compressed nested jars which were inflated, and "
+            + result.scannedDirectories
+            + " directories in "
+            + result.durationMillis()
+            + " ms");
+    if (result.skippedReason != null) {
+      report.add("skipped: " + result.skippedReason);
+    }
+    StringBuilder disabled = new StringBuilder();
+    for (String name : result.pruned) {
+      String property = "otel.integration." + name + ".enabled";
+      if (getConfig(property, toEnvironmentVariable(property)) != null) {
+        report.add("configured " + name);
+        continue;
+      }
+      System.setProperty(property, "false");
+      report.add("disabled " + name);
+      if (disabled.length() > 0) {
+        disabled.append(',');
+      }
+      disabled.append(name);
+    }
+    for (String name : result.kept) {
+      report.add("kept " + name);
+    }
+
+    System.setProperty("otel.aws.instrumentation.pruned", disabled.toString());
+    System.setProperty(
+        "otel.aws.instrumentation.pruning.durationMillis", String.valueOf(result.durationMillis()));
+    String reportFile =
+        getConfig(
+            "otel.aws.instrumentation.pruning.report", "OTEL_AWS_INSTRUMENTATION_PRUNING_REPORT");
+    if (reportFile != null) {
+      try {
+        Files.write(Paths.get(reportFile), report, StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        System.err.println("[otel.aws] Could not write pruning report " + reportFile + ": " + e);
+      }
+    }
+    if (Boolean.parseBoolean(System.getProperty("otel.javaagent.debug"))) {
+      for (String line : report) {
+        System.err.println("[otel.aws] " + line);
+      }
+    }
+  }
+
+  private static File getAgentJar() {
+    CodeSource codeSource = AwsAgentBootstrap.class.getProtectionDomain().getCodeSource();
+    if (codeSource == null || codeSource.getLocation() == null) {
+      return null;
+    }
+    try {
+      return new File(codeSource.getLocation().toURI());
+    } catch (URISyntaxException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static String toEnvironmentVariable(String property) {
+    return property.replace('.', '_').replace('-', '_').toUpperCase(Locale.ROOT);
+  }
+
+  // Returns the sorted names in the index, or null if it is empty or unreadable, in which case
+  // nothing is excluded. Closes the stream.
+  static String[] readInstrumentationIndex(InputStream stream) {
+    List<String> names = new ArrayList<>();
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty() && line.charAt(0) != '#') {
+          names.add(line);
+        }
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    if (names.isEmpty()) {
+      return null;
+    }
+    String[] sorted = names.toArray(new String[0]);
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+  // A package is referenced if any indexed name is inside it, or if an indexed name is a prefix
+  // of it, e.g. a nameStartsWith("org.springframework") matcher.
+  static boolean isReferenced(String packagePrefix, String[] sortedNames) {
+    int index = Arrays.binarySearch(sortedNames, packagePrefix);
+    if (index >= 0) {
+      return true;
+    }
+    int insertion = -index - 1;
+    if (insertion < sortedNames.length && sortedNames[insertion].startsWith(packagePrefix)) {
+      return true;
+    }
+    for (int i = packagePrefix.indexOf('.'); i >= 0; i = packagePrefix.indexOf('.', i + 1)) {
+      if (Arrays.binarySearch(sortedNames, packagePrefix.substring(0, i)) >= 0
+          || Arrays.binarySearch(sortedNames, packagePrefix.substring(0, i + 1)) >= 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Replaces the propagators the agent installed for otel.propagators, which only supports the
+  // propagators it knows by name. The tracer provider registers the installer in AwsAgentHooks when
+  // otel.aws.propagator.fused is enabled. AwsAgentHooks must only be loaded after the agent put its
+  // jar on the bootstrap class path, otherwise the system class loader defines a second copy.
+  private static void installFusedPropagator() {
+    Runnable installer = AwsAgentHooks.FUSED_PROPAGATOR_INSTALLER.getAndSet(null);
+    if (installer != null) {
+      installer.run();
+    }
+  }
+
+  // Attaching the agent again, e.g. with jcmd or the attach API, to a JVM which already runs it
+  // loads this class from the system class loader again, so it sees that the agent started. Rather
+  // than installing instrumentation twice, the attach arguments, a list of property=value settings
+  // separated by semicolons, are set as system properties and the tracer provider's hook in
+  // AwsAgentHooks applies them, swapping the sampler and reconfiguring the export processors
+  // without dropping queued spans.
+  private static void reconfigure(String agentArgs) {
+    int applied = 0;
+    if (agentArgs != null) {
+      for (String setting : agentArgs.split(";")) {
+        int separator = setting.indexOf('=');
+        if (separator > 0) {
+          System.setProperty(
+              setting.substring(0, separator).trim(), setting.substring(separator + 1).trim());
+          applied++;
+        }
+      }
+    }
+    Runnable reconfigurer = AwsAgentHooks.RECONFIGURER.get();
+    if (reconfigurer != null) {
+      reconfigurer.run();
+    }
+    if (Boolean.parseBoolean(System.getProperty("otel.javaagent.debug"))) {
+      System.err.println("[otel.aws] Agent reconfigured with " + applied + " settings.");
+    }
+  }
+
+  private static String getConfig(String property, String environmentVariable) {
+    String value = System.getProperty(property);
+    return value != null ? value : System.getenv(environmentVariable);
+  }
+
+  // Logging frameworks are not safe to initialize this early, so the startup time is exposed as a
+  // system property and only printed when the agent's debug output is enabled.
+  private static void reportStartupTime(long durationNanos) {
+    long durationMillis = TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    System.setProperty("otel.aws.premain.durationMillis", String.valueOf(durationMillis));
+    if (Boolean.parseBoolean(System.getProperty("otel.javaagent.debug"))) {
+      System.err.println("[otel.aws] Agent premain completed in " + durationMillis + " ms.");
+    }
   }
 }
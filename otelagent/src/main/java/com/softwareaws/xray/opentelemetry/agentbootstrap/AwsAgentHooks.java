@@ -0,0 +1,36 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.agentbootstrap;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hooks the tracer provider registers for {@link AwsAgentBootstrap}. The tracer provider is loaded
+ * by the agent's class loader, which can't see classes of the system class loader, but the agent
+ * appends its jar to the bootstrap class path when it starts, so both load this class from there.
+ * Only JDK types are shared through it.
+ */
+public final class AwsAgentHooks {
+
+  /** Installs the fused propagator once the agent is initialized. */
+  public static final AtomicReference<Runnable> FUSED_PROPAGATOR_INSTALLER =
+      new AtomicReference<>();
+
+  /** Applies the settings of a later attach to the running tracer provider. */
+  public static final AtomicReference<Runnable> RECONFIGURER = new AtomicReference<>();
+
+  private AwsAgentHooks() {}
+}
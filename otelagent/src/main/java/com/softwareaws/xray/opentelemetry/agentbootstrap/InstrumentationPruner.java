@@ -0,0 +1,417 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.agentbootstrap;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Finds the bundled instrumentation whose target libraries are not on the application's class path,
+ * so it can be disabled before the agent installs it. The class path is listed once, reading only
+ * the central directories of jars: the jars and directories of {@code java.class.path}, the jars
+ * their manifests' {@code Class-Path} refers to, and the jars nested in Spring Boot and WAR
+ * archives. Nested jars stored uncompressed, as Spring Boot stores them, are read by skipping to
+ * their central directory. Compressed nested jars, which some WAR files have, must be inflated up
+ * to their central directory, so these are counted in the scan's result.
+ *
+ * <p>Instrumentation of JDK classes, like JDBC, HTTP URL connections and executors, is never
+ * disabled. Applications whose launcher loads classes from elsewhere, like application servers and
+ * OSGi containers, are not scanned, as their class path doesn't list the libraries they use.
+ */
+final class InstrumentationPruner {
+
+  // Instrumentation names, as used in otel.integration.<name>.enabled, each followed by the
+  // packages of the library it instruments. It is kept if any class is found in one of them.
+  private static final String[][] INSTRUMENTATION_PACKAGES = {
+    {"akka-http", "akka.http."},
+    {"apache-camel", "org.apache.camel."},
+    {"apache-httpasyncclient", "org.apache.http.nio.client.", "org.apache.http.impl.nio.client."},
+    {"apache-httpclient", "org.apache.http.client.", "org.apache.commons.httpclient."},
+    {"armeria", "com.linecorp.armeria."},
+    {"aws-lambda", "com.amazonaws.services.lambda.runtime."},
+    {"aws-sdk", "com.amazonaws.", "software.amazon.awssdk."},
+    {"cassandra", "com.datastax.driver.core.", "com.datastax.oss.driver."},
+    {"couchbase", "com.couchbase.client."},
+    {"dropwizard", "io.dropwizard."},
+    {"elasticsearch", "org.elasticsearch."},
+    {"finatra", "com.twitter.finatra."},
+    {"geode", "org.apache.geode."},
+    {"google-http-client", "com.google.api.client.http."},
+    {"grizzly", "org.glassfish.grizzly."},
+    {"grpc", "io.grpc."},
+    {"guava", "com.google.common.util.concurrent."},
+    {"hibernate", "org.hibernate."},
+    {"hystrix", "com.netflix.hystrix."},
+    {"jaxrs", "javax.ws.rs.", "jakarta.ws.rs."},
+    {"jedis", "redis.clients.jedis."},
+    {"jetty", "org.eclipse.jetty.server."},
+    {"jms", "javax.jms.", "jakarta.jms."},
+    {"jsp", "org.apache.jasper."},
+    {"kafka", "org.apache.kafka.clients."},
+    {"kafka-streams", "org.apache.kafka.streams."},
+    {"kotlinx-coroutines", "kotlinx.coroutines."},
+    {"kubernetes-client", "io.kubernetes.client."},
+    {"lettuce", "io.lettuce.core.", "com.lambdaworks.redis."},
+    {"log4j", "org.apache.log4j.", "org.apache.logging.log4j."},
+    {"logback", "ch.qos.logback.classic."},
+    {"mongo", "com.mongodb."},
+    {"netty", "io.netty.", "org.jboss.netty."},
+    {"okhttp", "okhttp3.", "com.squareup.okhttp."},
+    {"play", "play."},
+    {"rabbitmq", "com.rabbitmq.client."},
+    {"ratpack", "ratpack."},
+    {"reactor", "reactor.core."},
+    {"rediscala", "redis."},
+    {"redisson", "org.redisson."},
+    {"rxjava", "rx.", "io.reactivex."},
+    {"servlet", "javax.servlet.", "jakarta.servlet."},
+    {"spark", "spark."},
+    {"spring-data", "org.springframework.data."},
+    {"spring-scheduling", "org.springframework.scheduling."},
+    {"spring-web", "org.springframework.web."},
+    {"spring-webflux", "org.springframework.web.reactive."},
+    {"spring-webmvc", "org.springframework.web.servlet."},
+    {"spymemcached", "net.spy.memcached."},
+    {"struts", "org.apache.struts2."},
+    {"twilio", "com.twilio."},
+    {"vertx", "io.vertx."},
+    {"wicket", "org.apache.wicket."},
+  };
+
+  // Main classes of launchers which load the application from outside the class path.
+  private static final String[] EXTERNAL_LAUNCHERS = {
+    "com.ibm.ws.",
+    "com.sun.enterprise.",
+    "org.apache.catalina.startup.",
+    "org.apache.felix.",
+    "org.apache.flink.",
+    "org.apache.hadoop.",
+    "org.apache.karaf.",
+    "org.apache.spark.deploy.",
+    "org.codehaus.plexus.classworlds.",
+    "org.eclipse.core.launcher.",
+    "org.eclipse.equinox.",
+    "org.eclipse.jetty.start.",
+    "org.glassfish.",
+    "org.jboss.modules.",
+    "org.springframework.boot.loader.PropertiesLauncher",
+    "weblogic.",
+  };
+
+  private static final String[] NESTED_JARS = {"BOOT-INF/lib/", "WEB-INF/lib/"};
+  private static final String[] NESTED_CLASSES = {"BOOT-INF/classes/", "WEB-INF/classes/"};
+
+  // The zip format's end of central directory record, which may be followed by a comment.
+  private static final int END_SIGNATURE = 0x06054b50;
+  private static final int END_LENGTH = 22;
+  private static final int MAX_COMMENT_LENGTH = 0xFFFF;
+  private static final int CENTRAL_SIGNATURE = 0x02014b50;
+  private static final int CENTRAL_HEADER_LENGTH = 46;
+
+  /** The outcome of a scan. */
+  static final class Result {
+
+    final List<String> pruned = new ArrayList<>();
+    final List<String> kept = new ArrayList<>();
+    // Why nothing was pruned, or null if the class path was scanned.
+    String skippedReason;
+    int scannedJars;
+    // Nested jars which were compressed in their archive, so had to be inflated to be listed.
+    int inflatedNestedJars;
+    int scannedDirectories;
+    long durationNanos;
+
+    long durationMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+  }
+
+  private final TreeSet<String> packages = new TreeSet<>();
+  private final Deque<File> pending = new ArrayDeque<>();
+  private final Set<String> visited = new HashSet<>();
+  private final Result result = new Result();
+  private final File agentJar;
+  private String mainClass;
+
+  private InstrumentationPruner(File agentJar) {
+    this.agentJar = agentJar;
+  }
+
+  /**
+   * Scans {@code classPath} for the application started with {@code command}, the main class or jar
+   * followed by its arguments, ignoring {@code agentJar}. Either may be null if unknown.
+   */
+  static Result scan(String classPath, String command, File agentJar) {
+    long startNanos = System.nanoTime();
+    InstrumentationPruner pruner = new InstrumentationPruner(agentJar);
+    pruner.run(classPath, command);
+    pruner.result.durationNanos = System.nanoTime() - startNanos;
+    return pruner.result;
+  }
+
+  private void run(String classPath, String command) {
+    if (classPath == null || classPath.isEmpty() || command == null || command.isEmpty()) {
+      result.skippedReason = "the class path or main class is unknown";
+      return;
+    }
+    String main = command.split(" ", 2)[0];
+    if (!main.endsWith(".jar")) {
+      mainClass = main;
+    }
+    for (String entry : classPath.split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        pending.add(new File(entry));
+      }
+    }
+    while (!pending.isEmpty()) {
+      File file = pending.poll();
+      if (!visited.add(file.getAbsolutePath()) || file.equals(agentJar)) {
+        continue;
+      }
+      try {
+        if (file.isDirectory()) {
+          result.scannedDirectories++;
+          scanDirectory(file, "");
+        } else if (file.isFile()) {
+          result.scannedJars++;
+          scanJar(file, file.getPath().equals(main));
+        }
+      } catch (IOException | RuntimeException e) {
+        // Anything unreadable could hold any library, so prune nothing rather than too much.
+        result.skippedReason = "could not read " + file + ": " + e;
+        return;
+      }
+    }
+    if (mainClass == null) {
+      result.skippedReason = "the main class is unknown";
+      return;
+    }
+    for (String launcher : EXTERNAL_LAUNCHERS) {
+      if (mainClass.startsWith(launcher)) {
+        result.skippedReason = "the launcher " + mainClass + " loads classes from elsewhere";
+        return;
+      }
+    }
+    for (String[] instrumentation : INSTRUMENTATION_PACKAGES) {
+      if (hasAnyPackage(instrumentation)) {
+        result.kept.add(instrumentation[0]);
+      } else {
+        result.pruned.add(instrumentation[0]);
+      }
+    }
+  }
+
+  private boolean hasAnyPackage(String[] instrumentation) {
+    for (int i = 1; i < instrumentation.length; i++) {
+      String found = packages.ceiling(instrumentation[i]);
+      if (found != null && found.startsWith(instrumentation[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void scanDirectory(File directory, String path) {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.isDirectory()) {
+        scanDirectory(file, path + file.getName() + '/');
+      } else {
+        addPackage(path + file.getName());
+      }
+    }
+  }
+
+  private void scanJar(File file, boolean isMainJar) throws IOException {
+    try (JarFile jar = new JarFile(file, false)) {
+      Manifest manifest = jar.getManifest();
+      if (manifest != null) {
+        File directory = file.getAbsoluteFile().getParentFile();
+        Attributes attributes = manifest.getMainAttributes();
+        if (isMainJar) {
+          mainClass = attributes.getValue(Attributes.Name.MAIN_CLASS);
+        }
+        String manifestClassPath = attributes.getValue(Attributes.Name.CLASS_PATH);
+        if (manifestClassPath != null) {
+          for (String reference : manifestClassPath.trim().split("\\s+")) {
+            if (!reference.isEmpty()) {
+              // References are URLs relative to the jar's location.
+              pending.add(new File(directory.toURI().resolve(reference)));
+            }
+          }
+        }
+      }
+      Enumeration<JarEntry> entries = jar.entries();
+      while (entries.hasMoreElements()) {
+        JarEntry entry = entries.nextElement();
+        String name = entry.getName();
+        if (isNested(name, NESTED_JARS) && name.endsWith(".jar")) {
+          scanNestedJar(jar, entry);
+        } else {
+          addPackage(stripNestedClassDirectory(name));
+        }
+      }
+    }
+  }
+
+  // Lists a nested jar from its central directory, which is found from the end of central
+  // directory record at its end. Zip64 jars, which have more entries than that record holds, are
+  // streamed instead.
+  private void scanNestedJar(JarFile jar, JarEntry entry) throws IOException {
+    result.scannedJars++;
+    if (entry.getMethod() != ZipEntry.STORED) {
+      result.inflatedNestedJars++;
+    }
+    long size = entry.getSize();
+    if (size < END_LENGTH) {
+      throw new IOException("truncated nested jar " + entry.getName());
+    }
+    int tailLength = (int) Math.min(size, END_LENGTH + MAX_COMMENT_LENGTH);
+    byte[] tail = read(jar, entry, size - tailLength, tailLength);
+    int end = tail.length - END_LENGTH;
+    while (end >= 0 && readInt(tail, end) != END_SIGNATURE) {
+      end--;
+    }
+    if (end < 0) {
+      throw new IOException("no central directory in nested jar " + entry.getName());
+    }
+    int entries = readShort(tail, end + 10);
+    long directoryLength = readInt(tail, end + 12) & 0xFFFFFFFFL;
+    if (entries == 0xFFFF || directoryLength == 0xFFFFFFFFL) {
+      try (InputStream stream = jar.getInputStream(entry)) {
+        scanStreamedJar(stream);
+      }
+      return;
+    }
+    // The central directory ends where the record starts, which unlike its recorded offset holds
+    // for jars with a prefix, like executable jars starting with a launch script.
+    long directoryStart = size - tailLength + end - directoryLength;
+    if (directoryStart < 0) {
+      throw new IOException("invalid central directory in nested jar " + entry.getName());
+    }
+    byte[] directory;
+    int offset;
+    if (directoryStart >= size - tailLength) {
+      directory = tail;
+      offset = (int) (directoryStart - (size - tailLength));
+    } else {
+      directory = read(jar, entry, directoryStart, (int) directoryLength);
+      offset = 0;
+    }
+    for (int i = 0; i < entries; i++) {
+      if (offset + CENTRAL_HEADER_LENGTH > directory.length
+          || readInt(directory, offset) != CENTRAL_SIGNATURE) {
+        throw new IOException("invalid central directory in nested jar " + entry.getName());
+      }
+      int nameLength = readShort(directory, offset + 28);
+      int extraLength = readShort(directory, offset + 30);
+      int commentLength = readShort(directory, offset + 32);
+      // Class names are ASCII, which reads the same in UTF-8 and the zip format's default CP437.
+      addPackage(
+          new String(
+              directory, offset + CENTRAL_HEADER_LENGTH, nameLength, StandardCharsets.UTF_8));
+      offset += CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength;
+    }
+  }
+
+  private void scanStreamedJar(InputStream stream) throws IOException {
+    ZipInputStream nested = new ZipInputStream(stream);
+    ZipEntry entry;
+    while ((entry = nested.getNextEntry()) != null) {
+      addPackage(entry.getName());
+    }
+  }
+
+  // Reads part of an entry. Skipping into an uncompressed entry only moves the read position, while
+  // a compressed one is inflated up to the part.
+  private static byte[] read(JarFile jar, JarEntry entry, long offset, int length)
+      throws IOException {
+    byte[] bytes = new byte[length];
+    try (InputStream stream = jar.getInputStream(entry)) {
+      long skipped = 0;
+      while (skipped < offset) {
+        long n = stream.skip(offset - skipped);
+        if (n <= 0) {
+          throw new EOFException("truncated nested jar " + entry.getName());
+        }
+        skipped += n;
+      }
+      int read = 0;
+      while (read < length) {
+        int n = stream.read(bytes, read, length - read);
+        if (n < 0) {
+          throw new EOFException("truncated nested jar " + entry.getName());
+        }
+        read += n;
+      }
+    }
+    return bytes;
+  }
+
+  private static int readShort(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF) | (bytes[offset + 1] & 0xFF) << 8;
+  }
+
+  private static int readInt(byte[] bytes, int offset) {
+    return readShort(bytes, offset) | readShort(bytes, offset + 2) << 16;
+  }
+
+  private void addPackage(String classFile) {
+    int slash = classFile.lastIndexOf('/');
+    if (slash > 0 && classFile.endsWith(".class")) {
+      packages.add(classFile.substring(0, slash + 1).replace('/', '.'));
+    }
+  }
+
+  private static boolean isNested(String name, String[] directories) {
+    for (String directory : directories) {
+      if (name.startsWith(directory)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String stripNestedClassDirectory(String name) {
+    for (String directory : NESTED_CLASSES) {
+      if (name.startsWith(directory)) {
+        return name.substring(directory.length());
+      }
+    }
+    return name;
+  }
+}
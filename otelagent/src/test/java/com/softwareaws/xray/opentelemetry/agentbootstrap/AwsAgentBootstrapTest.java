@@ -0,0 +1,88 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.agentbootstrap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class AwsAgentBootstrapTest {
+
+  private static final String[] INDEX = {
+    "com.google.common.util.concurrent.AbstractFuture",
+    "org.apache.kafka.clients.producer.KafkaProducer",
+    "org.springframework",
+    "reactor.core.",
+  };
+
+  @Test
+  void packageContainingIndexedTypeIsReferenced() {
+    assertThat(AwsAgentBootstrap.isReferenced("com.google.common.", INDEX)).isTrue();
+    assertThat(AwsAgentBootstrap.isReferenced("org.apache.kafka.", INDEX)).isTrue();
+  }
+
+  @Test
+  void packageInsideIndexedPrefixIsReferenced() {
+    // From nameStartsWith("org.springframework") and nameStartsWith("reactor.core.") matchers.
+    assertThat(AwsAgentBootstrap.isReferenced("org.springframework.core.annotation.", INDEX))
+        .isTrue();
+    assertThat(AwsAgentBootstrap.isReferenced("reactor.core.publisher.", INDEX)).isTrue();
+  }
+
+  @Test
+  void unrelatedPackageIsNotReferenced() {
+    assertThat(AwsAgentBootstrap.isReferenced("com.fasterxml.jackson.", INDEX)).isFalse();
+    // Shares a prefix with an indexed type, but is a different package.
+    assertThat(AwsAgentBootstrap.isReferenced("com.google.commonx.", INDEX)).isFalse();
+    assertThat(AwsAgentBootstrap.isReferenced("org.apache.commons.io.", INDEX)).isFalse();
+  }
+
+  @Test
+  void readsSortedIndexWithoutComments() {
+    String[] names =
+        AwsAgentBootstrap.readInstrumentationIndex(
+            stream(
+                "# Types and packages referenced by bundled instrumentation, sorted.\n"
+                    + "org.springframework\n"
+                    + "\n"
+                    + "com.google.common.util.concurrent.AbstractFuture\n"));
+
+    assertThat(names)
+        .containsExactly("com.google.common.util.concurrent.AbstractFuture", "org.springframework");
+  }
+
+  @Test
+  void emptyOrUnreadableIndexExcludesNothing() {
+    assertThat(AwsAgentBootstrap.readInstrumentationIndex(stream("# Only a comment.\n"))).isNull();
+    assertThat(
+            AwsAgentBootstrap.readInstrumentationIndex(
+                new InputStream() {
+                  @Override
+                  public int read() throws IOException {
+                    throw new IOException("broken");
+                  }
+                }))
+        .isNull();
+  }
+
+  private static InputStream stream(String contents) {
+    return new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8));
+  }
+}
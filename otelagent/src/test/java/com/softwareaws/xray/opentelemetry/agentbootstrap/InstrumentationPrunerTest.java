@@ -0,0 +1,205 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package com.softwareaws.xray.opentelemetry.agentbootstrap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class InstrumentationPrunerTest {
+
+  private static final byte[] CLASS = {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE};
+
+  @TempDir Path dir;
+
+  @Test
+  void scansManifestClassPathAndDirectories() throws IOException {
+    Files.createDirectories(dir.resolve("lib"));
+    writeJar(dir.resolve("lib/okhttp.jar"), null, entries("okhttp3/OkHttpClient.class"), false);
+    writeJar(
+        dir.resolve("app.jar"),
+        manifest("com.example.Main", "lib/okhttp.jar lib/missing.jar"),
+        entries("com/example/Main.class"),
+        false);
+    Path classes = dir.resolve("classes/io/grpc");
+    Files.createDirectories(classes);
+    Files.write(classes.resolve("Channel.class"), CLASS);
+
+    InstrumentationPruner.Result result =
+        InstrumentationPruner.scan(
+            dir.resolve("app.jar") + File.pathSeparator + dir.resolve("classes"),
+            dir.resolve("app.jar") + " --port 8080",
+            null);
+
+    assertThat(result.skippedReason).isNull();
+    assertThat(result.kept).containsExactlyInAnyOrder("okhttp", "grpc");
+    assertThat(result.pruned).contains("kafka", "servlet").doesNotContain("okhttp", "grpc");
+    assertThat(result.scannedJars).isEqualTo(2);
+    assertThat(result.scannedDirectories).isEqualTo(1);
+  }
+
+  @Test
+  void scansNestedJars() throws IOException {
+    // Enough entries for the central directory to start before the last 64 KB searched for its end.
+    Map<String, byte[]> jedis = entries("redis/clients/jedis/Jedis.class");
+    for (int i = 0; i < 2000; i++) {
+      jedis.put("com/example/generated/GeneratedClassWithAFairlyLongName" + i + ".class", CLASS);
+    }
+    byte[] stored = jarBytes(null, jedis, false);
+    byte[] compressed = jarBytes(null, entries("org/apache/kafka/clients/Producer.class"), false);
+    // A launch script before the jar, as in Spring Boot's fully executable jars.
+    byte[] prefixed =
+        concat(
+            "#!/bin/sh\n".getBytes(StandardCharsets.UTF_8),
+            jarBytes(null, entries("com/mongodb/MongoClient.class"), false));
+    Map<String, byte[]> outer = new LinkedHashMap<>();
+    outer.put("BOOT-INF/classes/io/vertx/core/Vertx.class", CLASS);
+    outer.put("BOOT-INF/lib/jedis.jar", stored);
+    outer.put("BOOT-INF/lib/mongo.jar", prefixed);
+    Path app = dir.resolve("app.jar");
+    writeJar(app, manifest("org.springframework.boot.loader.JarLauncher", null), outer, true);
+    Path war = dir.resolve("app.war");
+    writeJar(war, null, Map.of("WEB-INF/lib/kafka.jar", compressed), false);
+
+    InstrumentationPruner.Result result =
+        InstrumentationPruner.scan(app + File.pathSeparator + war, app.toString(), null);
+
+    assertThat(result.skippedReason).isNull();
+    // rediscala's redis. package contains jedis's.
+    assertThat(result.kept)
+        .containsExactlyInAnyOrder("jedis", "rediscala", "mongo", "vertx", "kafka");
+    assertThat(result.scannedJars).isEqualTo(5);
+    assertThat(result.inflatedNestedJars).isEqualTo(1);
+  }
+
+  @Test
+  void skipsExternalLaunchers() throws IOException {
+    writeJar(
+        dir.resolve("bootstrap.jar"), null, entries("org/apache/catalina/startup/X.class"), false);
+
+    InstrumentationPruner.Result result =
+        InstrumentationPruner.scan(
+            dir.resolve("bootstrap.jar").toString(),
+            "org.apache.catalina.startup.Bootstrap start",
+            null);
+
+    assertThat(result.skippedReason).contains("org.apache.catalina.startup.Bootstrap");
+    assertThat(result.pruned).isEmpty();
+  }
+
+  @Test
+  void skipsUnknownMainClass() throws IOException {
+    Path app = dir.resolve("app.jar");
+    writeJar(app, null, entries("com/example/Main.class"), false);
+
+    InstrumentationPruner.Result result =
+        InstrumentationPruner.scan(app.toString(), app.toString(), null);
+
+    assertThat(result.skippedReason).isEqualTo("the main class is unknown");
+    assertThat(result.pruned).isEmpty();
+    assertThat(InstrumentationPruner.scan(app.toString(), null, null).skippedReason)
+        .isEqualTo("the class path or main class is unknown");
+  }
+
+  @Test
+  void skipsUnreadableJars() throws IOException {
+    Path broken = dir.resolve("broken.jar");
+    Files.write(broken, "not a jar".getBytes(StandardCharsets.UTF_8));
+    Path app = dir.resolve("app.jar");
+    Map<String, byte[]> outer = new LinkedHashMap<>();
+    outer.put("BOOT-INF/lib/broken.jar", "not a jar either".getBytes(StandardCharsets.UTF_8));
+    writeJar(app, manifest("com.example.Main", null), outer, true);
+
+    assertThat(
+            InstrumentationPruner.scan(broken.toString(), "com.example.Main", null).skippedReason)
+        .startsWith("could not read " + broken);
+    InstrumentationPruner.Result result =
+        InstrumentationPruner.scan(app.toString(), app.toString(), null);
+    assertThat(result.skippedReason).startsWith("could not read " + app);
+    assertThat(result.pruned).isEmpty();
+  }
+
+  private static Map<String, byte[]> entries(String... classFiles) {
+    Map<String, byte[]> entries = new LinkedHashMap<>();
+    for (String classFile : classFiles) {
+      entries.put(classFile, CLASS);
+    }
+    return entries;
+  }
+
+  private static Manifest manifest(String mainClass, String classPath) {
+    var manifest = new Manifest();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
+    if (classPath != null) {
+      manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+    }
+    return manifest;
+  }
+
+  private static void writeJar(
+      Path path, Manifest manifest, Map<String, byte[]> entries, boolean stored)
+      throws IOException {
+    Files.write(path, jarBytes(manifest, entries, stored));
+  }
+
+  // Writes a jar, with its entries uncompressed if stored, as Spring Boot stores nested jars.
+  private static byte[] jarBytes(Manifest manifest, Map<String, byte[]> entries, boolean stored)
+      throws IOException {
+    var bytes = new ByteArrayOutputStream();
+    try (var jar =
+        manifest != null ? new JarOutputStream(bytes, manifest) : new JarOutputStream(bytes)) {
+      for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+        var jarEntry = new JarEntry(entry.getKey());
+        if (stored) {
+          var crc = new CRC32();
+          crc.update(entry.getValue());
+          jarEntry.setMethod(ZipEntry.STORED);
+          jarEntry.setSize(entry.getValue().length);
+          jarEntry.setCrc(crc.getValue());
+        }
+        jar.putNextEntry(jarEntry);
+        jar.write(entry.getValue());
+        jar.closeEntry();
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) throws IOException {
+    var bytes = new ByteArrayOutputStream();
+    OutputStream out = bytes;
+    out.write(first);
+    out.write(second);
+    return bytes.toByteArray();
+  }
+}
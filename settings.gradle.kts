@@ -14,8 +14,10 @@
  */
 
 include(":awsagentprovider")
+include(":benchmarks")
 include(":dependencyManagement")
 include(":otelagent")
 include(":smoke-tests:fakebackend")
 include(":smoke-tests:runner")
 include(":smoke-tests:spring-boot")
+include(":smoke-tests:startup")
@@ -82,6 +82,13 @@ public class FakeBackendMain {
                   return HttpResponse.of(
                       HttpStatus.OK, MediaType.JSON, HttpData.wrap(buf.buffer()));
                 })
+            .service(
+                "/get-request-encodings",
+                (ctx, req) ->
+                    HttpResponse.of(
+                        HttpStatus.OK,
+                        MediaType.JSON,
+                        OBJECT_MAPPER.writeValueAsBytes(collector.getRequestEncodings())))
             .service("/health", HealthCheckService.of())
             .build();
 
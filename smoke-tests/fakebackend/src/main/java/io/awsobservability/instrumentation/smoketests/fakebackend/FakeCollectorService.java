@@ -16,6 +16,7 @@
 package io.awsobservability.instrumentation.smoketests.fakebackend;
 
 import com.google.common.collect.ImmutableList;
+import com.linecorp.armeria.server.ServiceRequestContext;
 import io.grpc.stub.StreamObserver;
 import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceRequest;
 import io.opentelemetry.proto.collector.trace.v1.ExportTraceServiceResponse;
@@ -29,18 +30,30 @@ class FakeCollectorService extends TraceServiceGrpc.TraceServiceImplBase {
   private final BlockingQueue<ExportTraceServiceRequest> exportRequests =
       new LinkedBlockingDeque<>();
 
+  // The grpc-encoding of each request, identity if uncompressed. Compressed requests are
+  // decompressed by Armeria before reaching the service.
+  private final BlockingQueue<String> requestEncodings = new LinkedBlockingDeque<>();
+
   List<ExportTraceServiceRequest> getRequests() {
     return ImmutableList.copyOf(exportRequests);
   }
 
+  List<String> getRequestEncodings() {
+    return ImmutableList.copyOf(requestEncodings);
+  }
+
   void clearRequests() {
     exportRequests.clear();
+    requestEncodings.clear();
   }
 
   @Override
   public void export(
       ExportTraceServiceRequest request,
       StreamObserver<ExportTraceServiceResponse> responseObserver) {
+    String encoding =
+        ServiceRequestContext.current().request().headers().get("grpc-encoding", "identity");
+    requestEncodings.add(encoding);
     exportRequests.add(request);
     responseObserver.onNext(ExportTraceServiceResponse.getDefaultInstance());
     responseObserver.onCompleted();
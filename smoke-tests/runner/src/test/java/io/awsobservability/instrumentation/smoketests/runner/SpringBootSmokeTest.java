@@ -29,6 +29,7 @@ import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.databind.module.SimpleDeserializers;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.github.dockerjava.api.model.ExposedPort;
 import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.Uninterruptibles;
@@ -45,6 +46,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.testcontainers.DockerClientFactory;
 import org.testcontainers.containers.GenericContainer;
 import org.testcontainers.containers.Network;
 import org.testcontainers.containers.output.Slf4jLogConsumer;
@@ -119,6 +121,22 @@ class SpringBootSmokeTest {
           .withEnv("OTEL_BSP_SCHEDULE_DELAY", "10")
           .withEnv("OTEL_EXPORTER_OTLP_SPAN_ENDPOINT", "backend:8080");
 
+  // Exports through the AWS span processor, spilling requests to disk while the backend is down.
+  @Container
+  private static final GenericContainer<?> spillingApplication =
+      new GenericContainer<>("ghcr.io/anuraaga/smoke-tests-spring-boot:latest")
+          .dependsOn(backend)
+          .withExposedPorts(8080)
+          .withNetwork(network)
+          .withLogConsumer(new Slf4jLogConsumer(applicationLogger))
+          .withCopyFileToContainer(
+              MountableFile.forHostPath(AGENT_PATH), "/opentelemetry-javaagent-all.jar")
+          .withEnv("JAVA_TOOL_OPTIONS", "-javaagent:/opentelemetry-javaagent-all.jar")
+          .withEnv("OTEL_AWS_EXPORTER", "otlp")
+          .withEnv("OTEL_AWS_SPAN_PROCESSOR_SCHEDULE_DELAY_MILLIS", "10")
+          .withEnv("OTEL_AWS_OTLP_SPILL_FILE", "/tmp/aws-otel/otlp.spill")
+          .withEnv("OTEL_EXPORTER_OTLP_SPAN_ENDPOINT", "backend:8080");
+
   private static final TypeReference<List<ExportTraceServiceRequest>>
       EXPORT_TRACE_SERVICE_REQUEST_LIST = new TypeReference<>() {};
 
@@ -128,7 +146,7 @@ class SpringBootSmokeTest {
   @BeforeEach
   void setUp() {
     appClient = WebClient.of("http://localhost:" + application.getMappedPort(8080));
-    backendClient = WebClient.of("http://localhost:" + backend.getMappedPort(8080));
+    backendClient = WebClient.of("http://localhost:" + backendPort());
   }
 
   @AfterEach
@@ -182,6 +200,70 @@ class SpringBootSmokeTest {
             });
   }
 
+  @Test
+  void replaysSpansSpilledWhileBackendStopped() {
+    var spillingAppClient =
+        WebClient.of("http://localhost:" + spillingApplication.getMappedPort(8080));
+    var docker = DockerClientFactory.instance().client();
+
+    docker.stopContainerCmd(backend.getContainerId()).exec();
+    var response = spillingAppClient.get("/hello").aggregate().join();
+    assertThat(response.status().isSuccess()).isTrue();
+    // Let the exporter fail and spill the spans.
+    Uninterruptibles.sleepUninterruptibly(2, TimeUnit.SECONDS);
+    long restartEpochNanos = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    docker.startContainerCmd(backend.getContainerId()).exec();
+
+    // The restarted backend has a new port.
+    backendClient = WebClient.of("http://localhost:" + backendPort());
+    awaitBackendHealthy();
+
+    // Spilled spans are replayed with the next export once the backend is reachable. The channel
+    // may still be backing off from the failed connection, so spans may be spilled a few times.
+    List<Span> helloSpans = ImmutableList.of();
+    for (int i = 0; i < 30; i++) {
+      spillingAppClient.get("/hello").aggregate().join();
+      helloSpans =
+          getExported().stream()
+              .filter(span -> span.getKind() == SPAN_KIND_SERVER)
+              .filter(span -> span.getName().equals("/hello"))
+              .collect(toImmutableList());
+      if (!helloSpans.isEmpty() && helloSpans.get(0).getStartTimeUnixNano() < restartEpochNanos) {
+        break;
+      }
+    }
+
+    assertThat(helloSpans).hasSizeGreaterThanOrEqualTo(2);
+    assertThat(helloSpans.get(0).getStartTimeUnixNano()).isLessThan(restartEpochNanos);
+    assertThat(helloSpans.stream().map(Span::getStartTimeUnixNano).collect(toImmutableList()))
+        .isSorted();
+  }
+
+  private static int backendPort() {
+    var ports =
+        DockerClientFactory.instance()
+            .client()
+            .inspectContainerCmd(backend.getContainerId())
+            .exec()
+            .getNetworkSettings()
+            .getPorts();
+    return Integer.parseInt(ports.getBindings().get(ExposedPort.tcp(8080))[0].getHostPortSpec());
+  }
+
+  private void awaitBackendHealthy() {
+    for (int i = 0; i < 100; i++) {
+      try {
+        if (backendClient.get("/health").aggregate().join().status().isSuccess()) {
+          return;
+        }
+      } catch (RuntimeException e) {
+        // Not started yet.
+      }
+      Uninterruptibles.sleepUninterruptibly(100, TimeUnit.MILLISECONDS);
+    }
+    throw new AssertionError("Backend not healthy after restart.");
+  }
+
   private List<Span> getExported() {
     List<ExportTraceServiceRequest> exported = ImmutableList.of();
     for (int i = 0; i < 100; i++) {
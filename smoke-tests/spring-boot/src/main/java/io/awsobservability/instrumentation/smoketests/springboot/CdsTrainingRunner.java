@@ -0,0 +1,46 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package io.awsobservability.instrumentation.smoketests.springboot;
+
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Serves a single request and exits once the application has started. Used when training the
+ * agent image's class data sharing archive, so the archive includes the classes needed to handle
+ * a request and not just the ones needed to start up.
+ */
+@Component
+@ConditionalOnProperty("smoketest.cds-training")
+public class CdsTrainingRunner implements ApplicationRunner {
+
+  private final ApplicationContext context;
+
+  public CdsTrainingRunner(ApplicationContext context) {
+    this.context = context;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    new RestTemplate().getForEntity("http://localhost:8080/hello", String.class);
+    System.exit(SpringApplication.exit(context));
+  }
+}
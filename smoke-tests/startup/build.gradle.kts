@@ -0,0 +1,69 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+plugins {
+  java
+}
+
+java {
+  sourceCompatibility = JavaVersion.VERSION_11
+  targetCompatibility = JavaVersion.VERSION_11
+}
+
+project.evaluationDependsOn(":otelagent")
+project.evaluationDependsOn(":smoke-tests:spring-boot")
+
+val otelAgentJarTask = project(":otelagent").tasks.named<Jar>("shadowJar")
+val springBootJarTask = project(":smoke-tests:spring-boot").tasks.named<Jar>("bootJar")
+tasks {
+  register<JavaExec>("startupBenchmark") {
+    dependsOn(otelAgentJarTask, springBootJarTask)
+
+    classpath = sourceSets["main"].runtimeClasspath
+    main = "io.awsobservability.instrumentation.smoketests.startup.StartupBenchmark"
+
+    val outputDir = file("$buildDir/reports/startup")
+    outputs.dir(outputDir)
+    outputs.upToDateWhen { false }
+
+    systemProperty(
+      "io.awsobservability.instrumentation.smoketests.startup.agentPath",
+      otelAgentJarTask.get().archiveFile.get().asFile.absolutePath
+    )
+    systemProperty(
+      "io.awsobservability.instrumentation.smoketests.startup.appPath",
+      springBootJarTask.get().archiveFile.get().asFile.absolutePath
+    )
+    systemProperty(
+      "io.awsobservability.instrumentation.smoketests.startup.classpath",
+      sourceSets["main"].runtimeClasspath.asPath
+    )
+    systemProperty("io.awsobservability.instrumentation.smoketests.startup.outputDir", outputDir)
+
+    // Iteration counts and budgets can be overridden from the command line, e.g.
+    // ./gradlew startupBenchmark -Pstartup.iterations=5 -Pstartup.budget.mainMillis=1000
+    for (name in listOf(
+      "iterations",
+      "warmups",
+      "budget.mainMillis",
+      "budget.firstRequestMillis",
+      "budget.classes"
+    )) {
+      project.findProperty("startup.$name")?.let {
+        systemProperty("io.awsobservability.instrumentation.smoketests.startup.$name", it)
+      }
+    }
+  }
+}
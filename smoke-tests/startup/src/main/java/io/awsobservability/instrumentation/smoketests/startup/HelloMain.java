@@ -0,0 +1,37 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package io.awsobservability.instrumentation.smoketests.startup;
+
+/**
+ * A trivial application used to measure the cost of starting the JVM, with and without the agent,
+ * up to the point where application code first runs.
+ */
+public final class HelloMain {
+
+  static final String MAIN_MARKER = "startup-benchmark main=";
+  static final String PREMAIN_MARKER = " premain=";
+
+  public static void main(String[] args) {
+    long mainMillis = System.currentTimeMillis();
+    System.out.println(
+        MAIN_MARKER
+            + mainMillis
+            + PREMAIN_MARKER
+            + System.getProperty("otel.aws.premain.durationMillis", "-1"));
+  }
+
+  private HelloMain() {}
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright Amazon.com, Inc. or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License").
+ * You may not use this file except in compliance with the License.
+ * A copy of the License is located at
+ *
+ *  http://aws.amazon.com/apache2.0
+ *
+ * or in the "license" file accompanying this file. This file is distributed
+ * on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+
+package io.awsobservability.instrumentation.smoketests.startup;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Launches fresh JVMs with and without the agent and records how long it takes to reach {@code
+ * main}, how long the spring-boot smoke test app takes to serve its first request, and how many
+ * classes each configuration loads. Exits with a non-zero status when the overhead of the agent
+ * exceeds the configured budgets, so the task can be used as a regression gate in CI.
+ */
+public final class StartupBenchmark {
+
+  private static final String PROPERTY_PREFIX =
+      "io.awsobservability.instrumentation.smoketests.startup.";
+
+  private static final int APP_PORT = 8080;
+  private static final long APP_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+  public static void main(String[] args) throws Exception {
+    var benchmark = new StartupBenchmark();
+    var results = new ArrayList<Result>();
+    for (boolean withAgent : new boolean[] {false, true}) {
+      results.add(benchmark.measureMain(withAgent));
+      results.add(benchmark.measureFirstRequest(withAgent));
+    }
+
+    String report = toJson(results);
+    Files.writeString(benchmark.outputDir.resolve("startup.json"), report);
+    System.out.println(report);
+
+    List<String> violations = benchmark.checkBudgets(results);
+    if (!violations.isEmpty()) {
+      violations.forEach(System.err::println);
+      System.exit(1);
+    }
+  }
+
+  private final Path java = Paths.get(System.getProperty("java.home"), "bin", "java");
+  private final String agentPath = requiredProperty("agentPath");
+  private final String appPath = requiredProperty("appPath");
+  private final String classpath = requiredProperty("classpath");
+  private final Path outputDir = Paths.get(requiredProperty("outputDir"));
+  private final int iterations = Integer.parseInt(property("iterations", "10"));
+  private final int warmups = Integer.parseInt(property("warmups", "2"));
+  private final long mainBudgetMillis = Long.parseLong(property("budget.mainMillis", "3000"));
+  private final long firstRequestBudgetMillis =
+      Long.parseLong(property("budget.firstRequestMillis", "6000"));
+  private final long classesBudget = Long.parseLong(property("budget.classes", "12000"));
+
+  private final HttpClient httpClient =
+      HttpClient.newBuilder().connectTimeout(Duration.ofMillis(100)).build();
+
+  private StartupBenchmark() throws IOException {
+    Files.createDirectories(outputDir);
+  }
+
+  private Result measureMain(boolean withAgent) throws Exception {
+    var result = new Result("main", withAgent);
+    for (int i = 0; i < warmups + iterations; i++) {
+      long startMillis = System.currentTimeMillis();
+      Process process = start(result, List.of(), mainCommand());
+      String marker = readMarker(process);
+      process.waitFor();
+      if (i < warmups) {
+        continue;
+      }
+      // Both timestamps are wall-clock times on the same host, so the difference includes JVM
+      // bootstrap and the agent's premain but not the time to tear down the process.
+      int premainIndex = marker.indexOf(HelloMain.PREMAIN_MARKER);
+      long mainMillis =
+          Long.parseLong(marker.substring(HelloMain.MAIN_MARKER.length(), premainIndex));
+      result.millis.add(mainMillis - startMillis);
+      result.premainMillis.add(
+          Long.parseLong(marker.substring(premainIndex + HelloMain.PREMAIN_MARKER.length())));
+    }
+
+    Path classLog = outputDir.resolve(result.name() + "-classes.log");
+    Process process = start(result, classLoadLogging(classLog), mainCommand());
+    readMarker(process);
+    process.waitFor();
+    result.classes = countLines(classLog);
+    return result;
+  }
+
+  private Result measureFirstRequest(boolean withAgent) throws Exception {
+    var result = new Result("first-request", withAgent);
+    for (int i = 0; i < warmups + iterations; i++) {
+      long startMillis = System.currentTimeMillis();
+      Process process = start(result, List.of(), appCommand());
+      try {
+        awaitFirstRequest(process);
+      } finally {
+        stop(process);
+      }
+      if (i >= warmups) {
+        result.millis.add(System.currentTimeMillis() - startMillis);
+      }
+    }
+
+    Path classLog = outputDir.resolve(result.name() + "-classes.log");
+    Process process = start(result, classLoadLogging(classLog), appCommand());
+    try {
+      awaitFirstRequest(process);
+    } finally {
+      stop(process);
+    }
+    result.classes = countLines(classLog);
+    return result;
+  }
+
+  private Process start(Result result, List<String> jvmArgs, List<String> command)
+      throws IOException {
+    var args = new ArrayList<String>();
+    args.add(java.toString());
+    if (result.withAgent) {
+      // The agent keeps its default OTLP exporter even though nothing is listening, so the
+      // measurement includes the same exporter setup as a real deployment.
+      args.add("-javaagent:" + agentPath);
+    }
+    args.addAll(jvmArgs);
+    args.addAll(command);
+
+    var builder = new ProcessBuilder(args);
+    File log = outputDir.resolve(result.name() + ".log").toFile();
+    if (result.scenario.equals("main")) {
+      // Standard output is read to find the marker printed by HelloMain.
+      builder.redirectError(log);
+    } else {
+      builder.redirectErrorStream(true).redirectOutput(log);
+    }
+    return builder.start();
+  }
+
+  private List<String> mainCommand() {
+    return List.of("-cp", classpath, HelloMain.class.getName());
+  }
+
+  private List<String> appCommand() {
+    return List.of("-jar", appPath, "--server.port=" + APP_PORT);
+  }
+
+  private static List<String> classLoadLogging(Path file) {
+    return List.of("-Xlog:class+load=info:file=" + file);
+  }
+
+  private static String readMarker(Process process) throws IOException, InterruptedException {
+    try (var reader =
+        new BufferedReader(
+            new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(HelloMain.MAIN_MARKER)) {
+          return line;
+        }
+      }
+    }
+    throw new IllegalStateException(
+        "Process exited with " + process.waitFor() + " before reaching main.");
+  }
+
+  private void awaitFirstRequest(Process process) throws Exception {
+    var request =
+        HttpRequest.newBuilder(URI.create("http://localhost:" + APP_PORT + "/hello"))
+            .timeout(Duration.ofSeconds(5))
+            .build();
+    long deadline = System.currentTimeMillis() + APP_TIMEOUT_MILLIS;
+    while (System.currentTimeMillis() < deadline) {
+      if (!process.isAlive()) {
+        throw new IllegalStateException("Application exited with " + process.exitValue() + ".");
+      }
+      try {
+        var response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() == 200) {
+          return;
+        }
+      } catch (IOException e) {
+        // Not listening yet.
+      }
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    throw new IllegalStateException("Application did not serve a request within the timeout.");
+  }
+
+  private static void stop(Process process) throws InterruptedException {
+    process.destroy();
+    if (!process.waitFor(30, TimeUnit.SECONDS)) {
+      process.destroyForcibly().waitFor();
+    }
+  }
+
+  private List<String> checkBudgets(List<Result> results) {
+    var violations = new ArrayList<String>();
+    for (Result agent : results) {
+      if (!agent.withAgent) {
+        continue;
+      }
+      Result baseline =
+          results.stream()
+              .filter(r -> !r.withAgent && r.scenario.equals(agent.scenario))
+              .findFirst()
+              .orElseThrow();
+      long budgetMillis =
+          agent.scenario.equals("main") ? mainBudgetMillis : firstRequestBudgetMillis;
+      long overheadMillis = agent.median() - baseline.median();
+      if (overheadMillis > budgetMillis) {
+        violations.add(
+            "Agent adds "
+                + overheadMillis
+                + " ms to time-to-"
+                + agent.scenario
+                + ", budget is "
+                + budgetMillis
+                + " ms.");
+      }
+      long extraClasses = agent.classes - baseline.classes;
+      if (extraClasses > classesBudget) {
+        violations.add(
+            "Agent loads "
+                + extraClasses
+                + " extra classes before "
+                + agent.scenario
+                + ", budget is "
+                + classesBudget
+                + ".");
+      }
+    }
+    return violations;
+  }
+
+  private static long countLines(Path file) throws IOException {
+    try (Stream<String> lines = Files.lines(file)) {
+      return lines.count();
+    }
+  }
+
+  private static String toJson(List<Result> results) {
+    var json = new StringBuilder("[\n");
+    for (int i = 0; i < results.size(); i++) {
+      Result result = results.get(i);
+      json.append("  {\"scenario\": \"")
+          .append(result.scenario)
+          .append("\", \"agent\": ")
+          .append(result.withAgent)
+          .append(", \"medianMillis\": ")
+          .append(result.median())
+          .append(", \"p90Millis\": ")
+          .append(result.percentile(0.9))
+          .append(", \"classes\": ")
+          .append(result.classes);
+      if (result.withAgent && !result.premainMillis.isEmpty()) {
+        json.append(", \"medianPremainMillis\": ").append(percentile(result.premainMillis, 0.5));
+      }
+      json.append(", \"samplesMillis\": ").append(result.millis).append('}');
+      json.append(i < results.size() - 1 ? ",\n" : "\n");
+    }
+    return json.append("]\n").toString();
+  }
+
+  private static long percentile(List<Long> values, double percentile) {
+    Long[] sorted = values.toArray(new Long[0]);
+    Arrays.sort(sorted);
+    return sorted[(int) Math.ceil(percentile * sorted.length) - 1];
+  }
+
+  private static String requiredProperty(String name) {
+    String value = System.getProperty(PROPERTY_PREFIX + name);
+    if (value == null) {
+      throw new IllegalStateException("Missing system property " + PROPERTY_PREFIX + name);
+    }
+    return value;
+  }
+
+  private static String property(String name, String defaultValue) {
+    return System.getProperty(PROPERTY_PREFIX + name, defaultValue);
+  }
+
+  private static final class Result {
+    final String scenario;
+    final boolean withAgent;
+    final List<Long> millis = new ArrayList<>();
+    final List<Long> premainMillis = new ArrayList<>();
+    long classes;
+
+    Result(String scenario, boolean withAgent) {
+      this.scenario = scenario;
+      this.withAgent = withAgent;
+    }
+
+    String name() {
+      return (withAgent ? "agent-" : "baseline-") + scenario;
+    }
+
+    long median() {
+      return percentile(0.5);
+    }
+
+    long percentile(double percentile) {
+      return StartupBenchmark.percentile(millis, percentile);
+    }
+  }
+}